@@ -0,0 +1,622 @@
+package org.abos.common;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints. The ints are split into chunks of 2<sup>16</sup> values by their upper 16 bits.
+ * Sparse chunks are stored as sorted arrays of their lower 16 bits, dense chunks as plain bitsets, so neither a few
+ * large ints nor many consecutive ones cost much memory. Set operations work chunk by chunk and return new bitmaps.
+ * Not safe to modify from multiple threads.
+ */
+public final class CompressedBitmap {
+
+    /**
+     * The maximum number of values in a chunk stored as array. Above this, a bitset takes less memory.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int BITSET_WORDS = 1 << 10;
+
+    /**
+     * The lower 16 bits of the values of a chunk.
+     */
+    private abstract static sealed class Chunk permits ArrayChunk, BitsetChunk {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        /**
+         * @return this chunk or a replacement for it
+         */
+        abstract Chunk add(char low);
+
+        /**
+         * @return this chunk or a replacement for it, empty chunks are allowed
+         */
+        abstract Chunk remove(char low);
+
+        abstract Chunk and(Chunk other);
+
+        abstract Chunk or(Chunk other);
+
+        abstract Chunk andNot(Chunk other);
+
+        abstract Chunk copy();
+
+        abstract void forEach(int high, IntConsumer consumer);
+    }
+
+    private static final class ArrayChunk extends Chunk {
+
+        private char[] values;
+
+        private int size;
+
+        private ArrayChunk(final char[] values, final int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        private ArrayChunk() {
+            this(new char[4], 0);
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        private int indexOf(final char low) {
+            return Arrays.binarySearch(values, 0, size, low);
+        }
+
+        @Override
+        boolean contains(final char low) {
+            return indexOf(low) >= 0;
+        }
+
+        @Override
+        Chunk add(final char low) {
+            // ascending adds are the common case when loading
+            final int index = size > 0 && values[size - 1] < low ? -size - 1 : indexOf(low);
+            if (index >= 0) {
+                return this;
+            }
+            if (size == ARRAY_MAX) {
+                return toBitset().add(low);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+            }
+            final int insertion = -index - 1;
+            System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+            values[insertion] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        Chunk remove(final char low) {
+            final int index = indexOf(low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+            return this;
+        }
+
+        @Override
+        Chunk and(final Chunk other) {
+            final char[] result = new char[Math.min(size, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayChunk array) {
+                int i = 0;
+                int j = 0;
+                while (i < size && j < array.size) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    }
+                    else if (values[i] > array.values[j]) {
+                        j++;
+                    }
+                    else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            else {
+                for (int i = 0; i < size; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayChunk(result, count);
+        }
+
+        @Override
+        Chunk or(final Chunk other) {
+            if (other instanceof BitsetChunk bitset) {
+                return bitset.or(this);
+            }
+            final ArrayChunk array = (ArrayChunk) other;
+            final char[] result = new char[size + array.size];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < array.size) {
+                if (values[i] < array.values[j]) {
+                    result[count++] = values[i++];
+                }
+                else if (values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                }
+                else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < size) {
+                result[count++] = values[i++];
+            }
+            while (j < array.size) {
+                result[count++] = array.values[j++];
+            }
+            final ArrayChunk union = new ArrayChunk(result, count);
+            return count > ARRAY_MAX ? union.toBitset() : union;
+        }
+
+        @Override
+        Chunk andNot(final Chunk other) {
+            final char[] result = new char[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayChunk(result, count);
+        }
+
+        @Override
+        Chunk copy() {
+            return new ArrayChunk(Arrays.copyOf(values, size), size);
+        }
+
+        @Override
+        void forEach(final int high, final IntConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(high | values[i]);
+            }
+        }
+
+        private BitsetChunk toBitset() {
+            final long[] words = new long[BITSET_WORDS];
+            for (int i = 0; i < size; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitsetChunk(words, size);
+        }
+    }
+
+    private static final class BitsetChunk extends Chunk {
+
+        private final long[] words;
+
+        private int cardinality;
+
+        private BitsetChunk(final long[] words, final int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Wraps the specified words, shrinking them to an array chunk if they are sparse.
+         */
+        private static Chunk of(final long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            final BitsetChunk bitset = new BitsetChunk(words, cardinality);
+            return cardinality > ARRAY_MAX ? bitset : bitset.toArray();
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Chunk add(final char low) {
+            final long before = words[low >>> 6];
+            words[low >>> 6] = before | (1L << low);
+            if (before != words[low >>> 6]) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Chunk remove(final char low) {
+            final long before = words[low >>> 6];
+            words[low >>> 6] = before & ~(1L << low);
+            if (before != words[low >>> 6]) {
+                cardinality--;
+            }
+            return cardinality > ARRAY_MAX ? this : toArray();
+        }
+
+        @Override
+        Chunk and(final Chunk other) {
+            if (other instanceof ArrayChunk array) {
+                return array.and(this);
+            }
+            final long[] otherWords = ((BitsetChunk) other).words;
+            // intersections are mostly sparse, so count first to skip the intermediate bitset
+            int count = 0;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                count += Long.bitCount(words[i] & otherWords[i]);
+            }
+            if (count > ARRAY_MAX) {
+                final long[] result = new long[BITSET_WORDS];
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] = words[i] & otherWords[i];
+                }
+                return new BitsetChunk(result, count);
+            }
+            final char[] values = new char[count];
+            int index = 0;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i] & otherWords[i];
+                while (word != 0) {
+                    values[index++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayChunk(values, count);
+        }
+
+        @Override
+        Chunk or(final Chunk other) {
+            final long[] result = words.clone();
+            if (other instanceof ArrayChunk array) {
+                for (int i = 0; i < array.size; i++) {
+                    result[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            }
+            else {
+                final long[] otherWords = ((BitsetChunk) other).words;
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] |= otherWords[i];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        Chunk andNot(final Chunk other) {
+            final long[] result = words.clone();
+            if (other instanceof ArrayChunk array) {
+                for (int i = 0; i < array.size; i++) {
+                    result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                }
+            }
+            else {
+                final long[] otherWords = ((BitsetChunk) other).words;
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result[i] &= ~otherWords[i];
+                }
+            }
+            return of(result);
+        }
+
+        @Override
+        Chunk copy() {
+            return new BitsetChunk(words.clone(), cardinality);
+        }
+
+        @Override
+        void forEach(final int high, final IntConsumer consumer) {
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayChunk toArray() {
+            final char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayChunk(values, count);
+        }
+    }
+
+    /**
+     * The upper 16 bits of the chunks, sorted.
+     */
+    private char[] keys;
+
+    private Chunk[] chunks;
+
+    private int chunkCount;
+
+    public CompressedBitmap() {
+        this(new char[4], new Chunk[4], 0);
+    }
+
+    private CompressedBitmap(final char[] keys, final Chunk[] chunks, final int chunkCount) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.chunkCount = chunkCount;
+    }
+
+    /**
+     * Creates a bitmap of the specified values.
+     * @param values the values, not {@code null}
+     * @return a new bitmap, not {@code null}
+     * @throws IllegalArgumentException If any value is negative.
+     */
+    public static CompressedBitmap of(final int... values) {
+        final CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    private static char high(final int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char low(final int value) {
+        return (char) value;
+    }
+
+    private int indexOf(final char key) {
+        // ascending adds are the common case when loading
+        if (chunkCount > 0 && keys[chunkCount - 1] < key) {
+            return -chunkCount - 1;
+        }
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private void append(final char key, final Chunk chunk) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        keys[chunkCount] = key;
+        chunks[chunkCount] = chunk;
+        chunkCount++;
+    }
+
+    /**
+     * Adds a value.
+     * @param value the value to add
+     * @return {@code true} if the value was not contained before
+     * @throws IllegalArgumentException If {@code value} is negative.
+     */
+    public boolean add(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non-negative values can be added, got " + value + "!");
+        }
+        final char key = high(value);
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final int before = chunks[index].cardinality();
+            chunks[index] = chunks[index].add(low(value));
+            return chunks[index].cardinality() != before;
+        }
+        final int insertion = -index - 1;
+        append(key, null);
+        System.arraycopy(keys, insertion, keys, insertion + 1, chunkCount - 1 - insertion);
+        System.arraycopy(chunks, insertion, chunks, insertion + 1, chunkCount - 1 - insertion);
+        keys[insertion] = key;
+        chunks[insertion] = new ArrayChunk().add(low(value));
+        return true;
+    }
+
+    /**
+     * Removes a value.
+     * @param value the value to remove
+     * @return {@code true} if the value was contained before
+     */
+    public boolean remove(final int value) {
+        if (value < 0) {
+            return false;
+        }
+        final int index = indexOf(high(value));
+        if (index < 0) {
+            return false;
+        }
+        final int before = chunks[index].cardinality();
+        chunks[index] = chunks[index].remove(low(value));
+        if (chunks[index].cardinality() == before) {
+            return false;
+        }
+        if (chunks[index].cardinality() == 0) {
+            System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+            System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+            chunks[--chunkCount] = null;
+        }
+        return true;
+    }
+
+    public boolean contains(final int value) {
+        if (value < 0) {
+            return false;
+        }
+        final int index = indexOf(high(value));
+        return index >= 0 && chunks[index].contains(low(value));
+    }
+
+    /**
+     * Returns the number of values in this bitmap.
+     * @return the number of values
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            cardinality += chunks[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /**
+     * Returns the values in both this and the specified bitmap.
+     * @param other the other bitmap, not {@code null}
+     * @return a new bitmap, not {@code null}
+     */
+    public CompressedBitmap and(final CompressedBitmap other) {
+        final CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount && j < other.chunkCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            }
+            else if (keys[i] > other.keys[j]) {
+                j++;
+            }
+            else {
+                result.appendIfNotEmpty(keys[i], chunks[i].and(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values in this or the specified bitmap.
+     * @param other the other bitmap, not {@code null}
+     * @return a new bitmap, not {@code null}
+     */
+    public CompressedBitmap or(final CompressedBitmap other) {
+        final CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount || j < other.chunkCount) {
+            if (j == other.chunkCount || (i < chunkCount && keys[i] < other.keys[j])) {
+                result.append(keys[i], chunks[i].copy());
+                i++;
+            }
+            else if (i == chunkCount || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.chunks[j].copy());
+                j++;
+            }
+            else {
+                result.append(keys[i], chunks[i].or(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values in this but not in the specified bitmap.
+     * @param other the other bitmap, not {@code null}
+     * @return a new bitmap, not {@code null}
+     */
+    public CompressedBitmap andNot(final CompressedBitmap other) {
+        final CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            while (j < other.chunkCount && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.chunkCount && other.keys[j] == keys[i]) {
+                result.appendIfNotEmpty(keys[i], chunks[i].andNot(other.chunks[j]));
+            }
+            else {
+                result.append(keys[i], chunks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    private void appendIfNotEmpty(final char key, final Chunk chunk) {
+        if (chunk.cardinality() > 0) {
+            append(key, chunk);
+        }
+    }
+
+    /**
+     * Returns a copy of this bitmap that can be modified independently.
+     * @return a new bitmap, not {@code null}
+     */
+    public CompressedBitmap copy() {
+        final Chunk[] copies = new Chunk[Math.max(4, chunkCount)];
+        for (int i = 0; i < chunkCount; i++) {
+            copies[i] = chunks[i].copy();
+        }
+        return new CompressedBitmap(Arrays.copyOf(keys, copies.length), copies, chunkCount);
+    }
+
+    /**
+     * Performs the specified action for each value in ascending order.
+     * @param consumer the action, not {@code null}
+     */
+    public void forEach(final IntConsumer consumer) {
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * Returns the values of this bitmap.
+     * @return the values in ascending order, not {@code null}
+     */
+    public int[] toArray() {
+        final int[] values = new int[cardinality()];
+        final int[] count = new int[1];
+        forEach(value -> values[count[0]++] = value);
+        return values;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompressedBitmap other)) {
+            return false;
+        }
+        return Arrays.equals(toArray(), other.toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.abos.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe pool of canonical instances, similar to {@link String#intern()} but for any immutable type with value
+ * semantics. The pool only holds weak references, so canonical instances no longer used elsewhere get collected.
+ * @param <T> the type of the pooled instances, should be immutable
+ */
+public final class WeakInterner<T> {
+
+    /**
+     * A weak key with a cached hash code. Two keys are equal if they are the same or if both still refer to equal objects.
+     * @param <T> the type of the referent
+     */
+    private static final class WeakKey<T> extends WeakReference<T> {
+
+        private final int hash;
+
+        private WeakKey(final T referent, final ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.hash = referent.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WeakKey<?> other) || hash != other.hash) {
+                return false;
+            }
+            final Object referent = get();
+            return referent != null && referent.equals(other.get());
+        }
+    }
+
+    private final ConcurrentMap<WeakKey<T>, WeakKey<T>> pool = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+
+    public WeakInterner() {
+        /* Nothing to initialize. */
+    }
+
+    /**
+     * Removes all keys whose referents have been collected.
+     */
+    private void purge() {
+        Reference<? extends T> ref;
+        while ((ref = queue.poll()) != null) {
+            pool.remove(ref);
+        }
+    }
+
+    /**
+     * Looks up the canonical instance equal to the specified sample without adding the sample to the pool.
+     * @param sample the sample to look up, not {@code null}
+     * @return the canonical instance or {@code null} if there is none
+     * @throws NullPointerException If {@code sample} refers to {@code null}.
+     */
+    public T find(final T sample) {
+        final WeakKey<T> existing = pool.get(new WeakKey<>(Objects.requireNonNull(sample), null));
+        return existing == null ? null : existing.get();
+    }
+
+    /**
+     * Returns the canonical instance equal to the specified sample. If there is none yet, the sample becomes it.
+     * @param sample the sample to intern, not {@code null}
+     * @return the canonical instance equal to {@code sample}, not {@code null}
+     * @throws NullPointerException If {@code sample} refers to {@code null}.
+     */
+    public T intern(final T sample) {
+        Objects.requireNonNull(sample);
+        purge();
+        final WeakKey<T> key = new WeakKey<>(sample, queue);
+        while (true) {
+            final WeakKey<T> existing = pool.putIfAbsent(key, key);
+            if (existing == null) {
+                return sample;
+            }
+            final T canonical = existing.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            // collected in the meantime, make room for the sample
+            pool.remove(existing, existing);
+        }
+    }
+
+    /**
+     * Returns the number of instances in the pool. Instances collected recently may still be counted.
+     * @return the number of pooled instances
+     */
+    public int size() {
+        purge();
+        return pool.size();
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.abos.linker.codec;
+
+/**
+ * Constants of the binary format written by {@link RecordEncoder} and read by {@link RecordDecoder}.
+ * <p>
+ * Each record starts with {@link #VERSION} and its type. Ints are written as unsigned varints, longs as zigzag varints.
+ * Strings start with a varint code: {@link #STRING_NULL}, {@link #STRING_LITERAL} followed by the length and the UTF-8
+ * bytes, {@link #STRING_DEFINITION} likewise but also adding the string to the dictionary, or the index into the
+ * dictionary plus {@link #STRING_REFERENCE_OFFSET}. Names of tags, authors, fandoms, languages and ratings go through
+ * the dictionary, so each is written in full only once per stream. The 13 booleans of a fanfiction are packed into
+ * one varint together with {@link #FANFICTION_ENGAGEMENT}, which tells if the four engagement counters follow at the
+ * end of the fanfiction.
+ */
+public final class RecordCodec {
+
+    /**
+     * The version of the format, incremented on incompatible changes.
+     */
+    public static final byte VERSION = 2;
+
+    public static final byte TYPE_FANFICTION = 1;
+
+    public static final byte TYPE_TAG = 2;
+
+    public static final byte TYPE_AUTHOR = 3;
+
+    public static final byte TYPE_FANDOM = 4;
+
+    static final int STRING_NULL = 0;
+
+    static final int STRING_LITERAL = 1;
+
+    static final int STRING_DEFINITION = 2;
+
+    static final int STRING_REFERENCE_OFFSET = 3;
+
+    static final int TAG_CHARACTER = 1;
+
+    static final int TAG_RELATIONSHIP = 1 << 1;
+
+    static final int FANFICTION_ENGAGEMENT = 1 << 13;
+
+    private RecordCodec() {
+        /* No instantiation. */
+    }
+
+}
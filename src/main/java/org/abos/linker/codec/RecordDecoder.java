@@ -0,0 +1,213 @@
+package org.abos.linker.codec;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the records written by a {@link RecordEncoder} straight from a {@link ByteBuffer}, without copying the bytes
+ * first. Names are taken from the dictionary of the stream, so repeated names are decoded only once and share one
+ * instance. Not safe to use from multiple threads.
+ */
+public final class RecordDecoder {
+
+    private final List<String> dictionary = new ArrayList<>();
+
+    public RecordDecoder() {
+        /* Nothing to initialize. */
+    }
+
+    static int readVarInt(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint encountered!");
+    }
+
+    static long readVarLong(final ByteBuffer buffer) {
+        long zigzag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IllegalStateException("Malformed varlong encountered!");
+    }
+
+    private static String readUtf8(final ByteBuffer buffer) {
+        final int length = readVarInt(buffer);
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        else {
+            final byte[] utf8 = new byte[length];
+            buffer.get(utf8);
+            value = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private String readString(final ByteBuffer buffer) {
+        final int code = readVarInt(buffer);
+        switch (code) {
+            case RecordCodec.STRING_NULL:
+                return null;
+            case RecordCodec.STRING_LITERAL:
+                return readUtf8(buffer);
+            case RecordCodec.STRING_DEFINITION:
+                final String value = readUtf8(buffer);
+                dictionary.add(value);
+                return value;
+            default:
+                final int index = code - RecordCodec.STRING_REFERENCE_OFFSET;
+                if (index >= dictionary.size()) {
+                    throw new IllegalStateException("Unknown dictionary entry " + index + " encountered!");
+                }
+                return dictionary.get(index);
+        }
+    }
+
+    private static byte readHeader(final ByteBuffer buffer) {
+        final byte version = buffer.get();
+        if (version != RecordCodec.VERSION) {
+            throw new IllegalStateException("Unsupported format version " + version + " encountered!");
+        }
+        return buffer.get();
+    }
+
+    private static void checkType(final byte expected, final byte actual) {
+        if (expected != actual) {
+            throw new IllegalStateException("Expected record type " + expected + ", but got " + actual + "!");
+        }
+    }
+
+    private Tag readTagBody(final ByteBuffer buffer) {
+        final String name = readString(buffer);
+        final String description = readString(buffer);
+        final byte flags = buffer.get();
+        final String fandom = readString(buffer);
+        final String link = readString(buffer);
+        return new Tag(name, description, (flags & RecordCodec.TAG_CHARACTER) != 0, (flags & RecordCodec.TAG_RELATIONSHIP) != 0, fandom, link);
+    }
+
+    private Author readAuthorBody(final ByteBuffer buffer) {
+        final String name = readString(buffer);
+        final int linkCount = readVarInt(buffer);
+        final String[] links = new String[linkCount];
+        for (int index = 0; index < linkCount; index++) {
+            links[index] = readString(buffer);
+        }
+        return new Author(name, List.of(links));
+    }
+
+    private Fandom readFandomBody(final ByteBuffer buffer) {
+        final String name = readString(buffer);
+        return new Fandom(name, readString(buffer));
+    }
+
+    private Fanfiction readFanfictionBody(final ByteBuffer buffer) {
+        final FanfictionBuilder builder = new FanfictionBuilder()
+                .title(readString(buffer))
+                .chapters(readVarInt(buffer))
+                .words(readVarInt(buffer))
+                .language(readString(buffer))
+                .rating(readString(buffer));
+        final int flags = readVarInt(buffer);
+        builder.warningNoneGiven((flags & 1) != 0)
+                .warningNoneApply((flags & 1 << 1) != 0)
+                .warningViolence((flags & 1 << 2) != 0)
+                .warningRape((flags & 1 << 3) != 0)
+                .warningDeath((flags & 1 << 4) != 0)
+                .warningUnderage((flags & 1 << 5) != 0)
+                .catFf((flags & 1 << 6) != 0)
+                .catFm((flags & 1 << 7) != 0)
+                .catMm((flags & 1 << 8) != 0)
+                .catGen((flags & 1 << 9) != 0)
+                .catMulti((flags & 1 << 10) != 0)
+                .catOther((flags & 1 << 11) != 0)
+                .completed((flags & 1 << 12) != 0)
+                .lastUpdated(Instant.ofEpochMilli(readVarLong(buffer)))
+                .lastChecked(Instant.ofEpochMilli(readVarLong(buffer)))
+                .link(readString(buffer));
+        final Author[] authors = new Author[readVarInt(buffer)];
+        for (int index = 0; index < authors.length; index++) {
+            authors[index] = readAuthorBody(buffer);
+        }
+        final Tag[] tags = new Tag[readVarInt(buffer)];
+        for (int index = 0; index < tags.length; index++) {
+            tags[index] = readTagBody(buffer);
+        }
+        final Fandom[] crossovers = new Fandom[readVarInt(buffer)];
+        for (int index = 0; index < crossovers.length; index++) {
+            crossovers[index] = readFandomBody(buffer);
+        }
+        if ((flags & RecordCodec.FANFICTION_ENGAGEMENT) != 0) {
+            builder.engagement(new Engagement(readVarInt(buffer), readVarInt(buffer), readVarInt(buffer), readVarInt(buffer)));
+        }
+        return builder.authors(List.of(authors)).tags(List.of(tags)).crossovers(List.of(crossovers)).build();
+    }
+
+    public Fanfiction readFanfiction(final ByteBuffer buffer) {
+        checkType(RecordCodec.TYPE_FANFICTION, readHeader(buffer));
+        return readFanfictionBody(buffer);
+    }
+
+    public Tag readTag(final ByteBuffer buffer) {
+        checkType(RecordCodec.TYPE_TAG, readHeader(buffer));
+        return readTagBody(buffer);
+    }
+
+    public Author readAuthor(final ByteBuffer buffer) {
+        checkType(RecordCodec.TYPE_AUTHOR, readHeader(buffer));
+        return readAuthorBody(buffer);
+    }
+
+    public Fandom readFandom(final ByteBuffer buffer) {
+        checkType(RecordCodec.TYPE_FANDOM, readHeader(buffer));
+        return readFandomBody(buffer);
+    }
+
+    /**
+     * Reads the next record, whatever its type.
+     * @param buffer the buffer positioned at the start of the record, not {@code null}
+     * @return a {@link Fanfiction}, {@link Tag}, {@link Author} or {@link Fandom}, not {@code null}
+     * @throws IllegalStateException If the record is malformed or of an unsupported version or type.
+     * @throws java.nio.BufferUnderflowException If the buffer ends within the record.
+     */
+    public Object read(final ByteBuffer buffer) {
+        final byte type = readHeader(buffer);
+        return switch (type) {
+            case RecordCodec.TYPE_FANFICTION -> readFanfictionBody(buffer);
+            case RecordCodec.TYPE_TAG -> readTagBody(buffer);
+            case RecordCodec.TYPE_AUTHOR -> readAuthorBody(buffer);
+            case RecordCodec.TYPE_FANDOM -> readFandomBody(buffer);
+            default -> throw new IllegalStateException("Unsupported record type " + type + " encountered!");
+        };
+    }
+
+    /**
+     * Forgets the dictionary to read a new stream.
+     */
+    public void reset() {
+        dictionary.clear();
+    }
+
+}
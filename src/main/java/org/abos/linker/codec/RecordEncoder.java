@@ -0,0 +1,248 @@
+package org.abos.linker.codec;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.Tag;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the records of {@code org.abos.linker.core} into the format described in {@link RecordCodec}.
+ * The records written by one encoder form a stream sharing one string dictionary, so they must be read back in the
+ * same order by one {@link RecordDecoder}. Not safe to use from multiple threads.
+ */
+public final class RecordEncoder {
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private byte[] bytes = new byte[1024];
+
+    private int size;
+
+    public RecordEncoder() {
+        /* Nothing to initialize. */
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (size + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(size + additional, bytes.length * 2));
+        }
+    }
+
+    private void writeByte(final int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    void writeVarLong(final long value) {
+        ensureCapacity(10);
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        bytes[size++] = (byte) zigzag;
+    }
+
+    private void writeUtf8(final int code, final String value) {
+        final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(code);
+        writeVarInt(utf8.length);
+        ensureCapacity(utf8.length);
+        System.arraycopy(utf8, 0, bytes, size, utf8.length);
+        size += utf8.length;
+    }
+
+    /**
+     * Writes a string that is unlikely to repeat, like a title or link.
+     */
+    private void writeLiteral(final String value) {
+        if (value == null) {
+            writeVarInt(RecordCodec.STRING_NULL);
+        }
+        else {
+            writeUtf8(RecordCodec.STRING_LITERAL, value);
+        }
+    }
+
+    /**
+     * Writes a string that is likely to repeat, like a name, through the dictionary.
+     */
+    private void writeName(final String value) {
+        if (value == null) {
+            writeVarInt(RecordCodec.STRING_NULL);
+            return;
+        }
+        final Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarInt(index + RecordCodec.STRING_REFERENCE_OFFSET);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        writeUtf8(RecordCodec.STRING_DEFINITION, value);
+    }
+
+    private void writeHeader(final byte type) {
+        writeByte(RecordCodec.VERSION);
+        writeByte(type);
+    }
+
+    private void writeTagBody(final Tag tag) {
+        writeName(tag.name());
+        writeLiteral(tag.description());
+        writeByte((tag.isCharacter() ? RecordCodec.TAG_CHARACTER : 0) | (tag.isRelationship() ? RecordCodec.TAG_RELATIONSHIP : 0));
+        writeName(tag.fandom());
+        writeLiteral(tag.link());
+    }
+
+    private void writeAuthorBody(final Author author) {
+        writeName(author.name());
+        writeVarInt(author.links().size());
+        for (String link : author.links()) {
+            writeLiteral(link);
+        }
+    }
+
+    private void writeFandomBody(final Fandom fandom) {
+        writeName(fandom.name());
+        writeLiteral(fandom.link());
+    }
+
+    /**
+     * Packs the 13 booleans of a fanfiction into the lowest bits of an int.
+     */
+    static int flags(final Fanfiction fanfiction) {
+        final boolean[] values = {fanfiction.warningNoneGiven(), fanfiction.warningNoneApply(), fanfiction.warningViolence(),
+                fanfiction.warningRape(), fanfiction.warningDeath(), fanfiction.warningUnderage(),
+                fanfiction.catFf(), fanfiction.catFm(), fanfiction.catMm(), fanfiction.catGen(), fanfiction.catMulti(), fanfiction.catOther(),
+                fanfiction.completed()};
+        int flags = 0;
+        for (int bit = 0; bit < values.length; bit++) {
+            if (values[bit]) {
+                flags |= 1 << bit;
+            }
+        }
+        return flags;
+    }
+
+    public void writeFanfiction(final Fanfiction fanfiction) {
+        writeHeader(RecordCodec.TYPE_FANFICTION);
+        writeLiteral(fanfiction.title());
+        writeVarInt(fanfiction.chapters());
+        writeVarInt(fanfiction.words());
+        writeName(fanfiction.language());
+        writeName(fanfiction.rating());
+        final Engagement engagement = fanfiction.engagement();
+        writeVarInt(flags(fanfiction) | (engagement == null ? 0 : RecordCodec.FANFICTION_ENGAGEMENT));
+        writeVarLong(fanfiction.lastUpdated().toEpochMilli());
+        writeVarLong(fanfiction.lastChecked().toEpochMilli());
+        writeLiteral(fanfiction.link());
+        final List<Author> authors = fanfiction.authors();
+        writeVarInt(authors.size());
+        for (Author author : authors) {
+            writeAuthorBody(author);
+        }
+        final List<Tag> tags = fanfiction.tags();
+        writeVarInt(tags.size());
+        for (Tag tag : tags) {
+            writeTagBody(tag);
+        }
+        final List<Fandom> crossovers = fanfiction.crossovers();
+        writeVarInt(crossovers.size());
+        for (Fandom crossover : crossovers) {
+            writeFandomBody(crossover);
+        }
+        if (engagement != null) {
+            writeVarInt(engagement.kudos());
+            writeVarInt(engagement.hits());
+            writeVarInt(engagement.comments());
+            writeVarInt(engagement.bookmarks());
+        }
+    }
+
+    public void writeTag(final Tag tag) {
+        writeHeader(RecordCodec.TYPE_TAG);
+        writeTagBody(tag);
+    }
+
+    public void writeAuthor(final Author author) {
+        writeHeader(RecordCodec.TYPE_AUTHOR);
+        writeAuthorBody(author);
+    }
+
+    public void writeFandom(final Fandom fandom) {
+        writeHeader(RecordCodec.TYPE_FANDOM);
+        writeFandomBody(fandom);
+    }
+
+    /**
+     * Writes any of the records of {@code org.abos.linker.core}.
+     * @param record a {@link Fanfiction}, {@link Tag}, {@link Author} or {@link Fandom}, not {@code null}
+     * @throws IllegalArgumentException If the record has an unsupported type.
+     */
+    public void write(final Object record) {
+        if (record instanceof Fanfiction fanfiction) {
+            writeFanfiction(fanfiction);
+        }
+        else if (record instanceof Tag tag) {
+            writeTag(tag);
+        }
+        else if (record instanceof Author author) {
+            writeAuthor(author);
+        }
+        else if (record instanceof Fandom fandom) {
+            writeFandom(fandom);
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported record type " + record.getClass().getName() + "!");
+        }
+    }
+
+    /**
+     * Returns the number of bytes written since the last {@link #clear()}.
+     * @return the number of bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the bytes written since the last {@link #clear()}, without copying them.
+     * @return a buffer over the bytes, valid until the next write or clear, not {@code null}
+     */
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+
+    /**
+     * Discards the bytes written, but keeps the dictionary, so the stream can be continued in a new buffer.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Discards the bytes written and the dictionary to start a new stream.
+     */
+    public void reset() {
+        size = 0;
+        dictionary.clear();
+    }
+
+}
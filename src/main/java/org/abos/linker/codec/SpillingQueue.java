@@ -0,0 +1,621 @@
+package org.abos.linker.codec;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.Tag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link BlockingQueue} of the records of {@code org.abos.linker.core} that keeps at most a fixed number of records
+ * on the heap. Further records are spilled with a {@link RecordEncoder} to append-only segment files and read back in
+ * order once the consumer catches up, so producers never block and the heap stays capped however far the consumer lags.
+ * <p>
+ * A segment is deleted as soon as it has been read completely. Once every spilled record has been read, new records
+ * are kept on the heap again. A temporary directory created by the queue is deleted once the end marker of the
+ * pipeline, {@link Fanfiction#DUMMY} or {@link Tag#DUMMY}, has been taken, so consumers that only drain the queue
+ * don't need to close it.
+ * <p>
+ * {@link #iterator()} is read-only and weakly consistent: it sees the records queued when it was created, reads the
+ * spilled ones from their segments and never fails because of concurrent use, but may still return records that
+ * were taken in the meantime. Removing single records, including {@link #remove(Object)}, is not supported.
+ * @param <T> the type of the records
+ */
+public final class SpillingQueue<T> extends AbstractQueue<T> implements BlockingQueue<T>, Closeable {
+
+    /**
+     * The default number of records kept on the heap.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * The default number of bytes after which a new segment is started.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 26;
+
+    private static final Set<Class<?>> SUPPORTED_TYPES = Set.of(Fanfiction.class, Tag.class, Author.class, Fandom.class);
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Logger LOGGER = LogManager.getLogger(SpillingQueue.class);
+
+    /**
+     * An append-only file of records, each prefixed by its length, sharing one string dictionary.
+     */
+    private static final class Segment {
+
+        private final Path file;
+
+        private DataOutputStream out;
+
+        private DataInputStream in;
+
+        private long bytes;
+
+        private int written;
+
+        private int read;
+
+        private Segment(final Path file) {
+            this.file = file;
+        }
+
+        private void delete() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * The records of a segment not yet read when an iterator was created.
+     * @param file the file of the segment
+     * @param from the index of the first unread record
+     * @param to the number of records written
+     */
+    private record SegmentRange(Path file, int from, int to) {
+
+    }
+
+    /**
+     * Iterates over the records on the heap copied by {@link #iterator()}, then over the spilled records, which are
+     * read with its own streams and decoder so the queue isn't affected. Segments deleted in the meantime have been
+     * read by the consumer, so they are skipped.
+     */
+    private final class SnapshotIterator implements Iterator<T> {
+
+        private final Iterator<T> heap;
+
+        private final Iterator<SegmentRange> ranges;
+
+        private final RecordDecoder rangeDecoder = new RecordDecoder();
+
+        private SegmentRange range;
+
+        private DataInputStream rangeIn;
+
+        private int index;
+
+        private T next;
+
+        private SnapshotIterator(final List<T> heap, final List<SegmentRange> ranges) {
+            this.heap = heap.iterator();
+            this.ranges = ranges.iterator();
+        }
+
+        private T readNext() throws IOException {
+            // the dictionary of a segment is built from its start, so read records are decoded too
+            final int length = rangeIn.readInt();
+            final byte[] bytes = new byte[length];
+            rangeIn.readFully(bytes);
+            index++;
+            return type.cast(rangeDecoder.read(ByteBuffer.wrap(bytes)));
+        }
+
+        private T advance() throws IOException {
+            if (heap.hasNext()) {
+                return heap.next();
+            }
+            while (true) {
+                if (range != null && index < range.to()) {
+                    final T record = readNext();
+                    if (index > range.from()) {
+                        return record;
+                    }
+                    continue;
+                }
+                if (rangeIn != null) {
+                    rangeIn.close();
+                    rangeIn = null;
+                }
+                if (!ranges.hasNext()) {
+                    return null;
+                }
+                range = ranges.next();
+                index = 0;
+                rangeDecoder.reset();
+                try {
+                    rangeIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(range.file()), BUFFER_SIZE));
+                } catch (NoSuchFileException ex) {
+                    range = null;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = advance();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final T record = next;
+            next = null;
+            return record;
+        }
+    }
+
+    private final Class<T> type;
+
+    private final int capacity;
+
+    private final long segmentSize;
+
+    private final Path directory;
+
+    private final boolean ownsDirectory;
+
+    private final ArrayDeque<T> memory = new ArrayDeque<>();
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private final RecordEncoder encoder = new RecordEncoder();
+
+    private final RecordDecoder decoder = new RecordDecoder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private byte[] readBuffer = new byte[1024];
+
+    private int spilled;
+
+    private int segmentCount;
+
+    private boolean closed;
+
+    private SpillingQueue(final Class<T> type, final int capacity, final long segmentSize, final Path directory, final boolean ownsDirectory) {
+        if (!SUPPORTED_TYPES.contains(Objects.requireNonNull(type))) {
+            throw new IllegalArgumentException("Unsupported record type " + type.getName() + "!");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive!");
+        }
+        this.type = type;
+        this.capacity = capacity;
+        this.segmentSize = segmentSize;
+        this.directory = Objects.requireNonNull(directory);
+        this.ownsDirectory = ownsDirectory;
+    }
+
+    /**
+     * Creates a new {@link SpillingQueue} instance spilling into an existing directory.
+     * @param type the type of the records, one of {@link Fanfiction}, {@link Tag}, {@link Author} or {@link Fandom}
+     * @param capacity the number of records kept on the heap, positive
+     * @param segmentSize the number of bytes after which a new segment is started, positive
+     * @param directory the directory to write the segments to, not {@code null}
+     * @throws NullPointerException If {@code type} or {@code directory} refers to {@code null}.
+     * @throws IllegalArgumentException If the type is not supported or the sizes aren't positive.
+     */
+    public SpillingQueue(final Class<T> type, final int capacity, final long segmentSize, final Path directory) {
+        this(type, capacity, segmentSize, directory, false);
+    }
+
+    /**
+     * Creates a new {@link SpillingQueue} instance spilling into a new temporary directory, which is deleted again
+     * once the end marker has been taken or on {@link #close()}.
+     * @param type the type of the records, one of {@link Fanfiction}, {@link Tag}, {@link Author} or {@link Fandom}
+     * @param capacity the number of records kept on the heap, positive
+     * @param segmentSize the number of bytes after which a new segment is started, positive
+     * @throws NullPointerException If {@code type} refers to {@code null}.
+     * @throws IllegalArgumentException If the type is not supported or the sizes aren't positive.
+     * @throws IOException If the temporary directory couldn't be created.
+     */
+    SpillingQueue(final Class<T> type, final int capacity, final long segmentSize) throws IOException {
+        this(type, capacity, segmentSize, Files.createTempDirectory("ingest"), true);
+        directory.toFile().deleteOnExit();
+    }
+
+    /**
+     * Creates a new {@link SpillingQueue} instance with {@link #DEFAULT_CAPACITY} and {@link #DEFAULT_SEGMENT_SIZE}
+     * spilling into a new temporary directory, which is deleted again once the end marker has been taken or on
+     * {@link #close()}.
+     * @param type the type of the records, one of {@link Fanfiction}, {@link Tag}, {@link Author} or {@link Fandom}
+     * @throws NullPointerException If {@code type} refers to {@code null}.
+     * @throws IllegalArgumentException If the type is not supported.
+     * @throws IOException If the temporary directory couldn't be created.
+     */
+    public SpillingQueue(final Class<T> type) throws IOException {
+        this(type, DEFAULT_CAPACITY, DEFAULT_SEGMENT_SIZE);
+    }
+
+    private void spill(final T record) throws IOException {
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.out == null || segment.bytes >= segmentSize) {
+            if (segment != null && segment.out != null) {
+                segment.out.close();
+                segment.out = null;
+            }
+            if (ownsDirectory) {
+                // deleted when an end marker was taken, but the queue is still used
+                Files.createDirectories(directory);
+            }
+            segment = new Segment(directory.resolve(String.format("segment-%08d.bin", segmentCount++)));
+            LOGGER.debug("Spilling records to {}", segment.file);
+            segment.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment.file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), BUFFER_SIZE));
+            segments.addLast(segment);
+            encoder.reset();
+        }
+        encoder.clear();
+        encoder.write(record);
+        final ByteBuffer buffer = encoder.buffer();
+        segment.out.writeInt(buffer.remaining());
+        segment.out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        segment.bytes += Integer.BYTES + buffer.remaining();
+        segment.written++;
+        spilled++;
+    }
+
+    private T readSpilled(final Segment segment) throws IOException {
+        if (segment.in == null) {
+            segment.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file), BUFFER_SIZE));
+            decoder.reset();
+        }
+        if (segment.out != null) {
+            // make sure all records written so far can be read
+            segment.out.flush();
+        }
+        final int length = segment.in.readInt();
+        if (length > readBuffer.length) {
+            readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+        }
+        segment.in.readFully(readBuffer, 0, length);
+        segment.read++;
+        spilled--;
+        return type.cast(decoder.read(ByteBuffer.wrap(readBuffer, 0, length)));
+    }
+
+    private void deleteSegments() throws IOException {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        spilled = 0;
+    }
+
+    /**
+     * Moves spilled records back to the heap, oldest first, as long as there is room.
+     */
+    private void refill() throws IOException {
+        while (spilled > 0 && memory.size() < capacity) {
+            final Segment segment = segments.getFirst();
+            if (segment.read == segment.written) {
+                // only sealed segments can be read completely while records are still spilled
+                segment.delete();
+                segments.removeFirst();
+                continue;
+            }
+            memory.addLast(readSpilled(segment));
+        }
+        if (spilled == 0) {
+            deleteSegments();
+        }
+    }
+
+    private T dequeue() {
+        if (memory.isEmpty() && spilled > 0) {
+            try {
+                refill();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        final T record = memory.pollFirst();
+        // spilled end markers are read back as copies
+        if (ownsDirectory && spilled == 0 && (Fanfiction.DUMMY.equals(record) || Tag.DUMMY.equals(record))) {
+            try {
+                deleteSegments();
+                Files.deleteIfExists(directory);
+            } catch (IOException ex) {
+                LOGGER.warn("Temporary directory {} couldn't be deleted: {}", directory, ex.getMessage());
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Adds a record to the queue, spilling it to disk if the heap is full. Never blocks.
+     * @param record the record to add, not {@code null}
+     * @return {@code true}
+     * @throws NullPointerException If {@code record} refers to {@code null}.
+     * @throws IllegalStateException If the queue has been closed.
+     * @throws UncheckedIOException If the record couldn't be spilled.
+     */
+    @Override
+    public boolean offer(final T record) {
+        Objects.requireNonNull(record);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Queue has already been closed!");
+            }
+            // as long as anything is spilled, new records must go behind it to keep the order
+            if (spilled == 0 && memory.size() < capacity) {
+                memory.addLast(record);
+            }
+            else {
+                spill(type.cast(record));
+            }
+            notEmpty.signal();
+            return true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(final T record) {
+        offer(record);
+    }
+
+    @Override
+    public boolean offer(final T record, final long timeout, final TimeUnit unit) {
+        return offer(record);
+    }
+
+    @Override
+    public T poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (memory.isEmpty() && spilled == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (memory.isEmpty() && spilled == 0) {
+                if (nanos <= 0L) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public T peek() {
+        lock.lock();
+        try {
+            if (memory.isEmpty() && spilled > 0) {
+                refill();
+            }
+            return memory.peekFirst();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns {@link Integer#MAX_VALUE}, as records beyond the capacity are spilled instead of rejected.
+     * @return {@link Integer#MAX_VALUE}
+     */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(final Collection<? super T> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super T> c, final int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot drain a queue into itself!");
+        }
+        lock.lock();
+        try {
+            int count = 0;
+            T record;
+            while (count < maxElements && (record = dequeue()) != null) {
+                c.add(record);
+                count++;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only, weakly consistent iterator over the queued records in order. The spilled records are read
+     * from their segments while iterating, so the heap stays capped.
+     * @return an iterator over the records queued right now, not {@code null}
+     * @throws UncheckedIOException If the spilled records couldn't be read.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        lock.lock();
+        try {
+            final List<SegmentRange> ranges = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                if (segment.out != null) {
+                    // make sure all records written so far can be read
+                    segment.out.flush();
+                }
+                if (segment.read < segment.written) {
+                    ranges.add(new SegmentRange(segment.file, segment.read, segment.written));
+                }
+            }
+            return new SnapshotIterator(new ArrayList<>(memory), ranges);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Not supported, as spilled records can only be taken in order.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(final Object o) {
+        throw new UnsupportedOperationException("Single records cannot be removed!");
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return memory.size() + spilled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of records currently spilled to disk.
+     * @return the number of spilled records
+     */
+    public int spilled() {
+        lock.lock();
+        try {
+            return spilled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the directory the segments are written to.
+     * @return the directory, not {@code null}
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            memory.clear();
+            deleteSegments();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards all records and deletes the segments, and the directory if it was created by this queue.
+     * Records can't be added afterwards.
+     * @throws IOException If a segment couldn't be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            memory.clear();
+            deleteSegments();
+            if (ownsDirectory) {
+                Files.deleteIfExists(directory);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SpillingQueue[%d on heap, %d spilled in %d segments]", memory.size(), spilled, segments.size());
+    }
+
+}
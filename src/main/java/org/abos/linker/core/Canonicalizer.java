@@ -0,0 +1,77 @@
+package org.abos.linker.core;
+
+import org.abos.common.WeakInterner;
+
+import java.util.List;
+
+/**
+ * Dedupes {@link Tag}, {@link Fandom} and {@link Author} instances as well as names like languages or ratings,
+ * so that equal values scraped many times share a single instance on the heap. Safe to use from multiple threads.
+ */
+public final class Canonicalizer {
+
+    private final WeakInterner<String> names = new WeakInterner<>();
+
+    private final WeakInterner<Tag> tags = new WeakInterner<>();
+
+    private final WeakInterner<Fandom> fandoms = new WeakInterner<>();
+
+    private final WeakInterner<Author> authors = new WeakInterner<>();
+
+    public Canonicalizer() {
+        /* Nothing to initialize. */
+    }
+
+    /**
+     * Returns the canonical instance of the specified name.
+     * @param name the name, may be {@code null}
+     * @return the canonical instance equal to {@code name}, {@code null} if {@code name} is {@code null}
+     */
+    public String name(final String name) {
+        return name == null ? null : names.intern(name);
+    }
+
+    /**
+     * Returns the canonical instance of the specified tag, whose strings are canonical as well.
+     * @param tag the tag, not {@code null}
+     * @return the canonical instance equal to {@code tag}, not {@code null}
+     * @throws NullPointerException If {@code tag} refers to {@code null}.
+     */
+    public Tag tag(final Tag tag) {
+        final Tag canonical = tags.find(tag);
+        if (canonical != null) {
+            return canonical;
+        }
+        return tags.intern(new Tag(name(tag.name()), name(tag.description()),
+                tag.isCharacter(), tag.isRelationship(), name(tag.fandom()), tag.link()));
+    }
+
+    /**
+     * Returns the canonical instance of the specified fandom, whose name is canonical as well.
+     * @param fandom the fandom, not {@code null}
+     * @return the canonical instance equal to {@code fandom}, not {@code null}
+     * @throws NullPointerException If {@code fandom} refers to {@code null}.
+     */
+    public Fandom fandom(final Fandom fandom) {
+        final Fandom canonical = fandoms.find(fandom);
+        if (canonical != null) {
+            return canonical;
+        }
+        return fandoms.intern(new Fandom(name(fandom.name()), fandom.link()));
+    }
+
+    /**
+     * Returns the canonical instance of the specified author, whose name is canonical as well.
+     * @param author the author, not {@code null}
+     * @return the canonical instance equal to {@code author}, not {@code null}
+     * @throws NullPointerException If {@code author} refers to {@code null}.
+     */
+    public Author author(final Author author) {
+        final Author canonical = authors.find(author);
+        if (canonical != null) {
+            return canonical;
+        }
+        return authors.intern(new Author(name(author.name()), List.copyOf(author.links())));
+    }
+
+}
@@ -0,0 +1,19 @@
+package org.abos.linker.core;
+
+/**
+ * The counters of reader engagement Ao3 shows for a work. Ao3 leaves out counters that are zero.
+ */
+public record Engagement(int kudos, int hits, int comments, int bookmarks) {
+
+    public static final Engagement NONE = new Engagement(0, 0, 0, 0);
+
+    public Engagement(final int kudos, final int hits, final int comments, final int bookmarks) {
+        if (kudos < 0 || hits < 0 || comments < 0 || bookmarks < 0) {
+            throw new IllegalArgumentException("Counters must be non-negative!");
+        }
+        this.kudos = kudos;
+        this.hits = hits;
+        this.comments = comments;
+        this.bookmarks = bookmarks;
+    }
+}
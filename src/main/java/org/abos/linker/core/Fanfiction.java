@@ -8,15 +8,15 @@ public record Fanfiction(String title, int chapters, int words, String language,
                          boolean warningNoneGiven, boolean warningNoneApply, boolean warningViolence, boolean warningRape, boolean warningDeath, boolean warningUnderage,
                          boolean catFf, boolean catFm, boolean catMm, boolean catGen, boolean catMulti, boolean catOther,
                          boolean completed, Instant lastUpdated, Instant lastChecked, String link,
-                         List<Author> authors, List<Tag> tags, List<Fandom> crossovers) {
+                         List<Author> authors, List<Tag> tags, List<Fandom> crossovers, Engagement engagement) {
 
-    public static final Fanfiction DUMMY = new FanfictionBuilder("", 1, 1, Instant.EPOCH, "").build();
+    public static final Fanfiction DUMMY = new FanfictionBuilder("", 1, 1, Instant.EPOCH, "").lastChecked(Instant.EPOCH).build();
 
     public Fanfiction(final String title, final int chapters, final int words, final String language, final String rating,
                       final boolean warningNoneGiven, final boolean warningNoneApply, final boolean warningViolence, final boolean warningRape, final boolean warningDeath, final boolean warningUnderage,
                       final boolean catFf, final boolean catFm, final boolean catMm, final boolean catGen, final boolean catMulti, final boolean catOther,
                       final boolean completed, final Instant lastUpdated, final Instant lastChecked, final String link,
-                      final List<Author> authors, final List<Tag> tags, final List<Fandom> crossovers) {
+                      final List<Author> authors, final List<Tag> tags, final List<Fandom> crossovers, final Engagement engagement) {
         this.title = Objects.requireNonNull(title);
         if (chapters <= 0) {
             throw new IllegalArgumentException("Number of chapters must be positive!");
@@ -45,8 +45,10 @@ public record Fanfiction(String title, int chapters, int words, String language,
         this.lastChecked = lastChecked == null ? Instant.now() : lastChecked;
         this.link = Objects.requireNonNull(link);
         // empty list means Anon author
+        // List.copyOf returns already immutable lists as they are, e.g. the ones from FanfictionBuilder
         this.authors = List.copyOf(authors);
         this.tags = List.copyOf(tags);
         this.crossovers = List.copyOf(crossovers);
+        this.engagement = engagement; // null means not scraped
     }
 }
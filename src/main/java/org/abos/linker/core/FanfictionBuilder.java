@@ -30,6 +30,7 @@ public final class FanfictionBuilder {
     private List<Author> authors;
     private List<Tag> tags;
     private List<Fandom> crossovers;
+    private Engagement engagement;
 
     public FanfictionBuilder() {
         /* Default constructor empty on purpose. */
@@ -44,20 +45,53 @@ public final class FanfictionBuilder {
         link(link);
     }
 
+    /**
+     * Creates a new {@link FanfictionBuilder} instance with all fields of the specified fanfiction, e.g. to update some.
+     * @param fanfiction the fanfiction to copy, not {@code null}
+     */
+    public FanfictionBuilder(final Fanfiction fanfiction) {
+        this(fanfiction.title(), fanfiction.chapters(), fanfiction.words(), fanfiction.lastUpdated(), fanfiction.link());
+        language(fanfiction.language());
+        rating(fanfiction.rating());
+        warningNoneGiven(fanfiction.warningNoneGiven());
+        warningNoneApply(fanfiction.warningNoneApply());
+        warningViolence(fanfiction.warningViolence());
+        warningRape(fanfiction.warningRape());
+        warningDeath(fanfiction.warningDeath());
+        warningUnderage(fanfiction.warningUnderage());
+        catFf(fanfiction.catFf());
+        catFm(fanfiction.catFm());
+        catMm(fanfiction.catMm());
+        catGen(fanfiction.catGen());
+        catMulti(fanfiction.catMulti());
+        catOther(fanfiction.catOther());
+        completed(fanfiction.completed());
+        lastChecked(fanfiction.lastChecked());
+        authors(fanfiction.authors());
+        tags(fanfiction.tags());
+        crossovers(fanfiction.crossovers());
+        engagement(fanfiction.engagement());
+    }
+
+    /**
+     * Builds a new {@link Fanfiction} from the current state of this builder. The builder itself is not modified,
+     * so it can be reused afterwards.
+     * <p>
+     * The lists set on this builder are already immutable copies, so {@link List#copyOf(java.util.Collection)} in the
+     * {@link Fanfiction} constructor hands them over as they are instead of copying them again.
+     * @return a new {@link Fanfiction}, not {@code null}
+     * @throws NullPointerException If title, last update or link have not been set.
+     * @throws IllegalArgumentException If chapters or words have not been set.
+     */
     public Fanfiction build() {
-        if (authors == null) {
-            authors = List.of();
-        }
-        if (tags == null) {
-            tags = List.of();
-        }
-        if (crossovers == null) {
-            crossovers = List.of();
-        }
         return new Fanfiction(title, chapters, words, language, rating,
-                warningNoneGiven, warningNoneApply, warningViolence, warningRape, warningDeath, warningRape,
+                warningNoneGiven, warningNoneApply, warningViolence, warningRape, warningDeath, warningUnderage,
                 catFf, catFm, catMm, catGen, catMulti, catOther,
-                completed, lastUpdated, lastChecked, link, authors, tags, crossovers);
+                completed, lastUpdated, lastChecked, link,
+                authors == null ? List.of() : authors,
+                tags == null ? List.of() : tags,
+                crossovers == null ? List.of() : crossovers,
+                engagement);
     }
 
     public FanfictionBuilder title(final String title) {
@@ -297,4 +331,13 @@ public final class FanfictionBuilder {
         return this;
     }
 
+    public FanfictionBuilder engagement(final Engagement engagement) {
+        this.engagement = engagement;
+        return this;
+    }
+
+    public Engagement engagement() {
+        return engagement;
+    }
+
 }
@@ -0,0 +1,24 @@
+package org.abos.linker.core;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The statistics of a fanfiction that change whenever it is updated, and its engagement, which changes all the time.
+ */
+public record WorkStats(int chapters, int words, boolean completed, Instant lastUpdated, Engagement engagement) {
+
+    public WorkStats(final int chapters, final int words, final boolean completed, final Instant lastUpdated, final Engagement engagement) {
+        if (chapters <= 0) {
+            throw new IllegalArgumentException("Number of chapters must be positive!");
+        }
+        this.chapters = chapters;
+        if (words <= 0) {
+            throw new IllegalArgumentException("Number of words must be positive!");
+        }
+        this.words = words;
+        this.completed = completed;
+        this.lastUpdated = Objects.requireNonNull(lastUpdated);
+        this.engagement = Objects.requireNonNull(engagement);
+    }
+}
@@ -0,0 +1,228 @@
+package org.abos.linker.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A fixed number of connections shared by many threads, so an operation doesn't pay for opening a connection and the
+ * DB never sees more connections than the pool has, no matter how many threads ask for one. Connections are opened
+ * when first needed. A borrowed connection is given back by closing it, which rolls back a transaction left open and
+ * resets it to auto commit. Connections that broke are dropped and replaced on demand.
+ * <p>
+ * Safe to use from multiple threads.
+ */
+final class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Opens a new connection to the DB.
+     */
+    @FunctionalInterface
+    interface Opener {
+
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * How long to wait for a free connection by default.
+     */
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Connections idle for longer are checked before they are borrowed, as the DB or the network may have dropped them.
+     */
+    private static final long VALIDATE_AFTER_MILLIS = 30_000L;
+
+    private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+
+    private static final Logger LOGGER = LogManager.getLogger(ConnectionPool.class);
+
+    /**
+     * A connection in the pool and since when it is idle.
+     */
+    private record Idle(Connection connection, long since) {
+
+    }
+
+    private final Opener opener;
+
+    private final int size;
+
+    private final Duration timeout;
+
+    /**
+     * One permit per connection that may be borrowed, open or not.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The idle connections, the most recently used first, so the others can time out on the DB side if not needed.
+     */
+    private final BlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new {@link ConnectionPool} instance.
+     * @param opener opens the connections, not {@code null}
+     * @param size the maximum number of connections, positive
+     * @param timeout how long to wait for a free connection, not {@code null}
+     * @throws IllegalArgumentException If {@code size} isn't positive.
+     */
+    ConnectionPool(final Opener opener, final int size, final Duration timeout) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive!");
+        }
+        this.opener = Objects.requireNonNull(opener);
+        this.size = size;
+        this.timeout = Objects.requireNonNull(timeout);
+        permits = new Semaphore(size, true);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of connections open but not borrowed.
+     * @return the number of idle connections
+     */
+    int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * Borrows a connection, waiting for one to be given back if all are borrowed.
+     * @return the connection, to be closed when done, not {@code null}
+     * @throws SQLTimeoutException If no connection became free in time.
+     * @throws SQLException If the pool is closed, the thread was interrupted or a new connection couldn't be opened.
+     */
+    Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed!");
+        }
+        try {
+            if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new SQLTimeoutException("No connection became free within " + timeout + "!");
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection!", ex);
+        }
+        try {
+            return wrap(takeIdleOrOpen());
+        }
+        catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private Connection takeIdleOrOpen() throws SQLException {
+        Idle current;
+        while ((current = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - current.since() < VALIDATE_AFTER_MILLIS
+                    || current.connection().isValid(VALIDATE_TIMEOUT_SECONDS)) {
+                return current.connection();
+            }
+            LOGGER.debug("Dropping a broken idle connection");
+            closeQuietly(current.connection());
+        }
+        return opener.open();
+    }
+
+    /**
+     * Hands out a connection whose {@link Connection#close()} gives it back instead.
+     */
+    private Connection wrap(final Connection connection) {
+        final AtomicBoolean returned = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (returned.compareAndSet(false, true)) {
+                        release(connection);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    if (returned.get()) {
+                        return true;
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                default -> {
+                    if (returned.get() && method.getDeclaringClass() != Object.class) {
+                        throw new SQLException("Connection was already given back to the pool!");
+                    }
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            }
+            catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        });
+    }
+
+    private void release(final Connection connection) {
+        try {
+            if (closed || connection.isClosed()) {
+                closeQuietly(connection);
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            idle.offerFirst(new Idle(connection, System.currentTimeMillis()));
+        }
+        catch (SQLException ex) {
+            LOGGER.warn("Dropping a connection that couldn't be reset: {}", ex.getMessage());
+            closeQuietly(connection);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private static void closeQuietly(final Connection connection) {
+        try {
+            connection.close();
+        }
+        catch (SQLException ex) {
+            /* Ignore, it's dropped anyway. */
+        }
+    }
+
+    /**
+     * Closes the idle connections. Borrowed connections are closed when given back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Idle current;
+        while ((current = idle.pollFirst()) != null) {
+            closeQuietly(current.connection());
+        }
+    }
+
+}
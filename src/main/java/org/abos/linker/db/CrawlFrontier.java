@@ -0,0 +1,469 @@
+package org.abos.linker.db;
+
+import org.abos.common.LogUtil;
+import org.abos.linker.codec.RecordDecoder;
+import org.abos.linker.codec.RecordEncoder;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.scraper.Ao3Scraper;
+import org.abos.linker.scraper.HostBudget;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import static org.abos.linker.db.DbHelper.LOG_SQL_MSG;
+import static org.abos.linker.db.DbHelper.TABLE_CRAWL_FRONTIER;
+import static org.abos.linker.db.DbHelper.TABLE_CRAWL_HOST;
+
+/**
+ * The URLs to crawl, shared by all crawler instances via the DB, so any number of them can work on the same crawl
+ * without doing the same work twice. Each worker claims batches of URLs with {@code FOR UPDATE SKIP LOCKED}, so claims
+ * never wait for each other, and leases them for a while. URLs of crashed workers are claimed again once their lease
+ * ran out, failed URLs are retried with backoff up to {@link #MAX_ATTEMPTS} times.
+ * <p>
+ * The requests to each host are spaced by a shared interval, so adding workers speeds up the crawl only until the
+ * budget of the hosts is used up. All times are taken from the DB clock, so the clocks of the workers don't matter.
+ * <p>
+ * Holds a connection until closed, so it is not safe to use from multiple threads. Use one instance per worker thread.
+ */
+public final class CrawlFrontier implements HostBudget, Closeable {
+
+    /**
+     * A URL to add to the frontier.
+     * @param url the URL, not {@code null}
+     * @param kind what the URL points to, e.g. {@link Ao3Scraper#KIND_LISTING}, not {@code null}
+     * @param priority entries with higher priority are claimed first
+     * @param payload what is already known about the URL, may be {@code null}
+     */
+    public record Entry(String url, String kind, int priority, byte[] payload) {
+
+        public Entry {
+            Objects.requireNonNull(url);
+            Objects.requireNonNull(kind);
+        }
+    }
+
+    /**
+     * A URL claimed by this worker.
+     * @param url the URL, not {@code null}
+     * @param host the host of the URL, not {@code null}
+     * @param kind what the URL points to, not {@code null}
+     * @param payload what is already known about the URL, may be {@code null}
+     * @param attempts the number of times the URL has been claimed, including this time
+     */
+    public record Lease(String url, String host, String kind, byte[] payload, int attempts) {
+
+    }
+
+    /**
+     * What processing a claimed URL found.
+     * @param found the URLs found, to be added to the frontier, not {@code null}
+     * @param fanfiction the fanfiction found, to be written to the DB, may be {@code null}
+     */
+    public record Result(List<Entry> found, Fanfiction fanfiction) {
+
+        public Result {
+            Objects.requireNonNull(found);
+        }
+    }
+
+    /**
+     * Processes the claimed URLs in {@link #work(int, Handler)}.
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * Processes a claimed URL. What was found is written in the same transaction that marks the URL as done, so
+         * a worker dying in between can't lose it. The URL is marked as failed instead if an {@link IOException} is thrown.
+         * @param lease the claimed URL, not {@code null}
+         * @return what was found while processing, not {@code null}
+         * @throws IOException If an I/O error occurs.
+         * @throws InterruptedException If interrupted.
+         */
+        Result handle(Lease lease) throws IOException, InterruptedException;
+    }
+
+    public static final Duration DEFAULT_LEASE = Duration.ofMinutes(5);
+
+    public static final Duration DEFAULT_HOST_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * The number of times a URL is claimed before it is given up on.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * The delay before a failed URL is retried the first time, doubled with each further attempt.
+     */
+    public static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+
+    public static final int DEFAULT_BATCH_SIZE = 10;
+
+    /**
+     * The time to wait before claiming again if every open URL is currently leased or waiting for a retry.
+     */
+    private static final Duration IDLE_WAIT = Duration.ofSeconds(5);
+
+    /**
+     * The current time of the DB in millis since epoch, the same way {@code fanfiction.last_checked} defaults to it.
+     */
+    private static final String NOW_MILLIS = "FLOOR(EXTRACT(EPOCH FROM NOW())*1000)::BIGINT";
+
+    private static final Logger LOGGER = LogManager.getLogger(CrawlFrontier.class);
+
+    private final DbHelper dbHelper;
+
+    private final String workerId;
+
+    private final Duration lease;
+
+    private final Duration hostInterval;
+
+    private Connection connection;
+
+    /**
+     * Creates a new {@link CrawlFrontier} instance.
+     * @param dbHelper the DB the frontier is in, not {@code null}
+     * @param workerId the ID of this worker, unique among all workers, not {@code null}
+     * @param lease the time a claimed URL is reserved for this worker, not {@code null}
+     * @param hostInterval the interval between requests to hosts seen the first time, not {@code null}
+     */
+    public CrawlFrontier(final DbHelper dbHelper, final String workerId, final Duration lease, final Duration hostInterval) {
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+        this.workerId = Objects.requireNonNull(workerId);
+        this.lease = Objects.requireNonNull(lease);
+        this.hostInterval = Objects.requireNonNull(hostInterval);
+    }
+
+    /**
+     * Creates a new {@link CrawlFrontier} instance with {@link #DEFAULT_LEASE} and {@link #DEFAULT_HOST_INTERVAL}.
+     * @param dbHelper the DB the frontier is in, not {@code null}
+     * @param workerId the ID of this worker, unique among all workers, not {@code null}
+     */
+    public CrawlFrontier(final DbHelper dbHelper, final String workerId) {
+        this(dbHelper, workerId, DEFAULT_LEASE, DEFAULT_HOST_INTERVAL);
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = dbHelper.getConnection();
+        }
+        return connection;
+    }
+
+    /**
+     * Adds URLs to the frontier. URLs already in it are left as they are, even if they are done.
+     * @param entries the URLs to add, not {@code null}
+     * @return the number of URLs that were new
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public int add(final Collection<Entry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        final String insertSql = String.format("INSERT INTO %s (url, host, kind, priority, payload) VALUES (?,?,?,?,?) ON CONFLICT (url) DO NOTHING", TABLE_CRAWL_FRONTIER);
+        LOGGER.debug(LOG_SQL_MSG, insertSql);
+        int added = 0;
+        try (final PreparedStatement insertStmt = connection().prepareStatement(insertSql)) {
+            int batched = 0;
+            for (Entry entry : entries) {
+                insertStmt.setString(1, entry.url());
+                insertStmt.setString(2, URI.create(entry.url()).getHost());
+                insertStmt.setString(3, entry.kind());
+                insertStmt.setInt(4, entry.priority());
+                insertStmt.setBytes(5, entry.payload());
+                insertStmt.addBatch();
+                if (++batched == DbHelper.BATCH_SIZE) {
+                    added += DbHelper.countUpdates(insertStmt.executeBatch());
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                added += DbHelper.countUpdates(insertStmt.executeBatch());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Claims up to the specified number of open URLs for this worker, highest priority first. URLs leased by other
+     * workers are skipped without waiting for them.
+     * @param max the maximum number of URLs to claim
+     * @return the claimed URLs, empty if none could be claimed right now, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public List<Lease> claim(final int max) throws SQLException {
+        final String claimSql = String.format("UPDATE %1$s SET leased_by=?, lease_until=%2$s+?, attempts=attempts+1 WHERE url IN (" +
+                "SELECT url FROM %1$s WHERE done_at IS NULL AND attempts<? AND not_before<=%2$s AND (lease_until IS NULL OR lease_until<%2$s) " +
+                "ORDER BY priority DESC, not_before LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "RETURNING url, host, kind, payload, attempts", TABLE_CRAWL_FRONTIER, NOW_MILLIS);
+        LOGGER.debug(LOG_SQL_MSG, claimSql);
+        final List<Lease> leases = new ArrayList<>(max);
+        try (final PreparedStatement claimStmt = connection().prepareStatement(claimSql)) {
+            claimStmt.setString(1, workerId);
+            claimStmt.setLong(2, lease.toMillis());
+            claimStmt.setInt(3, MAX_ATTEMPTS);
+            claimStmt.setInt(4, max);
+            try (final ResultSet rs = claimStmt.executeQuery()) {
+                while (rs.next()) {
+                    leases.add(new Lease(rs.getString(1), rs.getString(2), rs.getString(3), rs.getBytes(4), rs.getInt(5)));
+                }
+            }
+        }
+        return leases;
+    }
+
+    private boolean updateLease(final String updateSql, final Lease claimed, final long millis) throws SQLException {
+        LOGGER.debug(LOG_SQL_MSG, updateSql);
+        try (final PreparedStatement updateStmt = connection().prepareStatement(updateSql)) {
+            updateStmt.setLong(1, millis);
+            updateStmt.setString(2, claimed.url());
+            updateStmt.setString(3, workerId);
+            return updateStmt.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Extends the lease of a URL that takes longer to process.
+     * @param claimed the URL claimed by this worker, not {@code null}
+     * @return {@code true} if the lease was extended, {@code false} if another worker claimed the URL in the meantime
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public boolean renew(final Lease claimed) throws SQLException {
+        final String updateSql = String.format("UPDATE %s SET lease_until=%s+? WHERE url=? AND leased_by=?", TABLE_CRAWL_FRONTIER, NOW_MILLIS);
+        return updateLease(updateSql, claimed, lease.toMillis());
+    }
+
+    /**
+     * Marks a URL as done.
+     * @param claimed the URL claimed by this worker, not {@code null}
+     * @return {@code true} if the URL was marked, {@code false} if another worker claimed the URL in the meantime
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public boolean complete(final Lease claimed) throws SQLException {
+        final String updateSql = String.format("UPDATE %s SET done_at=%s+?, leased_by=NULL, lease_until=NULL WHERE url=? AND leased_by=?", TABLE_CRAWL_FRONTIER, NOW_MILLIS);
+        return updateLease(updateSql, claimed, 0L);
+    }
+
+    /**
+     * Releases a URL that couldn't be processed, so it is retried after a delay that doubles with each attempt.
+     * @param claimed the URL claimed by this worker, not {@code null}
+     * @return {@code true} if the URL was released, {@code false} if another worker claimed the URL in the meantime
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public boolean fail(final Lease claimed) throws SQLException {
+        final String updateSql = String.format("UPDATE %s SET not_before=%s+?, leased_by=NULL, lease_until=NULL WHERE url=? AND leased_by=?", TABLE_CRAWL_FRONTIER, NOW_MILLIS);
+        if (claimed.attempts() >= MAX_ATTEMPTS) {
+            LOGGER.warn("Giving up on {} after {} attempts", claimed.url(), claimed.attempts());
+        }
+        return updateLease(updateSql, claimed, RETRY_DELAY.toMillis() << (claimed.attempts() - 1));
+    }
+
+    /**
+     * Returns the number of URLs that are neither done nor given up on, including the leased ones.
+     * @return the number of open URLs
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public int open() throws SQLException {
+        final String countSql = String.format("SELECT COUNT(*) FROM %s WHERE done_at IS NULL AND attempts<?", TABLE_CRAWL_FRONTIER);
+        LOGGER.debug(LOG_SQL_MSG, countSql);
+        try (final PreparedStatement countStmt = connection().prepareStatement(countSql)) {
+            countStmt.setInt(1, MAX_ATTEMPTS);
+            try (final ResultSet rs = countStmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Reserves the next free slot of the host in {@value DbHelper#TABLE_CRAWL_HOST} and waits for it. Slots are one
+     * interval apart, however many workers request them, so the host sees at most one request per interval.
+     * Hosts seen the first time get the interval this frontier was created with.
+     * @param host the host name, not {@code null}
+     * @throws IOException If the slot couldn't be reserved.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Override
+    public void acquire(final String host) throws IOException, InterruptedException {
+        final String upsertSql = String.format("INSERT INTO %1$s AS h (host, interval_ms, next_slot) VALUES (?,?,%2$s+?) " +
+                "ON CONFLICT (host) DO UPDATE SET next_slot=GREATEST(h.next_slot, %2$s)+h.interval_ms " +
+                "RETURNING h.next_slot-h.interval_ms-%2$s", TABLE_CRAWL_HOST, NOW_MILLIS);
+        LOGGER.debug(LOG_SQL_MSG, upsertSql);
+        final long wait;
+        try (final PreparedStatement upsertStmt = connection().prepareStatement(upsertSql)) {
+            upsertStmt.setString(1, Objects.requireNonNull(host));
+            upsertStmt.setInt(2, (int) hostInterval.toMillis());
+            upsertStmt.setLong(3, hostInterval.toMillis());
+            try (final ResultSet rs = upsertStmt.executeQuery()) {
+                rs.next();
+                wait = rs.getLong(1);
+            }
+        } catch (SQLException ex) {
+            throw new IOException("Couldn't reserve a request to " + host + "!", ex);
+        }
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Claims batches of URLs and hands them to the handler until no URL is open anymore. While all open URLs are
+     * leased by other workers or wait for a retry, this worker waits for them, as they may still add new URLs.
+     * @param batchSize the number of URLs to claim at once, should be processable within the lease
+     * @param handler the handler to process the URLs with, not {@code null}
+     * @return the number of URLs processed by this worker
+     * @throws SQLException If an SQL exception occurs.
+     * @throws InterruptedException If interrupted.
+     */
+    public int work(final int batchSize, final Handler handler) throws SQLException, InterruptedException {
+        Objects.requireNonNull(handler);
+        int completed = 0;
+        while (true) {
+            final List<Lease> leases = claim(batchSize);
+            if (leases.isEmpty()) {
+                if (open() == 0) {
+                    return completed;
+                }
+                Thread.sleep(IDLE_WAIT.toMillis());
+                continue;
+            }
+            for (Lease claimed : leases) {
+                final Result result;
+                try {
+                    result = handler.handle(claimed);
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.warn("Crawling {} failed: {}", claimed.url(), ex.getMessage());
+                    fail(claimed);
+                    continue;
+                }
+                if (complete(claimed, result)) {
+                    completed++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks a URL as done and writes what was found in one transaction.
+     * @param claimed the URL claimed by this worker, not {@code null}
+     * @param result what was found while processing the URL, not {@code null}
+     * @return {@code true} if the URL was marked and the result written, {@code false} if another worker claimed the
+     * URL in the meantime, which then writes it instead
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private boolean complete(final Lease claimed, final Result result) throws SQLException {
+        final Connection connection = connection();
+        connection.setAutoCommit(false);
+        try {
+            if (!complete(claimed)) {
+                connection.rollback();
+                return false;
+            }
+            add(result.found());
+            final Fanfiction fanfiction = result.fanfiction();
+            if (fanfiction != null) {
+                final int fanfictionId = dbHelper.internalWriteFanfiction(connection, fanfiction);
+                if (fanfiction.engagement() != null) {
+                    dbHelper.getStatsHistory().append(connection, List.of(new StatsHistory.Sample(fanfictionId,
+                            fanfiction.lastChecked(), fanfiction.chapters(), fanfiction.words(), fanfiction.engagement())));
+                }
+                dbHelper.notifyWrites(connection);
+            }
+            connection.commit();
+            return true;
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+            connection = null;
+        }
+    }
+
+    private static byte[] encodeBlurb(final FanfictionBuilder blurb) {
+        final RecordEncoder encoder = new RecordEncoder();
+        // the last update isn't known before the work is fetched
+        encoder.writeFanfiction(blurb.lastUpdated(Instant.EPOCH).build());
+        final ByteBuffer buffer = encoder.buffer();
+        final byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return payload;
+    }
+
+    private static FanfictionBuilder decodeBlurb(final byte[] payload) {
+        return new FanfictionBuilder(new RecordDecoder().readFanfiction(ByteBuffer.wrap(payload))).lastChecked(null);
+    }
+
+    /**
+     * Processes Ao3 listing pages by adding the next page and the works on them to the frontier, and works by
+     * fetching their last update.
+     */
+    private static Handler ao3Handler(final Ao3Scraper scraper, final HostBudget budget) {
+        return claimed -> {
+            if (Ao3Scraper.KIND_WORK.equals(claimed.kind())) {
+                return new Result(List.of(), scraper.scrapeWork(decodeBlurb(claimed.payload()), budget));
+            }
+            final List<FanfictionBuilder> blurbs = new ArrayList<>();
+            final String next = scraper.scrapeListing(claimed.url(), budget, blurbs);
+            final List<Entry> found = new ArrayList<>(blurbs.size() + 1);
+            if (next != null) {
+                // keep discovering, so other workers have something to claim
+                found.add(new Entry(next, Ao3Scraper.KIND_LISTING, 1, null));
+            }
+            for (FanfictionBuilder blurb : blurbs) {
+                found.add(new Entry(blurb.link(), Ao3Scraper.KIND_WORK, 0, encodeBlurb(blurb)));
+            }
+            return new Result(found, null);
+        };
+    }
+
+    /**
+     * Crawls the Ao3 fanfictions together with any other workers started the same way and adds them to the DB.
+     * Uses the same system properties as {@link DbHelper} for the connection.
+     * @param args optionally the ID of this worker, which defaults to the process ID
+     */
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        final String workerId = args.length > 0 ? args[0] : "worker-" + ProcessHandle.current().pid();
+        final DbHelper dbHelper = new DbHelper();
+        dbHelper.loadAliasResolver();
+        dbHelper.loadTagLinker();
+        dbHelper.loadTagIndex();
+        LOGGER.info("Crawling as {}...", workerId);
+        final Instant start = Instant.now();
+        final int completed;
+        try (final CrawlFrontier frontier = new CrawlFrontier(dbHelper, workerId)) {
+            frontier.add(List.of(new Entry(Ao3Scraper.FANFICTION_URL, Ao3Scraper.KIND_LISTING, 1, null)));
+            completed = frontier.work(DEFAULT_BATCH_SIZE, ao3Handler(new Ao3Scraper(), frontier));
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Crawling " + completed + " URLs", time.toMinutes(), time.toSecondsPart());
+    }
+
+}
@@ -5,21 +5,33 @@ import org.abos.common.Named;
 import org.abos.linker.core.Author;
 import org.abos.linker.core.Fandom;
 import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
 import org.abos.linker.core.Tag;
+import org.abos.linker.core.WorkStats;
+import org.abos.linker.index.SimilarityJob;
+import org.abos.linker.index.TagIndex;
+import org.abos.linker.link.AliasResolver;
+import org.abos.linker.link.RelationshipParser;
+import org.abos.linker.link.TagLinker;
+import org.abos.linker.link.TagMatch;
 import org.abos.linker.scraper.Ao3Scraper;
 import org.abos.linker.scraper.WikiScraper;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
 import org.postgresql.PGProperty;
 import org.postgresql.jdbc.PgConnection;
 import org.postgresql.util.HostSpec;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Files;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.JDBCType;
 import java.sql.PreparedStatement;
@@ -28,6 +40,8 @@ import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,12 +50,13 @@ import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 
 /**
  * Class to work with the database.
  */
-public final class DbHelper {
+public final class DbHelper implements Storage {
 
     public static final String TABLE_SETUP_FILE_NAME = "tableSetup.sql";
 
@@ -69,16 +84,89 @@ public final class DbHelper {
 
     public static final String TABLE_AUTHORED = "authored";
 
+    public static final String TABLE_RELATED = "related";
+
+    public static final String TABLE_JOB_PROGRESS = "job_progress";
+
+    public static final String TABLE_COOCCURRED = "cooccurred";
+
+    public static final String TABLE_SIMILAR = "similar";
+
+    public static final String TABLE_CRAWL_FRONTIER = "crawl_frontier";
+
+    public static final String TABLE_CRAWL_HOST = "crawl_host";
+
+    public static final String TABLE_WORK_STATS = "work_stats";
+
+    public static final String TABLE_ROLLUP_TAG = "rollup_tag";
+
+    public static final String TABLE_ROLLUP_RATING_MONTH = "rollup_rating_month";
+
+    /**
+     * The minimum number of fanfictions two tags must share to be stored in {@link #TABLE_COOCCURRED}.
+     */
+    public static final int MIN_COOCCURRENCE = 2;
+
     public static final String INSERT_INTO_TAG_SQL = "INSERT INTO tag (name, description, is_character, is_relationship, fandom_id, link) VALUES (?,?,?,?,?,?)";
 
     private static final Logger LOGGER = LogManager.getLogger(DbHelper.class);
 
-    private static final String LOG_SQL_MSG = "SQL about to be executed: {}";
+    static final String LOG_SQL_MSG = "SQL about to be executed: {}";
+
+    /**
+     * The name of the job of {@link #updateRelated(boolean)} in {@link #TABLE_JOB_PROGRESS}.
+     */
+    private static final String JOB_RELATED = "related";
+
+    /**
+     * The number of rows fetched at once when streaming through a table.
+     */
+    static final int FETCH_SIZE = 1000;
+
+    /**
+     * The number of statements sent to the DB at once in batch updates.
+     */
+    static final int BATCH_SIZE = 1000;
+
+    /**
+     * The number of fanfictions whose authors, tags and crossovers are fetched at once when reading fanfictions.
+     */
+    public static final int READ_CHUNK_SIZE = 500;
+
+    /**
+     * The channel every process notifies after writing to the DB with this class, see {@link #listenForWrites(Runnable)}.
+     */
+    public static final String CHANNEL_WRITES = "linker_writes";
+
+    /**
+     * How long {@link #listenForWrites(Runnable)} waits for notifications at once, which bounds how late it notices
+     * an interrupt.
+     */
+    private static final int LISTEN_TIMEOUT_MILLIS = 1000;
+
+    private static final String SELECT_FANFICTION_SQL = "SELECT fanfiction.id, title, chapters, words, lang.name, rating.name, " +
+            "warning_none_given, warning_none_apply, warning_violence, warning_rape, warning_death, warning_underage, " +
+            "cat_ff, cat_fm, cat_mm, cat_gen, cat_multi, cat_other, completed, last_updated, last_checked, fanfiction.link " +
+            "FROM fanfiction INNER JOIN lang ON fanfiction.lang_id=lang.id INNER JOIN rating ON fanfiction.rating_id=rating.id";
 
     private final HostSpec[] specs = new HostSpec[1];
 
     private final Properties suInfo = new Properties();
 
+    private TagLinker tagLinker;
+
+    private AliasResolver aliasResolver = new AliasResolver();
+
+    private TagIndex tagIndex;
+
+    private final StatsHistory statsHistory = new StatsHistory(this);
+
+    private final Rollups rollups = new Rollups(this);
+
+    private final Search search = new Search(this);
+
+    private volatile ConnectionPool pool;
+
     public DbHelper() throws IllegalStateException {
         final String url = System.getProperty(PROPERTY_URL);
         if (url == null) {
@@ -106,10 +194,85 @@ public final class DbHelper {
         suInfo.put(PGProperty.PASSWORD.getName(), System.getProperty(PROPERTY_SU_PW));
     }
 
-    private Connection getConnection() throws SQLException {
+    private Connection openConnection() throws SQLException {
         return new PgConnection(specs, suInfo, specs[0].getLocalSocketAddress());
     }
 
+    /**
+     * Returns a connection to the DB, borrowed from the pool if {@link #usePool(int)} was called, else a new one.
+     * Either way it must be closed when done.
+     */
+    Connection getConnection() throws SQLException {
+        final ConnectionPool current = pool;
+        return current == null ? openConnection() : current.acquire();
+    }
+
+    /**
+     * Shares a fixed number of connections between all following operations instead of opening one per operation,
+     * e.g. to serve many readers at once. An operation waits for a free connection for at most
+     * {@link ConnectionPool#DEFAULT_TIMEOUT}, so the pool should be at least as large as the number of threads of
+     * {@link Rollups#rebuild(int)}, each of which holds a connection while aggregating a range of fanfictions.
+     * @param size the maximum number of connections, positive
+     * @throws IllegalArgumentException If {@code size} isn't positive.
+     * @throws IllegalStateException If a pool is already used.
+     */
+    public synchronized void usePool(final int size) throws IllegalStateException {
+        if (pool != null) {
+            throw new IllegalStateException("A pool is already used!");
+        }
+        pool = new ConnectionPool(this::openConnection, size, ConnectionPool.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Stops using the pool of {@link #usePool(int)} and closes its connections. Does nothing if no pool is used.
+     */
+    public synchronized void closePool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * Notifies {@link #CHANNEL_WRITES} that the DB was written to. Inside a transaction the notification is only sent
+     * on commit, and several notifications of one transaction are sent as one.
+     * @param connection the connection that wrote, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void notifyWrites(final Connection connection) throws SQLException {
+        final String notifySql = "NOTIFY " + CHANNEL_WRITES;
+        LOGGER.debug(LOG_SQL_MSG, notifySql);
+        try (final PreparedStatement notifyStmt = connection.prepareStatement(notifySql)) {
+            notifyStmt.execute();
+        }
+    }
+
+    /**
+     * Calls back whenever this or another process wrote to the DB with this class, e.g. to invalidate cached query
+     * results, until the current thread is interrupted. Listens on a connection of its own, outside any pool.
+     * @param onWrite called after one or more writes and once when listening started, not {@code null}
+     * @throws SQLException If an SQL exception occurs, especially if the connection broke.
+     */
+    public void listenForWrites(final Runnable onWrite) throws SQLException {
+        Objects.requireNonNull(onWrite);
+        try (final Connection connection = openConnection()) {
+            final String listenSql = "LISTEN " + CHANNEL_WRITES;
+            LOGGER.debug(LOG_SQL_MSG, listenSql);
+            try (final PreparedStatement listenStmt = connection.prepareStatement(listenSql)) {
+                listenStmt.execute();
+            }
+            // writes may have been missed before listening
+            onWrite.run();
+            final PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            while (!Thread.currentThread().isInterrupted()) {
+                final PGNotification[] notifications = pgConnection.getNotifications(LISTEN_TIMEOUT_MILLIS);
+                if (notifications != null && notifications.length > 0) {
+                    onWrite.run();
+                }
+            }
+        }
+    }
+
     /**
      * Replaces {@code "} and {@code '} in the specified string to prevent SQL injection.
      * @param input the string to be sanitized
@@ -130,10 +293,26 @@ public final class DbHelper {
      * @param s the string to set
      * @throws SQLException If an SQL error occurs.
      */
-    private static void setString(final PreparedStatement stmt, final int index, final String s) throws SQLException {
+    static void setString(final PreparedStatement stmt, final int index, final String s) throws SQLException {
         stmt.setString(index, sanitizeString(s));
     }
 
+    /**
+     * Use this instead of {@link ResultSet#getString(int)} to undo {@link #sanitizeString(String)}.
+     * @param rs the result set to get the string from
+     * @param index the column index
+     * @return the string as it was before it was stored, may be {@code null}
+     * @throws SQLException If an SQL error occurs.
+     */
+    static String getString(final ResultSet rs, final int index) throws SQLException {
+        final String s = rs.getString(index);
+        if (s == null) {
+            return null;
+        }
+        return s.replace("\\\"", "\"")
+                .replace("\\'", "'");
+    }
+
     private Integer getIdBy(final Connection connection, final String table, final String type, final String what) throws SQLException {
         Objects.requireNonNull(table);
         Objects.requireNonNull(type);
@@ -183,6 +362,7 @@ public final class DbHelper {
         }
     }
 
+    @Override
     public void setupTables() throws IOException, SQLException {
         LOGGER.info("Setting up tables...");
         final Instant start = Instant.now();
@@ -191,6 +371,7 @@ public final class DbHelper {
         LOGGER.info(LogUtil.LOG_TIME_MSG, "Setting up tables", time.toMinutes(), time.toSecondsPart());
     }
 
+    @Override
     public void tearDownTables() throws IOException, SQLException {
         LOGGER.info("Tearing down tables...");
         final Instant start = Instant.now();
@@ -296,7 +477,7 @@ public final class DbHelper {
             if (tag.link() != null) {
                 updateSqlBuilder.append(", link=?");
             }
-            updateSqlBuilder.append("WHERE id=?");
+            updateSqlBuilder.append(" WHERE id=?");
             final String updateSql = updateSqlBuilder.toString();
             LOGGER.debug(LOG_SQL_MSG, updateSql);
             try (final PreparedStatement updateStmt = connection.prepareStatement(updateSql)) {
@@ -319,9 +500,11 @@ public final class DbHelper {
         }
     }
 
+    @Override
     public void updateTag(final Tag tag) throws SQLException {
         try (final Connection connection = getConnection()) {
-            internalUpdateTag(connection, tag);
+            internalUpdateTag(connection, aliasResolver.resolve(tag));
+            notifyWrites(connection);
         }
     }
 
@@ -331,6 +514,7 @@ public final class DbHelper {
      * @throws IllegalStateException If any specified fandom is not in the DB.
      * @throws SQLException If an SQL exception occurs, especially if a duplicate entry was attempted to be inserted.
      */
+    @Override
     public void addTags(final BlockingQueue<Tag> queue) throws IllegalStateException, SQLException {
         LOGGER.info("Adding tags...");
         final Instant start = Instant.now();
@@ -348,6 +532,7 @@ public final class DbHelper {
                         if (current.equals(Tag.DUMMY)) {
                             break;
                         }
+                        current = aliasResolver.resolve(current);
                         Integer fandomId = null;
                         if (current.fandom() != null) {
                             fandomId = fandomIds.get(current.fandom());
@@ -367,17 +552,194 @@ public final class DbHelper {
                     }
                 } // -> while true
             } // -> try with PreparedStatement
+            notifyWrites(connection);
         } // -> try with Connection
         final Duration time = Duration.between(start, Instant.now());
         LOGGER.info(LogUtil.LOG_TIME_MSG, "Adding tags", time.toMinutes(), time.toSecondsPart());
     }
 
+    /**
+     * Loads all character tags and their aliases into a new {@link TagLinker}, which from now on links the tags of
+     * fanfictions to known character tags in {@link #updateFanfictions(BlockingQueue)}.
+     * @return the loaded linker, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public TagLinker loadTagLinker() throws SQLException {
+        LOGGER.info("Loading tag linker...");
+        final Instant start = Instant.now();
+        final TagLinker linker = new TagLinker();
+        final String selectTagsSql = String.format("SELECT id, name FROM %s WHERE is_character", TABLE_TAG);
+        final String selectAliasesSql = String.format("SELECT tag_id, alias, name FROM tag_alias INNER JOIN %s ON tag_alias.tag_id=%s.id WHERE is_character", TABLE_TAG, TABLE_TAG);
+        try (final Connection connection = getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectTagsSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectTagsSql);
+                 final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    final String name = getString(rs, 2);
+                    linker.add(name, rs.getInt(1), name);
+                }
+            }
+            LOGGER.debug(LOG_SQL_MSG, selectAliasesSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectAliasesSql);
+                 final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    linker.add(getString(rs, 2), rs.getInt(1), getString(rs, 3));
+                }
+            }
+        }
+        tagLinker = linker;
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Loading tag linker", time.toMinutes(), time.toSecondsPart());
+        return linker;
+    }
+
+    /**
+     * Loads the tags of all fanfictions into a new {@link TagIndex} in one streaming pass, which from now on is kept
+     * up to date by {@link #updateFanfictions(BlockingQueue)} and {@link #changeTagToAlias(String, String)}.
+     * @return the loaded index, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public TagIndex loadTagIndex() throws SQLException {
+        LOGGER.info("Loading tag index...");
+        final Instant start = Instant.now();
+        final TagIndex index = new TagIndex();
+        // in primary key order, the fanfiction IDs of each tag come in ascending, which the index appends cheaply
+        final String selectSql = "SELECT tag_id, fanfiction_id FROM tagged ORDER BY fanfiction_id, tag_id";
+        try (final Connection connection = getConnection()) {
+            // the result set is only streamed inside a transaction
+            connection.setAutoCommit(false);
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setFetchSize(FETCH_SIZE);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        index.add(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+            connection.commit();
+        }
+        tagIndex = index;
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Loading tag index", time.toMinutes(), time.toSecondsPart());
+        return index;
+    }
+
+    /**
+     * Loads all tag aliases into a new {@link AliasResolver}, which from now on rewrites the tags to be written to the
+     * DB to their canonical names. Aliases added via this class are kept in sync.
+     * @return the loaded resolver, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public AliasResolver loadAliasResolver() throws SQLException {
+        LOGGER.info("Loading alias resolver...");
+        final Instant start = Instant.now();
+        final AliasResolver resolver = new AliasResolver();
+        final String selectAliasesSql = String.format("SELECT alias, name FROM tag_alias INNER JOIN %s ON tag_alias.tag_id=%s.id", TABLE_TAG, TABLE_TAG);
+        try (final Connection connection = getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectAliasesSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectAliasesSql);
+                 final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    resolver.put(getString(rs, 1), getString(rs, 2));
+                }
+            }
+        }
+        aliasResolver = resolver;
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Loading alias resolver", time.toMinutes(), time.toSecondsPart());
+        return resolver;
+    }
+
+    /**
+     * Rewrites each tag to its canonical name, then replaces each character tag the {@link TagLinker} confidently
+     * matches by the matched tag.
+     * @param tags the scraped tags, not {@code null}
+     * @return the linked tags, not {@code null}
+     */
+    private List<Tag> linkTags(final List<Tag> tags) {
+        final List<Tag> linked = new ArrayList<>(tags.size());
+        for (Tag scraped : tags) {
+            final Tag tag = aliasResolver.resolve(scraped);
+            if (tagLinker == null) {
+                linked.add(tag);
+                continue;
+            }
+            final TagMatch match = tag.isCharacter() ? tagLinker.resolve(tag.name()) : null;
+            if (match == null || match.name().equals(tag.name())) {
+                linked.add(tag);
+            }
+            else {
+                LOGGER.debug("Linked tag {} to {} with score {}", tag.name(), match.name(), match.score());
+                linked.add(new Tag(match.name(), tag.description(), true, false, tag.fandom(), tag.link()));
+            }
+        }
+        return linked;
+    }
+
+    /**
+     * Makes a character tag known to the {@link TagLinker} if it is not already.
+     * @param connection the connection to look up the tag ID with
+     * @param tag the tag that is in the DB, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private void learnTag(final Connection connection, final Tag tag) throws SQLException {
+        if (tagLinker == null || !tag.isCharacter()) {
+            return;
+        }
+        final TagMatch match = tagLinker.match(tag.name());
+        if (match != null && match.score() == 1) {
+            return;
+        }
+        final Integer tagId = getIdByName(connection, TABLE_TAG, tag.name());
+        if (tagId != null) {
+            tagLinker.add(tag.name(), tagId, tag.name());
+        }
+    }
+
     private void internalInsertTagAlias(final Connection connection, final int tagId, final String alias) throws SQLException {
         final String insertSql = "INSERT INTO tag_alias (tag_id, alias) VALUES (?,?)";
-        LOGGER.debug(insertSql);
+        LOGGER.debug(LOG_SQL_MSG, insertSql);
         try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
             insertStmt.setInt(1, tagId);
             setString(insertStmt, 2, alias);
+            insertStmt.execute();
+        }
+    }
+
+    /**
+     * Executes an update whose parameters are all IDs.
+     * @param connection the connection to execute the update with
+     * @param sql the SQL of the update, not {@code null}
+     * @param ids the IDs to set, in order
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private void executeIdUpdate(final Connection connection, final String sql, final int... ids) throws SQLException {
+        LOGGER.debug(LOG_SQL_MSG, sql);
+        try (final PreparedStatement updateStmt = connection.prepareStatement(sql)) {
+            for (int index = 0; index < ids.length; index++) {
+                updateStmt.setInt(index + 1, ids[index]);
+            }
+            updateStmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Makes an alias known to the {@link TagLinker} if the tag it belongs to is.
+     * @param tagId the ID of the tag
+     * @param name the name of the tag, not {@code null}
+     * @param alias the alias, not {@code null}
+     */
+    private void learnAlias(final int tagId, final String name, final String alias) {
+        if (tagLinker == null) {
+            return;
+        }
+        final TagMatch match = tagLinker.match(name);
+        if (match != null && match.tagId() == tagId) {
+            tagLinker.add(alias, tagId, match.name());
         }
     }
 
@@ -388,6 +750,7 @@ public final class DbHelper {
      * @throws IllegalStateException If the tag name was not to be found in the DB.
      * @throws SQLException If an SQL exception occurs, especially if a duplicate entry was attempted to be inserted.
      */
+    @Override
     public void addTagAlias(final String name, final String alias) throws IllegalStateException, SQLException {
         Objects.requireNonNull(name);
         Objects.requireNonNull(alias);
@@ -397,19 +760,26 @@ public final class DbHelper {
                 throw new IllegalStateException("Unknown tag name " + name + " encountered!");
             }
             internalInsertTagAlias(connection, id, alias);
+            notifyWrites(connection);
+            aliasResolver.put(alias, name);
+            learnAlias(id, name, alias);
         }
     }
 
     /**
      * Removes the given alias from the tag table and makes it an alias of the specified name.
+     * The fanfictions, relationships and aliases of the removed tag are moved over to the tag of the specified name
+     * in a single transaction.
      * @param name the name to make an alias of
      * @param alias the alias to be removed from the tag table
+     * @throws IllegalStateException If either tag name was not to be found in the DB or both are the same.
+     * @throws SQLException If an SQL exception occurs. Nothing is changed then.
      */
-    public void changeTagToAlias(final String name, final String alias) throws IllegalStateException, SQLException{
+    @Override
+    public void changeTagToAlias(final String name, final String alias) throws IllegalStateException, SQLException {
         Objects.requireNonNull(name);
         Objects.requireNonNull(alias);
         final String preformattedErrMsg = "Unknown tag %s encountered!";
-        final String preformattedUpdateSQL = "UPDATE %s SET tag_id=? WHERE tag_id=?";
         try (final Connection connection = getConnection()) {
             final Integer tagId = getIdByName(connection, TABLE_TAG, name);
             if (tagId == null) {
@@ -419,24 +789,305 @@ public final class DbHelper {
             if (aliasId == null) {
                 throw new IllegalStateException(String.format(preformattedErrMsg, alias));
             }
-            // replace the IDs where needed
-            final String updateTagAliasSql = String.format(preformattedUpdateSQL, "tag_alias");
-            LOGGER.debug(LOG_SQL_MSG, updateTagAliasSql);
-            try (final PreparedStatement aliasStmt = connection.prepareStatement(updateTagAliasSql)) {
-                aliasStmt.setInt(1, tagId);
-                aliasStmt.setInt(2, aliasId);
+            if (tagId.equals(aliasId)) {
+                throw new IllegalStateException("Tag " + name + " can't be an alias of itself!");
+            }
+            final List<String> movedAliases = new LinkedList<>();
+            connection.setAutoCommit(false);
+            try {
+                final String selectAliasesSql = "SELECT alias FROM tag_alias WHERE tag_id=?";
+                LOGGER.debug(LOG_SQL_MSG, selectAliasesSql);
+                try (final PreparedStatement selectStmt = connection.prepareStatement(selectAliasesSql)) {
+                    selectStmt.setInt(1, aliasId);
+                    try (final ResultSet rs = selectStmt.executeQuery()) {
+                        while (rs.next()) {
+                            movedAliases.add(getString(rs, 1));
+                        }
+                    }
+                }
+                // move the rows over, skipping the ones the tag already has
+                executeIdUpdate(connection, "INSERT INTO tagged (fanfiction_id, tag_id) SELECT fanfiction_id, ? FROM tagged WHERE tag_id=? ON CONFLICT DO NOTHING", tagId, aliasId);
+                executeIdUpdate(connection, "DELETE FROM tagged WHERE tag_id=?", aliasId);
+                // the tags may have shared works, so the aggregates can't just be added up
+                rollups.removeTag(connection, aliasId);
+                rollups.recomputeTag(connection, tagId);
+                search.refreshTagged(connection, tagId);
+                executeIdUpdate(connection, "INSERT INTO related (character_id, relationship_id) " +
+                        "SELECT CASE WHEN character_id=? THEN ? ELSE character_id END, CASE WHEN relationship_id=? THEN ? ELSE relationship_id END " +
+                        "FROM related WHERE character_id=? OR relationship_id=? ON CONFLICT DO NOTHING",
+                        aliasId, tagId, aliasId, tagId, aliasId, aliasId);
+                executeIdUpdate(connection, "DELETE FROM related WHERE character_id=? OR relationship_id=?", aliasId, aliasId);
+                executeIdUpdate(connection, "INSERT INTO tag_alias (tag_id, alias) SELECT ?, alias FROM tag_alias WHERE tag_id=? ON CONFLICT DO NOTHING", tagId, aliasId);
+                executeIdUpdate(connection, "DELETE FROM tag_alias WHERE tag_id=?", aliasId);
+                // co-occurrences are recomputed by the next updateSimilarities()
+                executeIdUpdate(connection, String.format("DELETE FROM %s WHERE tag_id=? OR other_tag_id=?", TABLE_COOCCURRED), aliasId, aliasId);
+                executeIdUpdate(connection, String.format("DELETE FROM %s WHERE id=?", TABLE_TAG), aliasId);
+                // add the alias
+                internalInsertTagAlias(connection, tagId, alias);
+                notifyWrites(connection);
+                connection.commit();
+            }
+            catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+            aliasResolver.changeToAlias(name, alias);
+            if (tagIndex != null) {
+                tagIndex.merge(tagId, aliasId);
             }
-            final String updateRelatedSql = String.format(preformattedUpdateSQL, "related");
-            LOGGER.debug(LOG_SQL_MSG, updateRelatedSql);
-            try (final PreparedStatement aliasStmt = connection.prepareStatement(updateRelatedSql)) {
-                aliasStmt.setInt(1, tagId);
-                aliasStmt.setInt(2, aliasId);
+            learnAlias(tagId, name, alias);
+            for (String movedAlias : movedAliases) {
+                learnAlias(tagId, name, movedAlias);
             }
-            // add the alias
-            internalInsertTagAlias(connection, tagId, alias);
         }
     }
 
+    /**
+     * Returns the highest ID a job has processed so far.
+     * @param connection the connection to look up the progress with
+     * @param job the name of the job, not {@code null}
+     * @return the highest ID processed, {@code 0} if the job never ran
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private int getJobProgress(final Connection connection, final String job) throws SQLException {
+        final String selectSql = String.format("SELECT last_id FROM %s WHERE name=?", TABLE_JOB_PROGRESS);
+        LOGGER.debug(LOG_SQL_MSG, selectSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+            setString(selectStmt, 1, job);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void setJobProgress(final Connection connection, final String job, final int lastId) throws SQLException {
+        final String upsertSql = String.format("INSERT INTO %s (name, last_id) VALUES (?,?) ON CONFLICT (name) DO UPDATE SET last_id=EXCLUDED.last_id", TABLE_JOB_PROGRESS);
+        LOGGER.debug(LOG_SQL_MSG, upsertSql);
+        try (final PreparedStatement upsertStmt = connection.prepareStatement(upsertSql)) {
+            setString(upsertStmt, 1, job);
+            upsertStmt.setInt(2, lastId);
+            upsertStmt.execute();
+        }
+    }
+
+    /**
+     * Sums up the update counts of a batch, ignoring the unknown ones.
+     * @param counts the update counts returned by {@link PreparedStatement#executeBatch()}
+     * @return the number of rows known to be changed
+     */
+    static int countUpdates(final int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                sum += count;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Relates the relationship tags to the character tags they consist of, e.g. {@code "Erin Solstice/Ryoka Griffin"}
+     * to {@code "Erin Solstice"} and {@code "Ryoka Griffin"}. The character names are resolved via the
+     * {@link AliasResolver} and the {@link TagLinker}, which is loaded first if it wasn't already.
+     * The relationship tags are streamed in one pass and the relations inserted in batches in a single transaction.
+     * @param full if all relationship tags should be processed, otherwise only those added since the last run are.
+     * A full run picks up characters added since a relationship tag was last processed.
+     * @return the number of relations inserted
+     * @throws SQLException If an SQL exception occurs. Nothing is changed then.
+     */
+    @Override
+    public int updateRelated(final boolean full) throws SQLException {
+        LOGGER.info("Updating related...");
+        final Instant start = Instant.now();
+        if (tagLinker == null) {
+            loadTagLinker();
+        }
+        int inserted = 0;
+        try (final Connection connection = getConnection()) {
+            // the result set is only streamed inside a transaction
+            connection.setAutoCommit(false);
+            try {
+                int lastId = full ? 0 : getJobProgress(connection, JOB_RELATED);
+                final String selectSql = String.format("SELECT id, name FROM %s WHERE is_relationship AND id>? ORDER BY id", TABLE_TAG);
+                final String insertSql = String.format("INSERT INTO %s (character_id, relationship_id) VALUES (?,?) ON CONFLICT DO NOTHING", TABLE_RELATED);
+                LOGGER.debug(LOG_SQL_MSG, selectSql);
+                LOGGER.debug(LOG_SQL_MSG, insertSql);
+                try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql);
+                     final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
+                    selectStmt.setFetchSize(FETCH_SIZE);
+                    selectStmt.setInt(1, lastId);
+                    int batched = 0;
+                    try (final ResultSet rs = selectStmt.executeQuery()) {
+                        while (rs.next()) {
+                            final int relationshipId = rs.getInt(1);
+                            final String relationship = getString(rs, 2);
+                            lastId = relationshipId;
+                            for (String name : RelationshipParser.parse(relationship)) {
+                                final TagMatch match = tagLinker.resolve(aliasResolver.resolve(name));
+                                if (match == null) {
+                                    LOGGER.debug("Unknown character {} in relationship {}", name, relationship);
+                                    continue;
+                                }
+                                insertStmt.setInt(1, match.tagId());
+                                insertStmt.setInt(2, relationshipId);
+                                insertStmt.addBatch();
+                                if (++batched == BATCH_SIZE) {
+                                    inserted += countUpdates(insertStmt.executeBatch());
+                                    batched = 0;
+                                }
+                            }
+                        }
+                    }
+                    if (batched > 0) {
+                        inserted += countUpdates(insertStmt.executeBatch());
+                    }
+                }
+                setJobProgress(connection, JOB_RELATED, lastId);
+                connection.commit();
+            }
+            catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating related", time.toMinutes(), time.toSecondsPart());
+        return inserted;
+    }
+
+    /**
+     * Loads the tags of all fanfictions in one streaming pass and prepares a {@link SimilarityJob} with them.
+     * @param connection the connection to stream with, must not be in auto commit mode
+     * @return the job, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private SimilarityJob loadSimilarityJob(final Connection connection) throws SQLException {
+        final List<Integer> fanfictionIds = new ArrayList<>();
+        final List<int[]> tags = new ArrayList<>();
+        final String selectSql = "SELECT fanfiction_id, tag_id FROM tagged ORDER BY fanfiction_id, tag_id";
+        LOGGER.debug(LOG_SQL_MSG, selectSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+            selectStmt.setFetchSize(FETCH_SIZE);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                int[] current = new int[16];
+                int count = 0;
+                int currentId = -1;
+                while (rs.next()) {
+                    final int fanfictionId = rs.getInt(1);
+                    if (fanfictionId != currentId) {
+                        if (count > 0) {
+                            tags.add(Arrays.copyOf(current, count));
+                        }
+                        fanfictionIds.add(fanfictionId);
+                        currentId = fanfictionId;
+                        count = 0;
+                    }
+                    if (count == current.length) {
+                        current = Arrays.copyOf(current, count * 2);
+                    }
+                    current[count++] = rs.getInt(2);
+                }
+                if (count > 0) {
+                    tags.add(Arrays.copyOf(current, count));
+                }
+            }
+        }
+        return new SimilarityJob(fanfictionIds.stream().mapToInt(Integer::intValue).toArray(), tags.toArray(new int[0][]));
+    }
+
+    /**
+     * Recomputes which tags occur together and the {@link SimilarityJob#DEFAULT_K} most similar fanfictions of each
+     * fanfiction, replacing the contents of {@link #TABLE_COOCCURRED} and {@link #TABLE_SIMILAR} in one transaction.
+     * The computation runs in parallel on all cores.
+     * @throws SQLException If an SQL exception occurs. Nothing is changed then.
+     */
+    @Override
+    public void updateSimilarities() throws SQLException {
+        LOGGER.info("Updating similarities...");
+        final Instant start = Instant.now();
+        try (final Connection connection = getConnection()) {
+            // the result set is only streamed inside a transaction
+            connection.setAutoCommit(false);
+            try {
+                final SimilarityJob job = loadSimilarityJob(connection);
+                final List<SimilarityJob.SimilarWork> similarWorks = job.similarWorks(SimilarityJob.DEFAULT_K, SimilarityJob.DEFAULT_POSTING_BUDGET);
+                for (String table : List.of(TABLE_COOCCURRED, TABLE_SIMILAR)) {
+                    final String deleteSql = String.format("DELETE FROM %s", table);
+                    LOGGER.debug(LOG_SQL_MSG, deleteSql);
+                    try (final PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+                        deleteStmt.execute();
+                    }
+                }
+                final String insertCooccurredSql = String.format("INSERT INTO %s (tag_id, other_tag_id, works) VALUES (?,?,?)", TABLE_COOCCURRED);
+                LOGGER.debug(LOG_SQL_MSG, insertCooccurredSql);
+                int cooccurrences = 0;
+                try (final PreparedStatement insertStmt = connection.prepareStatement(insertCooccurredSql)) {
+                    // computed chunk by chunk while inserting, so the whole matrix is never held
+                    for (SimilarityJob.Cooccurrence cooccurrence : job.cooccurrences(MIN_COOCCURRENCE)) {
+                        insertStmt.setInt(1, cooccurrence.tagId());
+                        insertStmt.setInt(2, cooccurrence.otherTagId());
+                        insertStmt.setInt(3, cooccurrence.works());
+                        insertStmt.addBatch();
+                        if (++cooccurrences % BATCH_SIZE == 0) {
+                            insertStmt.executeBatch();
+                        }
+                    }
+                    insertStmt.executeBatch();
+                }
+                final String insertSimilarSql = String.format("INSERT INTO %s (fanfiction_id, similar_id, score) VALUES (?,?,?)", TABLE_SIMILAR);
+                LOGGER.debug(LOG_SQL_MSG, insertSimilarSql);
+                try (final PreparedStatement insertStmt = connection.prepareStatement(insertSimilarSql)) {
+                    int batched = 0;
+                    for (SimilarityJob.SimilarWork similarWork : similarWorks) {
+                        insertStmt.setInt(1, similarWork.fanfictionId());
+                        insertStmt.setInt(2, similarWork.similarId());
+                        insertStmt.setFloat(3, (float) similarWork.score());
+                        insertStmt.addBatch();
+                        if (++batched % BATCH_SIZE == 0) {
+                            insertStmt.executeBatch();
+                        }
+                    }
+                    insertStmt.executeBatch();
+                }
+                LOGGER.info("Stored {} co-occurrences and {} similar works for {} works.", cooccurrences, similarWorks.size(), job.size());
+                connection.commit();
+            }
+            catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating similarities", time.toMinutes(), time.toSecondsPart());
+    }
+
+    /**
+     * Returns the fanfictions most similar to a fanfiction as of the last {@link #updateSimilarities()}.
+     * @param fanfictionId the ID of the fanfiction
+     * @return the IDs of the similar fanfictions, most similar first, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public List<Integer> getSimilarFanfictions(final int fanfictionId) throws SQLException {
+        final List<Integer> similarIds = new ArrayList<>();
+        final String selectSql = String.format("SELECT similar_id FROM %s WHERE fanfiction_id=? ORDER BY score DESC", TABLE_SIMILAR);
+        try (final Connection connection = getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, fanfictionId);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        similarIds.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return similarIds;
+    }
+
     private String buildInsertLinks(final List<String> links, final int authorId) {
         final StringBuilder sql = new StringBuilder("INSERT INTO ");
         sql.append(TABLE_PROFILE);
@@ -491,52 +1142,144 @@ public final class DbHelper {
         }
     }
 
-    private void internalInsertAuthor(final Connection connection, final Author author, final boolean replaceLinks) throws SQLException {
-        final String insertSql = String.format("INSERT INTO %s (name) VALUES (?)", TABLE_AUTHOR);
+    /**
+     * Inserts an author and their profile links.
+     * @return the ID of the new author
+     */
+    private int internalInsertAuthor(final Connection connection, final Author author, final boolean replaceLinks) throws SQLException {
+        final String insertSql = String.format("INSERT INTO %s (name) VALUES (?) RETURNING id", TABLE_AUTHOR);
         LOGGER.debug(LOG_SQL_MSG, insertSql);
+        final int authorId;
         try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
             setString(insertStmt, 1, author.name());
-            insertStmt.execute();
-        }
-        final Integer authorId = getIdByName(connection, TABLE_AUTHOR, author.name());
-        if (authorId == null) {
-            throw new IllegalStateException("Freshly inserted author " + author.name() + " vanished!");
+            try (final ResultSet rs = insertStmt.executeQuery()) {
+                rs.next();
+                authorId = rs.getInt(1);
+            }
         }
         internalUpdateAuthorLinks(connection, author.links(), authorId, replaceLinks);
+        return authorId;
     }
 
-    private void internalUpdateAuthor(final Connection connection, final Author author, final boolean replaceLinks) throws SQLException {
-        final Integer authorId = getIdByName(connection, TABLE_AUTHOR, author.name());
-        if (authorId == null) {
-            internalInsertAuthor(connection, author, replaceLinks);
+    /**
+     * Returns the ID of an author. Different Ao3 users may have pseuds of the same name, so an author with profile
+     * links is found by them, and only an author without by name.
+     * @return the ID, {@code null} if the author is not in the DB
+     */
+    private Integer internalGetAuthorId(final Connection connection, final Author author) throws SQLException {
+        if (author.links().isEmpty()) {
+            return getIdByName(connection, TABLE_AUTHOR, author.name());
         }
-        else {
-            internalUpdateAuthorLinks(connection, author.links(), authorId, replaceLinks);
+        final String selectSql = String.format("SELECT author_id FROM %s WHERE link = ANY(?) LIMIT 1", TABLE_PROFILE);
+        LOGGER.debug(LOG_SQL_MSG, selectSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+            selectStmt.setArray(1, connection.createArrayOf("text", author.links().stream().map(DbHelper::sanitizeString).toArray()));
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Adds an author to the DB if they are new, else updates their profile links.
+     * @return the ID of the author
+     */
+    private int internalUpdateAuthor(final Connection connection, final Author author, final boolean replaceLinks) throws SQLException {
+        final Integer authorId = internalGetAuthorId(connection, author);
+        if (authorId == null) {
+            return internalInsertAuthor(connection, author, replaceLinks);
         }
+        internalUpdateAuthorLinks(connection, author.links(), authorId, replaceLinks);
+        return authorId;
     }
 
+    @Override
     public void updateAuthor(final Author author, final boolean replaceLinks) throws SQLException {
         try (final Connection connection = getConnection()) {
             internalUpdateAuthor(connection, author, replaceLinks);
+            notifyWrites(connection);
+        }
+    }
+
+    /**
+     * Returns an author with their profile links.
+     * @param authorId the ID of the author
+     * @return the author, {@code null} if there is no author with that ID
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public Author getAuthor(final int authorId) throws SQLException {
+        final String selectSql = String.format("SELECT name FROM %s WHERE id=?", TABLE_AUTHOR);
+        final String selectProfileSql = String.format("SELECT link FROM %s WHERE author_id=? ORDER BY link", TABLE_PROFILE);
+        try (final Connection connection = getConnection()) {
+            final String name;
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, authorId);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    name = getString(rs, 1);
+                }
+            }
+            final List<String> links = new ArrayList<>();
+            LOGGER.debug(LOG_SQL_MSG, selectProfileSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectProfileSql)) {
+                selectStmt.setInt(1, authorId);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        links.add(getString(rs, 1));
+                    }
+                }
+            }
+            return new Author(name, List.copyOf(links));
         }
     }
 
-    // TODO JavaDoc This method expects all refs in the list to be in the DB already
+    /**
+     * Returns the IDs of the fanfictions of an author, to read them with {@link #readFanfictions(Collection, ObjIntConsumer)}.
+     * @param authorId the ID of the author
+     * @return the IDs in ascending order, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public List<Integer> getAuthoredFanfictions(final int authorId) throws SQLException {
+        final String selectSql = String.format("SELECT fanfiction_id FROM %s WHERE author_id=? ORDER BY fanfiction_id", TABLE_AUTHORED);
+        final List<Integer> ids = new ArrayList<>();
+        try (final Connection connection = getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, authorId);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
 
     /**
-     *
-     * @param connection
-     * @param refs
-     * @param fanfictionId
-     * @param refViewName the name of the view with the references
+     * Adds the references of a fanfiction that are not in the DB yet. All referenced entities must be in the DB already.
+     * @param connection the connection to use, not {@code null}
+     * @param refs the referenced entities, not {@code null}
+     * @param fanfictionId the ID of the fanfiction
+     * @param refViewName the name of the view with the resolved references
      * @param refTableName the name of the table with the references
      * @param tableName the name of the table where the references come from
-     * @param refIdName
-     * @param addAnon
-     * @throws SQLException
+     * @param refIdName the name of the column in the reference table with the ID of the referenced entity
+     * @return the IDs of the references added, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     * @throws IllegalStateException If a referenced entity is not in the DB.
      */
-    private void internalUpdateFanfictionRefs(final Connection connection, final List<? extends Named> refs, final Integer fanfictionId, final String refViewName, final String refTableName, final String tableName, final String refIdName, final boolean addAnon) throws SQLException {
+    private List<Integer> internalUpdateFanfictionRefs(final Connection connection, final List<? extends Named> refs, final Integer fanfictionId, final String refViewName, final String refTableName, final String tableName, final String refIdName) throws SQLException {
         final List<String> present = new LinkedList<>();
+        final List<Integer> added = new ArrayList<>();
         final String selectSql = String.format("SELECT name FROM %s WHERE fanfiction_id=%d", refViewName, fanfictionId);
         LOGGER.debug(LOG_SQL_MSG, selectSql);
         try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
@@ -549,14 +1292,6 @@ public final class DbHelper {
         final String insertSql = String.format("INSERT INTO %s (fanfiction_id, %s) VALUES (?,?)", refTableName, refIdName);
         LOGGER.debug(LOG_SQL_MSG, insertSql);
         try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
-            if (addAnon && refs.isEmpty()) {
-                if (!present.contains("Anonymous")) {
-                    insertStmt.setInt(1, fanfictionId);
-                    insertStmt.setInt(2, 1); // 1 is first author which is Anon
-                    insertStmt.execute();
-                }
-                return;
-            }
             final List<? extends Named> remaining = refs.stream()
                     .filter(ref -> !present.contains(ref.getName()))
                     .toList();
@@ -568,26 +1303,86 @@ public final class DbHelper {
                 }
                 insertStmt.setInt(2, refId);
                 insertStmt.execute();
+                added.add(refId);
             }
         }
+        return added;
     }
 
-    // TODO JavaDoc This method expects all authors in the list to be in the DB already
-    private void internalUpdateAuthored(final Connection connection, final List<Author> authors, final Integer fanfictionId) throws SQLException {
-        internalUpdateFanfictionRefs(connection, authors, fanfictionId, "authored_resolved", TABLE_AUTHORED, TABLE_AUTHOR, "author_id", true);
+    /**
+     * Links authors to a fanfiction unless they already are, or Anonymous if there are none.
+     * @param authorIds the IDs of the authors in the DB, not {@code null}
+     */
+    private void internalUpdateAuthored(final Connection connection, final List<Integer> authorIds, final int fanfictionId) throws SQLException {
+        final String insertSql = String.format("INSERT INTO %s (fanfiction_id, author_id) VALUES (?,?) ON CONFLICT DO NOTHING", TABLE_AUTHORED);
+        LOGGER.debug(LOG_SQL_MSG, insertSql);
+        try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
+            // 1 is first author which is Anon
+            for (int authorId : authorIds.isEmpty() ? List.of(1) : authorIds) {
+                insertStmt.setInt(1, fanfictionId);
+                insertStmt.setInt(2, authorId);
+                insertStmt.addBatch();
+            }
+            insertStmt.executeBatch();
+        }
     }
 
     // TODO JavaDoc This method expects all tags in the list to be in the DB already
     private void internalUpdateTagged(final Connection connection, final List<Tag> tags, final Integer fanfictionId) throws SQLException {
-        internalUpdateFanfictionRefs(connection, tags, fanfictionId, "tagged_resolved", "tagged", TABLE_TAG, "tag_id", false);
+        final List<Integer> added = internalUpdateFanfictionRefs(connection, tags, fanfictionId, "tagged_resolved", "tagged", TABLE_TAG, "tag_id");
+        if (tagIndex != null) {
+            for (int tagId : added) {
+                tagIndex.add(tagId, fanfictionId);
+            }
+        }
     }
 
     // TODO JavaDoc This method expects all fandoms in the list to be in the DB already
     private void internalUpdateCrossedOver(final Connection connection, final List<Fandom> fandoms, final Integer fanfictionId) throws SQLException {
-        internalUpdateFanfictionRefs(connection, fandoms, fanfictionId, "crossed_over_resolved", "crossed_over", TABLE_FANDOM, "fandom_id", false);
+        internalUpdateFanfictionRefs(connection, fandoms, fanfictionId, "crossed_over_resolved", "crossed_over", TABLE_FANDOM, "fandom_id");
+    }
+
+    /**
+     * Sets the Ao3 work ID of a fanfiction as a parameter of a statement.
+     */
+    private static void setAo3Id(final PreparedStatement stmt, final int index, final Fanfiction fanfiction) throws SQLException {
+        final long ao3Id = Ao3Scraper.workId(fanfiction.link());
+        if (ao3Id == -1L) {
+            stmt.setNull(index, JDBCType.BIGINT.getVendorTypeNumber());
+        }
+        else {
+            stmt.setLong(index, ao3Id);
+        }
+    }
+
+    /**
+     * Returns the ID of a fanfiction, found by its Ao3 work ID if it has one, else by its link.
+     * @return the ID, {@code null} if the fanfiction is not in the DB
+     */
+    private Integer internalGetFanfictionId(final Connection connection, final Fanfiction fanfiction) throws SQLException {
+        final long ao3Id = Ao3Scraper.workId(fanfiction.link());
+        if (ao3Id == -1L) {
+            return getIdBy(connection, TABLE_FANFICTION, "link", fanfiction.link());
+        }
+        final String selectSql = String.format("SELECT id FROM %s WHERE ao3_id=?", TABLE_FANFICTION);
+        LOGGER.debug(LOG_SQL_MSG, selectSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+            selectStmt.setLong(1, ao3Id);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return rs.getInt(1);
+            }
+        }
     }
 
-    private void internalInsertFanfiction(final Connection connection, final Fanfiction fanfiction) throws SQLException {
+    /**
+     * Inserts a fanfiction and its references unless a fanfiction with the same Ao3 work ID was inserted in the
+     * meantime, e.g. by another crawler.
+     * @return the ID of the inserted fanfiction, {@code null} if it wasn't inserted
+     */
+    private Integer internalInsertFanfiction(final Connection connection, final Fanfiction fanfiction) throws SQLException {
         if (fanfiction.lastUpdated() == null) {
             throw new NullPointerException("At this point a non-null last update must be in the fanfiction instance!");
         }
@@ -605,36 +1400,21 @@ public final class DbHelper {
             extraCounter++;
         }
         insertSqlBuilder.append("warning_none_given, warning_none_apply, warning_violence, warning_rape, warning_death, warning_underage, ");
-        insertSqlBuilder.append("cat_ff, cat_fm, cat_mm, cat_gen, cat_multi, cat_other, ");
+        insertSqlBuilder.append("cat_ff, cat_fm, cat_mm, cat_gen, cat_multi, cat_other, completed, ");
         insertSqlBuilder.append("last_updated, ");
         if (fanfiction.lastChecked() != null) {
             insertSqlBuilder.append("last_checked, ");
             extraCounter++;
         }
-        insertSqlBuilder.append("link) VALUES (");
-        insertSqlBuilder.append("?,".repeat(16 + extraCounter));
-        insertSqlBuilder.append("?)");
+        insertSqlBuilder.append("link, ao3_id) VALUES (");
+        insertSqlBuilder.append("?,".repeat(18 + extraCounter));
+        insertSqlBuilder.append("?) ON CONFLICT (ao3_id) DO NOTHING RETURNING id");
         // prepare optional IDs
-        Integer languageId = null;
-        if (fanfiction.language() != null) {
-            languageId = getIdByName(connection, TABLE_LANGUAGE, fanfiction.language());
-            if (languageId == null) {
-                internalInsertLanguage(connection, fanfiction.language());
-                languageId = getIdByName(connection, TABLE_LANGUAGE, fanfiction.language());
-                if (languageId == null) {
-                    throw new IllegalStateException("New language " + fanfiction.language() + " vanished!");
-                }
-            }
-        }
-        Integer ratingId = null;
-        if (fanfiction.rating() != null) {
-            ratingId = getIdByName(connection, TABLE_RATING, fanfiction.rating());
-            if (ratingId == null) {
-                throw new IllegalStateException("Unknown rating " + fanfiction.rating() + " encountered!");
-            }
-        }
+        final Integer languageId = internalGetLanguageId(connection, fanfiction.language());
+        final Integer ratingId = internalGetRatingId(connection, fanfiction.rating());
         // fill out command and execute
         int index = 0;
+        final int fanfictionId;
         final String insertSql = insertSqlBuilder.toString();
         LOGGER.debug(LOG_SQL_MSG, insertSql);
         try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
@@ -659,89 +1439,496 @@ public final class DbHelper {
             insertStmt.setBoolean(++index, fanfiction.catGen());
             insertStmt.setBoolean(++index, fanfiction.catMulti());
             insertStmt.setBoolean(++index, fanfiction.catOther());
+            insertStmt.setBoolean(++index, fanfiction.completed());
             insertStmt.setLong(++index, fanfiction.lastUpdated().toEpochMilli());
             if (fanfiction.lastChecked() != null) {
                 insertStmt.setLong(++index, fanfiction.lastChecked().toEpochMilli());
             }
             setString(insertStmt, ++index, fanfiction.link());
-            insertStmt.execute();
-        }
-        final Integer fanfictionId = getIdBy(connection, TABLE_FANFICTION, "title", fanfiction.title());
-        if (fanfictionId == null) {
-            throw new IllegalStateException("Freshly created fanfiction " + fanfiction.title() + " vanished!");
+            setAo3Id(insertStmt, ++index, fanfiction);
+            try (final ResultSet rs = insertStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                fanfictionId = rs.getInt(1);
+            }
         }
+        internalUpdateAllRefs(connection, fanfiction, fanfictionId);
+        return fanfictionId;
+    }
+
+    /**
+     * Adds the authors, tags and crossovers of a fanfiction that are not in the DB yet, and links them to it.
+     * Refreshes the search vector of the fanfiction afterwards.
+     */
+    private void internalUpdateAllRefs(final Connection connection, final Fanfiction fanfiction, final int fanfictionId) throws SQLException {
+        final List<Integer> authorIds = new ArrayList<>(fanfiction.authors().size());
         for (Author author : fanfiction.authors()) {
-            internalUpdateAuthor(connection, author, false);
+            authorIds.add(internalUpdateAuthor(connection, author, false));
         }
-        internalUpdateAuthored(connection, fanfiction.authors(), fanfictionId);
-        for (Tag tag : fanfiction.tags()) {
+        internalUpdateAuthored(connection, authorIds, fanfictionId);
+        final List<Tag> tags = linkTags(fanfiction.tags());
+        for (Tag tag : tags) {
             internalUpdateTag(connection, tag);
+            learnTag(connection, tag);
         }
-        internalUpdateTagged(connection, fanfiction.tags(), fanfictionId);
+        internalUpdateTagged(connection, tags, fanfictionId);
         for (Fandom fandom : fanfiction.crossovers()) {
             internalUpdateFandom(connection, fandom);
         }
         internalUpdateCrossedOver(connection, fanfiction.crossovers(), fanfictionId);
+        search.refresh(connection, fanfictionId);
+    }
+
+    /**
+     * Returns the ID of a language, adding it to the DB if it's new.
+     * @return the ID, {@code null} if the language is {@code null}
+     */
+    private Integer internalGetLanguageId(final Connection connection, final String language) throws SQLException {
+        if (language == null) {
+            return null;
+        }
+        Integer languageId = getIdByName(connection, TABLE_LANGUAGE, language);
+        if (languageId == null) {
+            internalInsertLanguage(connection, language);
+            languageId = getIdByName(connection, TABLE_LANGUAGE, language);
+            if (languageId == null) {
+                throw new IllegalStateException("New language " + language + " vanished!");
+            }
+        }
+        return languageId;
+    }
+
+    /**
+     * Returns the ID of a rating.
+     * @return the ID, {@code null} if the rating is {@code null}
+     * @throws IllegalStateException If the rating is not in the DB.
+     */
+    private Integer internalGetRatingId(final Connection connection, final String rating) throws SQLException {
+        if (rating == null) {
+            return null;
+        }
+        final Integer ratingId = getIdByName(connection, TABLE_RATING, rating);
+        if (ratingId == null) {
+            throw new IllegalStateException("Unknown rating " + rating + " encountered!");
+        }
+        return ratingId;
+    }
+
+    /**
+     * Overwrites the fields of a fanfiction already in the DB and adds its new authors, tags and crossovers.
+     * References missing from the fanfiction are kept in the DB.
+     */
+    private void internalUpdateFanfiction(final Connection connection, final Fanfiction fanfiction, final int fanfictionId) throws SQLException {
+        final Integer languageId = internalGetLanguageId(connection, fanfiction.language());
+        final Integer ratingId = internalGetRatingId(connection, fanfiction.rating());
+        final String updateSql = String.format("UPDATE %s SET title=?, chapters=?, words=?, lang_id=?, rating_id=?, " +
+                "warning_none_given=?, warning_none_apply=?, warning_violence=?, warning_rape=?, warning_death=?, warning_underage=?, " +
+                "cat_ff=?, cat_fm=?, cat_mm=?, cat_gen=?, cat_multi=?, cat_other=?, completed=?, last_updated=?, last_checked=?, link=?, ao3_id=? " +
+                "WHERE id=?", TABLE_FANFICTION);
+        LOGGER.debug(LOG_SQL_MSG, updateSql);
+        int index = 0;
+        try (final PreparedStatement updateStmt = connection.prepareStatement(updateSql)) {
+            setString(updateStmt, ++index, fanfiction.title());
+            updateStmt.setInt(++index, fanfiction.chapters());
+            updateStmt.setInt(++index, fanfiction.words());
+            // the first language is English and the first rating Not Rated
+            updateStmt.setInt(++index, languageId == null ? 1 : languageId);
+            updateStmt.setInt(++index, ratingId == null ? 1 : ratingId);
+            updateStmt.setBoolean(++index, fanfiction.warningNoneGiven());
+            updateStmt.setBoolean(++index, fanfiction.warningNoneApply());
+            updateStmt.setBoolean(++index, fanfiction.warningViolence());
+            updateStmt.setBoolean(++index, fanfiction.warningRape());
+            updateStmt.setBoolean(++index, fanfiction.warningDeath());
+            updateStmt.setBoolean(++index, fanfiction.warningUnderage());
+            updateStmt.setBoolean(++index, fanfiction.catFf());
+            updateStmt.setBoolean(++index, fanfiction.catFm());
+            updateStmt.setBoolean(++index, fanfiction.catMm());
+            updateStmt.setBoolean(++index, fanfiction.catGen());
+            updateStmt.setBoolean(++index, fanfiction.catMulti());
+            updateStmt.setBoolean(++index, fanfiction.catOther());
+            updateStmt.setBoolean(++index, fanfiction.completed());
+            updateStmt.setLong(++index, fanfiction.lastUpdated().toEpochMilli());
+            updateStmt.setLong(++index, fanfiction.lastChecked().toEpochMilli());
+            setString(updateStmt, ++index, fanfiction.link());
+            setAo3Id(updateStmt, ++index, fanfiction);
+            updateStmt.setInt(++index, fanfictionId);
+            updateStmt.execute();
+        }
+        internalUpdateAllRefs(connection, fanfiction, fanfictionId);
+    }
+
+    /**
+     * Stores the statistics of a fanfiction that was checked for updates, together with the time of the check.
+     * @param fanfictionId the ID of the fanfiction
+     * @param stats the current statistics of the fanfiction, not {@code null}
+     * @param checked the time of the check, not {@code null}
+     * @return {@code true} if the fanfiction was found, else {@code false}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public boolean updateFanfictionStats(final int fanfictionId, final WorkStats stats, final Instant checked) throws SQLException {
+        final String updateSql = String.format("UPDATE %s SET chapters=?, words=?, completed=?, last_updated=?, last_checked=? WHERE id=?", TABLE_FANFICTION);
+        try (final Connection connection = getConnection()) {
+            // the row and its aggregates are written together, and the snapshot locks the row against other writers
+            connection.setAutoCommit(false);
+            try {
+                final Rollups.Contribution before = rollups.snapshot(connection, fanfictionId);
+                if (before == null) {
+                    connection.rollback();
+                    return false;
+                }
+                LOGGER.debug(LOG_SQL_MSG, updateSql);
+                try (final PreparedStatement updateStmt = connection.prepareStatement(updateSql)) {
+                    updateStmt.setInt(1, stats.chapters());
+                    updateStmt.setInt(2, stats.words());
+                    updateStmt.setBoolean(3, stats.completed());
+                    updateStmt.setLong(4, stats.lastUpdated().toEpochMilli());
+                    updateStmt.setLong(5, checked.toEpochMilli());
+                    updateStmt.setInt(6, fanfictionId);
+                    updateStmt.execute();
+                }
+                rollups.apply(connection, before, rollups.snapshot(connection, fanfictionId));
+                notifyWrites(connection);
+                connection.commit();
+                return true;
+            }
+            catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Returns the history of the statistics of the fanfictions, which {@link #updateFanfictions(BlockingQueue)} appends
+     * to for each fanfiction with engagement counters.
+     * @return the history, not {@code null}
+     */
+    public StatsHistory getStatsHistory() {
+        return statsHistory;
     }
 
-    private void internalUpdateFanfiction(final Connection connection, final Fanfiction current, final int fanfictionId) {
-        // TODO
+    /**
+     * Returns the aggregates of the fanfictions, which {@link #updateFanfictions(BlockingQueue)},
+     * {@link #updateFanfictionStats(int, WorkStats, Instant)} and {@link #changeTagToAlias(String, String)} keep up
+     * to date.
+     * @return the aggregates, not {@code null}
+     */
+    public Rollups getRollups() {
+        return rollups;
     }
 
+    /**
+     * Returns the full-text search over the fanfictions and tags, whose index is kept up to date on every write.
+     * @return the search, not {@code null}
+     */
+    public Search getSearch() {
+        return search;
+    }
+
+    @Override
     public void updateFanfictions(final BlockingQueue<Fanfiction> queue) throws SQLException {
         LOGGER.info("Updating fanfictions...");
         final Instant start = Instant.now();
         try (final Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            final List<StatsHistory.Sample> samples = new ArrayList<>();
+            int written = 0;
             Fanfiction current;
-            while (true) {
-                try {
-                    current = pollQueue(queue);
-                    if (current == null) {
-                        continue;
-                    }
-                    if (current.equals(Fanfiction.DUMMY)) {
-                        break;
+            try {
+                while (true) {
+                    try {
+                        current = pollQueue(queue);
+                        if (current == null) {
+                            continue;
+                        }
+                        if (current.equals(Fanfiction.DUMMY)) {
+                            break;
+                        }
+                        final int fanfictionId = internalWriteFanfiction(connection, current);
+                        if (current.engagement() != null) {
+                            samples.add(new StatsHistory.Sample(fanfictionId, current.lastChecked(), current.chapters(), current.words(), current.engagement()));
+                            if (samples.size() == BATCH_SIZE) {
+                                statsHistory.append(connection, samples);
+                                samples.clear();
+                            }
+                        }
+                        // readers shouldn't wait for the end of a long crawl to see its fanfictions
+                        if (++written % BATCH_SIZE == 0) {
+                            notifyWrites(connection);
+                        }
+                        // one transaction per fanfiction, so no row stays locked while polling the queue
+                        connection.commit();
                     }
-                    Integer fanfictionId = null;
-                    if (current.link() != null) {
-                        fanfictionId = getIdBy(connection, TABLE_FANFICTION, "link", current.link());
+                    catch (InterruptedException ex) {
+                        /* Ignore. */
                     }
-                    if (fanfictionId == null) {
-                        fanfictionId = getIdBy(connection, TABLE_FANFICTION, "title", current.title());
+                } // -> while true
+                statsHistory.append(connection, samples);
+                notifyWrites(connection);
+                connection.commit();
+            }
+            catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        } // -> try with Connection
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating fanfictions", time.toMinutes(), time.toSecondsPart());
+    }
+
+    /**
+     * Adds the specified fanfiction or overwrites the stored one, together with its contribution to the rollups.
+     * Must be called inside a transaction: the row of a stored fanfiction is locked from reading its old contribution
+     * until the commit, so the rollups can't drift from the rows.
+     * @param connection the connection to use, not in auto-commit mode
+     * @param fanfiction the fanfiction to write, not {@code null}
+     * @return the ID of the written fanfiction
+     * @throws SQLException If an SQL exception occurs.
+     */
+    int internalWriteFanfiction(final Connection connection, final Fanfiction fanfiction) throws SQLException {
+        // titles are neither unique nor stable, so they are never used to find a fanfiction
+        Integer fanfictionId = internalGetFanfictionId(connection, fanfiction);
+        Rollups.Contribution before = null;
+        if (fanfictionId == null) {
+            fanfictionId = internalInsertFanfiction(connection, fanfiction);
+            if (fanfictionId == null) {
+                // inserted concurrently
+                fanfictionId = internalGetFanfictionId(connection, fanfiction);
+                before = rollups.snapshot(connection, fanfictionId);
+                internalUpdateFanfiction(connection, fanfiction, fanfictionId);
+            }
+        }
+        else {
+            before = rollups.snapshot(connection, fanfictionId);
+            internalUpdateFanfiction(connection, fanfiction, fanfictionId);
+        }
+        rollups.apply(connection, before, rollups.snapshot(connection, fanfictionId));
+        return fanfictionId;
+    }
+
+    private static FanfictionBuilder readFanfiction(final ResultSet rs) throws SQLException {
+        int index = 1; // 1 is the ID
+        return new FanfictionBuilder()
+                .title(getString(rs, ++index))
+                .chapters(rs.getInt(++index))
+                .words(rs.getInt(++index))
+                .language(getString(rs, ++index))
+                .rating(getString(rs, ++index))
+                .warningNoneGiven(rs.getBoolean(++index))
+                .warningNoneApply(rs.getBoolean(++index))
+                .warningViolence(rs.getBoolean(++index))
+                .warningRape(rs.getBoolean(++index))
+                .warningDeath(rs.getBoolean(++index))
+                .warningUnderage(rs.getBoolean(++index))
+                .catFf(rs.getBoolean(++index))
+                .catFm(rs.getBoolean(++index))
+                .catMm(rs.getBoolean(++index))
+                .catGen(rs.getBoolean(++index))
+                .catMulti(rs.getBoolean(++index))
+                .catOther(rs.getBoolean(++index))
+                .completed(rs.getBoolean(++index))
+                .lastUpdated(Instant.ofEpochMilli(rs.getLong(++index)))
+                .lastChecked(Instant.ofEpochMilli(rs.getLong(++index)))
+                .link(getString(rs, ++index));
+    }
+
+    /**
+     * Fetches the authors, tags and crossovers of a chunk of fanfictions with a constant number of queries,
+     * then passes the completed fanfictions on.
+     * @param connection the connection to query with
+     * @param ids the IDs of the fanfictions in the chunk, not {@code null}
+     * @param builders the fanfictions in the chunk in the order of {@code ids}, not {@code null}
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private void readFanfictionChunk(final Connection connection, final List<Integer> ids, final List<FanfictionBuilder> builders, final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        final Array idArray = connection.createArrayOf("integer", ids.toArray());
+        // authors without their links first
+        final Map<Integer, List<Integer>> authorIds = new HashMap<>();
+        final Map<Integer, String> authorNames = new HashMap<>();
+        final String selectAuthoredSql = String.format("SELECT fanfiction_id, author_id, name FROM %s INNER JOIN %s ON author_id=%s.id WHERE fanfiction_id = ANY(?) ORDER BY fanfiction_id, author_id", TABLE_AUTHORED, TABLE_AUTHOR, TABLE_AUTHOR);
+        LOGGER.debug(LOG_SQL_MSG, selectAuthoredSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectAuthoredSql)) {
+            selectStmt.setArray(1, idArray);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    final int authorId = rs.getInt(2);
+                    if (authorId == 1) { // Anon is the empty list
+                        continue;
                     }
-                    if (fanfictionId == null) {
-                        internalInsertFanfiction(connection, current);
+                    authorIds.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(authorId);
+                    authorNames.putIfAbsent(authorId, getString(rs, 3));
+                }
+            }
+        }
+        final Map<Integer, List<String>> authorLinks = new HashMap<>();
+        if (!authorNames.isEmpty()) {
+            final String selectProfileSql = String.format("SELECT author_id, link FROM %s WHERE author_id = ANY(?) ORDER BY author_id, link", TABLE_PROFILE);
+            LOGGER.debug(LOG_SQL_MSG, selectProfileSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectProfileSql)) {
+                selectStmt.setArray(1, connection.createArrayOf("integer", authorNames.keySet().toArray()));
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        authorLinks.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(getString(rs, 2));
                     }
-                    else {
-                        internalUpdateFanfiction(connection, current, fanfictionId);
+                }
+            }
+        }
+        final Map<Integer, Author> authors = new HashMap<>();
+        authorNames.forEach((authorId, name) -> authors.put(authorId, new Author(name, List.copyOf(authorLinks.getOrDefault(authorId, List.of())))));
+        // tags with their fandoms
+        final Map<Integer, List<Tag>> tags = new HashMap<>();
+        final String selectTaggedSql = String.format("SELECT fanfiction_id, %s.name, description, is_character, is_relationship, %s.name, %s.link " +
+                "FROM tagged INNER JOIN %s ON tag_id=%s.id LEFT JOIN %s ON fandom_id=%s.id WHERE fanfiction_id = ANY(?) ORDER BY fanfiction_id, tag_id",
+                TABLE_TAG, TABLE_FANDOM, TABLE_TAG, TABLE_TAG, TABLE_TAG, TABLE_FANDOM, TABLE_FANDOM);
+        LOGGER.debug(LOG_SQL_MSG, selectTaggedSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectTaggedSql)) {
+            selectStmt.setArray(1, idArray);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    tags.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(new Tag(getString(rs, 2), getString(rs, 3),
+                            rs.getBoolean(4), rs.getBoolean(5), getString(rs, 6), getString(rs, 7)));
+                }
+            }
+        }
+        // crossovers
+        final Map<Integer, List<Fandom>> crossovers = new HashMap<>();
+        final String selectCrossedOverSql = String.format("SELECT fanfiction_id, name, link FROM crossed_over INNER JOIN %s ON fandom_id=%s.id WHERE fanfiction_id = ANY(?) ORDER BY fanfiction_id, fandom_id", TABLE_FANDOM, TABLE_FANDOM);
+        LOGGER.debug(LOG_SQL_MSG, selectCrossedOverSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectCrossedOverSql)) {
+            selectStmt.setArray(1, idArray);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    crossovers.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(new Fandom(getString(rs, 2), getString(rs, 3)));
+                }
+            }
+        }
+        idArray.free();
+        // assemble
+        for (int index = 0; index < ids.size(); index++) {
+            final int id = ids.get(index);
+            final List<Author> fanfictionAuthors = authorIds.getOrDefault(id, List.of()).stream().map(authors::get).toList();
+            consumer.accept(builders.get(index)
+                    .authors(fanfictionAuthors)
+                    .tags(tags.getOrDefault(id, List.of()))
+                    .crossovers(crossovers.getOrDefault(id, List.of()))
+                    .build(), id);
+        }
+    }
+
+    /**
+     * Streams fanfictions out of the DB with a server side cursor, in chunks of {@link #READ_CHUNK_SIZE}.
+     * @param ids the IDs of the fanfictions to read, {@code null} for all
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private void internalReadFanfictions(final Collection<Integer> ids, final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        Objects.requireNonNull(consumer);
+        final String selectSql = SELECT_FANFICTION_SQL + (ids == null ? "" : " WHERE fanfiction.id = ANY(?)") + " ORDER BY fanfiction.id";
+        try (final Connection connection = getConnection()) {
+            // the result set is only streamed inside a transaction
+            connection.setAutoCommit(false);
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setFetchSize(READ_CHUNK_SIZE);
+                if (ids != null) {
+                    selectStmt.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+                }
+                final List<Integer> chunkIds = new ArrayList<>(READ_CHUNK_SIZE);
+                final List<FanfictionBuilder> chunk = new ArrayList<>(READ_CHUNK_SIZE);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        chunkIds.add(rs.getInt(1));
+                        chunk.add(readFanfiction(rs));
+                        if (chunk.size() == READ_CHUNK_SIZE) {
+                            readFanfictionChunk(connection, chunkIds, chunk, consumer);
+                            chunkIds.clear();
+                            chunk.clear();
+                        }
                     }
                 }
-                catch (InterruptedException ex) {
-                    /* Ignore. */
+                if (!chunk.isEmpty()) {
+                    readFanfictionChunk(connection, chunkIds, chunk, consumer);
                 }
-            } // -> while true
-        } // -> try with Connection
-        final Duration time = Duration.between(start, Instant.now());
-        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating fanfictions", time.toMinutes(), time.toSecondsPart());
+            }
+            connection.commit();
+        }
     }
 
+    /**
+     * Reads all fanfictions with their authors, tags and crossovers, in ascending order of their IDs.
+     * Only a chunk of {@link #READ_CHUNK_SIZE} fanfictions is held in memory at a time.
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    @Override
+    public void readFanfictions(final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        internalReadFanfictions(null, consumer);
+    }
+
+    /**
+     * Reads the specified fanfictions with their authors, tags and crossovers, in ascending order of their IDs.
+     * Unknown IDs are skipped.
+     * @param ids the IDs of the fanfictions to read, not {@code null}
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     * @see TagIndex#filter(Collection, Collection, Collection)
+     */
+    @Override
+    public void readFanfictions(final Collection<Integer> ids, final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        internalReadFanfictions(Objects.requireNonNull(ids), consumer);
+    }
+
+    /**
+     * Lets the DB write the result of a {@code COPY ... TO STDOUT} statement to a stream.
+     * @param copySql the copy statement, not {@code null}
+     * @param out the stream to write to, not {@code null}
+     * @return the number of rows copied
+     * @throws IOException If an I/O error occurs.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    long copyOut(final String copySql, final OutputStream out) throws IOException, SQLException {
+        try (final Connection connection = getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, copySql);
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(copySql, out);
+        }
+    }
+
+    /**
+     * Runs the scrape pipeline against the storage selected by {@link Storage#fromProperties()}, so it also runs
+     * without a DB server if {@link EmbeddedStorage#PROPERTY_DIR} is given.
+     */
     public static void main(String[] args) throws SQLException, IOException {
         if ("true".equals(System.getProperty("developer_mode"))) {
             Configurator.setRootLevel(Level.DEBUG);
         }
-        final DbHelper dbHelper = new DbHelper();
+        final Storage storage = Storage.fromProperties();
         BlockingQueue<Tag> tagQueue = new WikiScraper().scrapeCharacterTags();
         BlockingQueue<Fanfiction> tagFiction = new Ao3Scraper().scrapeFanfictions();
         try {
-            dbHelper.tearDownTables();
+            try {
+                storage.tearDownTables();
+            }
+            catch (SQLException ex) {
+                /* Tables were already deleted, ignore. */
+                ex.printStackTrace();
+            }
+            storage.setupTables();
+            storage.loadAliasResolver();
+            storage.addTags(tagQueue);
+            storage.loadTagLinker();
+            storage.loadTagIndex();
+            storage.updateFanfictions(tagFiction);
+            storage.updateRelated(false);
+            storage.updateSimilarities();
         }
-        catch (SQLException ex) {
-            /* Tables were already deleted, ignore. */
-            ex.printStackTrace();
+        finally {
+            if (storage instanceof EmbeddedStorage embeddedStorage) {
+                embeddedStorage.close();
+            }
         }
-        dbHelper.setupTables();
-        dbHelper.addTags(tagQueue);
-        dbHelper.updateFanfictions(tagFiction);
     }
 
 }
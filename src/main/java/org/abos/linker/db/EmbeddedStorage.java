@@ -0,0 +1,1291 @@
+package org.abos.linker.db;
+
+import org.abos.common.LogUtil;
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.abos.linker.core.WorkStats;
+import org.abos.linker.index.SimilarityJob;
+import org.abos.linker.index.TagIndex;
+import org.abos.linker.link.AliasResolver;
+import org.abos.linker.link.RelationshipParser;
+import org.abos.linker.link.TagLinker;
+import org.abos.linker.link.TagMatch;
+import org.abos.linker.scraper.Ao3Scraper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A {@link Storage} in the files of a directory, which needs no DB server. Every change is appended as a record to a
+ * {@link SegmentLog}, and replaying the log on opening rebuilds the tags, fandoms, authors and aliases in memory,
+ * with hash indexes by their names and links. Of the fanfictions, only the positions of their latest records are
+ * held in memory; they are read from the memory-mapped segments when needed.
+ * <p>
+ * Storing a fanfiction takes no round trips to a server, so ingesting on a single node is considerably faster than
+ * with {@link DbHelper}. The bulk operations write the segments to disk when they are done, while single updates are
+ * left to the OS, so they are only lost if the OS crashes. The log only ever grows, and each update of a fanfiction
+ * appends it again.
+ * <p>
+ * Safe to use from multiple threads, but only from one process at a time.
+ */
+public final class EmbeddedStorage implements Storage, Closeable {
+
+    public static final String PROPERTY_DIR = "embedded_dir";
+
+    private static final Logger LOGGER = LogManager.getLogger(EmbeddedStorage.class);
+
+    /**
+     * The ratings in the order of {@value DbHelper#TABLE_SETUP_FILE_NAME}, the first being the default.
+     */
+    private static final List<String> RATINGS = List.of("Not Rated", "General Audiences", "Teen And Up Audiences", "Mature", "Explicit");
+
+    private static final String DEFAULT_LANGUAGE = "English";
+
+    private static final int ANONYMOUS_ID = 1;
+
+    private static final byte RECORD_SETUP = 1;
+
+    private static final byte RECORD_FANDOM = 2;
+
+    private static final byte RECORD_TAG = 3;
+
+    private static final byte RECORD_ALIAS = 4;
+
+    /**
+     * A tag became an alias of another tag.
+     */
+    private static final byte RECORD_MERGE = 5;
+
+    private static final byte RECORD_AUTHOR = 6;
+
+    private static final byte RECORD_FANFICTION = 7;
+
+    private static final byte RECORD_RELATED = 8;
+
+    private static final byte RECORD_RELATED_PROGRESS = 9;
+
+    /**
+     * The similar fanfictions that follow until {@link #RECORD_SIMILAR_END} replace the previous ones.
+     */
+    private static final byte RECORD_SIMILAR_BEGIN = 10;
+
+    private static final byte RECORD_SIMILAR = 11;
+
+    private static final byte RECORD_SIMILAR_END = 12;
+
+    /**
+     * The flag of {@link Fanfiction#completed()}, see {@link #flags(Fanfiction)}.
+     */
+    private static final int FLAG_COMPLETED = 1 << 12;
+
+    /**
+     * A tag with its fandom by ID, {@code 0} for none.
+     */
+    private record TagRow(String name, String description, boolean isCharacter, boolean isRelationship, int fandomId, String link) {
+    }
+
+    /**
+     * A fanfiction with its references by ID.
+     */
+    private record FanfictionRow(String title, int chapters, int words, String language, String rating, int flags,
+                                 long lastUpdated, long lastChecked, String link, int[] authorIds, int[] tagIds, int[] fandomIds) {
+    }
+
+    /**
+     * Encodes a record, reusing its buffer for the next one.
+     */
+    private static final class RecordBuffer {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        private void start(final byte type) {
+            buffer.clear();
+            buffer.put(type);
+        }
+
+        private void ensureCapacity(final int additional) {
+            if (buffer.remaining() < additional) {
+                final ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additional));
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+        }
+
+        private void putVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void putLong(final long value) {
+            ensureCapacity(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Writes a string prefixed by its length plus one, so {@code 0} stands for {@code null}.
+         */
+        private void putString(final String value) {
+            if (value == null) {
+                putVarInt(0);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void putIds(final int[] ids) {
+            putVarInt(ids.length);
+            for (int id : ids) {
+                putVarInt(id);
+            }
+        }
+
+        private ByteBuffer finish() {
+            return buffer.flip();
+        }
+    }
+
+    private static int getVarInt(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final int length = getVarInt(buffer) - 1;
+        if (length == -1) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] getIds(final ByteBuffer buffer) {
+        final int[] ids = new int[getVarInt(buffer)];
+        for (int index = 0; index < ids.length; index++) {
+            ids[index] = getVarInt(buffer);
+        }
+        return ids;
+    }
+
+    private final SegmentLog log;
+
+    private final RecordBuffer buffer = new RecordBuffer();
+
+    private boolean setUp;
+
+    /**
+     * The fandoms by their ID minus one.
+     */
+    private final List<Fandom> fandoms = new ArrayList<>();
+
+    private final Map<String, Integer> fandomIds = new HashMap<>();
+
+    /**
+     * The tags by their ID minus one, {@code null} for tags that became aliases.
+     */
+    private final List<TagRow> tags = new ArrayList<>();
+
+    private final Map<String, Integer> tagIds = new HashMap<>();
+
+    private final Map<String, Integer> tagIdsByLink = new HashMap<>();
+
+    /**
+     * The IDs of the tags the tags that became aliases were merged into. The records of the fanfictions still
+     * reference the former, so their tag IDs are resolved via this map when read.
+     */
+    private final Map<Integer, Integer> mergedTagIds = new HashMap<>();
+
+    private final Map<Integer, List<String>> aliases = new HashMap<>();
+
+    /**
+     * The authors with their profile links by their ID minus one.
+     */
+    private final List<Author> authors = new ArrayList<>();
+
+    private final Map<String, Integer> authorIdsByName = new HashMap<>();
+
+    private final Map<String, Integer> authorIdsByLink = new HashMap<>();
+
+    /**
+     * The positions of the latest records of the fanfictions by their ID minus one.
+     */
+    private long[] fanfictionPositions = new long[1024];
+
+    private int fanfictionCount;
+
+    private final Map<String, Integer> fanfictionIdsByLink = new HashMap<>();
+
+    private final Map<Long, Integer> fanfictionIdsByAo3Id = new HashMap<>();
+
+    private final Map<Integer, Set<Integer>> authored = new HashMap<>();
+
+    /**
+     * The pairs of character and relationship tag IDs, see {@link #pair(int, int)}.
+     */
+    private final Set<Long> related = new HashSet<>();
+
+    /**
+     * The highest relationship tag ID {@link #updateRelated(boolean)} has processed so far.
+     */
+    private int relatedProgress;
+
+    private final Map<Integer, int[]> similar = new HashMap<>();
+
+    /**
+     * The similar fanfictions after a {@link #RECORD_SIMILAR_BEGIN} not yet ended, {@code null} if there is none.
+     */
+    private Map<Integer, int[]> pendingSimilar;
+
+    private TagLinker tagLinker;
+
+    private AliasResolver aliasResolver = new AliasResolver();
+
+    private TagIndex tagIndex;
+
+    /**
+     * Opens the storage in a directory, creating it if needed.
+     * @param directory the directory of the files, not {@code null}
+     * @throws SQLException If the files can't be opened or read.
+     */
+    public EmbeddedStorage(final Path directory) throws SQLException {
+        this(directory, SegmentLog.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the storage in a directory, creating it if needed.
+     * @param directory the directory of the files, not {@code null}
+     * @param segmentSize the size of new segment files, greater than the size of the largest record
+     * @throws SQLException If the files can't be opened or read.
+     */
+    EmbeddedStorage(final Path directory, final int segmentSize) throws SQLException {
+        LOGGER.info("Opening embedded storage...");
+        final Instant start = Instant.now();
+        try {
+            log = new SegmentLog(directory, segmentSize);
+        }
+        catch (IOException ex) {
+            throw new SQLException("Couldn't open the embedded storage in " + directory + "!", ex);
+        }
+        try {
+            log.replay(this::apply);
+        }
+        catch (IllegalStateException | BufferUnderflowException ex) {
+            try {
+                log.close();
+            }
+            catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw new SQLException("The embedded storage in " + directory + " is corrupt!", ex);
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Opening embedded storage", time.toMinutes(), time.toSecondsPart());
+    }
+
+    private static long pair(final int characterId, final int relationshipId) {
+        return ((long) characterId << 32) | relationshipId;
+    }
+
+    private static <T> void set(final List<T> list, final int id, final T element) {
+        if (id == list.size() + 1) {
+            list.add(element);
+        }
+        else {
+            list.set(id - 1, element);
+        }
+    }
+
+    /**
+     * Applies a record to the state in memory, both when replaying the log and right after appending it.
+     * @param record the record, not {@code null}
+     * @param position the position of the record in the log
+     */
+    private void apply(final ByteBuffer record, final long position) {
+        final byte type = record.get();
+        switch (type) {
+            case RECORD_SETUP -> setUp = true;
+            case RECORD_FANDOM -> {
+                final int id = getVarInt(record);
+                final Fandom fandom = new Fandom(getString(record), getString(record));
+                set(fandoms, id, fandom);
+                fandomIds.put(fandom.name(), id);
+            }
+            case RECORD_TAG -> applyTag(record);
+            case RECORD_ALIAS -> aliases.computeIfAbsent(getVarInt(record), id -> new ArrayList<>()).add(getString(record));
+            case RECORD_MERGE -> applyMerge(getVarInt(record), getVarInt(record), getString(record));
+            case RECORD_AUTHOR -> applyAuthor(record);
+            case RECORD_FANFICTION -> applyFanfiction(record, position);
+            case RECORD_RELATED -> related.add(pair(getVarInt(record), getVarInt(record)));
+            case RECORD_RELATED_PROGRESS -> relatedProgress = getVarInt(record);
+            case RECORD_SIMILAR_BEGIN -> pendingSimilar = new HashMap<>();
+            case RECORD_SIMILAR -> {
+                final int id = getVarInt(record);
+                final int[] similarIds = getIds(record);
+                if (pendingSimilar != null) {
+                    pendingSimilar.put(id, similarIds);
+                }
+            }
+            case RECORD_SIMILAR_END -> {
+                if (pendingSimilar != null) {
+                    similar.clear();
+                    similar.putAll(pendingSimilar);
+                    pendingSimilar = null;
+                }
+            }
+            default -> throw new IllegalStateException("Unknown record type " + type + " encountered!");
+        }
+    }
+
+    private void applyTag(final ByteBuffer record) {
+        final int id = getVarInt(record);
+        final String name = getString(record);
+        final String description = getString(record);
+        final int kind = getVarInt(record);
+        final TagRow tag = new TagRow(name, description, kind == 1, kind == 2, getVarInt(record), getString(record));
+        if (id <= tags.size()) {
+            final String oldLink = tags.get(id - 1).link();
+            if (oldLink != null) {
+                tagIdsByLink.remove(oldLink, id);
+            }
+        }
+        set(tags, id, tag);
+        tagIds.put(name, id);
+        if (tag.link() != null) {
+            tagIdsByLink.put(tag.link(), id);
+        }
+    }
+
+    private void applyMerge(final int tagId, final int aliasId, final String alias) {
+        final TagRow removed = tags.set(aliasId - 1, null);
+        tagIds.remove(removed.name());
+        if (removed.link() != null) {
+            tagIdsByLink.remove(removed.link(), aliasId);
+        }
+        mergedTagIds.put(aliasId, tagId);
+        final List<String> tagAliases = aliases.computeIfAbsent(tagId, id -> new ArrayList<>());
+        for (String movedAlias : aliases.getOrDefault(aliasId, List.of())) {
+            if (!tagAliases.contains(movedAlias)) {
+                tagAliases.add(movedAlias);
+            }
+        }
+        aliases.remove(aliasId);
+        if (!tagAliases.contains(alias)) {
+            tagAliases.add(alias);
+        }
+        final List<Long> moved = related.stream()
+                .filter(pair -> (int) (pair >>> 32) == aliasId || pair.intValue() == aliasId)
+                .toList();
+        for (long pair : moved) {
+            related.remove(pair);
+            final int characterId = (int) (pair >>> 32);
+            final int relationshipId = (int) pair;
+            related.add(pair(characterId == aliasId ? tagId : characterId, relationshipId == aliasId ? tagId : relationshipId));
+        }
+    }
+
+    private void applyAuthor(final ByteBuffer record) {
+        final int id = getVarInt(record);
+        final String name = getString(record);
+        final int linkCount = getVarInt(record);
+        final List<String> links = new ArrayList<>(linkCount);
+        for (int index = 0; index < linkCount; index++) {
+            links.add(getString(record));
+        }
+        if (id <= authors.size()) {
+            for (String oldLink : authors.get(id - 1).links()) {
+                authorIdsByLink.remove(oldLink, id);
+            }
+        }
+        set(authors, id, new Author(name, List.copyOf(links)));
+        authorIdsByName.putIfAbsent(name, id);
+        for (String link : links) {
+            authorIdsByLink.putIfAbsent(link, id);
+        }
+    }
+
+    private void applyFanfiction(final ByteBuffer record, final long position) {
+        final int id = getVarInt(record);
+        final FanfictionRow fanfiction = readFanfictionRow(record);
+        if (id > fanfictionCount) {
+            if (id > fanfictionPositions.length) {
+                fanfictionPositions = Arrays.copyOf(fanfictionPositions, Math.max(fanfictionPositions.length * 2, id));
+            }
+            fanfictionCount = id;
+        }
+        else {
+            final String oldLink = readFanfictionRow(id).link();
+            if (!oldLink.equals(fanfiction.link())) {
+                fanfictionIdsByLink.remove(oldLink, id);
+                fanfictionIdsByAo3Id.remove(Ao3Scraper.workId(oldLink), id);
+            }
+        }
+        fanfictionPositions[id - 1] = position;
+        fanfictionIdsByLink.put(fanfiction.link(), id);
+        final long ao3Id = Ao3Scraper.workId(fanfiction.link());
+        if (ao3Id != -1L) {
+            fanfictionIdsByAo3Id.put(ao3Id, id);
+        }
+        for (int authorId : fanfiction.authorIds()) {
+            authored.computeIfAbsent(authorId, authorKey -> new TreeSet<>()).add(id);
+        }
+    }
+
+    private static FanfictionRow readFanfictionRow(final ByteBuffer record) {
+        return new FanfictionRow(getString(record), getVarInt(record), getVarInt(record), getString(record), getString(record),
+                getVarInt(record), record.getLong(), record.getLong(), getString(record), getIds(record), getIds(record), getIds(record));
+    }
+
+    /**
+     * Reads the latest record of a fanfiction, with the IDs of the tags that became aliases resolved.
+     * @param id the ID of the fanfiction, which must be stored
+     * @return the fanfiction, not {@code null}
+     */
+    private FanfictionRow readFanfictionRow(final int id) {
+        final ByteBuffer record = log.read(fanfictionPositions[id - 1]);
+        record.get();
+        getVarInt(record);
+        final FanfictionRow row = readFanfictionRow(record);
+        if (mergedTagIds.isEmpty()) {
+            return row;
+        }
+        final Set<Integer> tagIds = new LinkedHashSet<>();
+        for (int tagId : row.tagIds()) {
+            tagIds.add(resolveTagId(tagId));
+        }
+        return new FanfictionRow(row.title(), row.chapters(), row.words(), row.language(), row.rating(), row.flags(),
+                row.lastUpdated(), row.lastChecked(), row.link(), row.authorIds(), toArray(tagIds), row.fandomIds());
+    }
+
+    private int resolveTagId(int tagId) {
+        Integer mergedId;
+        while ((mergedId = mergedTagIds.get(tagId)) != null) {
+            tagId = mergedId;
+        }
+        return tagId;
+    }
+
+    private static int[] toArray(final Collection<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Appends the record in the buffer to the log and applies it.
+     * @throws SQLException If an I/O error occurs. Nothing is changed then.
+     */
+    private void write() throws SQLException {
+        final long position;
+        try {
+            position = log.append(buffer.finish());
+        }
+        catch (IOException ex) {
+            throw new SQLException("Couldn't write to the embedded storage!", ex);
+        }
+        apply(log.read(position), position);
+    }
+
+    private void checkSetUp() throws SQLException {
+        if (!setUp) {
+            throw new SQLException("The embedded storage isn't set up!");
+        }
+    }
+
+    private <T> T pollQueue(final BlockingQueue<T> queue) throws InterruptedException {
+        return queue.poll(1, TimeUnit.SECONDS);
+    }
+
+    private void writeFandom(final int id, final Fandom fandom) throws SQLException {
+        buffer.start(RECORD_FANDOM);
+        buffer.putVarInt(id);
+        buffer.putString(fandom.name());
+        buffer.putString(fandom.link());
+        write();
+    }
+
+    private void writeTag(final int id, final TagRow tag) throws SQLException {
+        if (tag.link() != null) {
+            final Integer linkedId = tagIdsByLink.get(tag.link());
+            if (linkedId != null && linkedId != id) {
+                throw new SQLIntegrityConstraintViolationException("Duplicate tag link " + tag.link() + " encountered!");
+            }
+        }
+        buffer.start(RECORD_TAG);
+        buffer.putVarInt(id);
+        buffer.putString(tag.name());
+        buffer.putString(tag.description());
+        buffer.putVarInt(tag.isCharacter() ? 1 : tag.isRelationship() ? 2 : 0);
+        buffer.putVarInt(tag.fandomId());
+        buffer.putString(tag.link());
+        write();
+    }
+
+    private void writeAuthor(final int id, final String name, final Collection<String> links) throws SQLException {
+        buffer.start(RECORD_AUTHOR);
+        buffer.putVarInt(id);
+        buffer.putString(name);
+        buffer.putVarInt(links.size());
+        for (String link : links) {
+            buffer.putString(link);
+        }
+        write();
+    }
+
+    private void writeFanfiction(final int id, final FanfictionRow fanfiction) throws SQLException {
+        buffer.start(RECORD_FANFICTION);
+        buffer.putVarInt(id);
+        buffer.putString(fanfiction.title());
+        buffer.putVarInt(fanfiction.chapters());
+        buffer.putVarInt(fanfiction.words());
+        buffer.putString(fanfiction.language());
+        buffer.putString(fanfiction.rating());
+        buffer.putVarInt(fanfiction.flags());
+        buffer.putLong(fanfiction.lastUpdated());
+        buffer.putLong(fanfiction.lastChecked());
+        buffer.putString(fanfiction.link());
+        buffer.putIds(fanfiction.authorIds());
+        buffer.putIds(fanfiction.tagIds());
+        buffer.putIds(fanfiction.fandomIds());
+        write();
+    }
+
+    /**
+     * Writes the segments to disk.
+     * @throws SQLException If an I/O error occurs.
+     */
+    private void force() throws SQLException {
+        try {
+            log.force();
+        }
+        catch (UncheckedIOException ex) {
+            throw new SQLException("Couldn't write the embedded storage to disk!", ex);
+        }
+    }
+
+    @Override
+    public synchronized void setupTables() throws SQLException {
+        LOGGER.info("Setting up tables...");
+        final Instant start = Instant.now();
+        if (setUp) {
+            throw new SQLException("The embedded storage is already set up!");
+        }
+        buffer.start(RECORD_SETUP);
+        write();
+        writeTag(1, new TagRow("OC", "An Own Character by the author, not from any existing fandom.", true, false, 0, null));
+        writeAuthor(ANONYMOUS_ID, "Anonymous", List.of());
+        force();
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Setting up tables", time.toMinutes(), time.toSecondsPart());
+    }
+
+    @Override
+    public synchronized void tearDownTables() throws IOException {
+        LOGGER.info("Tearing down tables...");
+        final Instant start = Instant.now();
+        log.clear();
+        setUp = false;
+        fandoms.clear();
+        fandomIds.clear();
+        tags.clear();
+        tagIds.clear();
+        tagIdsByLink.clear();
+        mergedTagIds.clear();
+        aliases.clear();
+        authors.clear();
+        authorIdsByName.clear();
+        authorIdsByLink.clear();
+        fanfictionCount = 0;
+        fanfictionIdsByLink.clear();
+        fanfictionIdsByAo3Id.clear();
+        authored.clear();
+        related.clear();
+        relatedProgress = 0;
+        similar.clear();
+        pendingSimilar = null;
+        tagIndex = null;
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Tearing down tables", time.toMinutes(), time.toSecondsPart());
+    }
+
+    @Override
+    public synchronized AliasResolver loadAliasResolver() throws SQLException {
+        checkSetUp();
+        final AliasResolver resolver = new AliasResolver();
+        aliases.forEach((tagId, tagAliases) -> {
+            for (String alias : tagAliases) {
+                resolver.put(alias, tags.get(tagId - 1).name());
+            }
+        });
+        aliasResolver = resolver;
+        return resolver;
+    }
+
+    @Override
+    public synchronized TagLinker loadTagLinker() throws SQLException {
+        checkSetUp();
+        final TagLinker linker = new TagLinker();
+        for (int id = 1; id <= tags.size(); id++) {
+            final TagRow tag = tags.get(id - 1);
+            if (tag != null && tag.isCharacter()) {
+                linker.add(tag.name(), id, tag.name());
+            }
+        }
+        for (Map.Entry<Integer, List<String>> entry : aliases.entrySet()) {
+            final TagRow tag = tags.get(entry.getKey() - 1);
+            if (tag.isCharacter()) {
+                for (String alias : entry.getValue()) {
+                    linker.add(alias, entry.getKey(), tag.name());
+                }
+            }
+        }
+        tagLinker = linker;
+        return linker;
+    }
+
+    @Override
+    public synchronized TagIndex loadTagIndex() throws SQLException {
+        LOGGER.info("Loading tag index...");
+        final Instant start = Instant.now();
+        checkSetUp();
+        final TagIndex index = new TagIndex();
+        for (int id = 1; id <= fanfictionCount; id++) {
+            for (int tagId : readFanfictionRow(id).tagIds()) {
+                index.add(tagId, id);
+            }
+        }
+        tagIndex = index;
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Loading tag index", time.toMinutes(), time.toSecondsPart());
+        return index;
+    }
+
+    private void addTag(final Tag scraped) throws SQLException {
+        final Tag tag = aliasResolver.resolve(scraped);
+        int fandomId = 0;
+        if (tag.fandom() != null) {
+            final Integer id = fandomIds.get(tag.fandom());
+            if (id == null) {
+                throw new IllegalStateException("Unknown fandom " + tag.fandom() + " encountered!");
+            }
+            fandomId = id;
+        }
+        if (tagIds.containsKey(tag.name())) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate tag " + tag.name() + " encountered!");
+        }
+        writeTag(tags.size() + 1, new TagRow(tag.name(), tag.description(), tag.isCharacter(), tag.isRelationship(), fandomId, tag.link()));
+    }
+
+    @Override
+    public void addTags(final BlockingQueue<Tag> queue) throws IllegalStateException, SQLException {
+        LOGGER.info("Adding tags...");
+        final Instant start = Instant.now();
+        Tag current;
+        while (true) {
+            try {
+                current = pollQueue(queue);
+                if (current == null) {
+                    continue;
+                }
+                if (current.equals(Tag.DUMMY)) {
+                    break;
+                }
+                synchronized (this) {
+                    checkSetUp();
+                    addTag(current);
+                }
+            }
+            catch (InterruptedException ex) {
+                /* Ignore. */
+            }
+        }
+        synchronized (this) {
+            force();
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Adding tags", time.toMinutes(), time.toSecondsPart());
+    }
+
+    /**
+     * Adds a fandom if it is new, else updates its link if given.
+     * @return the ID of the fandom
+     */
+    private int putFandom(final Fandom fandom) throws SQLException {
+        final Integer fandomId = fandomIds.get(fandom.name());
+        if (fandomId == null) {
+            final int id = fandoms.size() + 1;
+            writeFandom(id, fandom);
+            return id;
+        }
+        if (fandom.link() != null && !fandom.link().equals(fandoms.get(fandomId - 1).link())) {
+            writeFandom(fandomId, fandom);
+        }
+        return fandomId;
+    }
+
+    /**
+     * Adds a tag if it is new, else updates it, keeping the description, fandom and link if the tag has none.
+     * @return the ID of the tag
+     */
+    private int putTag(final Tag tag) throws SQLException {
+        final Integer tagId = tagIds.get(tag.name());
+        final int fandomId = tag.fandom() == null ? 0 : putFandom(new Fandom(tag.fandom(), null));
+        if (tagId == null) {
+            final int id = tags.size() + 1;
+            writeTag(id, new TagRow(tag.name(), tag.description(), tag.isCharacter(), tag.isRelationship(), fandomId, tag.link()));
+            return id;
+        }
+        final TagRow old = tags.get(tagId - 1);
+        final TagRow updated = new TagRow(tag.name(),
+                tag.description() == null ? old.description() : tag.description(),
+                tag.isCharacter(), tag.isRelationship(),
+                tag.fandom() == null ? old.fandomId() : fandomId,
+                tag.link() == null ? old.link() : tag.link());
+        if (!updated.equals(old)) {
+            writeTag(tagId, updated);
+        }
+        return tagId;
+    }
+
+    @Override
+    public synchronized void updateTag(final Tag tag) throws SQLException {
+        checkSetUp();
+        putTag(aliasResolver.resolve(tag));
+    }
+
+    /**
+     * Rewrites each tag to its canonical name, then replaces each character tag the {@link TagLinker} confidently
+     * matches by the matched tag, like {@link DbHelper} does.
+     */
+    private List<Tag> linkTags(final List<Tag> tags) {
+        final List<Tag> linked = new ArrayList<>(tags.size());
+        for (Tag scraped : tags) {
+            final Tag tag = aliasResolver.resolve(scraped);
+            final TagMatch match = tagLinker != null && tag.isCharacter() ? tagLinker.resolve(tag.name()) : null;
+            if (match == null || match.name().equals(tag.name())) {
+                linked.add(tag);
+            }
+            else {
+                LOGGER.debug("Linked tag {} to {} with score {}", tag.name(), match.name(), match.score());
+                linked.add(new Tag(match.name(), tag.description(), true, false, tag.fandom(), tag.link()));
+            }
+        }
+        return linked;
+    }
+
+    /**
+     * Makes a character tag known to the {@link TagLinker} if it is not already.
+     */
+    private void learnTag(final Tag tag, final int tagId) {
+        if (tagLinker == null || !tag.isCharacter()) {
+            return;
+        }
+        final TagMatch match = tagLinker.match(tag.name());
+        if (match == null || match.score() != 1) {
+            tagLinker.add(tag.name(), tagId, tag.name());
+        }
+    }
+
+    /**
+     * Makes an alias known to the {@link TagLinker} if the tag it belongs to is.
+     */
+    private void learnAlias(final int tagId, final String name, final String alias) {
+        if (tagLinker == null) {
+            return;
+        }
+        final TagMatch match = tagLinker.match(name);
+        if (match != null && match.tagId() == tagId) {
+            tagLinker.add(alias, tagId, match.name());
+        }
+    }
+
+    @Override
+    public synchronized void addTagAlias(final String name, final String alias) throws IllegalStateException, SQLException {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(alias);
+        checkSetUp();
+        final Integer id = tagIds.get(name);
+        if (id == null) {
+            throw new IllegalStateException("Unknown tag name " + name + " encountered!");
+        }
+        if (aliases.getOrDefault(id, List.of()).contains(alias)) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate alias " + alias + " of tag " + name + " encountered!");
+        }
+        buffer.start(RECORD_ALIAS);
+        buffer.putVarInt(id);
+        buffer.putString(alias);
+        write();
+        aliasResolver.put(alias, name);
+        learnAlias(id, name, alias);
+    }
+
+    @Override
+    public synchronized void changeTagToAlias(final String name, final String alias) throws IllegalStateException, SQLException {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(alias);
+        checkSetUp();
+        final String preformattedErrMsg = "Unknown tag %s encountered!";
+        final Integer tagId = tagIds.get(name);
+        if (tagId == null) {
+            throw new IllegalStateException(String.format(preformattedErrMsg, name));
+        }
+        final Integer aliasId = tagIds.get(alias);
+        if (aliasId == null) {
+            throw new IllegalStateException(String.format(preformattedErrMsg, alias));
+        }
+        if (tagId.equals(aliasId)) {
+            // would merge the tag into itself, which is never resolved
+            throw new IllegalStateException("Tag " + name + " can't be an alias of itself!");
+        }
+        final List<String> movedAliases = List.copyOf(aliases.getOrDefault(aliasId, List.of()));
+        // a single record, so the merge happens completely or not at all
+        buffer.start(RECORD_MERGE);
+        buffer.putVarInt(tagId);
+        buffer.putVarInt(aliasId);
+        buffer.putString(alias);
+        write();
+        force();
+        aliasResolver.changeToAlias(name, alias);
+        if (tagIndex != null) {
+            tagIndex.merge(tagId, aliasId);
+        }
+        learnAlias(tagId, name, alias);
+        for (String movedAlias : movedAliases) {
+            learnAlias(tagId, name, movedAlias);
+        }
+    }
+
+    /**
+     * Adds an author if they are new, else updates their profile links. An author with profile links is found by
+     * them, and only an author without by name, like in {@link DbHelper}.
+     * @return the ID of the author
+     */
+    private int putAuthor(final Author author, final boolean replaceLinks) throws SQLException {
+        Integer authorId = null;
+        if (author.links().isEmpty()) {
+            authorId = authorIdsByName.get(author.name());
+        }
+        else {
+            for (String link : author.links()) {
+                authorId = authorIdsByLink.get(link);
+                if (authorId != null) {
+                    break;
+                }
+            }
+        }
+        if (authorId == null) {
+            final int id = authors.size() + 1;
+            writeAuthor(id, author.name(), new LinkedHashSet<>(author.links()));
+            return id;
+        }
+        final Author old = authors.get(authorId - 1);
+        final Set<String> links = new LinkedHashSet<>();
+        if (!replaceLinks) {
+            links.addAll(old.links());
+        }
+        links.addAll(author.links());
+        if (!links.equals(new LinkedHashSet<>(old.links()))) {
+            writeAuthor(authorId, old.name(), links);
+        }
+        return authorId;
+    }
+
+    @Override
+    public synchronized void updateAuthor(final Author author, final boolean replaceLinks) throws SQLException {
+        checkSetUp();
+        putAuthor(author, replaceLinks);
+    }
+
+    @Override
+    public synchronized Author getAuthor(final int authorId) throws SQLException {
+        checkSetUp();
+        if (authorId < 1 || authorId > authors.size()) {
+            return null;
+        }
+        final Author author = authors.get(authorId - 1);
+        return new Author(author.name(), author.links().stream().sorted().toList());
+    }
+
+    @Override
+    public synchronized List<Integer> getAuthoredFanfictions(final int authorId) throws SQLException {
+        checkSetUp();
+        return new ArrayList<>(authored.getOrDefault(authorId, Set.of()));
+    }
+
+    private static int flags(final Fanfiction fanfiction) {
+        final boolean[] values = {fanfiction.warningNoneGiven(), fanfiction.warningNoneApply(), fanfiction.warningViolence(),
+                fanfiction.warningRape(), fanfiction.warningDeath(), fanfiction.warningUnderage(),
+                fanfiction.catFf(), fanfiction.catFm(), fanfiction.catMm(), fanfiction.catGen(), fanfiction.catMulti(), fanfiction.catOther(),
+                fanfiction.completed()};
+        int flags = 0;
+        for (int index = 0; index < values.length; index++) {
+            if (values[index]) {
+                flags |= 1 << index;
+            }
+        }
+        return flags;
+    }
+
+    private static boolean flag(final int flags, final int index) {
+        return (flags & (1 << index)) != 0;
+    }
+
+    /**
+     * Adds a fanfiction and its references, or overwrites the fields of the stored one and adds its new references.
+     * A fanfiction is found by its Ao3 work ID if it has one, else by its link.
+     */
+    private void putFanfiction(final Fanfiction fanfiction) throws SQLException {
+        final long ao3Id = Ao3Scraper.workId(fanfiction.link());
+        final Integer fanfictionId = ao3Id == -1L ? fanfictionIdsByLink.get(fanfiction.link()) : fanfictionIdsByAo3Id.get(ao3Id);
+        final FanfictionRow old = fanfictionId == null ? null : readFanfictionRow(fanfictionId);
+        if (fanfiction.lastUpdated() == null) {
+            throw new NullPointerException("At this point a non-null last update must be in the fanfiction instance!");
+        }
+        if (fanfiction.rating() != null && !RATINGS.contains(fanfiction.rating())) {
+            throw new IllegalStateException("Unknown rating " + fanfiction.rating() + " encountered!");
+        }
+        final Set<Integer> authorIds = new LinkedHashSet<>();
+        final Set<Integer> tagIds = new LinkedHashSet<>();
+        final Set<Integer> fandomIds = new LinkedHashSet<>();
+        if (old != null) {
+            Arrays.stream(old.authorIds()).forEach(authorIds::add);
+            Arrays.stream(old.tagIds()).forEach(tagIds::add);
+            Arrays.stream(old.fandomIds()).forEach(fandomIds::add);
+        }
+        if (fanfiction.authors().isEmpty()) {
+            authorIds.add(ANONYMOUS_ID);
+        }
+        for (Author author : fanfiction.authors()) {
+            authorIds.add(putAuthor(author, false));
+        }
+        final List<Integer> addedTagIds = new ArrayList<>();
+        for (Tag tag : linkTags(fanfiction.tags())) {
+            final int tagId = putTag(tag);
+            learnTag(tag, tagId);
+            if (tagIds.add(tagId)) {
+                addedTagIds.add(tagId);
+            }
+        }
+        for (Fandom fandom : fanfiction.crossovers()) {
+            fandomIds.add(putFandom(fandom));
+        }
+        final int id = fanfictionId == null ? fanfictionCount + 1 : fanfictionId;
+        writeFanfiction(id, new FanfictionRow(fanfiction.title(), fanfiction.chapters(), fanfiction.words(),
+                fanfiction.language() == null ? DEFAULT_LANGUAGE : fanfiction.language(),
+                fanfiction.rating() == null ? RATINGS.get(0) : fanfiction.rating(),
+                flags(fanfiction), fanfiction.lastUpdated().toEpochMilli(),
+                (fanfiction.lastChecked() == null ? Instant.now() : fanfiction.lastChecked()).toEpochMilli(),
+                fanfiction.link(), toArray(authorIds), toArray(tagIds), toArray(fandomIds)));
+        if (tagIndex != null) {
+            for (int tagId : addedTagIds) {
+                tagIndex.add(tagId, id);
+            }
+        }
+    }
+
+    @Override
+    public void updateFanfictions(final BlockingQueue<Fanfiction> queue) throws SQLException {
+        LOGGER.info("Updating fanfictions...");
+        final Instant start = Instant.now();
+        Fanfiction current;
+        while (true) {
+            try {
+                current = pollQueue(queue);
+                if (current == null) {
+                    continue;
+                }
+                if (current.equals(Fanfiction.DUMMY)) {
+                    break;
+                }
+                // only lock per fanfiction, so readers don't wait for the end of a long crawl
+                synchronized (this) {
+                    checkSetUp();
+                    putFanfiction(current);
+                }
+            }
+            catch (InterruptedException ex) {
+                /* Ignore. */
+            }
+        }
+        synchronized (this) {
+            force();
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating fanfictions", time.toMinutes(), time.toSecondsPart());
+    }
+
+    @Override
+    public synchronized boolean updateFanfictionStats(final int fanfictionId, final WorkStats stats, final Instant checked) throws SQLException {
+        checkSetUp();
+        if (fanfictionId < 1 || fanfictionId > fanfictionCount) {
+            return false;
+        }
+        final FanfictionRow old = readFanfictionRow(fanfictionId);
+        writeFanfiction(fanfictionId, new FanfictionRow(old.title(), stats.chapters(), stats.words(), old.language(), old.rating(),
+                stats.completed() ? old.flags() | FLAG_COMPLETED : old.flags() & ~FLAG_COMPLETED,
+                stats.lastUpdated().toEpochMilli(), checked.toEpochMilli(), old.link(), old.authorIds(), old.tagIds(), old.fandomIds()));
+        return true;
+    }
+
+    /**
+     * Assembles a fanfiction with its authors, tags and crossovers, each in ascending order of their IDs.
+     */
+    private Fanfiction toFanfiction(final FanfictionRow row) {
+        final List<Author> fanfictionAuthors = Arrays.stream(row.authorIds()).sorted()
+                .filter(authorId -> authorId != ANONYMOUS_ID) // Anon is the empty list
+                .mapToObj(authorId -> authors.get(authorId - 1))
+                .map(author -> new Author(author.name(), author.links().stream().sorted().toList()))
+                .toList();
+        final List<Tag> fanfictionTags = Arrays.stream(row.tagIds()).sorted()
+                .mapToObj(tagId -> {
+                    final TagRow tag = tags.get(tagId - 1);
+                    return new Tag(tag.name(), tag.description(), tag.isCharacter(), tag.isRelationship(),
+                            tag.fandomId() == 0 ? null : fandoms.get(tag.fandomId() - 1).name(), tag.link());
+                })
+                .toList();
+        final List<Fandom> crossovers = Arrays.stream(row.fandomIds()).sorted()
+                .mapToObj(fandomId -> fandoms.get(fandomId - 1))
+                .toList();
+        final int flags = row.flags();
+        return new FanfictionBuilder()
+                .title(row.title())
+                .chapters(row.chapters())
+                .words(row.words())
+                .language(row.language())
+                .rating(row.rating())
+                .warningNoneGiven(flag(flags, 0))
+                .warningNoneApply(flag(flags, 1))
+                .warningViolence(flag(flags, 2))
+                .warningRape(flag(flags, 3))
+                .warningDeath(flag(flags, 4))
+                .warningUnderage(flag(flags, 5))
+                .catFf(flag(flags, 6))
+                .catFm(flag(flags, 7))
+                .catMm(flag(flags, 8))
+                .catGen(flag(flags, 9))
+                .catMulti(flag(flags, 10))
+                .catOther(flag(flags, 11))
+                .completed(flag(flags, 12))
+                .lastUpdated(Instant.ofEpochMilli(row.lastUpdated()))
+                .lastChecked(Instant.ofEpochMilli(row.lastChecked()))
+                .link(row.link())
+                .authors(fanfictionAuthors)
+                .tags(fanfictionTags)
+                .crossovers(crossovers)
+                .build();
+    }
+
+    /**
+     * Reads fanfictions in chunks of {@link DbHelper#READ_CHUNK_SIZE}, passing each chunk on without holding the lock,
+     * so a slow consumer doesn't block writers.
+     * @param ids the IDs of the fanfictions to read, {@code null} for all
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     */
+    private void internalReadFanfictions(final Collection<Integer> ids, final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        Objects.requireNonNull(consumer);
+        final int[] sortedIds;
+        synchronized (this) {
+            checkSetUp();
+            if (ids == null) {
+                sortedIds = new int[fanfictionCount];
+                Arrays.setAll(sortedIds, index -> index + 1);
+            }
+            else {
+                sortedIds = ids.stream().mapToInt(Integer::intValue).filter(id -> id >= 1 && id <= fanfictionCount).sorted().distinct().toArray();
+            }
+        }
+        final List<Fanfiction> chunk = new ArrayList<>(DbHelper.READ_CHUNK_SIZE);
+        for (int from = 0; from < sortedIds.length; from += DbHelper.READ_CHUNK_SIZE) {
+            final int to = Math.min(from + DbHelper.READ_CHUNK_SIZE, sortedIds.length);
+            synchronized (this) {
+                checkSetUp();
+                for (int index = from; index < to; index++) {
+                    chunk.add(toFanfiction(readFanfictionRow(sortedIds[index])));
+                }
+            }
+            for (int index = from; index < to; index++) {
+                consumer.accept(chunk.get(index - from), sortedIds[index]);
+            }
+            chunk.clear();
+        }
+    }
+
+    @Override
+    public void readFanfictions(final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        internalReadFanfictions(null, consumer);
+    }
+
+    @Override
+    public void readFanfictions(final Collection<Integer> ids, final ObjIntConsumer<Fanfiction> consumer) throws SQLException {
+        internalReadFanfictions(Objects.requireNonNull(ids), consumer);
+    }
+
+    @Override
+    public synchronized int updateRelated(final boolean full) throws SQLException {
+        LOGGER.info("Updating related...");
+        final Instant start = Instant.now();
+        checkSetUp();
+        if (tagLinker == null) {
+            loadTagLinker();
+        }
+        int inserted = 0;
+        int lastId = full ? 0 : relatedProgress;
+        for (int relationshipId = lastId + 1; relationshipId <= tags.size(); relationshipId++) {
+            final TagRow relationship = tags.get(relationshipId - 1);
+            if (relationship == null || !relationship.isRelationship()) {
+                continue;
+            }
+            lastId = relationshipId;
+            for (String name : RelationshipParser.parse(relationship.name())) {
+                final TagMatch match = tagLinker.resolve(aliasResolver.resolve(name));
+                if (match == null) {
+                    LOGGER.debug("Unknown character {} in relationship {}", name, relationship.name());
+                    continue;
+                }
+                if (!related.contains(pair(match.tagId(), relationshipId))) {
+                    buffer.start(RECORD_RELATED);
+                    buffer.putVarInt(match.tagId());
+                    buffer.putVarInt(relationshipId);
+                    write();
+                    inserted++;
+                }
+            }
+        }
+        buffer.start(RECORD_RELATED_PROGRESS);
+        buffer.putVarInt(lastId);
+        write();
+        force();
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating related", time.toMinutes(), time.toSecondsPart());
+        return inserted;
+    }
+
+    /**
+     * Returns the IDs of the character tags related to a relationship tag.
+     * @param relationshipId the ID of the relationship tag
+     * @return the IDs in ascending order, not {@code null}
+     * @throws SQLException If the storage isn't set up.
+     */
+    public synchronized List<Integer> getRelatedCharacters(final int relationshipId) throws SQLException {
+        checkSetUp();
+        return related.stream()
+                .filter(pair -> pair.intValue() == relationshipId)
+                .map(pair -> (int) (pair >>> 32))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Recomputes the {@link SimilarityJob#DEFAULT_K} most similar fanfictions of each fanfiction, replacing the
+     * previous ones. Unlike {@link DbHelper#updateSimilarities()}, the co-occurrences of the tags aren't stored, as
+     * only the queries of the DB use them.
+     * @throws SQLException If an I/O error occurs. Nothing is changed then.
+     */
+    @Override
+    public synchronized void updateSimilarities() throws SQLException {
+        LOGGER.info("Updating similarities...");
+        final Instant start = Instant.now();
+        checkSetUp();
+        final List<Integer> fanfictionIds = new ArrayList<>();
+        final List<int[]> fanfictionTags = new ArrayList<>();
+        for (int id = 1; id <= fanfictionCount; id++) {
+            final int[] tagIds = readFanfictionRow(id).tagIds();
+            if (tagIds.length > 0) {
+                Arrays.sort(tagIds);
+                fanfictionIds.add(id);
+                fanfictionTags.add(tagIds);
+            }
+        }
+        final SimilarityJob job = new SimilarityJob(toArray(fanfictionIds), fanfictionTags.toArray(new int[0][]));
+        final List<SimilarityJob.SimilarWork> similarWorks = job.similarWorks(SimilarityJob.DEFAULT_K, SimilarityJob.DEFAULT_POSTING_BUDGET);
+        LOGGER.info("Computed {} similar works for {} works.", similarWorks.size(), job.size());
+        final Map<Integer, List<SimilarityJob.SimilarWork>> byFanfiction = new TreeMap<>();
+        for (SimilarityJob.SimilarWork similarWork : similarWorks) {
+            byFanfiction.computeIfAbsent(similarWork.fanfictionId(), id -> new ArrayList<>()).add(similarWork);
+        }
+        buffer.start(RECORD_SIMILAR_BEGIN);
+        write();
+        for (Map.Entry<Integer, List<SimilarityJob.SimilarWork>> entry : byFanfiction.entrySet()) {
+            buffer.start(RECORD_SIMILAR);
+            buffer.putVarInt(entry.getKey());
+            buffer.putIds(entry.getValue().stream()
+                    .sorted(Comparator.comparingDouble(SimilarityJob.SimilarWork::score).reversed())
+                    .mapToInt(SimilarityJob.SimilarWork::similarId)
+                    .toArray());
+            write();
+        }
+        buffer.start(RECORD_SIMILAR_END);
+        write();
+        force();
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Updating similarities", time.toMinutes(), time.toSecondsPart());
+    }
+
+    @Override
+    public synchronized List<Integer> getSimilarFanfictions(final int fanfictionId) throws SQLException {
+        checkSetUp();
+        return Arrays.stream(similar.getOrDefault(fanfictionId, new int[0])).boxed().toList();
+    }
+
+    /**
+     * Returns the number of fanfictions stored.
+     * @return the number of fanfictions
+     */
+    public synchronized int getFanfictionCount() {
+        return fanfictionCount;
+    }
+
+    /**
+     * Returns the number of bytes the records take on disk, including the outdated ones.
+     * @return the number of bytes
+     */
+    public synchronized long getSize() {
+        return log.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+}
@@ -0,0 +1,341 @@
+package org.abos.linker.db;
+
+import org.abos.common.LogUtil;
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.Tag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the fanfictions in the DB with their authors, tags and crossovers to CSV or JSON Lines, optionally gzipped.
+ * The fanfictions are streamed from the DB to the file, so the memory used does not grow with the archive.
+ */
+public final class FanfictionExporter {
+
+    /**
+     * The formats of {@link #export(Path, Format, boolean)}. Both write one line per fanfiction as it is read from the
+     * DB, so neither holds more than one fanfiction in memory. For CSV written by the DB itself via {@code COPY}, see
+     * {@link #exportCsvViaCopy(Path, boolean)}.
+     */
+    public enum Format {
+        /**
+         * A header line, then one line per fanfiction, authors, tags and crossovers joined by {@link #VALUE_SEPARATOR}.
+         */
+        CSV,
+        /**
+         * One JSON object per line and fanfiction, without a header, so the file can be read line by line as well.
+         */
+        JSON_LINES
+    }
+
+    /**
+     * Separates the authors, tags and crossovers of a fanfiction in a CSV cell.
+     */
+    public static final String VALUE_SEPARATOR = "|";
+
+    static final String CSV_HEADER = "id,title,chapters,words,language,rating," +
+            "warning_none_given,warning_none_apply,warning_violence,warning_rape,warning_death,warning_underage," +
+            "cat_ff,cat_fm,cat_mm,cat_gen,cat_multi,cat_other,completed,last_updated,last_checked,link," +
+            "authors,tags,crossovers";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Logger LOGGER = LogManager.getLogger(FanfictionExporter.class);
+
+    private final DbHelper dbHelper;
+
+    /**
+     * Creates a new {@link FanfictionExporter} instance.
+     * @param dbHelper the DB to export from, not {@code null}
+     */
+    public FanfictionExporter(final DbHelper dbHelper) {
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+    }
+
+    private static OutputStream openFile(final Path file, final boolean gzip) throws IOException {
+        final OutputStream out = Channels.newOutputStream(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        return gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Quotes a CSV cell if needed.
+     * @param value the cell, may be {@code null}
+     * @return the escaped cell, empty for {@code null}
+     */
+    static String escapeCsv(final String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int index = 0; index < value.length(); index++) {
+            final char c = value.charAt(index);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Writes a JSON string literal.
+     * @param writer the writer to write to
+     * @param value the string, {@code null} is written as {@code null}
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void writeJsonString(final Writer writer, final String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int index = 0; index < value.length(); index++) {
+            final char c = value.charAt(index);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    private static <T> String joinNames(final List<T> values, final Function<T, String> name) {
+        return escapeCsv(String.join(VALUE_SEPARATOR, values.stream().map(name).toList()));
+    }
+
+    /**
+     * Writes a fanfiction as CSV line in the columns of {@link #CSV_HEADER}.
+     * @param writer the writer to write to
+     * @param id the ID of the fanfiction
+     * @param fanfiction the fanfiction, not {@code null}
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeCsv(final Writer writer, final int id, final Fanfiction fanfiction) throws IOException {
+        writer.write(Integer.toString(id));
+        for (Object value : new Object[]{escapeCsv(fanfiction.title()), fanfiction.chapters(), fanfiction.words(),
+                escapeCsv(fanfiction.language()), escapeCsv(fanfiction.rating()),
+                fanfiction.warningNoneGiven(), fanfiction.warningNoneApply(), fanfiction.warningViolence(),
+                fanfiction.warningRape(), fanfiction.warningDeath(), fanfiction.warningUnderage(),
+                fanfiction.catFf(), fanfiction.catFm(), fanfiction.catMm(), fanfiction.catGen(), fanfiction.catMulti(), fanfiction.catOther(),
+                fanfiction.completed(), fanfiction.lastUpdated().toEpochMilli(), fanfiction.lastChecked().toEpochMilli(),
+                escapeCsv(fanfiction.link()),
+                joinNames(fanfiction.authors(), Author::name), joinNames(fanfiction.tags(), Tag::name), joinNames(fanfiction.crossovers(), Fandom::name)}) {
+            writer.write(',');
+            writer.write(value.toString());
+        }
+        writer.write('\n');
+    }
+
+    private static void writeJsonField(final Writer writer, final String name, final Object value) throws IOException {
+        writer.write(',');
+        writeJsonString(writer, name);
+        writer.write(':');
+        if (value instanceof String s) {
+            writeJsonString(writer, s);
+        }
+        else {
+            writer.write(String.valueOf(value));
+        }
+    }
+
+    /**
+     * Writes a fanfiction as JSON object on a single line.
+     * @param writer the writer to write to
+     * @param id the ID of the fanfiction
+     * @param fanfiction the fanfiction, not {@code null}
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void writeJson(final Writer writer, final int id, final Fanfiction fanfiction) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(Integer.toString(id));
+        writeJsonField(writer, "title", fanfiction.title());
+        writeJsonField(writer, "chapters", fanfiction.chapters());
+        writeJsonField(writer, "words", fanfiction.words());
+        writeJsonField(writer, "language", fanfiction.language());
+        writeJsonField(writer, "rating", fanfiction.rating());
+        writeJsonField(writer, "warningNoneGiven", fanfiction.warningNoneGiven());
+        writeJsonField(writer, "warningNoneApply", fanfiction.warningNoneApply());
+        writeJsonField(writer, "warningViolence", fanfiction.warningViolence());
+        writeJsonField(writer, "warningRape", fanfiction.warningRape());
+        writeJsonField(writer, "warningDeath", fanfiction.warningDeath());
+        writeJsonField(writer, "warningUnderage", fanfiction.warningUnderage());
+        writeJsonField(writer, "catFf", fanfiction.catFf());
+        writeJsonField(writer, "catFm", fanfiction.catFm());
+        writeJsonField(writer, "catMm", fanfiction.catMm());
+        writeJsonField(writer, "catGen", fanfiction.catGen());
+        writeJsonField(writer, "catMulti", fanfiction.catMulti());
+        writeJsonField(writer, "catOther", fanfiction.catOther());
+        writeJsonField(writer, "completed", fanfiction.completed());
+        writeJsonField(writer, "lastUpdated", fanfiction.lastUpdated().toEpochMilli());
+        writeJsonField(writer, "lastChecked", fanfiction.lastChecked().toEpochMilli());
+        writeJsonField(writer, "link", fanfiction.link());
+        writer.write(",\"authors\":[");
+        for (int index = 0; index < fanfiction.authors().size(); index++) {
+            final Author author = fanfiction.authors().get(index);
+            writer.write(index == 0 ? "{\"name\":" : ",{\"name\":");
+            writeJsonString(writer, author.name());
+            writer.write(",\"links\":[");
+            for (int linkIndex = 0; linkIndex < author.links().size(); linkIndex++) {
+                if (linkIndex > 0) {
+                    writer.write(',');
+                }
+                writeJsonString(writer, author.links().get(linkIndex));
+            }
+            writer.write("]}");
+        }
+        writer.write("],\"tags\":[");
+        for (int index = 0; index < fanfiction.tags().size(); index++) {
+            final Tag tag = fanfiction.tags().get(index);
+            writer.write(index == 0 ? "{\"name\":" : ",{\"name\":");
+            writeJsonString(writer, tag.name());
+            writeJsonField(writer, "isCharacter", tag.isCharacter());
+            writeJsonField(writer, "isRelationship", tag.isRelationship());
+            writeJsonField(writer, "fandom", tag.fandom());
+            writer.write('}');
+        }
+        writer.write("],\"crossovers\":[");
+        for (int index = 0; index < fanfiction.crossovers().size(); index++) {
+            if (index > 0) {
+                writer.write(',');
+            }
+            writeJsonString(writer, fanfiction.crossovers().get(index).name());
+        }
+        writer.write("]}\n");
+    }
+
+    /**
+     * Exports all fanfictions by reading them with {@link DbHelper#readFanfictions(java.util.function.ObjIntConsumer)}.
+     * @param file the file to write to, replaced if it exists, not {@code null}
+     * @param format the format to write, not {@code null}
+     * @param gzip if the file should be gzipped
+     * @return the number of fanfictions exported
+     * @throws IOException If an I/O error occurs.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public int export(final Path file, final Format format, final boolean gzip) throws IOException, SQLException {
+        Objects.requireNonNull(format);
+        LOGGER.info("Exporting fanfictions to {}...", file);
+        final Instant start = Instant.now();
+        final int[] count = new int[1];
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(openFile(file, gzip), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            dbHelper.readFanfictions((fanfiction, id) -> {
+                try {
+                    if (format == Format.CSV) {
+                        writeCsv(writer, id, fanfiction);
+                    }
+                    else {
+                        writeJson(writer, id, fanfiction);
+                    }
+                    count[0]++;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Exporting " + count[0] + " fanfictions", time.toMinutes(), time.toSecondsPart());
+        return count[0];
+    }
+
+    /**
+     * Reverts the sanitizing of {@link DbHelper#sanitizeString(String)} in SQL.
+     */
+    private static String unsanitized(final String column) {
+        return String.format("replace(replace(%s, '\\\"', '\"'), '\\''', '''')", column);
+    }
+
+    private static String joinedNames(final String column, final String from, final String orderBy) {
+        return String.format("(SELECT string_agg(%s, '%s' ORDER BY %s) %s)", unsanitized(column), VALUE_SEPARATOR, orderBy, from);
+    }
+
+    /**
+     * Exports all fanfictions as CSV by letting the DB write it via {@code COPY TO STDOUT}, which skips building
+     * the records in Java. Writes the same columns as {@link #export(Path, Format, boolean)}.
+     * @param file the file to write to, replaced if it exists, not {@code null}
+     * @param gzip if the file should be gzipped
+     * @return the number of fanfictions exported
+     * @throws IOException If an I/O error occurs.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public long exportCsvViaCopy(final Path file, final boolean gzip) throws IOException, SQLException {
+        LOGGER.info("Exporting fanfictions to {} via copy...", file);
+        final Instant start = Instant.now();
+        final String selectSql = "SELECT f.id, " + unsanitized("f.title") + ", chapters, words, " + unsanitized("lang.name") + ", " + unsanitized("rating.name") + ", " +
+                "warning_none_given::text, warning_none_apply::text, warning_violence::text, warning_rape::text, warning_death::text, warning_underage::text, " +
+                "cat_ff::text, cat_fm::text, cat_mm::text, cat_gen::text, cat_multi::text, cat_other::text, completed::text, last_updated, last_checked, " +
+                unsanitized("f.link") + ", " +
+                joinedNames("author.name", "FROM authored INNER JOIN author ON author_id=author.id WHERE fanfiction_id=f.id AND author_id<>1", "author_id") + ", " +
+                joinedNames("tag.name", "FROM tagged INNER JOIN tag ON tag_id=tag.id WHERE fanfiction_id=f.id", "tag_id") + ", " +
+                joinedNames("fandom.name", "FROM crossed_over INNER JOIN fandom ON fandom_id=fandom.id WHERE fanfiction_id=f.id", "fandom_id") + " " +
+                "FROM fanfiction f INNER JOIN lang ON f.lang_id=lang.id INNER JOIN rating ON f.rating_id=rating.id ORDER BY f.id";
+        final long count;
+        try (final OutputStream out = openFile(file, gzip)) {
+            out.write((CSV_HEADER + '\n').getBytes(StandardCharsets.UTF_8));
+            count = dbHelper.copyOut("COPY (" + selectSql + ") TO STDOUT WITH (FORMAT csv)", out);
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Exporting " + count + " fanfictions via copy", time.toMinutes(), time.toSecondsPart());
+        return count;
+    }
+
+    /**
+     * Exports all fanfictions. Uses the same system properties as {@link DbHelper} for the connection.
+     * @param args the file to export to, which is gzipped if it ends with {@code .gz}, and optionally the format,
+     * either {@code csv} (default), {@code jsonl} or {@code copy} for CSV via {@code COPY TO STDOUT}
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length == 0) {
+            System.err.println("Usage: FanfictionExporter <file>[.gz] [csv|jsonl|copy]");
+            return;
+        }
+        final Path file = Path.of(args[0]);
+        final boolean gzip = args[0].endsWith(".gz");
+        final String format = args.length > 1 ? args[1] : "csv";
+        final FanfictionExporter exporter = new FanfictionExporter(new DbHelper());
+        switch (format) {
+            case "csv" -> exporter.export(file, Format.CSV, gzip);
+            case "jsonl" -> exporter.export(file, Format.JSON_LINES, gzip);
+            case "copy" -> exporter.exportCsvViaCopy(file, gzip);
+            default -> System.err.println("Unknown format " + format + "!");
+        }
+    }
+
+}
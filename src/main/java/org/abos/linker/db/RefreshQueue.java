@@ -0,0 +1,158 @@
+package org.abos.linker.db;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * Orders fanfictions by when they are due to be checked for updates again. A work that was updated shortly before
+ * its last check is likely to be updated again soon, so the interval until the next check grows with the time the
+ * work went without update, and is four times longer for completed works. Checking the works in order of their due
+ * time spends a fixed request budget on the works most likely to have changed.
+ * <p>
+ * Not safe to use from multiple threads.
+ */
+public final class RefreshQueue {
+
+    /**
+     * What is known about a fanfiction to schedule its next check.
+     * @param id the ID of the fanfiction
+     * @param link the URL of the fanfiction, not {@code null}
+     * @param completed if the fanfiction was completed at the last check
+     * @param lastUpdated the last update known at the last check, not {@code null}
+     * @param lastChecked the last check, not {@code null}
+     */
+    public record Work(int id, String link, boolean completed, Instant lastUpdated, Instant lastChecked) {
+
+        public Work {
+            Objects.requireNonNull(link);
+            Objects.requireNonNull(lastUpdated);
+            Objects.requireNonNull(lastChecked);
+        }
+    }
+
+    private record Scheduled(Work work, Instant due) {
+
+    }
+
+    /**
+     * The shortest interval between checks of a work in progress.
+     */
+    public static final Duration MIN_INTERVAL = Duration.ofHours(6);
+
+    /**
+     * The longest interval between checks of a work in progress.
+     */
+    public static final Duration MAX_INTERVAL = Duration.ofDays(90);
+
+    /**
+     * The shortest interval between checks of a completed work.
+     */
+    public static final Duration MIN_COMPLETED_INTERVAL = Duration.ofDays(7);
+
+    /**
+     * The longest interval between checks of a completed work.
+     */
+    public static final Duration MAX_COMPLETED_INTERVAL = Duration.ofDays(365);
+
+    /**
+     * The interval between checks of a work in progress relative to the time it went without update.
+     */
+    static final double INTERVAL_FACTOR = 0.25;
+
+    /**
+     * The interval between checks of a completed work relative to the time it went without update.
+     */
+    static final double COMPLETED_INTERVAL_FACTOR = 1.0;
+
+    private final PriorityQueue<Scheduled> queue = new PriorityQueue<>(Comparator.comparing(Scheduled::due));
+
+    public RefreshQueue() {
+        /* Nothing to initialize. */
+    }
+
+    private static Duration clamp(final Duration interval, final Duration min, final Duration max) {
+        if (interval.compareTo(min) < 0) {
+            return min;
+        }
+        if (interval.compareTo(max) > 0) {
+            return max;
+        }
+        return interval;
+    }
+
+    /**
+     * Returns the interval after its last check that a fanfiction is due to be checked again.
+     * @param work the fanfiction, not {@code null}
+     * @return the interval, not {@code null}
+     */
+    public static Duration interval(final Work work) {
+        Duration unchanged = Duration.between(work.lastUpdated(), work.lastChecked());
+        if (unchanged.isNegative()) {
+            unchanged = Duration.ZERO;
+        }
+        if (work.completed()) {
+            return clamp(Duration.ofMillis((long) (unchanged.toMillis() * COMPLETED_INTERVAL_FACTOR)), MIN_COMPLETED_INTERVAL, MAX_COMPLETED_INTERVAL);
+        }
+        return clamp(Duration.ofMillis((long) (unchanged.toMillis() * INTERVAL_FACTOR)), MIN_INTERVAL, MAX_INTERVAL);
+    }
+
+    /**
+     * Schedules a fanfiction for its next regular check.
+     * @param work the fanfiction, not {@code null}
+     */
+    public void add(final Work work) {
+        add(work, work.lastChecked().plus(interval(work)));
+    }
+
+    /**
+     * Schedules a fanfiction for a check at the specified time, e.g. to retry a failed check.
+     * @param work the fanfiction, not {@code null}
+     * @param due the time of the check, not {@code null}
+     */
+    public void add(final Work work, final Instant due) {
+        queue.add(new Scheduled(Objects.requireNonNull(work), Objects.requireNonNull(due)));
+    }
+
+    /**
+     * Returns the time the next fanfiction is due.
+     * @return the time, {@code null} if the queue is empty
+     */
+    public Instant nextDue() {
+        final Scheduled next = queue.peek();
+        return next == null ? null : next.due();
+    }
+
+    /**
+     * Removes the fanfiction that is due first if it is due at the specified time.
+     * @param now the current time, not {@code null}
+     * @return the fanfiction, {@code null} if none is due yet
+     */
+    public Work poll(final Instant now) {
+        final Scheduled next = queue.peek();
+        if (next == null || next.due().isAfter(now)) {
+            return null;
+        }
+        return queue.poll().work();
+    }
+
+    /**
+     * Returns the number of fanfictions due at the specified time, to see how far behind the checks are.
+     * @param now the current time, not {@code null}
+     * @return the number of fanfictions due
+     */
+    public int countDue(final Instant now) {
+        return (int) queue.stream().filter(scheduled -> !scheduled.due().isAfter(now)).count();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public void clear() {
+        queue.clear();
+    }
+
+}
@@ -0,0 +1,202 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.WorkStats;
+import org.abos.linker.scraper.Ao3Scraper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static org.abos.linker.db.DbHelper.LOG_SQL_MSG;
+import static org.abos.linker.db.DbHelper.TABLE_FANFICTION;
+
+/**
+ * Keeps the fanfictions in the DB fresh by checking them for updates in the order of a {@link RefreshQueue}, at most
+ * a fixed number of checks per minute. Meant to run for a long time next to the crawls, which add new fanfictions.
+ * The queue is rebuilt from the DB every {@link #RELOAD_INTERVAL}, so fanfictions added in the meantime are
+ * scheduled as well.
+ */
+public final class RefreshScheduler {
+
+    public static final int DEFAULT_CHECKS_PER_MINUTE = 20;
+
+    public static final Duration RELOAD_INTERVAL = Duration.ofHours(1);
+
+    /**
+     * The delay before a failed check is retried.
+     */
+    public static final Duration RETRY_DELAY = Duration.ofHours(1);
+
+    private static final Logger LOGGER = LogManager.getLogger(RefreshScheduler.class);
+
+    private final RefreshQueue queue = new RefreshQueue();
+
+    /**
+     * The statistics of the checks not yet appended to the history.
+     */
+    private final List<StatsHistory.Sample> samples = new ArrayList<>();
+
+    private final DbHelper dbHelper;
+
+    private final Ao3Scraper scraper;
+
+    private final long checkIntervalNanos;
+
+    private long nextCheckNanos = System.nanoTime();
+
+    private int checked;
+
+    private int updated;
+
+    /**
+     * Creates a new {@link RefreshScheduler} instance.
+     * @param dbHelper the DB with the fanfictions to check, not {@code null}
+     * @param scraper the scraper to check the fanfictions with, not {@code null}
+     * @param checksPerMinute the maximum number of checks per minute, positive
+     * @throws IllegalArgumentException If {@code checksPerMinute} isn't positive.
+     */
+    public RefreshScheduler(final DbHelper dbHelper, final Ao3Scraper scraper, final int checksPerMinute) {
+        if (checksPerMinute <= 0) {
+            throw new IllegalArgumentException("Checks per minute must be positive!");
+        }
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+        this.scraper = Objects.requireNonNull(scraper);
+        this.checkIntervalNanos = TimeUnit.MINUTES.toNanos(1) / checksPerMinute;
+    }
+
+    /**
+     * Schedules all fanfictions in the DB, replacing the schedule so far.
+     * @return the number of fanfictions scheduled
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public int load() throws SQLException {
+        queue.clear();
+        final String selectSql = String.format("SELECT id, link, completed, last_updated, last_checked FROM %s", TABLE_FANFICTION);
+        try (final Connection connection = dbHelper.getConnection()) {
+            // stream the rows instead of loading them all at once
+            connection.setAutoCommit(false);
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setFetchSize(DbHelper.FETCH_SIZE);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        queue.add(new RefreshQueue.Work(rs.getInt(1), DbHelper.getString(rs, 2), rs.getBoolean(3),
+                                Instant.ofEpochMilli(rs.getLong(4)), Instant.ofEpochMilli(rs.getLong(5))));
+                    }
+                }
+            }
+            connection.commit();
+        }
+        return queue.size();
+    }
+
+    /**
+     * Waits until the next check fits into the checks per minute.
+     */
+    private void pace(final String host) throws InterruptedException {
+        final long wait = nextCheckNanos - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        nextCheckNanos = Math.max(nextCheckNanos, System.nanoTime()) + checkIntervalNanos;
+    }
+
+    /**
+     * Checks the fanfiction that is due first for updates, if any is due, and schedules its next check.
+     * A failed check is retried after {@link #RETRY_DELAY}. The statistics of the check are appended to the
+     * {@link StatsHistory} in batches, see {@link #flush()}.
+     * @return {@code true} if a fanfiction was due, else {@code false}
+     * @throws SQLException If an SQL exception occurs.
+     * @throws InterruptedException If interrupted while waiting for the next check.
+     */
+    public boolean checkNext() throws SQLException, InterruptedException {
+        final RefreshQueue.Work work = queue.poll(Instant.now());
+        if (work == null) {
+            return false;
+        }
+        final WorkStats stats;
+        try {
+            stats = scraper.scrapeWorkStats(work.link(), this::pace);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Checking {} failed: {}", work.link(), ex.getMessage());
+            queue.add(work, Instant.now().plus(RETRY_DELAY));
+            return true;
+        }
+        final Instant now = Instant.now();
+        checked++;
+        if (!dbHelper.updateFanfictionStats(work.id(), stats, now)) {
+            // removed from the DB in the meantime
+            return true;
+        }
+        if (!stats.lastUpdated().equals(work.lastUpdated())) {
+            LOGGER.debug("{} was updated", work.link());
+            updated++;
+        }
+        samples.add(new StatsHistory.Sample(work.id(), now, stats.chapters(), stats.words(), stats.engagement()));
+        if (samples.size() == DbHelper.BATCH_SIZE) {
+            flush();
+        }
+        queue.add(new RefreshQueue.Work(work.id(), work.link(), stats.completed(), stats.lastUpdated(), now));
+        return true;
+    }
+
+    /**
+     * Appends the statistics of the checks so far to the history.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public void flush() throws SQLException {
+        dbHelper.getStatsHistory().append(samples);
+        samples.clear();
+    }
+
+    /**
+     * Checks the fanfictions for updates whenever they are due until interrupted.
+     * @throws SQLException If an SQL exception occurs.
+     * @throws InterruptedException If interrupted.
+     */
+    public void run() throws SQLException, InterruptedException {
+        Instant reload = Instant.now();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!Instant.now().isBefore(reload)) {
+                    LOGGER.info("Checked {} fanfictions, {} of them updated", checked, updated);
+                    flush();
+                    final int scheduled = load();
+                    LOGGER.info("Scheduled {} fanfictions, {} of them due", scheduled, queue.countDue(Instant.now()));
+                    reload = Instant.now().plus(RELOAD_INTERVAL);
+                }
+                if (!checkNext()) {
+                    final Instant nextDue = queue.nextDue();
+                    final Instant wakeUp = nextDue == null || nextDue.isAfter(reload) ? reload : nextDue;
+                    final Duration wait = Duration.between(Instant.now(), wakeUp);
+                    if (!wait.isNegative()) {
+                        Thread.sleep(wait.toMillis());
+                    }
+                }
+            }
+        }
+        finally {
+            flush();
+        }
+    }
+
+    /**
+     * Keeps the fanfictions in the DB fresh. Uses the same system properties as {@link DbHelper} for the connection.
+     * @param args optionally the maximum number of checks per minute, {@value #DEFAULT_CHECKS_PER_MINUTE} by default
+     */
+    public static void main(String[] args) throws SQLException, InterruptedException {
+        final int checksPerMinute = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CHECKS_PER_MINUTE;
+        new RefreshScheduler(new DbHelper(), new Ao3Scraper(), checksPerMinute).run();
+    }
+
+}
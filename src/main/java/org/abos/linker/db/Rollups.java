@@ -0,0 +1,514 @@
+package org.abos.linker.db;
+
+import org.abos.common.LogUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.abos.linker.db.DbHelper.LOG_SQL_MSG;
+import static org.abos.linker.db.DbHelper.TABLE_FANFICTION;
+import static org.abos.linker.db.DbHelper.TABLE_RATING;
+import static org.abos.linker.db.DbHelper.TABLE_ROLLUP_RATING_MONTH;
+import static org.abos.linker.db.DbHelper.TABLE_ROLLUP_TAG;
+import static org.abos.linker.db.DbHelper.TABLE_TAG;
+
+/**
+ * Aggregates of the fanfictions per tag and per rating and month of the last update, so dashboards don't have to scan
+ * and join all fanfictions for each question. The aggregates are kept up to date by applying the difference each
+ * written fanfiction makes, see {@link #snapshot(Connection, int)} and {@link #apply(Connection, Contribution, Contribution)}.
+ * {@link #rebuild(int)} recomputes them from scratch, in parallel over ranges of fanfiction IDs.
+ * <p>
+ * Safe to use from multiple threads.
+ */
+public final class Rollups {
+
+    /**
+     * What a fanfiction adds to the aggregates.
+     * @param ratingId the ID of its rating
+     * @param month the month of its last update, e.g. {@code 202401}
+     * @param words the number of words
+     * @param completed if it is completed
+     * @param tagIds the IDs of its tags, not {@code null}
+     */
+    record Contribution(int ratingId, int month, int words, boolean completed, List<Integer> tagIds) {
+
+        Contribution {
+            Objects.requireNonNull(tagIds);
+        }
+    }
+
+    /**
+     * The aggregates of the fanfictions with a tag.
+     * @param tagId the ID of the tag
+     * @param name the name of the tag, not {@code null}
+     * @param works the number of fanfictions
+     * @param words the sum of their words
+     * @param completed the number of completed fanfictions
+     */
+    public record TagRollup(int tagId, String name, int works, long words, int completed) {
+
+        public TagRollup {
+            Objects.requireNonNull(name);
+        }
+
+        public double completedShare() {
+            return works == 0 ? 0 : (double) completed / works;
+        }
+    }
+
+    /**
+     * The aggregates of the fanfictions of a rating last updated in a month.
+     * @param rating the name of the rating, not {@code null}
+     * @param month the month, not {@code null}
+     * @param works the number of fanfictions
+     * @param words the sum of their words
+     * @param completed the number of completed fanfictions
+     */
+    public record RatingMonthRollup(String rating, YearMonth month, int works, long words, int completed) {
+
+        public RatingMonthRollup {
+            Objects.requireNonNull(rating);
+            Objects.requireNonNull(month);
+        }
+    }
+
+    /**
+     * The kinds of tags to query the aggregates of.
+     */
+    public enum TagKind {
+        ANY("TRUE"),
+        CHARACTER("is_character"),
+        RELATIONSHIP("is_relationship");
+
+        private final String condition;
+
+        TagKind(final String condition) {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * The key of {@value DbHelper#TABLE_ROLLUP_RATING_MONTH}.
+     */
+    private record RatingMonth(int ratingId, int month) {
+
+    }
+
+    /**
+     * The changes to the aggregates, the works, words and completed works to add per key.
+     */
+    private static final class Deltas {
+
+        private final Map<Integer, long[]> tags = new HashMap<>();
+
+        private final Map<RatingMonth, long[]> ratingMonths = new HashMap<>();
+
+        private static void add(final long[] delta, final int works, final long words, final int completed) {
+            delta[0] += works;
+            delta[1] += words;
+            delta[2] += completed;
+        }
+
+        void add(final Contribution contribution, final int sign) {
+            final int completed = contribution.completed() ? sign : 0;
+            for (int tagId : contribution.tagIds()) {
+                add(tags.computeIfAbsent(tagId, id -> new long[3]), sign, (long) sign * contribution.words(), completed);
+            }
+            add(ratingMonths.computeIfAbsent(new RatingMonth(contribution.ratingId(), contribution.month()), key -> new long[3]),
+                    sign, (long) sign * contribution.words(), completed);
+        }
+
+        void add(final int tagId, final int works, final long words, final int completed) {
+            add(tags.computeIfAbsent(tagId, id -> new long[3]), works, words, completed);
+        }
+
+        void add(final RatingMonth key, final int works, final long words, final int completed) {
+            add(ratingMonths.computeIfAbsent(key, k -> new long[3]), works, words, completed);
+        }
+
+        void addAll(final Deltas other) {
+            other.tags.forEach((tagId, delta) -> add(tagId, (int) delta[0], delta[1], (int) delta[2]));
+            other.ratingMonths.forEach((key, delta) -> add(key, (int) delta[0], delta[1], (int) delta[2]));
+        }
+    }
+
+    /**
+     * The number of ID ranges per thread of {@link #rebuild(int)}, so threads finishing early take over more ranges.
+     */
+    static final int RANGES_PER_THREAD = 4;
+
+    private static final Logger LOGGER = LogManager.getLogger(Rollups.class);
+
+    private final DbHelper dbHelper;
+
+    /**
+     * Creates a new {@link Rollups} instance.
+     * @param dbHelper the DB with the aggregates, not {@code null}
+     */
+    public Rollups(final DbHelper dbHelper) {
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+    }
+
+    /**
+     * Returns the month of an instant as an int, e.g. {@code 202401}.
+     */
+    static int month(final Instant instant) {
+        final YearMonth month = YearMonth.from(instant.atZone(ZoneOffset.UTC));
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    /**
+     * The same as {@link #month(Instant)} in SQL, for a column of millis since epoch.
+     */
+    private static String monthSql(final String column) {
+        return String.format("CAST(TO_CHAR(TO_TIMESTAMP(%s / 1000.0) AT TIME ZONE 'UTC', 'YYYYMM') AS INT)", column);
+    }
+
+    /**
+     * Reads what a fanfiction currently adds to the aggregates. The row of the fanfiction stays locked until the end
+     * of the transaction, so no other writer can change it between this snapshot and the matching
+     * {@link #apply(Connection, Contribution, Contribution)}.
+     * @param connection the connection to use, not {@code null}
+     * @param fanfictionId the ID of the fanfiction
+     * @return the contribution, {@code null} if the fanfiction is not in the DB
+     * @throws SQLException If an SQL exception occurs.
+     */
+    Contribution snapshot(final Connection connection, final int fanfictionId) throws SQLException {
+        final String selectSql = String.format("SELECT rating_id, last_updated, words, completed FROM %s WHERE id=? FOR UPDATE", TABLE_FANFICTION);
+        final int ratingId;
+        final Instant lastUpdated;
+        final int words;
+        final boolean completed;
+        LOGGER.debug(LOG_SQL_MSG, selectSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+            selectStmt.setInt(1, fanfictionId);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                ratingId = rs.getInt(1);
+                lastUpdated = Instant.ofEpochMilli(rs.getLong(2));
+                words = rs.getInt(3);
+                completed = rs.getBoolean(4);
+            }
+        }
+        final List<Integer> tagIds = new ArrayList<>();
+        final String selectTaggedSql = "SELECT tag_id FROM tagged WHERE fanfiction_id=?";
+        LOGGER.debug(LOG_SQL_MSG, selectTaggedSql);
+        try (final PreparedStatement selectStmt = connection.prepareStatement(selectTaggedSql)) {
+            selectStmt.setInt(1, fanfictionId);
+            try (final ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    tagIds.add(rs.getInt(1));
+                }
+            }
+        }
+        return new Contribution(ratingId, month(lastUpdated), words, completed, tagIds);
+    }
+
+    private static boolean isZero(final long[] delta) {
+        return delta[0] == 0 && delta[1] == 0 && delta[2] == 0;
+    }
+
+    /**
+     * Sets the works, words and completed works of a delta as parameters of a statement and adds it to the batch,
+     * executing the batch every {@link DbHelper#BATCH_SIZE} rows.
+     * @return the number of rows in the batch afterwards
+     */
+    private static int addDelta(final PreparedStatement stmt, final int index, final long[] delta, final int batched) throws SQLException {
+        stmt.setInt(index, (int) delta[0]);
+        stmt.setLong(index + 1, delta[1]);
+        stmt.setInt(index + 2, (int) delta[2]);
+        stmt.addBatch();
+        if (batched + 1 == DbHelper.BATCH_SIZE) {
+            stmt.executeBatch();
+            return 0;
+        }
+        return batched + 1;
+    }
+
+    private static void write(final Connection connection, final Deltas deltas) throws SQLException {
+        // sorted, so concurrent transactions lock the aggregate rows in the same order and don't deadlock each other
+        final List<Map.Entry<Integer, long[]>> tags = deltas.tags.entrySet().stream()
+                .filter(entry -> !isZero(entry.getValue()))
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+        if (!tags.isEmpty()) {
+            final String upsertSql = String.format("INSERT INTO %1$s (tag_id, works, words, completed) VALUES (?,?,?,?) ON CONFLICT (tag_id) DO UPDATE " +
+                    "SET works=%1$s.works+EXCLUDED.works, words=%1$s.words+EXCLUDED.words, completed=%1$s.completed+EXCLUDED.completed", TABLE_ROLLUP_TAG);
+            LOGGER.debug(LOG_SQL_MSG, upsertSql);
+            try (final PreparedStatement upsertStmt = connection.prepareStatement(upsertSql)) {
+                int batched = 0;
+                for (Map.Entry<Integer, long[]> entry : tags) {
+                    upsertStmt.setInt(1, entry.getKey());
+                    batched = addDelta(upsertStmt, 2, entry.getValue(), batched);
+                }
+                if (batched > 0) {
+                    upsertStmt.executeBatch();
+                }
+            }
+        }
+        final List<Map.Entry<RatingMonth, long[]>> ratingMonths = deltas.ratingMonths.entrySet().stream()
+                .filter(entry -> !isZero(entry.getValue()))
+                .sorted(Map.Entry.comparingByKey(Comparator.comparingInt(RatingMonth::ratingId).thenComparingInt(RatingMonth::month)))
+                .toList();
+        if (!ratingMonths.isEmpty()) {
+            final String upsertSql = String.format("INSERT INTO %1$s (rating_id, updated_month, works, words, completed) VALUES (?,?,?,?,?) ON CONFLICT (rating_id, updated_month) DO UPDATE " +
+                    "SET works=%1$s.works+EXCLUDED.works, words=%1$s.words+EXCLUDED.words, completed=%1$s.completed+EXCLUDED.completed", TABLE_ROLLUP_RATING_MONTH);
+            LOGGER.debug(LOG_SQL_MSG, upsertSql);
+            try (final PreparedStatement upsertStmt = connection.prepareStatement(upsertSql)) {
+                int batched = 0;
+                for (Map.Entry<RatingMonth, long[]> entry : ratingMonths) {
+                    upsertStmt.setInt(1, entry.getKey().ratingId());
+                    upsertStmt.setInt(2, entry.getKey().month());
+                    batched = addDelta(upsertStmt, 3, entry.getValue(), batched);
+                }
+                if (batched > 0) {
+                    upsertStmt.executeBatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the difference between two contributions of a fanfiction to the aggregates.
+     * @param connection the connection to use, not {@code null}
+     * @param before the contribution before the fanfiction was written, {@code null} if it is new
+     * @param after the contribution after the fanfiction was written, {@code null} if it was removed
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void apply(final Connection connection, final Contribution before, final Contribution after) throws SQLException {
+        final Deltas deltas = new Deltas();
+        if (before != null) {
+            deltas.add(before, -1);
+        }
+        if (after != null) {
+            deltas.add(after, 1);
+        }
+        write(connection, deltas);
+    }
+
+    /**
+     * Recomputes the aggregates of a single tag, e.g. after another tag was merged into it.
+     * @param connection the connection to use, not {@code null}
+     * @param tagId the ID of the tag
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void recomputeTag(final Connection connection, final int tagId) throws SQLException {
+        final String deleteSql = String.format("DELETE FROM %s WHERE tag_id=?", TABLE_ROLLUP_TAG);
+        LOGGER.debug(LOG_SQL_MSG, deleteSql);
+        try (final PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+            deleteStmt.setInt(1, tagId);
+            deleteStmt.execute();
+        }
+        final String insertSql = String.format("INSERT INTO %s (tag_id, works, words, completed) " +
+                "SELECT tag_id, COUNT(*), SUM(words), COUNT(*) FILTER (WHERE completed) FROM tagged INNER JOIN %s ON fanfiction_id=%s.id " +
+                "WHERE tag_id=? GROUP BY tag_id", TABLE_ROLLUP_TAG, TABLE_FANFICTION, TABLE_FANFICTION);
+        LOGGER.debug(LOG_SQL_MSG, insertSql);
+        try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
+            insertStmt.setInt(1, tagId);
+            insertStmt.execute();
+        }
+    }
+
+    /**
+     * Removes the aggregates of a tag, e.g. before the tag is removed.
+     * @param connection the connection to use, not {@code null}
+     * @param tagId the ID of the tag
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void removeTag(final Connection connection, final int tagId) throws SQLException {
+        final String deleteSql = String.format("DELETE FROM %s WHERE tag_id=?", TABLE_ROLLUP_TAG);
+        LOGGER.debug(LOG_SQL_MSG, deleteSql);
+        try (final PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+            deleteStmt.setInt(1, tagId);
+            deleteStmt.execute();
+        }
+    }
+
+    /**
+     * Aggregates the fanfictions in a range of IDs.
+     */
+    private Deltas aggregate(final int fromId, final int toId) throws SQLException {
+        final Deltas deltas = new Deltas();
+        try (final Connection connection = dbHelper.getConnection()) {
+            final String selectTagSql = String.format("SELECT tag_id, COUNT(*), SUM(words), COUNT(*) FILTER (WHERE completed) " +
+                    "FROM tagged INNER JOIN %s ON fanfiction_id=%s.id WHERE fanfiction_id >= ? AND fanfiction_id < ? GROUP BY tag_id",
+                    TABLE_FANFICTION, TABLE_FANFICTION);
+            LOGGER.debug(LOG_SQL_MSG, selectTagSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectTagSql)) {
+                selectStmt.setInt(1, fromId);
+                selectStmt.setInt(2, toId);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        deltas.add(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getInt(4));
+                    }
+                }
+            }
+            final String selectRatingMonthSql = String.format("SELECT rating_id, %s AS updated_month, COUNT(*), SUM(words), COUNT(*) FILTER (WHERE completed) " +
+                    "FROM %s WHERE id >= ? AND id < ? GROUP BY rating_id, updated_month", monthSql("last_updated"), TABLE_FANFICTION);
+            LOGGER.debug(LOG_SQL_MSG, selectRatingMonthSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectRatingMonthSql)) {
+                selectStmt.setInt(1, fromId);
+                selectStmt.setInt(2, toId);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        deltas.add(new RatingMonth(rs.getInt(1), rs.getInt(2)), rs.getInt(3), rs.getLong(4), rs.getInt(5));
+                    }
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Recomputes all aggregates from scratch. The fanfictions are split into ranges of IDs that are aggregated in
+     * parallel, each with its own connection, and the partial aggregates are written in one transaction. Fanfictions
+     * written while rebuilding may be missed, so nothing else should write fanfictions in the meantime.
+     * @param threads the number of threads to aggregate with, positive
+     * @throws IllegalArgumentException If {@code threads} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    public void rebuild(final int threads) throws SQLException, InterruptedException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive!");
+        }
+        LOGGER.info("Rebuilding rollups...");
+        final Instant start = Instant.now();
+        final int minId, maxId;
+        try (final Connection connection = dbHelper.getConnection()) {
+            final String selectSql = String.format("SELECT COALESCE(MIN(id), 0), COALESCE(MAX(id), -1) FROM %s", TABLE_FANFICTION);
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql);
+                 final ResultSet rs = selectStmt.executeQuery()) {
+                rs.next();
+                minId = rs.getInt(1);
+                maxId = rs.getInt(2);
+            }
+        }
+        final Deltas total = new Deltas();
+        if (maxId >= minId) {
+            final int ranges = threads * RANGES_PER_THREAD;
+            final int rangeSize = Math.max(1, (int) (((long) maxId - minId + ranges) / ranges));
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final List<Future<Deltas>> futures = new ArrayList<>();
+                for (long from = minId; from <= maxId; from += rangeSize) {
+                    final int fromId = (int) from;
+                    final int toId = (int) Math.min(from + rangeSize, (long) maxId + 1);
+                    futures.add(executor.submit(() -> aggregate(fromId, toId)));
+                }
+                for (Future<Deltas> future : futures) {
+                    total.addAll(future.get());
+                }
+            }
+            catch (ExecutionException ex) {
+                if (ex.getCause() instanceof SQLException sqlEx) {
+                    throw sqlEx;
+                }
+                throw new IllegalStateException(ex.getCause());
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        try (final Connection connection = dbHelper.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (String table : List.of(TABLE_ROLLUP_TAG, TABLE_ROLLUP_RATING_MONTH)) {
+                    final String deleteSql = "DELETE FROM " + table;
+                    LOGGER.debug(LOG_SQL_MSG, deleteSql);
+                    try (final PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+                        deleteStmt.execute();
+                    }
+                }
+                write(connection, total);
+                dbHelper.notifyWrites(connection);
+                connection.commit();
+            }
+            catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+        final Duration time = Duration.between(start, Instant.now());
+        LOGGER.info(LogUtil.LOG_TIME_MSG, "Rebuilding rollups", time.toMinutes(), time.toSecondsPart());
+    }
+
+    /**
+     * Returns the aggregates of the tags of a kind with the most fanfictions.
+     * @param kind the kind of tags, not {@code null}
+     * @param limit the maximum number of tags to return, positive
+     * @return the aggregates, the tag with the most fanfictions first, not {@code null}
+     * @throws IllegalArgumentException If {@code limit} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public List<TagRollup> getTagRollups(final TagKind kind, final int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive!");
+        }
+        final String selectSql = String.format("SELECT tag_id, name, works, words, completed FROM %1$s INNER JOIN %2$s ON tag_id=%2$s.id " +
+                "WHERE %3$s AND works > 0 ORDER BY works DESC, tag_id LIMIT ?", TABLE_ROLLUP_TAG, TABLE_TAG, kind.condition);
+        final List<TagRollup> rollups = new ArrayList<>();
+        try (final Connection connection = dbHelper.getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, limit);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        rollups.add(new TagRollup(rs.getInt(1), DbHelper.getString(rs, 2), rs.getInt(3), rs.getLong(4), rs.getInt(5)));
+                    }
+                }
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * Returns the aggregates per rating and month of the last update within a range of months.
+     * @param from the first month, not {@code null}
+     * @param to the last month, inclusive, not {@code null}
+     * @return the aggregates ordered by month and rating, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public List<RatingMonthRollup> getRatingMonthRollups(final YearMonth from, final YearMonth to) throws SQLException {
+        final String selectSql = String.format("SELECT %2$s.name, updated_month, works, words, completed FROM %1$s INNER JOIN %2$s ON rating_id=%2$s.id " +
+                "WHERE updated_month >= ? AND updated_month <= ? AND works > 0 ORDER BY updated_month, rating_id", TABLE_ROLLUP_RATING_MONTH, TABLE_RATING);
+        final List<RatingMonthRollup> rollups = new ArrayList<>();
+        try (final Connection connection = dbHelper.getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, from.getYear() * 100 + from.getMonthValue());
+                selectStmt.setInt(2, to.getYear() * 100 + to.getMonthValue());
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        final int month = rs.getInt(2);
+                        rollups.add(new RatingMonthRollup(DbHelper.getString(rs, 1), YearMonth.of(month / 100, month % 100),
+                                rs.getInt(3), rs.getLong(4), rs.getInt(5)));
+                    }
+                }
+            }
+        }
+        return rollups;
+    }
+
+}
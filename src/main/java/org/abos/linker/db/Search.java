@@ -0,0 +1,282 @@
+package org.abos.linker.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.abos.linker.db.DbHelper.LOG_SQL_MSG;
+import static org.abos.linker.db.DbHelper.TABLE_AUTHOR;
+import static org.abos.linker.db.DbHelper.TABLE_FANFICTION;
+import static org.abos.linker.db.DbHelper.TABLE_RATING;
+import static org.abos.linker.db.DbHelper.TABLE_TAG;
+
+/**
+ * Ranked full-text search over the fanfictions and tags, backed by {@code tsvector} columns with GIN indexes. The
+ * vector of a tag is generated from its name and description by the DB. The vector of a fanfiction also holds the
+ * names of its tags, so it is refreshed by {@link DbHelper} whenever the fanfiction or its tags are written, see
+ * {@link #refresh(Connection, int)}.
+ * <p>
+ * Results are paged by keyset, i.e. each page continues after the rank and ID of the last hit of the previous page
+ * instead of skipping an OFFSET. Pages neither repeat nor skip hits when fanfictions are written in between, but
+ * every page still ranks all matches, as the rank is computed per query and can't be served from an index.
+ */
+public final class Search {
+
+    /**
+     * The text search configuration of the vectors and queries.
+     */
+    public static final String CONFIG = "english";
+
+    /**
+     * A fanfiction or tag matching a query.
+     * @param id the ID of the fanfiction or tag
+     * @param name the title of the fanfiction or the name of the tag, not {@code null}
+     * @param rank how well it matches, higher is better
+     */
+    public record Hit(int id, String name, float rank) {
+
+        public Hit {
+            Objects.requireNonNull(name);
+        }
+    }
+
+    /**
+     * Where a page of hits ends, to continue the search after it.
+     * @param rank the rank of the last hit
+     * @param id the ID of the last hit
+     */
+    public record Cursor(float rank, int id) {
+
+    }
+
+    /**
+     * A page of hits.
+     * @param hits the hits, best first, not {@code null}
+     * @param next the cursor to get the next page with, {@code null} if this is the last page
+     */
+    public record Page(List<Hit> hits, Cursor next) {
+
+        public Page {
+            hits = List.copyOf(hits);
+        }
+    }
+
+    /**
+     * The vector of a fanfiction: its title weighted above the names of its tags.
+     */
+    private static final String FANFICTION_VECTOR_SQL = String.format("setweight(to_tsvector('%1$s', title), 'A') || " +
+            "setweight(to_tsvector('%1$s', COALESCE((SELECT string_agg(name, ' ') FROM tagged INNER JOIN %2$s ON tag_id=%2$s.id " +
+            "WHERE fanfiction_id=%3$s.id), '')), 'B')", CONFIG, TABLE_TAG, TABLE_FANFICTION);
+
+    private static final Logger LOGGER = LogManager.getLogger(Search.class);
+
+    private final DbHelper dbHelper;
+
+    /**
+     * Creates a new {@link Search} instance.
+     * @param dbHelper the DB to search, not {@code null}
+     */
+    public Search(final DbHelper dbHelper) {
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+    }
+
+    /**
+     * Recomputes the vector of a fanfiction after it or its tags were written.
+     * @param connection the connection to use, not {@code null}
+     * @param fanfictionId the ID of the fanfiction
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void refresh(final Connection connection, final int fanfictionId) throws SQLException {
+        final String updateSql = String.format("UPDATE %s SET search=%s WHERE id=?", TABLE_FANFICTION, FANFICTION_VECTOR_SQL);
+        LOGGER.debug(LOG_SQL_MSG, updateSql);
+        try (final PreparedStatement updateStmt = connection.prepareStatement(updateSql)) {
+            updateStmt.setInt(1, fanfictionId);
+            updateStmt.execute();
+        }
+    }
+
+    /**
+     * Recomputes the vectors of all fanfictions with a tag, e.g. after another tag was merged into it.
+     * @param connection the connection to use, not {@code null}
+     * @param tagId the ID of the tag
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void refreshTagged(final Connection connection, final int tagId) throws SQLException {
+        final String updateSql = String.format("UPDATE %s SET search=%s WHERE id IN (SELECT fanfiction_id FROM tagged WHERE tag_id=?)",
+                TABLE_FANFICTION, FANFICTION_VECTOR_SQL);
+        LOGGER.debug(LOG_SQL_MSG, updateSql);
+        try (final PreparedStatement updateStmt = connection.prepareStatement(updateSql)) {
+            updateStmt.setInt(1, tagId);
+            updateStmt.execute();
+        }
+    }
+
+    /**
+     * Runs a search whose SQL selects ID, name and rank, ordered by rank and ID, with the parameters of the keyset
+     * and limit last.
+     */
+    private Page query(final String sql, final List<Object> params, final int limit) throws SQLException {
+        final List<Hit> hits = new ArrayList<>(Math.min(limit, DbHelper.FETCH_SIZE));
+        try (final Connection connection = dbHelper.getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, sql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(sql)) {
+                int index = 0;
+                for (Object param : params) {
+                    if (param instanceof String string) {
+                        DbHelper.setString(selectStmt, ++index, string);
+                    }
+                    else if (param instanceof Float rank) {
+                        selectStmt.setFloat(++index, rank);
+                    }
+                    else if (param instanceof String[] strings) {
+                        selectStmt.setArray(++index, connection.createArrayOf("varchar", strings));
+                    }
+                    else {
+                        selectStmt.setInt(++index, (Integer) param);
+                    }
+                }
+                // one more to see if there is a next page
+                selectStmt.setInt(++index, limit + 1);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        hits.add(new Hit(rs.getInt(1), DbHelper.getString(rs, 2), rs.getFloat(3)));
+                    }
+                }
+            }
+        }
+        if (hits.size() <= limit) {
+            return new Page(hits, null);
+        }
+        final Hit last = hits.get(limit - 1);
+        return new Page(hits.subList(0, limit), new Cursor(last.rank(), last.id()));
+    }
+
+    private static void appendKeyset(final StringBuilder sql, final List<Object> params, final Cursor after) {
+        if (after != null) {
+            sql.append(" WHERE rank < ? OR (rank = ? AND id > ?)");
+            params.add(after.rank());
+            params.add(after.rank());
+            params.add(after.id());
+        }
+        sql.append(" ORDER BY rank DESC, id LIMIT ?");
+    }
+
+    private static void appendFilters(final StringBuilder sql, final List<Object> params, final List<String> tags, final String rating) {
+        if (rating != null) {
+            sql.append(String.format(" AND rating_id=(SELECT id FROM %s WHERE name=?)", TABLE_RATING));
+            params.add(rating);
+        }
+        if (!tags.isEmpty()) {
+            final String[] tagNames = tags.stream().distinct().map(DbHelper::sanitizeString).toArray(String[]::new);
+            sql.append(String.format(" AND %1$s.id IN (SELECT fanfiction_id FROM tagged INNER JOIN %2$s ON tag_id=%2$s.id " +
+                    "WHERE name = ANY(?) GROUP BY fanfiction_id HAVING COUNT(*) = ?)", TABLE_FANFICTION, TABLE_TAG));
+            params.add(tagNames);
+            params.add(tagNames.length);
+        }
+    }
+
+    private static void checkLimit(final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive!");
+        }
+    }
+
+    /**
+     * Searches the fanfictions by their titles and the names of their tags, the title counting more.
+     * @param query the query in web search syntax, e.g. {@code "erin -ryoka"}, not {@code null}
+     * @param tags the names of tags the fanfictions must all have, not {@code null}
+     * @param rating the rating the fanfictions must have, {@code null} for any
+     * @param limit the maximum number of hits per page, positive
+     * @param after the cursor of the previous page, {@code null} for the first page
+     * @return a page of hits, not {@code null}
+     * @throws IllegalArgumentException If {@code limit} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public Page searchFanfictions(final String query, final List<String> tags, final String rating, final int limit, final Cursor after) throws SQLException {
+        Objects.requireNonNull(query);
+        checkLimit(limit);
+        final List<Object> params = new ArrayList<>();
+        final StringBuilder sql = new StringBuilder(String.format("SELECT id, title, rank FROM (" +
+                "SELECT %1$s.id, title, ts_rank(search, query) AS rank FROM %1$s, websearch_to_tsquery('%2$s', ?) AS query WHERE search @@ query",
+                TABLE_FANFICTION, CONFIG));
+        params.add(query);
+        appendFilters(sql, params, tags, rating);
+        sql.append(") AS hits");
+        appendKeyset(sql, params, after);
+        return query(sql.toString(), params, limit);
+    }
+
+    /**
+     * Lists the fanfictions with all the specified tags and the rating, without a query. All hits have rank {@code 0},
+     * so the pages are ordered by ID.
+     * @param tags the names of tags the fanfictions must all have, not {@code null}
+     * @param rating the rating the fanfictions must have, {@code null} for any
+     * @param limit the maximum number of hits per page, positive
+     * @param after the cursor of the previous page, {@code null} for the first page
+     * @return a page of hits, not {@code null}
+     * @throws IllegalArgumentException If {@code limit} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public Page filterFanfictions(final List<String> tags, final String rating, final int limit, final Cursor after) throws SQLException {
+        checkLimit(limit);
+        final List<Object> params = new ArrayList<>();
+        final StringBuilder sql = new StringBuilder(String.format("SELECT id, title, rank FROM (" +
+                "SELECT %1$s.id, title, CAST(0 AS REAL) AS rank FROM %1$s WHERE TRUE", TABLE_FANFICTION));
+        appendFilters(sql, params, tags, rating);
+        sql.append(") AS hits");
+        appendKeyset(sql, params, after);
+        return query(sql.toString(), params, limit);
+    }
+
+    /**
+     * Lists the authors whose names contain a text, ignoring case. All hits have rank {@code 0}, so the pages are
+     * ordered by ID.
+     * @param namePart the text the names must contain, not {@code null}, empty for all authors
+     * @param limit the maximum number of hits per page, positive
+     * @param after the cursor of the previous page, {@code null} for the first page
+     * @return a page of hits, not {@code null}
+     * @throws IllegalArgumentException If {@code limit} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public Page filterAuthors(final String namePart, final int limit, final Cursor after) throws SQLException {
+        Objects.requireNonNull(namePart);
+        checkLimit(limit);
+        final List<Object> params = new ArrayList<>();
+        final StringBuilder sql = new StringBuilder(String.format("SELECT id, name, rank FROM (" +
+                "SELECT id, name, CAST(0 AS REAL) AS rank FROM %s WHERE strpos(LOWER(name), LOWER(?)) > 0) AS hits", TABLE_AUTHOR));
+        // no LIKE pattern, so the text needs no escaping beyond the usual sanitizing
+        params.add(namePart);
+        appendKeyset(sql, params, after);
+        return query(sql.toString(), params, limit);
+    }
+
+    /**
+     * Searches the tags by their names and descriptions, the name counting more.
+     * @param query the query in web search syntax, not {@code null}
+     * @param charactersOnly if only character tags should be searched
+     * @param limit the maximum number of hits per page, positive
+     * @param after the cursor of the previous page, {@code null} for the first page
+     * @return a page of hits, not {@code null}
+     * @throws IllegalArgumentException If {@code limit} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public Page searchTags(final String query, final boolean charactersOnly, final int limit, final Cursor after) throws SQLException {
+        Objects.requireNonNull(query);
+        checkLimit(limit);
+        final List<Object> params = new ArrayList<>();
+        final StringBuilder sql = new StringBuilder(String.format("SELECT id, name, rank FROM (" +
+                "SELECT %1$s.id, name, ts_rank(search, query) AS rank FROM %1$s, websearch_to_tsquery('%2$s', ?) AS query WHERE search @@ query%3$s" +
+                ") AS hits", TABLE_TAG, CONFIG, charactersOnly ? " AND is_character" : ""));
+        params.add(query);
+        appendKeyset(sql, params, after);
+        return query(sql.toString(), params, limit);
+    }
+
+}
@@ -0,0 +1,278 @@
+package org.abos.linker.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of records in the memory-mapped segment files of a directory. Each record is framed by its
+ * length and a checksum and addressed by its position, which stays valid until the log is {@link #clear() cleared}.
+ * <p>
+ * Segments are allocated at their full size and mapped once, so appending a record only copies it into memory the
+ * OS writes back on its own, and reading one only slices the mapping. A record cut off by a crash fails its checksum
+ * when the log is opened again, and is dropped with everything appended after it.
+ * <p>
+ * Not safe to use from multiple threads.
+ */
+final class SegmentLog implements Closeable {
+
+    /**
+     * The default size of a segment, which is also the maximum size of a record.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+    /**
+     * The length and the checksum in front of each record.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final Logger LOGGER = LogManager.getLogger(SegmentLog.class);
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    private final CRC32C checksum = new CRC32C();
+
+    /**
+     * The end of the records in the last segment.
+     */
+    private int end;
+
+    /**
+     * The index of the first segment written to since the last {@link #force()}.
+     */
+    private int dirty;
+
+    /**
+     * Opens the log in a directory, creating the directory if needed.
+     * @param directory the directory of the segment files, not {@code null}
+     * @param segmentSize the size of new segments, greater than the size of the largest record
+     * @throws IllegalArgumentException If {@code segmentSize} can't hold any record.
+     * @throws IOException If an I/O error occurs.
+     */
+    SegmentLog(final Path directory, final int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + HEADER_SIZE + "!");
+        }
+        this.directory = Objects.requireNonNull(directory);
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        final List<Path> files;
+        try (final Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        boolean broken = false;
+        for (Path file : files) {
+            if (broken) {
+                // written after a broken record, so the records can't be trusted to follow the ones before
+                LOGGER.warn("Deleting segment {} after a broken record", file);
+                Files.delete(file);
+                continue;
+            }
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels.add(channel);
+            final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            segments.add(segment);
+            final int recovered = recover(segment, file);
+            broken = recovered < 0;
+            end = broken ? -1 - recovered : recovered;
+        }
+        if (segments.isEmpty()) {
+            addSegment();
+        }
+        dirty = segments.size() - 1;
+    }
+
+    /**
+     * Finds the end of the valid records in a segment. The bytes from a broken record on are zeroed, so it can't be
+     * mistaken for a record later.
+     * @return the end, or {@code -1 - end} if the records ended in a broken one
+     */
+    private int recover(final MappedByteBuffer segment, final Path file) {
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segment.capacity()) {
+            final int length = segment.getInt(offset);
+            if (length == 0) {
+                return offset;
+            }
+            if (length < 0 || length > segment.capacity() - offset - HEADER_SIZE
+                    || segment.getInt(offset + 4) != checksum(segment.slice(offset + HEADER_SIZE, length))) {
+                LOGGER.warn("Dropping broken record at {} of segment {}", offset, file);
+                for (int index = offset; index < segment.capacity(); index++) {
+                    segment.put(index, (byte) 0);
+                }
+                return -1 - offset;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private int checksum(final ByteBuffer record) {
+        checksum.reset();
+        checksum.update(record);
+        return (int) checksum.getValue();
+    }
+
+    private void addSegment() throws IOException {
+        final Path file = directory.resolve(String.format("%08d%s", segments.size(), SEGMENT_SUFFIX));
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channels.add(channel);
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        end = 0;
+    }
+
+    /**
+     * Appends a record, starting a new segment if it doesn't fit into the last one.
+     * @param record the bytes of the record from its position to its limit, not empty
+     * @return the position of the record
+     * @throws IllegalArgumentException If the record is empty or larger than a segment.
+     * @throws IOException If an I/O error occurs.
+     */
+    long append(final ByteBuffer record) throws IOException {
+        final int length = record.remaining();
+        if (length == 0 || length > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Record of " + length + " bytes doesn't fit into a segment!");
+        }
+        if (end + HEADER_SIZE + length > segments.get(segments.size() - 1).capacity()) {
+            addSegment();
+        }
+        final MappedByteBuffer segment = segments.get(segments.size() - 1);
+        final int crc = checksum(record.duplicate());
+        segment.put(end + HEADER_SIZE, record, record.position(), length);
+        segment.putInt(end + 4, crc);
+        // the length goes last, as a zero length marks the end of the records
+        segment.putInt(end, length);
+        final long position = ((long) (segments.size() - 1) << 32) | end;
+        end += HEADER_SIZE + length;
+        return position;
+    }
+
+    /**
+     * Returns a record.
+     * @param position the position {@link #append(ByteBuffer)} returned for the record
+     * @return a read-only view of the bytes of the record, not {@code null}
+     */
+    ByteBuffer read(final long position) {
+        final MappedByteBuffer segment = segments.get((int) (position >>> 32));
+        final int offset = (int) position;
+        return segment.slice(offset + HEADER_SIZE, segment.getInt(offset)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Passes all records to a consumer in the order they were appended.
+     * @param consumer the consumer of read-only views of the records and their positions, not {@code null}
+     */
+    void replay(final ObjLongConsumer<ByteBuffer> consumer) {
+        for (int index = 0; index < segments.size(); index++) {
+            final MappedByteBuffer segment = segments.get(index);
+            int offset = 0;
+            while (offset + HEADER_SIZE <= segment.capacity()) {
+                final int length = segment.getInt(offset);
+                if (length == 0) {
+                    break;
+                }
+                consumer.accept(segment.slice(offset + HEADER_SIZE, length).asReadOnlyBuffer(), ((long) index << 32) | offset);
+                offset += HEADER_SIZE + length;
+            }
+        }
+    }
+
+    /**
+     * Writes the segments appended to since the last call to the disk, so they survive a crash of the OS.
+     * Without it they survive a crash of the process only.
+     */
+    void force() {
+        for (int index = dirty; index < segments.size(); index++) {
+            segments.get(index).force();
+        }
+        dirty = segments.size() - 1;
+    }
+
+    /**
+     * Returns if no record was appended.
+     * @return {@code true} if the log is empty, else {@code false}
+     */
+    boolean isEmpty() {
+        return segments.size() == 1 && end == 0;
+    }
+
+    /**
+     * Returns the number of bytes the records take in the segments, including their framing.
+     * @return the number of bytes
+     */
+    long size() {
+        long size = 0;
+        for (int index = 0; index < segments.size() - 1; index++) {
+            size += segments.get(index).capacity();
+        }
+        return size + end;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Deletes all records with their segment files.
+     * @throws IOException If an I/O error occurs.
+     */
+    void clear() throws IOException {
+        closeChannels();
+        try (final Stream<Path> list = Files.list(directory)) {
+            for (Path file : list.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                Files.delete(file);
+            }
+        }
+        addSegment();
+        dirty = 0;
+    }
+
+    private void closeChannels() throws IOException {
+        IOException exception = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            }
+            catch (IOException ex) {
+                exception = ex;
+            }
+        }
+        channels.clear();
+        // the mappings stay valid until they are garbage collected, but aren't used anymore
+        segments.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!segments.isEmpty()) {
+            force();
+        }
+        closeChannels();
+    }
+
+}
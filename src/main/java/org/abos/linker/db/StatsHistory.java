@@ -0,0 +1,252 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Engagement;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.abos.linker.db.DbHelper.LOG_SQL_MSG;
+import static org.abos.linker.db.DbHelper.TABLE_WORK_STATS;
+
+/**
+ * The history of the statistics of the fanfictions, one row per fanfiction and check. Rows are only ever appended,
+ * in batches, to {@value DbHelper#TABLE_WORK_STATS}, which is partitioned by month, so queries over a time window only
+ * read the partitions of that window and old months can be dropped as a whole. The partitions are created on demand.
+ * <p>
+ * Safe to use from multiple threads.
+ */
+public final class StatsHistory {
+
+    /**
+     * The statistics of a fanfiction at one check.
+     * @param fanfictionId the ID of the fanfiction
+     * @param checkedAt the time of the check, not {@code null}
+     * @param chapters the number of chapters
+     * @param words the number of words
+     * @param engagement the engagement counters, not {@code null}
+     */
+    public record Sample(int fanfictionId, Instant checkedAt, int chapters, int words, Engagement engagement) {
+
+        public Sample {
+            Objects.requireNonNull(checkedAt);
+            Objects.requireNonNull(engagement);
+        }
+    }
+
+    /**
+     * How much a counter of a fanfiction grew within a time window.
+     * @param fanfictionId the ID of the fanfiction
+     * @param first the value at the first check in the window
+     * @param last the value at the last check in the window
+     */
+    public record Trend(int fanfictionId, int first, int last) {
+
+        public int growth() {
+            return last - first;
+        }
+    }
+
+    /**
+     * The counters in the history.
+     */
+    public enum Counter {
+        CHAPTERS("chapters"),
+        WORDS("words"),
+        KUDOS("kudos"),
+        HITS("hits"),
+        COMMENTS("comments"),
+        BOOKMARKS("bookmarks");
+
+        private final String column;
+
+        Counter(final String column) {
+            this.column = column;
+        }
+    }
+
+    private static final Logger LOGGER = LogManager.getLogger(StatsHistory.class);
+
+    private final DbHelper dbHelper;
+
+    /**
+     * The months whose partitions are known to exist.
+     */
+    private final Set<YearMonth> partitions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new {@link StatsHistory} instance.
+     * @param dbHelper the DB with the history, not {@code null}
+     */
+    public StatsHistory(final DbHelper dbHelper) {
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+    }
+
+    private static YearMonth month(final Instant instant) {
+        return YearMonth.from(instant.atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * Returns the name of the partition of the specified month, e.g. {@code work_stats_202410}.
+     */
+    static String partitionName(final YearMonth month) {
+        return String.format("%s_%04d%02d", TABLE_WORK_STATS, month.getYear(), month.getMonthValue());
+    }
+
+    private void ensurePartition(final Connection connection, final YearMonth month) throws SQLException {
+        if (partitions.contains(month)) {
+            return;
+        }
+        final long from = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        final long to = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        final String createSql = String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM (%d) TO (%d)",
+                partitionName(month), TABLE_WORK_STATS, from, to);
+        LOGGER.debug(LOG_SQL_MSG, createSql);
+        try (final PreparedStatement createStmt = connection.prepareStatement(createSql)) {
+            createStmt.execute();
+        }
+        partitions.add(month);
+    }
+
+    /**
+     * Appends samples to the history with the specified connection, in batches of {@link DbHelper#BATCH_SIZE}.
+     * @param connection the connection to use, not {@code null}
+     * @param samples the samples to append, not {@code null}
+     * @return the number of samples appended
+     * @throws SQLException If an SQL exception occurs.
+     */
+    int append(final Connection connection, final Collection<Sample> samples) throws SQLException {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        // create the partitions first, as a row without one fails the whole batch
+        final Set<YearMonth> months = new TreeSet<>();
+        for (Sample sample : samples) {
+            months.add(month(sample.checkedAt()));
+        }
+        for (YearMonth month : months) {
+            ensurePartition(connection, month);
+        }
+        final String insertSql = String.format("INSERT INTO %s (checked_at, fanfiction_id, chapters, words, kudos, hits, comments, bookmarks) VALUES (?,?,?,?,?,?,?,?)", TABLE_WORK_STATS);
+        LOGGER.debug(LOG_SQL_MSG, insertSql);
+        int appended = 0;
+        try (final PreparedStatement insertStmt = connection.prepareStatement(insertSql)) {
+            int batched = 0;
+            for (Sample sample : samples) {
+                insertStmt.setLong(1, sample.checkedAt().toEpochMilli());
+                insertStmt.setInt(2, sample.fanfictionId());
+                insertStmt.setInt(3, sample.chapters());
+                insertStmt.setInt(4, sample.words());
+                insertStmt.setInt(5, sample.engagement().kudos());
+                insertStmt.setInt(6, sample.engagement().hits());
+                insertStmt.setInt(7, sample.engagement().comments());
+                insertStmt.setInt(8, sample.engagement().bookmarks());
+                insertStmt.addBatch();
+                if (++batched == DbHelper.BATCH_SIZE) {
+                    appended += DbHelper.countUpdates(insertStmt.executeBatch());
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                appended += DbHelper.countUpdates(insertStmt.executeBatch());
+            }
+        }
+        return appended;
+    }
+
+    /**
+     * Appends samples to the history, in batches of {@link DbHelper#BATCH_SIZE}.
+     * @param samples the samples to append, not {@code null}
+     * @return the number of samples appended
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public int append(final Collection<Sample> samples) throws SQLException {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        try (final Connection connection = dbHelper.getConnection()) {
+            final int appended = append(connection, samples);
+            dbHelper.notifyWrites(connection);
+            return appended;
+        }
+    }
+
+    /**
+     * Returns the history of a fanfiction within a time window, e.g. to draw its growth curves.
+     * @param fanfictionId the ID of the fanfiction
+     * @param from the start of the window, inclusive, not {@code null}
+     * @param to the end of the window, exclusive, not {@code null}
+     * @return the samples in the order of their checks, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public List<Sample> growth(final int fanfictionId, final Instant from, final Instant to) throws SQLException {
+        final String selectSql = String.format("SELECT checked_at, chapters, words, kudos, hits, comments, bookmarks FROM %s " +
+                "WHERE fanfiction_id=? AND checked_at >= ? AND checked_at < ? ORDER BY checked_at", TABLE_WORK_STATS);
+        final List<Sample> samples = new ArrayList<>();
+        try (final Connection connection = dbHelper.getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, fanfictionId);
+                selectStmt.setLong(2, from.toEpochMilli());
+                selectStmt.setLong(3, to.toEpochMilli());
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        samples.add(new Sample(fanfictionId, Instant.ofEpochMilli(rs.getLong(1)), rs.getInt(2), rs.getInt(3),
+                                new Engagement(rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getInt(7))));
+                    }
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the fanfictions whose counter grew the most within a time window, from their first to their last check
+     * in it. Fanfictions checked only once in the window are left out.
+     * @param counter the counter to compare, not {@code null}
+     * @param from the start of the window, inclusive, not {@code null}
+     * @param to the end of the window, exclusive, not {@code null}
+     * @param limit the maximum number of fanfictions to return, positive
+     * @return the fanfictions, the one that grew the most first, not {@code null}
+     * @throws IllegalArgumentException If {@code limit} isn't positive.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    public List<Trend> trending(final Counter counter, final Instant from, final Instant to, final int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive!");
+        }
+        final String selectSql = String.format("SELECT fanfiction_id, first_count, last_count FROM (" +
+                "SELECT fanfiction_id, (ARRAY_AGG(%1$s ORDER BY checked_at))[1] AS first_count, (ARRAY_AGG(%1$s ORDER BY checked_at DESC))[1] AS last_count " +
+                "FROM %2$s WHERE checked_at >= ? AND checked_at < ? GROUP BY fanfiction_id HAVING COUNT(*) > 1" +
+                ") AS windowed ORDER BY last_count - first_count DESC, fanfiction_id LIMIT ?", counter.column, TABLE_WORK_STATS);
+        final List<Trend> trends = new ArrayList<>(Math.min(limit, DbHelper.FETCH_SIZE));
+        try (final Connection connection = dbHelper.getConnection()) {
+            LOGGER.debug(LOG_SQL_MSG, selectSql);
+            try (final PreparedStatement selectStmt = connection.prepareStatement(selectSql)) {
+                selectStmt.setLong(1, from.toEpochMilli());
+                selectStmt.setLong(2, to.toEpochMilli());
+                selectStmt.setInt(3, limit);
+                try (final ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        trends.add(new Trend(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+                    }
+                }
+            }
+        }
+        return trends;
+    }
+
+}
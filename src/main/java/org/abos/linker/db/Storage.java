@@ -0,0 +1,199 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.Tag;
+import org.abos.linker.core.WorkStats;
+import org.abos.linker.index.TagIndex;
+import org.abos.linker.link.AliasResolver;
+import org.abos.linker.link.TagLinker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The operations the scrape pipeline needs to store and read tags, authors and fanfictions, implemented by the
+ * PostgreSQL DB of {@link DbHelper} and by the files of {@link EmbeddedStorage}, which needs no DB server.
+ * The query features of {@link DbHelper}, i.e. {@link Search}, {@link Rollups} and {@link StatsHistory}, are only
+ * available with the DB.
+ * <p>
+ * Both implementations report failures as {@link SQLException}, so callers handle them the same way.
+ */
+public interface Storage {
+
+    /**
+     * Creates the storage selected by the system properties: an {@link EmbeddedStorage} in the directory of
+     * {@link EmbeddedStorage#PROPERTY_DIR} if given, else a {@link DbHelper}.
+     * @return the storage, not {@code null}
+     * @throws IllegalStateException If neither property is given.
+     * @throws SQLException If the embedded storage can't be opened.
+     */
+    static Storage fromProperties() throws IllegalStateException, SQLException {
+        final String directory = System.getProperty(EmbeddedStorage.PROPERTY_DIR);
+        if (directory == null) {
+            return new DbHelper();
+        }
+        return new EmbeddedStorage(Path.of(directory));
+    }
+
+    /**
+     * Creates the tables with their initial rows, i.e. the ratings, the tag OC and the author Anonymous.
+     * @throws IOException If an I/O error occurs.
+     * @throws SQLException If an SQL exception occurs, especially if the tables already exist.
+     */
+    void setupTables() throws IOException, SQLException;
+
+    /**
+     * Drops the tables with everything in them.
+     * @throws IOException If an I/O error occurs.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void tearDownTables() throws IOException, SQLException;
+
+    /**
+     * Loads all tag aliases into a new {@link AliasResolver}, which from now on rewrites the tags to be stored to
+     * their canonical names.
+     * @return the loaded resolver, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    AliasResolver loadAliasResolver() throws SQLException;
+
+    /**
+     * Loads all character tags and their aliases into a new {@link TagLinker}, which from now on links the tags of
+     * fanfictions to known character tags in {@link #updateFanfictions(BlockingQueue)}.
+     * @return the loaded linker, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    TagLinker loadTagLinker() throws SQLException;
+
+    /**
+     * Loads the tags of all fanfictions into a new {@link TagIndex}, which from now on is kept up to date.
+     * @return the loaded index, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    TagIndex loadTagIndex() throws SQLException;
+
+    /**
+     * Adds all tags in the queue. Will only partially succeed if a duplicate entry is detected.
+     * @param queue the {@link BlockingQueue} with the tags that ends with {@link Tag#DUMMY}
+     * @throws IllegalStateException If any specified fandom is not stored.
+     * @throws SQLException If an SQL exception occurs, especially if a duplicate entry was attempted to be inserted.
+     */
+    void addTags(BlockingQueue<Tag> queue) throws IllegalStateException, SQLException;
+
+    /**
+     * Adds a tag, or updates it if a tag of the same name is stored. A description or fandom missing from the tag
+     * doesn't remove the stored one.
+     * @param tag the tag, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void updateTag(Tag tag) throws SQLException;
+
+    /**
+     * Adds an alias for a tag name.
+     * @param name the name of the tag
+     * @param alias a new(!) alias for the tag
+     * @throws IllegalStateException If the tag name was not to be found.
+     * @throws SQLException If an SQL exception occurs, especially if a duplicate entry was attempted to be inserted.
+     */
+    void addTagAlias(String name, String alias) throws IllegalStateException, SQLException;
+
+    /**
+     * Removes the given alias from the tags and makes it an alias of the specified name. The fanfictions,
+     * relationships and aliases of the removed tag are moved over to the tag of the specified name at once.
+     * @param name the name to make an alias of
+     * @param alias the alias to be removed from the tags
+     * @throws IllegalStateException If either tag name was not to be found or both are the same.
+     * @throws SQLException If an SQL exception occurs. Nothing is changed then.
+     */
+    void changeTagToAlias(String name, String alias) throws IllegalStateException, SQLException;
+
+    /**
+     * Adds an author if they are new, else updates their profile links.
+     * @param author the author, not {@code null}
+     * @param replaceLinks if the stored profile links should be replaced, else the new ones are added
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void updateAuthor(Author author, boolean replaceLinks) throws SQLException;
+
+    /**
+     * Returns an author with their profile links.
+     * @param authorId the ID of the author
+     * @return the author, {@code null} if there is no author with that ID
+     * @throws SQLException If an SQL exception occurs.
+     */
+    Author getAuthor(int authorId) throws SQLException;
+
+    /**
+     * Returns the IDs of the fanfictions of an author, to read them with {@link #readFanfictions(Collection, ObjIntConsumer)}.
+     * @param authorId the ID of the author
+     * @return the IDs in ascending order, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    List<Integer> getAuthoredFanfictions(int authorId) throws SQLException;
+
+    /**
+     * Adds the fanfictions in the queue, or overwrites the fields of the stored ones with the same Ao3 work ID or
+     * link. Their authors, tags and crossovers are added if new, and references missing from a fanfiction are kept.
+     * @param queue the {@link BlockingQueue} with the fanfictions that ends with {@link Fanfiction#DUMMY}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void updateFanfictions(BlockingQueue<Fanfiction> queue) throws SQLException;
+
+    /**
+     * Stores the statistics of a fanfiction that was checked for updates, together with the time of the check.
+     * @param fanfictionId the ID of the fanfiction
+     * @param stats the current statistics of the fanfiction, not {@code null}
+     * @param checked the time of the check, not {@code null}
+     * @return {@code true} if the fanfiction was found, else {@code false}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    boolean updateFanfictionStats(int fanfictionId, WorkStats stats, Instant checked) throws SQLException;
+
+    /**
+     * Reads all fanfictions with their authors, tags and crossovers, in ascending order of their IDs.
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void readFanfictions(ObjIntConsumer<Fanfiction> consumer) throws SQLException;
+
+    /**
+     * Reads the specified fanfictions with their authors, tags and crossovers, in ascending order of their IDs.
+     * Unknown IDs are skipped.
+     * @param ids the IDs of the fanfictions to read, not {@code null}
+     * @param consumer the consumer of the fanfictions and their IDs, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    void readFanfictions(Collection<Integer> ids, ObjIntConsumer<Fanfiction> consumer) throws SQLException;
+
+    /**
+     * Relates the relationship tags to the character tags they consist of, e.g. {@code "Erin Solstice/Ryoka Griffin"}
+     * to {@code "Erin Solstice"} and {@code "Ryoka Griffin"}.
+     * @param full if all relationship tags should be processed, otherwise only those added since the last run are
+     * @return the number of relations added
+     * @throws SQLException If an SQL exception occurs.
+     */
+    int updateRelated(boolean full) throws SQLException;
+
+    /**
+     * Recomputes the {@link org.abos.linker.index.SimilarityJob#DEFAULT_K} most similar fanfictions of each
+     * fanfiction, replacing the previous ones.
+     * @throws SQLException If an SQL exception occurs. Nothing is changed then.
+     */
+    void updateSimilarities() throws SQLException;
+
+    /**
+     * Returns the fanfictions most similar to a fanfiction as of the last {@link #updateSimilarities()}.
+     * @param fanfictionId the ID of the fanfiction
+     * @return the IDs of the similar fanfictions, most similar first, not {@code null}
+     * @throws SQLException If an SQL exception occurs.
+     */
+    List<Integer> getSimilarFanfictions(int fanfictionId) throws SQLException;
+
+}
@@ -0,0 +1,170 @@
+package org.abos.linker.gui;
+
+import org.abos.linker.db.Search;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Loads the rows of a table page by page as they are scrolled into view, e.g. of a {@link javafx.scene.control.TableView}
+ * that only creates cells for the visible rows. Each page continues after the cursor of the previous one, so no page
+ * costs more than the first, and nothing is loaded until the rows before it were shown.
+ * <p>
+ * The pages are loaded on a background executor and handed over on the UI executor. All methods must be called on
+ * the UI executor, too.
+ */
+public final class KeysetPager {
+
+    /**
+     * Loads a page of rows.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * Loads a page of rows.
+         * @param after the cursor of the previous page, {@code null} for the first page
+         * @param limit the maximum number of rows
+         * @return the page, not {@code null}
+         * @throws SQLException If an SQL exception occurs.
+         */
+        Search.Page load(Search.Cursor after, int limit) throws SQLException;
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    /**
+     * The next page is loaded once a row this close to the last loaded one is shown.
+     */
+    public static final int PREFETCH = 50;
+
+    private final Executor background;
+
+    private final Executor ui;
+
+    private final int pageSize;
+
+    private final Consumer<List<Search.Hit>> onPage;
+
+    private final Consumer<SQLException> onError;
+
+    private Source source;
+
+    private Search.Cursor next;
+
+    private boolean loading;
+
+    private boolean exhausted = true;
+
+    private int loaded;
+
+    /**
+     * Increased by every {@link #reset(Source)}, so pages still loading for the previous source are dropped.
+     */
+    private long generation;
+
+    /**
+     * Creates a new {@link KeysetPager} instance without a source.
+     * @param background the executor to load the pages on, not {@code null}
+     * @param ui the executor of the UI thread, e.g. {@code Platform::runLater}, not {@code null}
+     * @param pageSize the number of rows per page, positive
+     * @param onPage takes the rows of each page in order on the UI thread, e.g. to append them to the table, not {@code null}
+     * @param onError takes the exception if a page failed, on the UI thread, not {@code null}
+     * @throws IllegalArgumentException If {@code pageSize} isn't positive.
+     */
+    public KeysetPager(final Executor background, final Executor ui, final int pageSize, final Consumer<List<Search.Hit>> onPage, final Consumer<SQLException> onError) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive!");
+        }
+        this.background = Objects.requireNonNull(background);
+        this.ui = Objects.requireNonNull(ui);
+        this.pageSize = pageSize;
+        this.onPage = Objects.requireNonNull(onPage);
+        this.onError = Objects.requireNonNull(onError);
+    }
+
+    /**
+     * Starts over with another source and loads its first page. The rows of the previous source must be cleared by
+     * the caller.
+     * @param source the new source, not {@code null}
+     */
+    public void reset(final Source source) {
+        this.source = Objects.requireNonNull(source);
+        generation++;
+        next = null;
+        loading = false;
+        exhausted = false;
+        loaded = 0;
+        loadMore();
+    }
+
+    /**
+     * Tells that a row is shown, loading the next page if it is close to the end.
+     * @param index the index of the row
+     */
+    public void rowShown(final int index) {
+        if (index >= loaded - PREFETCH) {
+            loadMore();
+        }
+    }
+
+    private void loadMore() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        final long currentGeneration = generation;
+        final Source currentSource = source;
+        final Search.Cursor after = next;
+        background.execute(() -> {
+            try {
+                final Search.Page page = currentSource.load(after, pageSize);
+                ui.execute(() -> {
+                    if (currentGeneration != generation) {
+                        return;
+                    }
+                    loading = false;
+                    next = page.next();
+                    exhausted = next == null;
+                    loaded += page.hits().size();
+                    onPage.accept(page.hits());
+                });
+            }
+            catch (SQLException ex) {
+                ui.execute(() -> {
+                    if (currentGeneration != generation) {
+                        return;
+                    }
+                    // don't retry on every row shown, the next reset tries again
+                    loading = false;
+                    exhausted = true;
+                    onError.accept(ex);
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the number of rows loaded from the current source.
+     * @return the number of rows
+     */
+    public int getLoaded() {
+        return loaded;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Returns if all rows of the current source are loaded, or loading them failed.
+     * @return {@code true} if no more rows will be loaded, else {@code false}
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+}
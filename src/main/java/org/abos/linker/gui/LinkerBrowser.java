@@ -0,0 +1,458 @@
+package org.abos.linker.gui;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.Tag;
+import org.abos.linker.db.DbHelper;
+import org.abos.linker.db.Rollups;
+import org.abos.linker.db.Search;
+import org.abos.linker.index.TagIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * A desktop browser for the fanfictions, tags and authors in the DB. Its tables only hold the rows scrolled to so
+ * far, loaded page by page by {@link KeysetPager}s, and all queries run on a background executor, so it stays
+ * responsive no matter how many fanfictions there are. The tag filter counts with a {@link TagFilter} how many
+ * fanfictions each further tag would leave. Needs the DB properties of {@link DbHelper}.
+ */
+public final class LinkerBrowser extends Application {
+
+    /**
+     * The number of tags offered by the tag filter, the ones with the most fanfictions.
+     */
+    public static final int FILTER_TAGS = 500;
+
+    /**
+     * The counts of the tag filter are shown in chunks of this many tags, so the first ones show up quickly.
+     */
+    private static final int COUNT_CHUNK_SIZE = 50;
+
+    /**
+     * The number of connections and background threads.
+     */
+    private static final int DB_CONNECTIONS = 4;
+
+    private static final String ANY_RATING = "Any rating";
+
+    private static final List<String> RATINGS = List.of("Not Rated", "General Audiences", "Teen And Up Audiences", "Mature", "Explicit");
+
+    private static final Logger LOGGER = LogManager.getLogger(LinkerBrowser.class);
+
+    /**
+     * A tag of the tag filter with the number of fanfictions it would leave.
+     * @param tagId the ID of the tag
+     * @param name the name of the tag
+     * @param count the number of fanfictions, {@code -1} if unknown
+     */
+    private record TagEntry(int tagId, String name, int count) {
+
+        @Override
+        public String toString() {
+            return count < 0 ? name : name + " (" + count + ")";
+        }
+    }
+
+    private DbHelper dbHelper;
+
+    private ExecutorService background;
+
+    private final Label status = new Label();
+
+    private final ObservableList<Search.Hit> fanfictionRows = FXCollections.observableArrayList();
+
+    private KeysetPager fanfictionPager;
+
+    private final TextField fanfictionQuery = new TextField();
+
+    private final ComboBox<String> rating = new ComboBox<>();
+
+    private final TextArea fanfictionDetails = new TextArea();
+
+    private int shownFanfictionId;
+
+    private final ObservableList<TagEntry> tagEntries = FXCollections.observableArrayList();
+
+    private final ObservableList<TagEntry> selectedTags = FXCollections.observableArrayList();
+
+    /**
+     * The filter of the selected tags, {@code null} until the tag index is loaded.
+     */
+    private TagFilter tagFilter;
+
+    /**
+     * Increased by every change of the tag filter, so the counts of an older filter are dropped.
+     */
+    private volatile long filterGeneration;
+
+    private final TextArea authorDetails = new TextArea();
+
+    private int shownAuthorId;
+
+    private TabPane tabs;
+
+    @Override
+    public void start(final Stage stage) {
+        dbHelper = new DbHelper();
+        dbHelper.usePool(DB_CONNECTIONS);
+        background = Executors.newFixedThreadPool(DB_CONNECTIONS, runnable -> {
+            final Thread thread = new Thread(runnable, "browser-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tabs = new TabPane(fanfictionsTab(), tagsTab(), authorsTab());
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        final BorderPane root = new BorderPane(tabs);
+        status.setPadding(new Insets(4, 8, 4, 8));
+        root.setBottom(status);
+        stage.setTitle("Fanfiction Linker");
+        stage.setScene(new Scene(root, 1280, 800));
+        stage.show();
+        loadTagFilter();
+        reloadFanfictions();
+    }
+
+    @Override
+    public void stop() {
+        background.shutdownNow();
+        dbHelper.closePool();
+    }
+
+    private void showError(final SQLException ex) {
+        LOGGER.warn("Query failed: {}", ex.getMessage());
+        status.setText("Query failed: " + ex.getMessage());
+    }
+
+    private KeysetPager pager(final ObservableList<Search.Hit> rows) {
+        return new KeysetPager(background, Platform::runLater, KeysetPager.DEFAULT_PAGE_SIZE, hits -> rows.addAll(hits), this::showError);
+    }
+
+    /**
+     * Creates a table of hits that tells the pager which rows are shown. Sorting is off, as it would only sort the
+     * rows loaded so far.
+     */
+    private static TableView<Search.Hit> pagedTable(final ObservableList<Search.Hit> rows, final KeysetPager pager, final String nameHeader, final boolean withRank) {
+        final TableView<Search.Hit> table = new TableView<>(rows);
+        final TableColumn<Search.Hit, Integer> idColumn = new TableColumn<>("ID");
+        idColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().id()));
+        idColumn.setSortable(false);
+        table.getColumns().add(idColumn);
+        final TableColumn<Search.Hit, String> nameColumn = new TableColumn<>(nameHeader);
+        nameColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().name()));
+        nameColumn.setSortable(false);
+        nameColumn.setPrefWidth(420);
+        table.getColumns().add(nameColumn);
+        if (withRank) {
+            final TableColumn<Search.Hit, Float> rankColumn = new TableColumn<>("Rank");
+            rankColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().rank()));
+            rankColumn.setSortable(false);
+            table.getColumns().add(rankColumn);
+        }
+        table.setRowFactory(view -> new TableRow<>() {
+            @Override
+            protected void updateItem(final Search.Hit item, final boolean empty) {
+                super.updateItem(item, empty);
+                if (!empty) {
+                    pager.rowShown(getIndex());
+                }
+            }
+        });
+        return table;
+    }
+
+    private static TextArea details(final TextArea area) {
+        area.setEditable(false);
+        area.setWrapText(true);
+        return area;
+    }
+
+    private Tab fanfictionsTab() {
+        fanfictionPager = pager(fanfictionRows);
+        final TableView<Search.Hit> table = pagedTable(fanfictionRows, fanfictionPager, "Title", true);
+        table.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null) {
+                showFanfiction(newValue.id());
+            }
+        });
+        fanfictionQuery.setPromptText("Search titles and tags, e.g. erin -ryoka");
+        fanfictionQuery.setOnAction(event -> reloadFanfictions());
+        rating.getItems().add(ANY_RATING);
+        rating.getItems().addAll(RATINGS);
+        rating.getSelectionModel().selectFirst();
+        rating.setOnAction(event -> reloadFanfictions());
+        final HBox controls = new HBox(8, fanfictionQuery, rating);
+        controls.setPadding(new Insets(8));
+        HBox.setHgrow(fanfictionQuery, Priority.ALWAYS);
+        final ListView<TagEntry> tagList = new ListView<>(tagEntries);
+        tagList.setOnMouseClicked(event -> {
+            final TagEntry entry = tagList.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && entry != null) {
+                changeTagFilter(entry, true);
+            }
+        });
+        final ListView<TagEntry> selectedList = new ListView<>(selectedTags);
+        selectedList.setPrefHeight(160);
+        selectedList.setOnMouseClicked(event -> {
+            final TagEntry entry = selectedList.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && entry != null) {
+                changeTagFilter(entry, false);
+            }
+        });
+        final VBox filter = new VBox(4, new Label("Tags (double click to filter)"), tagList, new Label("Filtered by (double click to remove)"), selectedList);
+        filter.setPadding(new Insets(0, 0, 0, 8));
+        VBox.setVgrow(tagList, Priority.ALWAYS);
+        final SplitPane split = new SplitPane(filter, table, details(fanfictionDetails));
+        split.setDividerPositions(0.22, 0.66);
+        final BorderPane pane = new BorderPane(split);
+        pane.setTop(controls);
+        return new Tab("Fanfictions", pane);
+    }
+
+    private void reloadFanfictions() {
+        final String query = fanfictionQuery.getText() == null ? "" : fanfictionQuery.getText().strip();
+        final String selectedRating = ANY_RATING.equals(rating.getValue()) ? null : rating.getValue();
+        final List<String> tags = selectedTags.stream().map(TagEntry::name).toList();
+        final Search search = dbHelper.getSearch();
+        fanfictionRows.clear();
+        if (query.isEmpty()) {
+            fanfictionPager.reset((after, limit) -> search.filterFanfictions(tags, selectedRating, limit, after));
+        }
+        else {
+            fanfictionPager.reset((after, limit) -> search.searchFanfictions(query, tags, selectedRating, limit, after));
+        }
+    }
+
+    private void showFanfiction(final int id) {
+        shownFanfictionId = id;
+        fanfictionDetails.setText("Loading...");
+        background.execute(() -> {
+            try {
+                final StringBuilder text = new StringBuilder();
+                dbHelper.readFanfictions(List.of(id), (fanfiction, fanfictionId) -> text.append(describe(fanfiction)));
+                Platform.runLater(() -> {
+                    // another one may have been selected meanwhile
+                    if (shownFanfictionId == id) {
+                        fanfictionDetails.setText(text.toString());
+                    }
+                });
+            }
+            catch (SQLException ex) {
+                Platform.runLater(() -> showError(ex));
+            }
+        });
+    }
+
+    private static String describe(final Fanfiction fanfiction) {
+        return fanfiction.title() + '\n' + fanfiction.link() + "\n\n" +
+                "Rating: " + fanfiction.rating() + '\n' +
+                "Language: " + fanfiction.language() + '\n' +
+                "Chapters: " + fanfiction.chapters() + (fanfiction.completed() ? " (completed)" : "") + '\n' +
+                "Words: " + fanfiction.words() + '\n' +
+                "Last updated: " + fanfiction.lastUpdated() + "\n\n" +
+                "Authors: " + (fanfiction.authors().isEmpty() ? "Anonymous" : fanfiction.authors().stream().map(Author::name).collect(Collectors.joining(", "))) + '\n' +
+                "Tags: " + fanfiction.tags().stream().map(Tag::name).collect(Collectors.joining(", ")) + '\n' +
+                (fanfiction.crossovers().isEmpty() ? "" : "Crossovers: " + fanfiction.crossovers().stream().map(Fandom::name).collect(Collectors.joining(", ")) + '\n');
+    }
+
+    private void loadTagFilter() {
+        status.setText("Loading tags...");
+        background.execute(() -> {
+            try {
+                final List<Rollups.TagRollup> rollups = dbHelper.getRollups().getTagRollups(Rollups.TagKind.ANY, FILTER_TAGS);
+                final TagIndex index = dbHelper.loadTagIndex();
+                final TagFilter filter = TagFilter.all(index);
+                Platform.runLater(() -> {
+                    for (Rollups.TagRollup rollup : rollups) {
+                        tagEntries.add(new TagEntry(rollup.tagId(), rollup.name(), rollup.works()));
+                    }
+                    // tags selected from the tags tab meanwhile
+                    TagFilter selected = filter;
+                    for (TagEntry entry : selectedTags) {
+                        selected = selected.with(entry.tagId());
+                    }
+                    tagFilter = selected;
+                    status.setText(filter.count() + " fanfictions");
+                    if (!selectedTags.isEmpty()) {
+                        updateCounts();
+                    }
+                });
+            }
+            catch (SQLException ex) {
+                Platform.runLater(() -> showError(ex));
+            }
+        });
+    }
+
+    /**
+     * Adds a tag to or removes it from the filter, then lists the fanfictions again and updates the counts.
+     */
+    private void changeTagFilter(final TagEntry entry, final boolean add) {
+        final boolean selected = selectedTags.stream().anyMatch(other -> other.tagId() == entry.tagId());
+        if (selected == add) {
+            return;
+        }
+        if (add) {
+            selectedTags.add(new TagEntry(entry.tagId(), entry.name(), -1));
+        }
+        else {
+            selectedTags.removeIf(other -> other.tagId() == entry.tagId());
+        }
+        reloadFanfictions();
+        if (tagFilter != null) {
+            // adding only intersects, so this is cheap enough for the UI thread
+            tagFilter = add ? tagFilter.with(entry.tagId()) : tagFilter.without(entry.tagId());
+            updateCounts();
+        }
+    }
+
+    /**
+     * Recounts the tags of the filter in the background, showing the counts chunk by chunk.
+     */
+    private void updateCounts() {
+        final long generation = ++filterGeneration;
+        final TagFilter filter = tagFilter;
+        final List<TagEntry> entries = List.copyOf(tagEntries);
+        status.setText(filter.count() + " fanfictions with the selected tags");
+        background.execute(() -> {
+            for (int start = 0; start < entries.size() && generation == filterGeneration; start += COUNT_CHUNK_SIZE) {
+                final int chunkStart = start;
+                final List<TagEntry> counted = new ArrayList<>(COUNT_CHUNK_SIZE);
+                for (TagEntry entry : entries.subList(start, Math.min(start + COUNT_CHUNK_SIZE, entries.size()))) {
+                    counted.add(new TagEntry(entry.tagId(), entry.name(), filter.count(entry.tagId())));
+                }
+                Platform.runLater(() -> {
+                    if (generation != filterGeneration) {
+                        return;
+                    }
+                    for (int index = 0; index < counted.size(); index++) {
+                        tagEntries.set(chunkStart + index, counted.get(index));
+                    }
+                });
+            }
+        });
+    }
+
+    private Tab tagsTab() {
+        final ObservableList<Search.Hit> rows = FXCollections.observableArrayList();
+        final KeysetPager pager = pager(rows);
+        final TableView<Search.Hit> table = pagedTable(rows, pager, "Name", true);
+        final TextField query = new TextField();
+        query.setPromptText("Search names and descriptions of tags");
+        final CheckBox charactersOnly = new CheckBox("Characters only");
+        final Runnable reload = () -> {
+            final String text = query.getText() == null ? "" : query.getText().strip();
+            final boolean characters = charactersOnly.isSelected();
+            final Search search = dbHelper.getSearch();
+            rows.clear();
+            pager.reset((after, limit) -> search.searchTags(text, characters, limit, after));
+        };
+        query.setOnAction(event -> reload.run());
+        charactersOnly.setOnAction(event -> reload.run());
+        table.setOnMouseClicked(event -> {
+            final Search.Hit hit = table.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && hit != null) {
+                changeTagFilter(new TagEntry(hit.id(), hit.name(), -1), true);
+                tabs.getSelectionModel().selectFirst();
+            }
+        });
+        final HBox controls = new HBox(8, query, charactersOnly, new Label("Double click to filter the fanfictions"));
+        controls.setPadding(new Insets(8));
+        HBox.setHgrow(query, Priority.ALWAYS);
+        final BorderPane pane = new BorderPane(table);
+        pane.setTop(controls);
+        return new Tab("Tags", pane);
+    }
+
+    private Tab authorsTab() {
+        final ObservableList<Search.Hit> rows = FXCollections.observableArrayList();
+        final KeysetPager pager = pager(rows);
+        final TableView<Search.Hit> table = pagedTable(rows, pager, "Name", false);
+        table.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null) {
+                showAuthor(newValue.id());
+            }
+        });
+        final TextField name = new TextField();
+        name.setPromptText("Part of the name");
+        final Runnable reload = () -> {
+            final String text = name.getText() == null ? "" : name.getText().strip();
+            final Search search = dbHelper.getSearch();
+            rows.clear();
+            pager.reset((after, limit) -> search.filterAuthors(text, limit, after));
+        };
+        name.setOnAction(event -> reload.run());
+        final HBox controls = new HBox(8, name);
+        controls.setPadding(new Insets(8));
+        HBox.setHgrow(name, Priority.ALWAYS);
+        final SplitPane split = new SplitPane(table, details(authorDetails));
+        split.setDividerPositions(0.5);
+        final BorderPane pane = new BorderPane(split);
+        pane.setTop(controls);
+        reload.run();
+        return new Tab("Authors", pane);
+    }
+
+    private void showAuthor(final int id) {
+        shownAuthorId = id;
+        authorDetails.setText("Loading...");
+        background.execute(() -> {
+            try {
+                final Author author = dbHelper.getAuthor(id);
+                final StringBuilder text = new StringBuilder();
+                if (author != null) {
+                    text.append(author.name()).append('\n');
+                    author.links().forEach(link -> text.append(link).append('\n'));
+                    text.append('\n');
+                    dbHelper.readFanfictions(dbHelper.getAuthoredFanfictions(id), (fanfiction, fanfictionId) ->
+                            text.append(fanfiction.title()).append(" (").append(fanfiction.words()).append(" words)\n"));
+                }
+                Platform.runLater(() -> {
+                    if (shownAuthorId == id) {
+                        authorDetails.setText(text.toString());
+                    }
+                });
+            }
+            catch (SQLException ex) {
+                Platform.runLater(() -> showError(ex));
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+}
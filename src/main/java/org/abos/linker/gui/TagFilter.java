@@ -0,0 +1,97 @@
+package org.abos.linker.gui;
+
+import org.abos.common.CompressedBitmap;
+import org.abos.linker.index.TagIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The tags the fanfictions must all have, with the fanfictions matching them, to count how many fanfictions would
+ * remain with each further tag. Adding a tag only intersects the current matches with the fanfictions of the tag
+ * instead of filtering all fanfictions again; only removing one filters again.
+ * <p>
+ * Immutable, so a filter can be handed to a background thread while the UI already moved on to the next one.
+ */
+public final class TagFilter {
+
+    private final TagIndex index;
+
+    private final List<Integer> tagIds;
+
+    private final CompressedBitmap matching;
+
+    private TagFilter(final TagIndex index, final List<Integer> tagIds, final CompressedBitmap matching) {
+        this.index = index;
+        this.tagIds = tagIds;
+        this.matching = matching;
+    }
+
+    /**
+     * Returns the filter without tags, matching all fanfictions.
+     * @param index the index to filter with, not {@code null}
+     * @return the filter, not {@code null}
+     */
+    public static TagFilter all(final TagIndex index) {
+        return new TagFilter(Objects.requireNonNull(index), List.of(), index.filter(List.of(), List.of(), List.of()));
+    }
+
+    /**
+     * Returns this filter with another tag.
+     * @param tagId the ID of the tag
+     * @return the new filter, this one if it already has the tag, not {@code null}
+     */
+    public TagFilter with(final int tagId) {
+        if (tagIds.contains(tagId)) {
+            return this;
+        }
+        final List<Integer> newTagIds = new ArrayList<>(tagIds);
+        newTagIds.add(tagId);
+        return new TagFilter(index, Collections.unmodifiableList(newTagIds), matching.and(index.get(tagId)));
+    }
+
+    /**
+     * Returns this filter without a tag.
+     * @param tagId the ID of the tag
+     * @return the new filter, this one if it doesn't have the tag, not {@code null}
+     */
+    public TagFilter without(final int tagId) {
+        if (!tagIds.contains(tagId)) {
+            return this;
+        }
+        final List<Integer> newTagIds = new ArrayList<>(tagIds);
+        newTagIds.remove(Integer.valueOf(tagId));
+        return new TagFilter(index, Collections.unmodifiableList(newTagIds), index.filter(newTagIds, List.of(), List.of()));
+    }
+
+    /**
+     * Returns the IDs of the tags in the order they were added.
+     * @return an unmodifiable list of the IDs, not {@code null}
+     */
+    public List<Integer> getTagIds() {
+        return tagIds;
+    }
+
+    /**
+     * Returns the number of fanfictions matching this filter.
+     * @return the number of fanfictions
+     */
+    public int count() {
+        return matching.cardinality();
+    }
+
+    /**
+     * Returns the number of fanfictions that would match this filter with another tag.
+     * @param tagId the ID of the tag
+     * @return the number of fanfictions
+     */
+    public int count(final int tagId) {
+        if (tagIds.contains(tagId)) {
+            return count();
+        }
+        return matching.and(index.get(tagId)).cardinality();
+    }
+
+}
@@ -0,0 +1,447 @@
+package org.abos.linker.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes which tags occur together and which fanfictions are similar to each other from the tags of each fanfiction.
+ * Fanfictions are compared by the cosine of their tag vectors, each tag weighted by its inverse document frequency,
+ * so rare tags count more than common ones. Both computations run as fork/join tasks in the common pool.
+ */
+public final class SimilarityJob {
+
+    /**
+     * The default number of similar fanfictions per fanfiction.
+     */
+    public static final int DEFAULT_K = 10;
+
+    /**
+     * The default number of postings scanned per fanfiction to find candidates for similar fanfictions.
+     * Postings of the rarest tags are scanned first, so only very common tags are skipped.
+     */
+    public static final int DEFAULT_POSTING_BUDGET = 10_000;
+
+    /**
+     * The number of candidates per requested similar fanfiction whose exact score is computed.
+     */
+    private static final int CANDIDATE_FACTOR = 4;
+
+    private static final int TAGS_PER_TASK = 64;
+
+    /**
+     * The number of matrix rows computed at once while iterating the co-occurrences.
+     */
+    private static final int TAGS_PER_CHUNK = 16 * TAGS_PER_TASK;
+
+    private static final int WORKS_PER_TASK = 256;
+
+    /**
+     * How often two tags occur together.
+     * @param tagId the ID of the one tag
+     * @param otherTagId the ID of the other tag, greater than {@code tagId}
+     * @param works the number of fanfictions tagged with both
+     */
+    public record Cooccurrence(int tagId, int otherTagId, int works) {
+    }
+
+    /**
+     * A fanfiction similar to another one.
+     * @param fanfictionId the ID of the fanfiction
+     * @param similarId the ID of the similar fanfiction
+     * @param score the cosine similarity, between {@code 0} and {@code 1}
+     */
+    public record SimilarWork(int fanfictionId, int similarId, double score) {
+    }
+
+    private final int[] fanfictionIds;
+
+    /**
+     * The distinct tag IDs, ascending.
+     */
+    private final int[] tagIds;
+
+    /**
+     * The indices into {@link #tagIds} of the tags of each fanfiction, ascending.
+     */
+    private final int[][] tagsByWork;
+
+    /**
+     * The indices into {@link #fanfictionIds} of the fanfictions of each tag, ascending.
+     */
+    private final int[][] worksByTag;
+
+    private final double[] squaredWeights;
+
+    private final double[] norms;
+
+    /**
+     * Per thread buffers for the candidates of a fanfiction, reused across tasks.
+     */
+    private final class Scratch {
+
+        private final double[] partialScores = new double[fanfictionIds.length];
+
+        private final int[] seenBy = new int[fanfictionIds.length];
+
+        private int[] candidates = new int[0];
+
+        private Scratch() {
+            Arrays.fill(seenBy, -1);
+        }
+    }
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Creates a new {@link SimilarityJob} instance.
+     * @param fanfictionIds the IDs of the fanfictions, not {@code null}
+     * @param tags the IDs of the tags of each fanfiction, not {@code null}
+     * @throws IllegalArgumentException If the lengths of the arguments differ.
+     */
+    public SimilarityJob(final int[] fanfictionIds, final int[][] tags) {
+        if (fanfictionIds.length != tags.length) {
+            throw new IllegalArgumentException("There must be tags for each fanfiction!");
+        }
+        this.fanfictionIds = fanfictionIds.clone();
+        tagIds = Arrays.stream(tags).flatMapToInt(Arrays::stream).sorted().distinct().toArray();
+        tagsByWork = new int[tags.length][];
+        final int[] counts = new int[tagIds.length];
+        for (int work = 0; work < tags.length; work++) {
+            tagsByWork[work] = Arrays.stream(tags[work]).map(tagId -> Arrays.binarySearch(tagIds, tagId)).sorted().distinct().toArray();
+            for (int tag : tagsByWork[work]) {
+                counts[tag]++;
+            }
+        }
+        worksByTag = new int[tagIds.length][];
+        squaredWeights = new double[tagIds.length];
+        for (int tag = 0; tag < tagIds.length; tag++) {
+            worksByTag[tag] = new int[counts[tag]];
+            final double weight = Math.log((double) tags.length / counts[tag]);
+            squaredWeights[tag] = weight * weight;
+            counts[tag] = 0;
+        }
+        norms = new double[tags.length];
+        for (int work = 0; work < tags.length; work++) {
+            double squaredNorm = 0;
+            for (int tag : tagsByWork[work]) {
+                worksByTag[tag][counts[tag]++] = work;
+                squaredNorm += squaredWeights[tag];
+            }
+            norms[work] = Math.sqrt(squaredNorm);
+        }
+    }
+
+    /**
+     * Returns the number of fanfictions.
+     * @return the number of fanfictions
+     */
+    public int size() {
+        return fanfictionIds.length;
+    }
+
+    /**
+     * Computes the sparse upper half of the tag co-occurrence matrix, ascending by the tags. The rows are computed
+     * in parallel a chunk at a time while iterating, so only the co-occurrences of one chunk are held at once.
+     * @param minWorks the minimum number of fanfictions two tags must occur together in to be reported
+     * @return the co-occurrences, not {@code null}
+     */
+    public Iterable<Cooccurrence> cooccurrences(final int minWorks) {
+        final int min = Math.max(1, minWorks);
+        return () -> new Iterator<>() {
+
+            private int nextTag;
+
+            private Iterator<Cooccurrence> chunk = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!chunk.hasNext() && nextTag < tagIds.length) {
+                    final int to = Math.min(tagIds.length, nextTag + TAGS_PER_CHUNK);
+                    chunk = new CooccurrenceTask(nextTag, to, min).invoke().iterator();
+                    nextTag = to;
+                }
+                return chunk.hasNext();
+            }
+
+            @Override
+            public Cooccurrence next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.next();
+            }
+        };
+    }
+
+    /**
+     * Computes the most similar fanfictions for each fanfiction.
+     * @param k the maximum number of similar fanfictions per fanfiction
+     * @param postingBudget the number of postings scanned per fanfiction to find candidates
+     * @return the similar fanfictions, per fanfiction descending by score, not {@code null}
+     */
+    public List<SimilarWork> similarWorks(final int k, final int postingBudget) {
+        final int[] similar = new int[fanfictionIds.length * k];
+        final double[] scores = new double[fanfictionIds.length * k];
+        Arrays.fill(similar, -1);
+        new SimilarityTask(0, fanfictionIds.length, k, postingBudget, similar, scores).invoke();
+        final List<SimilarWork> result = new ArrayList<>();
+        for (int index = 0; index < similar.length; index++) {
+            if (similar[index] != -1) {
+                result.add(new SimilarWork(fanfictionIds[index / k], fanfictionIds[similar[index]], scores[index]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the exact cosine similarity of two fanfictions.
+     */
+    private double cosine(final int work, final int other) {
+        final int[] tags = tagsByWork[work];
+        final int[] otherTags = tagsByWork[other];
+        double dot = 0;
+        int i = 0;
+        int j = 0;
+        while (i < tags.length && j < otherTags.length) {
+            if (tags[i] < otherTags[j]) {
+                i++;
+            }
+            else if (tags[i] > otherTags[j]) {
+                j++;
+            }
+            else {
+                dot += squaredWeights[tags[i]];
+                i++;
+                j++;
+            }
+        }
+        final double norm = norms[work] * norms[other];
+        return norm == 0 ? 0 : dot / norm;
+    }
+
+    /**
+     * Keeps the highest scored entries in a min-heap of fixed capacity.
+     */
+    private static final class TopK {
+
+        private final int[] ids;
+
+        private final double[] scores;
+
+        private int size;
+
+        private TopK(final int capacity) {
+            ids = new int[capacity];
+            scores = new double[capacity];
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void offer(final int id, final double score) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                siftUp(size++);
+            }
+            else if (ids.length > 0 && score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        private void swap(final int a, final int b) {
+            final int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            final double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0 && scores[(index - 1) / 2] > scores[index]) {
+                swap(index, (index - 1) / 2);
+                index = (index - 1) / 2;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if (scores[child] < scores[smallest]) {
+                        smallest = child;
+                    }
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        /**
+         * Empties the heap into the specified arrays, descending by score.
+         * @return the number of entries written
+         */
+        private int drain(final int[] idsTarget, final double[] scoresTarget, final int offset) {
+            final int count = size;
+            while (size > 0) {
+                size--;
+                idsTarget[offset + size] = ids[0];
+                scoresTarget[offset + size] = scores[0];
+                swap(0, size);
+                siftDown(0);
+            }
+            return count;
+        }
+    }
+
+    private final class CooccurrenceTask extends RecursiveTask<List<Cooccurrence>> {
+
+        private final int from;
+
+        private final int to;
+
+        private final int minWorks;
+
+        private CooccurrenceTask(final int from, final int to, final int minWorks) {
+            this.from = from;
+            this.to = to;
+            this.minWorks = minWorks;
+        }
+
+        @Override
+        protected List<Cooccurrence> compute() {
+            if (to - from > TAGS_PER_TASK) {
+                final int middle = (from + to) >>> 1;
+                final CooccurrenceTask left = new CooccurrenceTask(from, middle, minWorks);
+                final CooccurrenceTask right = new CooccurrenceTask(middle, to, minWorks);
+                ForkJoinTask.invokeAll(left, right);
+                final List<Cooccurrence> result = left.join();
+                result.addAll(right.join());
+                return result;
+            }
+            // one row of the matrix at a time, so only a single row of counts is held
+            final List<Cooccurrence> result = new ArrayList<>();
+            final int[] counts = new int[tagIds.length];
+            final int[] touched = new int[tagIds.length];
+            for (int tag = from; tag < to; tag++) {
+                int touchedCount = 0;
+                for (int work : worksByTag[tag]) {
+                    for (int other : tagsByWork[work]) {
+                        if (other > tag && counts[other]++ == 0) {
+                            touched[touchedCount++] = other;
+                        }
+                    }
+                }
+                Arrays.sort(touched, 0, touchedCount);
+                for (int index = 0; index < touchedCount; index++) {
+                    final int other = touched[index];
+                    if (counts[other] >= minWorks) {
+                        result.add(new Cooccurrence(tagIds[tag], tagIds[other], counts[other]));
+                    }
+                    counts[other] = 0;
+                }
+            }
+            return result;
+        }
+    }
+
+    private final class SimilarityTask extends RecursiveAction {
+
+        private final int from;
+
+        private final int to;
+
+        private final int k;
+
+        private final int postingBudget;
+
+        private final int[] similar;
+
+        private final double[] scores;
+
+        private SimilarityTask(final int from, final int to, final int k, final int postingBudget, final int[] similar, final double[] scores) {
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.postingBudget = postingBudget;
+            this.similar = similar;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > WORKS_PER_TASK) {
+                final int middle = (from + to) >>> 1;
+                ForkJoinTask.invokeAll(
+                        new SimilarityTask(from, middle, k, postingBudget, similar, scores),
+                        new SimilarityTask(middle, to, k, postingBudget, similar, scores));
+                return;
+            }
+            final Scratch buffers = scratch.get();
+            if (buffers.candidates.length < Math.min(fanfictionIds.length, postingBudget)) {
+                buffers.candidates = new int[Math.min(fanfictionIds.length, postingBudget)];
+            }
+            final double[] partialScores = buffers.partialScores;
+            final int[] seenBy = buffers.seenBy;
+            final int[] candidates = buffers.candidates;
+            final TopK bestCandidates = new TopK(k * CANDIDATE_FACTOR);
+            final TopK best = new TopK(k);
+            for (int work = from; work < to; work++) {
+                // scan the postings of the rarest tags first to find the candidates
+                final int[] tags = Arrays.stream(tagsByWork[work]).boxed()
+                        .sorted((a, b) -> Integer.compare(worksByTag[a].length, worksByTag[b].length))
+                        .mapToInt(Integer::intValue).toArray();
+                int budget = postingBudget;
+                int candidateCount = 0;
+                for (int tag : tags) {
+                    if (budget <= 0) {
+                        break;
+                    }
+                    final int[] postings = worksByTag[tag];
+                    final int scanned = Math.min(postings.length, budget);
+                    budget -= scanned;
+                    for (int index = 0; index < scanned; index++) {
+                        final int other = postings[index];
+                        if (other == work) {
+                            continue;
+                        }
+                        if (seenBy[other] != work) {
+                            seenBy[other] = work;
+                            partialScores[other] = 0;
+                            candidates[candidateCount++] = other;
+                        }
+                        partialScores[other] += squaredWeights[tag];
+                    }
+                }
+                // rescore the best candidates exactly, as the skipped common tags are missing
+                bestCandidates.clear();
+                for (int index = 0; index < candidateCount; index++) {
+                    bestCandidates.offer(candidates[index], partialScores[candidates[index]]);
+                }
+                best.clear();
+                for (int index = 0; index < bestCandidates.size; index++) {
+                    final double score = cosine(work, bestCandidates.ids[index]);
+                    if (score > 0) {
+                        best.offer(bestCandidates.ids[index], score);
+                    }
+                }
+                best.drain(similar, scores, work * k);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package org.abos.linker.index;
+
+import org.abos.common.CompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from tag IDs to the IDs of the fanfictions tagged with them, to filter fanfictions by multiple tags
+ * without joining over the DB. Safe to use from multiple threads.
+ */
+public final class TagIndex {
+
+    private final Map<Integer, CompressedBitmap> fanfictionsByTag = new HashMap<>();
+
+    private final CompressedBitmap fanfictions = new CompressedBitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public TagIndex() {
+        /* Nothing to initialize. */
+    }
+
+    /**
+     * Records that a fanfiction is tagged with a tag.
+     * @param tagId the ID of the tag
+     * @param fanfictionId the ID of the fanfiction, not negative
+     * @throws IllegalArgumentException If {@code fanfictionId} is negative.
+     */
+    public void add(final int tagId, final int fanfictionId) {
+        lock.writeLock().lock();
+        try {
+            final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+            if (tagged == null) {
+                // only map the tag once the bitmap is not empty, or size() would count it
+                fanfictionsByTag.put(tagId, CompressedBitmap.of(fanfictionId));
+            }
+            else {
+                tagged.add(fanfictionId);
+            }
+            fanfictions.add(fanfictionId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records that a fanfiction is no longer tagged with a tag.
+     * @param tagId the ID of the tag
+     * @param fanfictionId the ID of the fanfiction
+     */
+    public void remove(final int tagId, final int fanfictionId) {
+        lock.writeLock().lock();
+        try {
+            final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+            if (tagged != null) {
+                tagged.remove(fanfictionId);
+                // a tag without fanfictions is dropped, so size() only counts tags in use
+                if (tagged.isEmpty()) {
+                    fanfictionsByTag.remove(tagId);
+                }
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves all fanfictions of a tag over to another tag, e.g. if the former became an alias of the latter.
+     * @param tagId the ID of the tag to move to
+     * @param oldTagId the ID of the tag to move from
+     */
+    public void merge(final int tagId, final int oldTagId) {
+        lock.writeLock().lock();
+        try {
+            final CompressedBitmap moved = fanfictionsByTag.remove(oldTagId);
+            if (moved != null) {
+                final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+                fanfictionsByTag.put(tagId, tagged == null ? moved : tagged.or(moved));
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of tags with at least one fanfiction.
+     * @return the number of tags
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return fanfictionsByTag.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the fanfictions tagged with a tag.
+     * @param tagId the ID of the tag
+     * @return a copy of the IDs of the fanfictions, not {@code null}
+     */
+    public CompressedBitmap get(final int tagId) {
+        lock.readLock().lock();
+        try {
+            final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+            return tagged == null ? new CompressedBitmap() : tagged.copy();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of fanfictions tagged with a tag.
+     * @param tagId the ID of the tag
+     * @return the number of fanfictions
+     */
+    public int count(final int tagId) {
+        lock.readLock().lock();
+        try {
+            final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+            return tagged == null ? 0 : tagged.cardinality();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filters the fanfictions by their tags. Must be called with the read lock held.
+     * @return the IDs of the matching fanfictions, possibly a bitmap of this index itself
+     */
+    private CompressedBitmap internalFilter(final Collection<Integer> allOf, final Collection<Integer> anyOf, final Collection<Integer> noneOf) {
+        // start with the smallest bitmap to keep the intermediate results small
+        final List<CompressedBitmap> required = new ArrayList<>(allOf.size());
+        for (int tagId : allOf) {
+            final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+            if (tagged == null) {
+                return new CompressedBitmap();
+            }
+            required.add(tagged);
+        }
+        required.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+        CompressedBitmap result = null;
+        for (CompressedBitmap tagged : required) {
+            result = result == null ? tagged : result.and(tagged);
+        }
+        if (!anyOf.isEmpty()) {
+            CompressedBitmap union = new CompressedBitmap();
+            for (int tagId : anyOf) {
+                final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+                if (tagged != null) {
+                    union = union.or(tagged);
+                }
+            }
+            result = result == null ? union : result.and(union);
+        }
+        if (result == null) {
+            result = fanfictions;
+        }
+        for (int tagId : noneOf) {
+            final CompressedBitmap tagged = fanfictionsByTag.get(tagId);
+            if (tagged != null) {
+                result = result.andNot(tagged);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Filters the fanfictions by their tags.
+     * @param allOf the IDs of the tags the fanfictions must all have, not {@code null}
+     * @param anyOf the IDs of the tags the fanfictions must have at least one of, not {@code null}. Ignored if empty.
+     * @param noneOf the IDs of the tags the fanfictions must not have, not {@code null}
+     * @return the IDs of the matching fanfictions, not {@code null}.
+     * If {@code allOf} and {@code anyOf} are empty, all fanfictions without the tags in {@code noneOf} match.
+     */
+    public CompressedBitmap filter(final Collection<Integer> allOf, final Collection<Integer> anyOf, final Collection<Integer> noneOf) {
+        lock.readLock().lock();
+        try {
+            final CompressedBitmap result = internalFilter(allOf, anyOf, noneOf);
+            // never hand out the bitmaps of the index itself
+            if (result == fanfictions || (allOf.size() == 1 && result == fanfictionsByTag.get(allOf.iterator().next()))) {
+                return result.copy();
+            }
+            return result;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the fanfictions matching a filter.
+     * @see #filter(Collection, Collection, Collection)
+     */
+    public int count(final Collection<Integer> allOf, final Collection<Integer> anyOf, final Collection<Integer> noneOf) {
+        lock.readLock().lock();
+        try {
+            return internalFilter(allOf, anyOf, noneOf).cardinality();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.abos.linker.link;
+
+import org.abos.linker.core.Tag;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps tag aliases to the names of their tags, so scraped tags can be rewritten to their canonical names before they
+ * reach the database. Safe to use from multiple threads.
+ */
+public final class AliasResolver {
+
+    private final ConcurrentMap<String, String> canonicalNames = new ConcurrentHashMap<>();
+
+    public AliasResolver() {
+        /* Nothing to initialize. */
+    }
+
+    /**
+     * Returns the canonical name for the specified name.
+     * @param name the name, not {@code null}
+     * @return the name of the tag {@code name} is an alias of, or {@code name} itself if it is no alias
+     */
+    public String resolve(final String name) {
+        return canonicalNames.getOrDefault(name, name);
+    }
+
+    /**
+     * Rewrites the specified tag to its canonical name.
+     * @param tag the tag, not {@code null}
+     * @return a tag with the canonical name, {@code tag} itself if its name is no alias
+     */
+    public Tag resolve(final Tag tag) {
+        final String name = canonicalNames.get(tag.name());
+        if (name == null) {
+            return tag;
+        }
+        return new Tag(name, tag.description(), tag.isCharacter(), tag.isRelationship(), tag.fandom(), tag.link());
+    }
+
+    /**
+     * Adds an alias.
+     * @param alias the alias, not {@code null}
+     * @param name the name of the tag, not {@code null}
+     */
+    public void put(final String alias, final String name) {
+        canonicalNames.put(Objects.requireNonNull(alias), resolve(Objects.requireNonNull(name)));
+    }
+
+    /**
+     * Makes a tag name an alias of another tag, including all aliases it had.
+     * @param name the name of the tag that remains, not {@code null}
+     * @param alias the name of the tag that becomes an alias, not {@code null}
+     */
+    public void changeToAlias(final String name, final String alias) {
+        final String canonicalName = resolve(name);
+        for (Map.Entry<String, String> entry : canonicalNames.entrySet()) {
+            if (entry.getValue().equals(alias)) {
+                entry.setValue(canonicalName);
+            }
+        }
+        canonicalNames.put(alias, canonicalName);
+    }
+
+    /**
+     * Returns the number of aliases known.
+     * @return the number of aliases
+     */
+    public int size() {
+        return canonicalNames.size();
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.abos.linker.link;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits Ao3 relationship tags into the names of the characters involved, e.g. {@code "Erin Solstice/Ryoka Griffin"}
+ * for a romantic and {@code "Erin Solstice & Lyonette du Marquin"} for a platonic relationship.
+ */
+public final class RelationshipParser {
+
+    /**
+     * Matches the separators between the characters. The ampersand needs surrounding spaces since it may occur in names.
+     */
+    private static final Pattern SEPARATOR = Pattern.compile("\\s*/\\s*|\\s+&\\s+");
+
+    private RelationshipParser() {
+        /* No instantiation. */
+    }
+
+    /**
+     * Parses a relationship tag into the names of the characters involved.
+     * @param relationship the name of the relationship tag, not {@code null}
+     * @return the distinct character names in order of appearance, empty if there are less than two
+     */
+    public static List<String> parse(final String relationship) {
+        final List<String> names = new ArrayList<>(2);
+        for (String part : SEPARATOR.split(relationship)) {
+            final String name = part.strip();
+            if (!name.isEmpty() && !names.contains(name)) {
+                names.add(name);
+            }
+        }
+        if (names.size() < 2) {
+            return List.of();
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,268 @@
+package org.abos.linker.link;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Links scraped tag names like {@code "Erin Solstice (The Wandering Inn)"} to known tags like {@code "Erin Solstice"}.
+ * Names are normalized and indexed by their trigrams; matches are scored with the Dice coefficient of the trigram sets.
+ * Names and aliases can be added at any time. Safe to use from multiple threads.
+ */
+public final class TagLinker {
+
+    /**
+     * The minimum score for a match to be resolved automatically.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.8;
+
+    /**
+     * The minimum lead of a match over the best match for another tag to be resolved automatically.
+     */
+    public static final double DEFAULT_MARGIN = 0.1;
+
+    /**
+     * A growable list of primitive ints.
+     */
+    private static final class IntList {
+
+        private int[] data = new int[4];
+
+        private int size;
+
+        private void add(final int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    private record Entry(int tagId, String canonicalName, int trigramCount) {
+    }
+
+    /**
+     * Per thread counters for the candidates of a query, reset after each query.
+     */
+    private static final class Scratch {
+
+        private int[] counts = new int[0];
+
+        private final IntList touched = new IntList();
+
+        private void ensureCapacity(final int size) {
+            if (counts.length < size) {
+                counts = new int[Math.max(size, counts.length * 2)];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final double threshold;
+
+    private final double margin;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private final Map<String, Integer> exact = new HashMap<>();
+
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    public TagLinker() {
+        this(DEFAULT_THRESHOLD, DEFAULT_MARGIN);
+    }
+
+    /**
+     * Creates a new {@link TagLinker} instance.
+     * @param threshold the minimum score for a match to be resolved automatically, between {@code 0} and {@code 1}
+     * @param margin the minimum lead over the best match for another tag to be resolved automatically
+     */
+    public TagLinker(final double threshold, final double margin) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException("Threshold must be between 0 and 1!");
+        }
+        this.threshold = threshold;
+        this.margin = margin;
+    }
+
+    /**
+     * Normalizes a tag name by dropping a trailing disambiguation in parentheses, lower casing it and replacing
+     * every run of other characters than letters and digits by a single space.
+     * @param name the name to normalize, not {@code null}
+     * @return the normalized name, not {@code null}
+     */
+    public static String normalize(final String name) {
+        int end = name.length();
+        if (name.endsWith(")")) {
+            final int open = name.lastIndexOf('(');
+            if (open > 0) {
+                end = open;
+            }
+        }
+        final StringBuilder normalized = new StringBuilder(end);
+        boolean space = false;
+        for (int i = 0; i < end; i++) {
+            final char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && !normalized.isEmpty()) {
+                    normalized.append(' ');
+                }
+                space = false;
+                normalized.append(Character.toLowerCase(c));
+            }
+            else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Returns the distinct trigrams of a normalized name, padded like {@code pg_trgm} does.
+     * @param normalized the normalized name, not {@code null}
+     * @return the sorted distinct trigrams, each packed into a {@code long}
+     */
+    static long[] trigrams(final String normalized) {
+        if (normalized.isEmpty()) {
+            return new long[0];
+        }
+        final String padded = "  " + normalized + " ";
+        final long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long)padded.charAt(i) << 32) | ((long)padded.charAt(i+1) << 16) | padded.charAt(i+2);
+        }
+        Arrays.sort(grams);
+        int distinct = 1;
+        for (int i = 1; i < grams.length; i++) {
+            if (grams[i] != grams[distinct-1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == grams.length ? grams : Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Adds a name under which a tag is known, either its own name or an alias.
+     * If the name is already known, it is pointed to the specified tag instead.
+     * @param name the name or alias, not {@code null}
+     * @param tagId the ID of the tag
+     * @param canonicalName the name of the tag, not {@code null}
+     */
+    public void add(final String name, final int tagId, final String canonicalName) {
+        Objects.requireNonNull(canonicalName);
+        final String normalized = normalize(name);
+        final long[] grams = trigrams(normalized);
+        lock.writeLock().lock();
+        try {
+            final Integer existing = exact.get(normalized);
+            if (existing != null) {
+                entries.set(existing, new Entry(tagId, canonicalName, grams.length));
+                return;
+            }
+            final int index = entries.size();
+            entries.add(new Entry(tagId, canonicalName, grams.length));
+            exact.put(normalized, index);
+            for (long gram : grams) {
+                postings.computeIfAbsent(gram, g -> new IntList()).add(index);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of names and aliases known.
+     * @return the number of indexed names
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the known tag most similar to the specified name.
+     * @param name the scraped name, not {@code null}
+     * @return the best match or {@code null} if no known name shares a trigram with {@code name}
+     */
+    public TagMatch match(final String name) {
+        final String normalized = normalize(name);
+        lock.readLock().lock();
+        try {
+            final Integer exactIndex = exact.get(normalized);
+            if (exactIndex != null) {
+                final Entry entry = entries.get(exactIndex);
+                return new TagMatch(entry.canonicalName(), entry.tagId(), 1, 0);
+            }
+            final long[] grams = trigrams(normalized);
+            if (grams.length == 0) {
+                return null;
+            }
+            final Scratch scratch = SCRATCH.get();
+            scratch.ensureCapacity(entries.size());
+            final int[] counts = scratch.counts;
+            final IntList touched = scratch.touched;
+            touched.size = 0;
+            for (long gram : grams) {
+                final IntList posting = postings.get(gram);
+                if (posting == null) {
+                    continue;
+                }
+                for (int i = 0; i < posting.size; i++) {
+                    if (counts[posting.data[i]]++ == 0) {
+                        touched.add(posting.data[i]);
+                    }
+                }
+            }
+            Entry best = null;
+            double bestScore = 0, runnerUpScore = 0;
+            for (int i = 0; i < touched.size; i++) {
+                final int index = touched.data[i];
+                final Entry entry = entries.get(index);
+                final double score = 2.0 * counts[index] / (grams.length + entry.trigramCount());
+                if (score > bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+            // aliases of the best tag do not compete with it
+            for (int i = 0; i < touched.size; i++) {
+                final int index = touched.data[i];
+                final Entry entry = entries.get(index);
+                if (entry.tagId() != best.tagId()) {
+                    runnerUpScore = Math.max(runnerUpScore, 2.0 * counts[index] / (grams.length + entry.trigramCount()));
+                }
+                counts[index] = 0;
+            }
+            return best == null ? null : new TagMatch(best.canonicalName(), best.tagId(), bestScore, runnerUpScore);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Resolves the specified name to a known tag if the match is confident, i.e. scores at least the threshold and
+     * leads the best match for another tag by at least the margin.
+     * @param name the scraped name, not {@code null}
+     * @return the confident match or {@code null} if there is none
+     */
+    public TagMatch resolve(final String name) {
+        final TagMatch match = match(name);
+        if (match == null || match.score() < threshold || match.score() - match.runnerUpScore() < margin) {
+            return null;
+        }
+        return match;
+    }
+
+}
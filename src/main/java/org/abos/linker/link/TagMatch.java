@@ -0,0 +1,11 @@
+package org.abos.linker.link;
+
+/**
+ * The result of matching a scraped tag name against the known tags.
+ * @param name the canonical name of the matched tag, not {@code null}
+ * @param tagId the ID of the matched tag
+ * @param score the similarity between {@code 0} and {@code 1}, {@code 1} meaning equal after normalization
+ * @param runnerUpScore the similarity of the best match for another tag, {@code 0} if there is none
+ */
+public record TagMatch(String name, int tagId, double score, double runnerUpScore) {
+}
@@ -0,0 +1,322 @@
+package org.abos.linker.scraper;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Canonicalizer;
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Extracts a {@link FanfictionBuilder} from an Ao3 work blurb in a single pass over its nodes.
+ * Dispatches on tag and class of each element instead of scanning the blurb subtree once per section.
+ * Not thread-safe, use one instance per blurb.
+ */
+final class Ao3BlurbExtractor implements NodeFilter {
+
+    private enum Section {
+        NONE, HEADING, FANDOMS, REQUIRED_TAGS, TAGS, STATS
+    }
+
+    private final String baseUrl;
+
+    private final String ignoredFandom;
+
+    private final Canonicalizer canonicalizer;
+
+    private Section section = Section.NONE;
+
+    private Element sectionElement;
+
+    private boolean headingDone, fandomsDone, tagsSeen, statsDone;
+
+    private Element requiredTagsElement, tagsElement;
+
+    // the list item of the required tags whose first span has not been seen yet
+    private Element requiredTag;
+
+    private String title, link;
+
+    private final List<Author> authors = new ArrayList<>();
+
+    private final List<Fandom> fandoms = new ArrayList<>();
+
+    private final List<Tag> tags = new ArrayList<>();
+
+    private String rating, language;
+
+    private int chapters, words;
+
+    private int kudos, hits, comments, bookmarks;
+
+    private boolean catFf, catFm, catMm, catGen, catMulti, catOther, completed;
+
+    private boolean warningNoneGiven, warningNoneApply, warningViolence, warningRape, warningDeath, warningUnderage;
+
+    /**
+     * Creates a new {@link Ao3BlurbExtractor} instance.
+     * @param baseUrl the URL to prefix relative links with, not {@code null}
+     * @param ignoredFandom the fandom not to count as crossover, may be {@code null}
+     * @param canonicalizer the pool to dedupe tags, fandoms, authors and names with, not {@code null}
+     */
+    Ao3BlurbExtractor(final String baseUrl, final String ignoredFandom, final Canonicalizer canonicalizer) {
+        this.baseUrl = Objects.requireNonNull(baseUrl);
+        this.ignoredFandom = ignoredFandom;
+        this.canonicalizer = Objects.requireNonNull(canonicalizer);
+    }
+
+    /**
+     * Extracts the work data from the specified blurb.
+     * @param blurb the blurb, i.e. the element with {@code role=article}, not {@code null}
+     * @return a builder with everything but the last update filled in, not {@code null}
+     * @throws IllegalStateException If the blurb lacks a title, rating, chapters or words or has an unknown warning.
+     */
+    FanfictionBuilder extract(final Element blurb) {
+        blurb.filter(this);
+        if (title == null) {
+            throw new IllegalStateException("Couldn't find title in blurb!");
+        }
+        if (rating == null) {
+            throw new IllegalStateException("Rating was not specified for story " + title + "!");
+        }
+        if (chapters == 0) {
+            throw new IllegalStateException("Couldn't find chapters for " + title + "!");
+        }
+        if (words == 0) {
+            throw new IllegalStateException("Couldn't find words for " + title + "!");
+        }
+        return new FanfictionBuilder()
+                .title(title)
+                .chapters(chapters)
+                .words(words)
+                .engagement(new Engagement(kudos, hits, comments, bookmarks))
+                .language(language)
+                .rating(rating)
+                .warningNoneGiven(warningNoneGiven)
+                .warningNoneApply(warningNoneApply)
+                .warningViolence(warningViolence)
+                .warningRape(warningRape)
+                .warningDeath(warningDeath)
+                .warningUnderage(warningUnderage)
+                .catFf(catFf)
+                .catFm(catFm)
+                .catMm(catMm)
+                .catGen(catGen)
+                .catMulti(catMulti)
+                .catOther(catOther)
+                .completed(completed)
+                .link(link)
+                .authors(authors)
+                .tags(tags)
+                .crossovers(fandoms);
+    }
+
+    private void enter(final Section section, final Element element) {
+        this.section = section;
+        this.sectionElement = element;
+    }
+
+    @Override
+    public FilterResult head(final Node node, final int depth) {
+        if (!(node instanceof Element element)) {
+            return FilterResult.CONTINUE;
+        }
+        return switch (section) {
+            case NONE -> headNone(element);
+            case HEADING -> headHeading(element);
+            case FANDOMS -> headFandoms(element);
+            case REQUIRED_TAGS -> headRequiredTags(element);
+            case TAGS -> headTags(element);
+            case STATS -> headStats(element);
+        };
+    }
+
+    @Override
+    public FilterResult tail(final Node node, final int depth) {
+        if (node == sectionElement) {
+            section = Section.NONE;
+            sectionElement = null;
+            if (headingDone && fandomsDone && tagsSeen && tagsElement == null && statsDone) {
+                return FilterResult.STOP;
+            }
+        }
+        return FilterResult.CONTINUE;
+    }
+
+    private FilterResult headNone(final Element element) {
+        if (element == requiredTagsElement) {
+            requiredTagsElement = null;
+            enter(Section.REQUIRED_TAGS, element);
+            return FilterResult.CONTINUE;
+        }
+        if (element == tagsElement) {
+            tagsElement = null;
+            enter(Section.TAGS, element);
+            return FilterResult.CONTINUE;
+        }
+        switch (element.normalName()) {
+            case "h4" -> {
+                if (!headingDone) {
+                    headingDone = true;
+                    enter(Section.HEADING, element);
+                }
+            }
+            case "h5" -> {
+                if (!fandomsDone) {
+                    fandomsDone = true;
+                    requiredTagsElement = element.nextElementSibling();
+                    enter(Section.FANDOMS, element);
+                }
+            }
+            case "h6" -> {
+                if (!tagsSeen) {
+                    tagsSeen = true;
+                    tagsElement = element.nextElementSibling();
+                }
+                return FilterResult.SKIP_CHILDREN;
+            }
+            case "blockquote" -> {
+                // the summary is of no interest
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            default -> {
+                if (!statsDone && element.hasClass("stats")) {
+                    statsDone = true;
+                    enter(Section.STATS, element);
+                }
+            }
+        }
+        return FilterResult.CONTINUE;
+    }
+
+    private FilterResult headHeading(final Element element) {
+        if (!element.normalName().equals("a")) {
+            return FilterResult.CONTINUE;
+        }
+        if (title == null) {
+            title = element.text();
+            link = baseUrl + element.attr("href");
+        }
+        else {
+            authors.add(canonicalizer.author(new Author(element.text(), List.of(baseUrl + element.attr("href")))));
+        }
+        return FilterResult.SKIP_CHILDREN;
+    }
+
+    private FilterResult headFandoms(final Element element) {
+        if (!element.normalName().equals("a")) {
+            return FilterResult.CONTINUE;
+        }
+        final String fandom = element.text();
+        // we ignore the main fandom and do not take the fandom link from Ao3
+        if (!fandom.equals(ignoredFandom)) {
+            fandoms.add(canonicalizer.fandom(new Fandom(fandom, null)));
+        }
+        return FilterResult.SKIP_CHILDREN;
+    }
+
+    private FilterResult headRequiredTags(final Element element) {
+        if (element.normalName().equals("li")) {
+            requiredTag = element;
+            return FilterResult.CONTINUE;
+        }
+        if (requiredTag == null || !element.normalName().equals("span")) {
+            return FilterResult.CONTINUE;
+        }
+        // only the first span of each list item tells the type
+        final Element tag = requiredTag;
+        requiredTag = null;
+        // ignore warning, will be taken from regular tags
+        if (element.hasClass("warnings")) {
+            return FilterResult.SKIP_CHILDREN;
+        }
+        if (element.hasClass("rating")) {
+            rating = canonicalizer.name(tag.text());
+        }
+        else if (element.hasClass("category")) {
+            final String categories = tag.text();
+            if (categories.contains("F/F")) {
+                catFf = true;
+            }
+            if (categories.contains("F/M")) {
+                catFm = true;
+            }
+            if (categories.contains("M/M")) {
+                catMm = true;
+            }
+            if (categories.contains("Gen")) {
+                catGen = true;
+            }
+            if (categories.contains("Multi")) {
+                catMulti = true;
+            }
+            if (categories.contains("Other")) {
+                catOther = true;
+            }
+        }
+        else if (element.hasClass("complete-yes")) {
+            completed = true;
+        }
+        return FilterResult.SKIP_CHILDREN;
+    }
+
+    private FilterResult headTags(final Element element) {
+        if (!element.normalName().equals("li")) {
+            return FilterResult.CONTINUE;
+        }
+        final String text = element.text();
+        if (element.hasClass("warnings")) {
+            switch (text) {
+                case "Creator Chose Not To Use Archive Warnings" -> warningNoneGiven = true;
+                case "No Archive Warnings Apply" -> warningNoneApply = true;
+                case "Graphic Depictions Of Violence" -> warningViolence = true;
+                case "Rape/Non-Con" -> warningRape = true;
+                case "Major Character Death" -> warningDeath = true;
+                case "Underage" -> warningUnderage = true;
+                default -> throw new IllegalStateException("Unknown warning " + text + " encountered!");
+            }
+        }
+        else {
+            tags.add(canonicalizer.tag(new Tag(text, null, element.hasClass("characters"), element.hasClass("relationships"), null, null)));
+        }
+        return FilterResult.SKIP_CHILDREN;
+    }
+
+    private FilterResult headStats(final Element element) {
+        if (!element.normalName().equals("dd")) {
+            return FilterResult.CONTINUE;
+        }
+        if (element.hasClass("language")) {
+            language = canonicalizer.name(element.text());
+        }
+        else if (element.hasClass("chapters")) {
+            final String completeChapters = element.text();
+            chapters = Integer.parseInt(completeChapters.substring(0, completeChapters.indexOf('/')).replace(",", ""));
+        }
+        else if (element.hasClass("words")) {
+            words = Integer.parseInt(element.text().replace(",", ""));
+        }
+        // left out by Ao3 if zero
+        else if (element.hasClass("kudos")) {
+            kudos = Integer.parseInt(element.text().replace(",", ""));
+        }
+        else if (element.hasClass("hits")) {
+            hits = Integer.parseInt(element.text().replace(",", ""));
+        }
+        else if (element.hasClass("comments")) {
+            comments = Integer.parseInt(element.text().replace(",", ""));
+        }
+        else if (element.hasClass("bookmarks")) {
+            bookmarks = Integer.parseInt(element.text().replace(",", ""));
+        }
+        return FilterResult.SKIP_CHILDREN;
+    }
+
+}
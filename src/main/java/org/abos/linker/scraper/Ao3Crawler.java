@@ -0,0 +1,173 @@
+package org.abos.linker.scraper;
+
+import org.abos.common.LogUtil;
+import org.abos.common.LongHashSet;
+import org.abos.linker.codec.SpillingQueue;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Crawls the works of several Ao3 listings at once, e.g. of a fandom, some of its characters and its crossovers.
+ * Such listings overlap a lot, so each work is fetched only for the first listing it is found in, recognized by its
+ * Ao3 ID. All listings take their requests from the same {@link HostBudget}, so crawling them concurrently only
+ * overlaps the waiting for responses, but never sends more requests than the budget allows.
+ */
+public final class Ao3Crawler {
+
+    /**
+     * The maximum number of listings crawled at the same time.
+     */
+    public static final int MAX_THREADS = 4;
+
+    private static final Logger LOGGER = LogManager.getLogger(Ao3Crawler.class);
+
+    private final Ao3Scraper scraper;
+
+    private final HostBudget budget;
+
+    /**
+     * The IDs of the works found so far, guarded by itself.
+     */
+    private final LongHashSet seen = new LongHashSet();
+
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Creates a new {@link Ao3Crawler} instance.
+     * @param scraper the scraper to scrape the pages with, not {@code null}
+     * @param budget the budget to take all requests from, not {@code null}
+     */
+    public Ao3Crawler(final Ao3Scraper scraper, final HostBudget budget) {
+        this.scraper = Objects.requireNonNull(scraper);
+        this.budget = Objects.requireNonNull(budget);
+    }
+
+    /**
+     * Marks a work as found.
+     * @param link the URL of the work, not {@code null}
+     * @return {@code true} if the work wasn't found before and should be fetched, else {@code false}
+     */
+    boolean markSeen(final String link) {
+        final long workId = Ao3Scraper.workId(link);
+        if (workId == -1L) {
+            // can't tell, so better fetch it
+            return true;
+        }
+        final boolean added;
+        synchronized (seen) {
+            added = seen.add(workId);
+        }
+        if (!added) {
+            duplicates.increment();
+        }
+        return added;
+    }
+
+    /**
+     * Forgets a work, so it is fetched again if another listing has it.
+     * @param link the URL of the work, not {@code null}
+     */
+    private void unmarkSeen(final String link) {
+        final long workId = Ao3Scraper.workId(link);
+        synchronized (seen) {
+            seen.remove(workId);
+        }
+    }
+
+    private void crawlListing(final String url, final BlockingQueue<Fanfiction> result) {
+        String next = url;
+        while (next != null) {
+            final List<FanfictionBuilder> blurbs = new ArrayList<>();
+            try {
+                next = scraper.scrapeListing(next, budget, blurbs);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.warn("Listing page {} failed: {}", next, ex.getMessage());
+                return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (FanfictionBuilder blurb : blurbs) {
+                if (!markSeen(blurb.link())) {
+                    continue;
+                }
+                try {
+                    result.add(scraper.scrapeWork(blurb, budget));
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.warn("Work {} failed: {}", blurb.link(), ex.getMessage());
+                    unmarkSeen(blurb.link());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Crawls the specified listings and all their following pages in the background.
+     * @param listingUrls the URLs of the first pages of the listings, see {@link Ao3Scraper#listingUrl(String)},
+     * not {@code null}
+     * @return a queue of the fanfictions, filled while they are scraped, that ends with {@link Fanfiction#DUMMY}
+     * @throws IOException If the queue couldn't be created.
+     */
+    public BlockingQueue<Fanfiction> crawl(final Collection<String> listingUrls) throws IOException {
+        final Set<String> listings = new LinkedHashSet<>(listingUrls);
+        LOGGER.info("Crawling {} listings from Ao3...", listings.size());
+        final Instant start = Instant.now();
+        final BlockingQueue<Fanfiction> result = new SpillingQueue<>(Fanfiction.class);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, listings.size())));
+        for (String listing : listings) {
+            executor.execute(() -> crawlListing(listing, result));
+        }
+        executor.shutdown();
+        new Thread(() -> {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+            }
+            result.add(Fanfiction.DUMMY);
+            final Duration time = Duration.between(start, Instant.now());
+            LOGGER.info(LogUtil.LOG_TIME_MSG, "Crawling " + size() + " fanfictions from Ao3", time.toMinutes(), time.toSecondsPart());
+            LOGGER.info("Skipped {} works found in more than one listing", duplicates.sum());
+        }).start();
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct works found so far.
+     * @return the number of works
+     */
+    public int size() {
+        synchronized (seen) {
+            return seen.size();
+        }
+    }
+
+    /**
+     * Returns the number of times a work was found again in another listing or page and therefore not fetched again.
+     * @return the number of duplicates
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+}
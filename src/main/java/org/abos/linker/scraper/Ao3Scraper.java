@@ -1,19 +1,21 @@
 package org.abos.linker.scraper;
 
-import org.abos.common.LogUtil;
-import org.abos.linker.core.Author;
-import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Canonicalizer;
+import org.abos.linker.core.Engagement;
 import org.abos.linker.core.Fanfiction;
 import org.abos.linker.core.FanfictionBuilder;
-import org.abos.linker.core.Tag;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.jsoup.Jsoup;
+import org.abos.linker.core.WorkStats;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.StreamParser;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -21,218 +23,265 @@ import java.time.LocalTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class Ao3Scraper {
 
     private static final String BASE_URL = "https://archiveofourown.org";
 
-    private static final String FANFICTION_PAGE = "/tags/The%20Wandering%20Inn%20-%20pirateaba/works";
-
     private static final String TWI_FANDOM = "The Wandering Inn - pirateaba";
 
+    /**
+     * The first listing page of the fanfictions to scrape.
+     */
+    public static final String FANFICTION_URL = listingUrl(TWI_FANDOM);
+
+    /**
+     * The kind of crawl frontier entries that are listing pages, see {@link #scrapeListing(String, HostBudget, List)}.
+     */
+    public static final String KIND_LISTING = "ao3-listing";
+
+    /**
+     * The kind of crawl frontier entries that are works, see {@link #scrapeWork(FanfictionBuilder, HostBudget)}.
+     */
+    public static final String KIND_WORK = "ao3-work";
+
     private static final DateTimeFormatter UPDATED_FORMATTER = DateTimeFormatter.ISO_DATE; // uuuu-MM-dd
 
+    /**
+     * Matches the work blurbs and the pagination link of a listing page.
+     */
+    private static final Evaluator LISTING_ELEMENTS = QueryParser.parse("[role=article], li.next");
+
     public static final int TIME_OUT = (int)Duration.ofSeconds(1).toMillis();
 
-    private static final Logger LOGGER = LogManager.getLogger(Ao3Scraper.class);
+    /**
+     * The interval between two requests to Ao3 when scraping without a given {@link HostBudget}.
+     */
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMillis(TIME_OUT + TIME_OUT / 4);
+
+    /**
+     * Matches the ID in the URL of a work.
+     */
+    private static final Pattern WORK_ID_PATTERN = Pattern.compile("/works/(\\d+)");
+
+    private final Canonicalizer canonicalizer;
+
+    private final ScraperClient client;
 
-    private final Random random = new Random();
+    private final String mainFandom;
 
     public Ao3Scraper() {
-        /* Nothing to initialize. */
+        this(new Canonicalizer(), ScraperClient.shared());
+    }
+
+    /**
+     * Creates a new {@link Ao3Scraper} instance for The Wandering Inn.
+     * @param canonicalizer the pool to dedupe scraped tags, fandoms, authors and names with, not {@code null}
+     * @param client the client to fetch pages with, not {@code null}
+     */
+    public Ao3Scraper(final Canonicalizer canonicalizer, final ScraperClient client) {
+        this(canonicalizer, client, TWI_FANDOM);
+    }
+
+    /**
+     * Creates a new {@link Ao3Scraper} instance.
+     * @param canonicalizer the pool to dedupe scraped tags, fandoms, authors and names with, not {@code null}
+     * @param client the client to fetch pages with, not {@code null}
+     * @param mainFandom the fandom all other fandoms of a work are crossovers with, may be {@code null}
+     */
+    public Ao3Scraper(final Canonicalizer canonicalizer, final ScraperClient client, final String mainFandom) {
+        this.canonicalizer = Objects.requireNonNull(canonicalizer);
+        this.client = Objects.requireNonNull(client);
+        this.mainFandom = mainFandom;
+        client.setTimeOut(URI.create(BASE_URL).getHost(), Duration.ofMillis(3*TIME_OUT));
+    }
+
+    /**
+     * Returns the first listing page of the works with the specified tag. Ao3 replaces the characters of tags that
+     * have a meaning in URLs, e.g. {@code /} by {@code *s*}, before encoding them.
+     * @param tag the name of the tag, e.g. a fandom or character, not {@code null}
+     * @return the URL of the listing page, not {@code null}
+     */
+    public static String listingUrl(final String tag) {
+        final String escaped = tag.replace("*", "*x*")
+                .replace("/", "*s*")
+                .replace("&", "*a*")
+                .replace(".", "*d*")
+                .replace("?", "*q*")
+                .replace("#", "*h*");
+        return BASE_URL + "/tags/" + URLEncoder.encode(escaped, StandardCharsets.UTF_8).replace("+", "%20") + "/works";
+    }
+
+    /**
+     * Returns the ID of the work with the specified URL.
+     * @param link the URL of the work, not {@code null}
+     * @return the ID, {@code -1} if the URL is not of a work
+     */
+    public static long workId(final String link) {
+        final Matcher matcher = WORK_ID_PATTERN.matcher(link);
+        if (!matcher.find()) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
     }
 
     private static Instant localDateToInstant(final LocalDate date) {
         return ZonedDateTime.of(date, LocalTime.MIDNIGHT, ZoneOffset.systemDefault()).toInstant();
     }
 
-    private Document getDocument(final String url) throws IOException {
-        return Jsoup.connect(url)
-                .userAgent("Mozilla")
-                .timeout(3*TIME_OUT)
-                .get();
+    private static int parseCount(final String count) {
+        return Integer.parseInt(count.replace(",", "").trim());
     }
 
-    private Instant scrapeLastUpdated(final String url) throws IOException {
-        final Document doc = getDocument(url);
+    /**
+     * Parses the engagement counters off the statistics of a work, counting those left out as zero.
+     */
+    private static Engagement scrapeEngagement(final Element stats) {
+        final int[] counts = new int[4];
+        final String[] names = {"kudos", "hits", "comments", "bookmarks"};
+        for (int index = 0; index < names.length; index++) {
+            final Element count = stats.selectFirst("dd." + names[index]);
+            if (count != null) {
+                counts[index] = parseCount(count.text());
+            }
+        }
+        return new Engagement(counts[0], counts[1], counts[2], counts[3]);
+    }
+
+    /**
+     * Scrapes the statistics off the page of a work.
+     * @param doc the page of the work, not {@code null}
+     * @return the statistics, not {@code null}
+     * @throws IllegalStateException If the page lacks the statistics.
+     */
+    static WorkStats scrapeWorkStats(final Document doc) {
         final Element content = doc.getElementsByAttributeValueContaining("class", "work meta group").get(0).getElementsByClass("stats").get(2);
         final Elements updated = content.getElementsByClass("status");
+        final Elements words = content.getElementsByClass("words");
+        final Elements chapters = content.getElementsByClass("chapters");
+        if (words.size() < 2 || chapters.size() < 2) {
+            throw new IllegalStateException("Couldn't find words or chapters for " + doc.location() + "!");
+        }
+        final Instant lastUpdated;
         if (updated.size() < 2) {
-            return localDateToInstant(LocalDate.parse(content.getElementsByClass("published").get(1).text(), UPDATED_FORMATTER));
+            lastUpdated = localDateToInstant(LocalDate.parse(content.getElementsByClass("published").get(1).text(), UPDATED_FORMATTER));
         }
-        return localDateToInstant(LocalDate.parse(updated.get(1).text(), UPDATED_FORMATTER));
+        else {
+            lastUpdated = localDateToInstant(LocalDate.parse(updated.get(1).text(), UPDATED_FORMATTER));
+        }
+        // e.g. 4/? while in progress, 4/4 when completed
+        final String chapterCounts = chapters.get(1).text();
+        final int slashIndex = chapterCounts.indexOf('/');
+        final int chapterCount = parseCount(chapterCounts.substring(0, slashIndex));
+        final String plannedChapters = chapterCounts.substring(slashIndex + 1).trim();
+        final boolean completed = !plannedChapters.equals("?") && parseCount(plannedChapters) == chapterCount;
+        return new WorkStats(chapterCount, parseCount(words.get(1).text()), completed, lastUpdated, scrapeEngagement(content));
+    }
+
+    private Instant scrapeLastUpdated(final String url) throws IOException {
+        return scrapeWorkStats(client.getDocument(url)).lastUpdated();
     }
 
+    /**
+     * Scrapes the statistics off the page of a work once the host budget allows it, to see if it was updated.
+     * @param url the URL of the work, not {@code null}
+     * @param budget the budget to take the request from, not {@code null}
+     * @return the statistics, not {@code null}
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedException If interrupted while waiting for the budget.
+     */
+    public WorkStats scrapeWorkStats(final String url, final HostBudget budget) throws IOException, InterruptedException {
+        budget.acquire(URI.create(url).getHost());
+        return scrapeWorkStats(client.getDocument(url));
+    }
+
+    /**
+     * Scrapes a work blurb of an Ao3 listing page in a single pass.
+     * @param entry the blurb, i.e. the element with {@code role=article}, not {@code null}
+     * @return a builder with everything but the last update filled in, not {@code null}
+     * @throws IllegalStateException If the blurb lacks a title, rating, chapters or words or has an unknown warning.
+     */
     public FanfictionBuilder scrapeFanfiction(final Element entry) {
-        // scrape heading and authors
-        final Elements h4Links = entry.getElementsByTag("h4").get(0).getElementsByTag("a");
-        final String title = h4Links.get(0).text();
-        final String link = BASE_URL + h4Links.get(0).attr("href");
-        final List<Author> authors = new LinkedList<>();
-        for (int i = 1; i < h4Links.size(); i++) {
-            authors.add(new Author(h4Links.get(i).text(), List.of(BASE_URL + h4Links.get(i).attr("href"))));
-        }
-        // scrape fandoms
-        final Elements h5Links = entry.getElementsByTag("h5").get(0).getElementsByTag("a");
-        final List<Fandom> fandoms = new LinkedList<>();
-        for (Element fandom : h5Links) {
-            // we ignore the TWI fandom
-            if (fandom.text().equals(TWI_FANDOM)) {
-                continue;
-            }
-            // we do not take the fandom link from Ao3
-            fandoms.add(new Fandom(fandom.text(), null));
-        }
-        // scrape required tags (the square ones)
-        final Elements requiredTags = entry.getElementsByTag("h5").get(0).nextElementSibling().getElementsByTag("li");
-        boolean catFf = false, catFm = false, catMm = false, catGen = false, catMulti = false, catOther = false, completed = false;
-        String rating = null;
-        for (Element tag : requiredTags) {
-            final var type = tag.getElementsByTag("span").get(0).classNames();
-            // ignore warning, will be taken from regular tags
-            if (type.contains("warnings")) {
-                continue;
-            }
-            if (type.contains("rating")) {
-                rating = tag.text();
-            }
-            else if (type.contains("category")) {
-                final String categories = tag.text();
-                if (categories.contains("F/F")) {
-                    catFf = true;
-                }
-                if (categories.contains("F/M")) {
-                    catFm = true;
-                }
-                if (categories.contains("M/M")) {
-                    catMm = true;
-                }
-                if (categories.contains("Gen")) {
-                    catGen = true;
-                }
-                if (categories.contains("Multi")) {
-                    catMulti = true;
-                }
-                if (categories.contains("Other")) {
-                    catOther = true;
-                }
-            }
-            else if (type.contains("complete-yes")) {
-                completed = true;
-            }
-        }
-        if (rating == null) {
-            throw new IllegalStateException("Rating was not specified for story " + title + "!");
-        }
-        // scrape the regular tags
-        final Elements tags = entry.getElementsByTag("h6").get(0).nextElementSibling().getElementsByTag("li");
-        final List<Tag> tagList = new LinkedList<>();
-        boolean warningNoneGiven = false, warningNoneApply = false, warningViolence = false, warningRape = false, warningDeath = false, warningUnderage = false;
-        for (Element tag : tags) {
-            if (tag.classNames().contains("warnings")) {
-                switch (tag.text()) {
-                    case "Creator Chose Not To Use Archive Warnings" -> warningNoneGiven = true;
-                    case "No Archive Warnings Apply" -> warningNoneApply = true;
-                    case "Graphic Depictions Of Violence" -> warningViolence = true;
-                    case "Rape/Non-Con" -> warningRape = true;
-                    case "Major Character Death" -> warningDeath = true;
-                    case "Underage" -> warningUnderage = true;
-                    default -> throw new IllegalStateException("Unknown warning " + tag.text() + " encountered!");
+        return new Ao3BlurbExtractor(BASE_URL, mainFandom, canonicalizer).extract(entry);
+    }
+
+    /**
+     * Scrapes the blurbs of a listing page while it is being parsed. Each blurb is removed from the DOM once scraped,
+     * so only the blurb currently parsed is held in memory.
+     * @param streamer the parser over the listing page, not {@code null}
+     * @param list the list to add the scraped blurbs to, not {@code null}
+     * @return the URL of the next listing page, {@code null} if this is the last one
+     * @throws IOException If an I/O error occurs.
+     */
+    String scrapeListingPage(final StreamParser streamer, final List<FanfictionBuilder> list) throws IOException {
+        String next = null;
+        boolean nextSeen = false;
+        Element element;
+        while ((element = streamer.selectNext(LISTING_ELEMENTS)) != null) {
+            if (element.hasClass("next")) {
+                // pagination might be repeated at the bottom
+                if (!nextSeen) {
+                    nextSeen = true;
+                    final Element linkNext = element.selectFirst("a");
+                    if (linkNext != null) {
+                        next = BASE_URL + linkNext.attr("href");
+                    }
                 }
             }
             else {
-                tagList.add(new Tag(tag.text(), null, tag.classNames().contains("characters"), tag.classNames().contains("relationships"), null, null));
+                list.add(scrapeFanfiction(element));
             }
+            element.remove();
         }
-        // scrape stats
-        String language = null;
-        int chapters = 0, words = 0;
-        final Elements stats = entry.getElementsByClass("stats").get(0).getElementsByTag("dd");
-        for (Element stat : stats) {
-            if (stat.classNames().contains("language")) {
-                language = stat.text();
-            }
-            else if (stat.classNames().contains("chapters")) {
-                final String completeChapters = stat.text();
-                chapters = Integer.parseInt(completeChapters.substring(0, completeChapters.indexOf('/')).replace(",", ""));
-            }
-            else if (stat.classNames().contains("words")) {
-                words = Integer.parseInt(stat.text().replace(",", ""));
-            }
-        }
-        if (chapters == 0) {
-            throw new IllegalStateException("Couldn't find chapters for " + title + "!");
-        }
-        if (words == 0) {
-            throw new IllegalStateException("Couldn't find words for " + title + "!");
+        return next;
+    }
+
+    /**
+     * Scrapes the blurbs of a single listing page once the host budget allows it.
+     * @param url the URL of the listing page, not {@code null}
+     * @param budget the budget to take the request from, not {@code null}
+     * @param list the list to add the scraped blurbs to, not {@code null}
+     * @return the URL of the next listing page, {@code null} if this is the last one
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedException If interrupted while waiting for the budget.
+     */
+    public String scrapeListing(final String url, final HostBudget budget, final List<FanfictionBuilder> list) throws IOException, InterruptedException {
+        budget.acquire(URI.create(url).getHost());
+        try (final StreamParser streamer = client.getStreamParser(url)) {
+            return scrapeListingPage(streamer, list);
         }
-        return new FanfictionBuilder()
-                .title(title)
-                .chapters(chapters)
-                .words(words)
-                .language(language)
-                .rating(rating)
-                .warningNoneGiven(warningNoneGiven)
-                .warningNoneApply(warningNoneApply)
-                .warningViolence(warningViolence)
-                .warningRape(warningRape)
-                .warningDeath(warningDeath)
-                .warningUnderage(warningUnderage)
-                .catFf(catFf)
-                .catFm(catFm)
-                .catMm(catMm)
-                .catGen(catGen)
-                .catMulti(catMulti)
-                .catOther(catOther)
-                .completed(completed)
-                .link(link)
-                .authors(authors)
-                .tags(tagList)
-                .crossovers(fandoms);
     }
 
+    /**
+     * Completes a blurb scraped from a listing page with the last update from the page of the work once the host
+     * budget allows it.
+     * @param fanfiction the blurb, not {@code null}
+     * @param budget the budget to take the request from, not {@code null}
+     * @return the complete fanfiction, not {@code null}
+     * @throws IOException If an I/O error occurs.
+     * @throws InterruptedException If interrupted while waiting for the budget.
+     */
+    public Fanfiction scrapeWork(final FanfictionBuilder fanfiction, final HostBudget budget) throws IOException, InterruptedException {
+        budget.acquire(URI.create(fanfiction.link()).getHost());
+        return fanfiction.lastUpdated(scrapeLastUpdated(fanfiction.link())).build();
+    }
+
+    /**
+     * Scrapes all fanfictions of the main tag.
+     * @return a queue of the fanfictions, filled while they are scraped, that ends with {@link Fanfiction#DUMMY}
+     * @throws IOException If the queue couldn't be created.
+     */
     public BlockingQueue<Fanfiction> scrapeFanfictions() throws IOException {
-        LOGGER.info("Scraping fanfiction from Ao3...");
-        final Instant start = Instant.now();
-        final List<FanfictionBuilder> list = new LinkedList<>();
-        Document doc = getDocument(BASE_URL + FANFICTION_PAGE);
-        while (true) {
-            final Elements group = doc.getElementsByAttributeValue("role", "article");
-            final Elements linkNexts = doc.getElementsByClass("next").get(0).getElementsByTag("a");
-            final Element linkNext = linkNexts.isEmpty() ? null : linkNexts.get(0);
-            for (Element entry : group) {
-                list.add(scrapeFanfiction(entry));
-            }
-            if (linkNext == null) {
-                break;
-            }
-            try {
-                Thread.sleep(TIME_OUT);
-            } catch (InterruptedException ex) {
-                /* Ignore */
-            }
-            doc = Jsoup.connect(BASE_URL + linkNext.attr("href")).get();
-        }
-        final BlockingQueue<Fanfiction> result = new LinkedBlockingQueue<>();
-        new Thread(() -> {
-            for (FanfictionBuilder fanfiction : list) {
-                try {
-                    result.add(fanfiction.lastUpdated(scrapeLastUpdated(fanfiction.link())).build());
-                    Thread.sleep(TIME_OUT + random.nextInt(TIME_OUT/2));
-                } catch (IOException | InterruptedException ex) {
-                    /* Ignore */
-                }
-            }
-            result.add(Fanfiction.DUMMY);
-            final Duration time = Duration.between(start, Instant.now());
-            LOGGER.info(LogUtil.LOG_TIME_MSG, "Scraping fanfiction from Ao3", time.toMinutes(), time.toSecondsPart());
-        }).start();
-        return result;
+        return new Ao3Crawler(this, new HostRateLimiter(DEFAULT_INTERVAL)).crawl(List.of(FANFICTION_URL));
     }
 
 }
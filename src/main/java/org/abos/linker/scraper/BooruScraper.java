@@ -3,9 +3,7 @@ package org.abos.linker.scraper;
 import org.abos.common.LogUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jsoup.Connection;
 import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -17,6 +15,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public final class BooruScraper {
 
@@ -32,8 +31,18 @@ public final class BooruScraper {
 
     private static final Logger LOGGER = LogManager.getLogger(WikiScraper.class);
 
+    private final ScraperClient client;
+
     public BooruScraper() {
-        /* Nothing to initialize. */
+        this(ScraperClient.shared());
+    }
+
+    /**
+     * Creates a new {@link BooruScraper} instance.
+     * @param client the client to fetch pages with, not {@code null}
+     */
+    public BooruScraper(final ScraperClient client) {
+        this.client = Objects.requireNonNull(client);
     }
 
     public Map<Integer, ZonedDateTime> scrapeUploadTimes(final int maxIndex, final String sessionCookie) throws IOException, InterruptedException {
@@ -41,16 +50,14 @@ public final class BooruScraper {
         final Instant start = Instant.now();
         // scrape all upload times
         final Map<Integer, ZonedDateTime> result = new HashMap<>();
+        if (sessionCookie != null) {
+            client.addCookie(BASE_URL, SHM_SESSION_NAME, sessionCookie);
+            client.addCookie(BASE_URL, "shm_user", "Ayutac");
+        }
         for (int index = 1; index <= maxIndex; index++) {
-            Connection connection = Jsoup.connect(BASE_URL + IMAGE_PAGE + index);
-            if (sessionCookie != null) {
-                connection = connection
-                        .cookie(SHM_SESSION_NAME, sessionCookie)
-                        .cookie("shm_user", "Ayutac");
-            }
             final Document doc;
             try {
-                doc = connection.get();
+                doc = client.getDocument(BASE_URL + IMAGE_PAGE + index);
             }
             catch (HttpStatusException ex) {
                 LOGGER.warn("Page with index {} is missing!", index);
@@ -63,12 +70,13 @@ public final class BooruScraper {
         }
         final Duration time = Duration.between(start, Instant.now());
         LOGGER.info(LogUtil.LOG_TIME_MSG, "Scraping upload times from Booru", time.toMinutes(), time.toSecondsPart());
+        LOGGER.info("Scraper client so far: {}", client);
         return result;
     }
 
     public Map<String, Integer> scrapeTagCounts() throws IOException {
         final Map<String, Integer> result = new HashMap<>();
-        final Document doc = Jsoup.connect(BASE_URL + TAG_PAGE).get();
+        final Document doc = client.getDocument(BASE_URL + TAG_PAGE);
         final Elements content = doc.getElementById("Tagsmain").getElementsByTag("a");
         String name;
         int count;
@@ -0,0 +1,19 @@
+package org.abos.linker.scraper;
+
+import java.io.IOException;
+
+/**
+ * A budget of requests per host that scrapers take from before each request, possibly shared between processes.
+ */
+@FunctionalInterface
+public interface HostBudget {
+
+    /**
+     * Waits until a request to the specified host fits into the budget and takes it from the budget.
+     * @param host the host name, not {@code null}
+     * @throws IOException If the budget couldn't be consulted.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void acquire(String host) throws IOException, InterruptedException;
+
+}
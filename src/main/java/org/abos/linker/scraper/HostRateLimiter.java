@@ -0,0 +1,48 @@
+package org.abos.linker.scraper;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link HostBudget} within this process that spaces the requests to each host by a fixed interval, however many
+ * threads send them. Safe to use from multiple threads.
+ */
+public final class HostRateLimiter implements HostBudget {
+
+    private final long intervalNanos;
+
+    /**
+     * The next free slot per host in {@link System#nanoTime()}.
+     */
+    private final Map<String, AtomicLong> nextSlots = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new {@link HostRateLimiter} instance.
+     * @param interval the interval between two requests to the same host, not {@code null}
+     */
+    public HostRateLimiter(final Duration interval) {
+        this.intervalNanos = interval.toNanos();
+    }
+
+    @Override
+    public void acquire(final String host) throws InterruptedException {
+        final AtomicLong nextSlot = nextSlots.computeIfAbsent(host.toLowerCase(Locale.ROOT), key -> new AtomicLong(System.nanoTime()));
+        final long now = System.nanoTime();
+        // reserve the next free slot, which is now if the host has been idle for long enough
+        final long slot = nextSlot.getAndUpdate(next -> Math.max(next, now) + intervalNanos);
+        final long wait = Math.max(slot, now) - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HostRateLimiter[%d ms per host, %d hosts]", TimeUnit.NANOSECONDS.toMillis(intervalNanos), nextSlots.size());
+    }
+
+}
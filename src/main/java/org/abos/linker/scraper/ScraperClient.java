@@ -0,0 +1,427 @@
+package org.abos.linker.scraper;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.brotli.dec.BrotliInputStream;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The HTTP client all scrapers fetch through. Wraps a single {@link HttpClient}, so connections are kept alive and
+ * reused across requests and scrapers, HTTP/2 is used where the server supports it and cookies are shared.
+ * Responses are requested compressed and decoded transparently. The time out of a host applies to the headers and to
+ * each read of the body, so a stalled download fails instead of blocking forever. Safe to use from multiple threads.
+ */
+public final class ScraperClient {
+
+    public static final Duration DEFAULT_TIME_OUT = Duration.ofSeconds(10);
+
+    public static final String USER_AGENT = "Mozilla";
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate, br";
+
+    private static final Logger LOGGER = LogManager.getLogger(ScraperClient.class);
+
+    private static final ScraperClient SHARED = new ScraperClient(DEFAULT_TIME_OUT);
+
+    /**
+     * Watches the reads of all bodies, see {@link TimedInputStream}.
+     */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "scraper-client-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Closes the body if a single read blocks longer than the time out, as {@link HttpRequest.Builder#timeout(Duration)}
+     * only covers waiting for the headers. A stalled read is noticed within one and a half time outs and fails with
+     * an {@link HttpTimeoutException}.
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+
+        private static final long NOT_READING = -1L;
+
+        private final long timeOutNanos;
+
+        private final ScheduledFuture<?> watchdog;
+
+        private volatile long readingSince = NOT_READING;
+
+        private volatile boolean timedOut;
+
+        private TimedInputStream(final InputStream in, final Duration timeOut) {
+            super(in);
+            timeOutNanos = timeOut.toNanos();
+            final long period = Math.max(1L, timeOutNanos / 2);
+            watchdog = WATCHDOG.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+        }
+
+        private void check() {
+            final long since = readingSince;
+            if (since != NOT_READING && System.nanoTime() - since > timeOutNanos) {
+                timedOut = true;
+                try {
+                    close();
+                } catch (IOException ex) {
+                    LOGGER.debug("Closing a stalled body failed", ex);
+                }
+            }
+        }
+
+        private IOException translate(final IOException ex) {
+            if (!timedOut) {
+                return ex;
+            }
+            final HttpTimeoutException timeOut = new HttpTimeoutException("Reading the body timed out");
+            timeOut.initCause(ex);
+            return timeOut;
+        }
+
+        @Override
+        public int read() throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                return super.read();
+            } catch (IOException ex) {
+                throw translate(ex);
+            } finally {
+                readingSince = NOT_READING;
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } catch (IOException ex) {
+                throw translate(ex);
+            } finally {
+                readingSince = NOT_READING;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            watchdog.cancel(false);
+            super.close();
+        }
+    }
+
+    /**
+     * Counts the bytes read through it into a {@link LongAdder}.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final LongAdder counter;
+
+        private CountingInputStream(final InputStream in, final LongAdder counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                counter.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.add(n);
+            }
+            return n;
+        }
+    }
+
+    private final CookieManager cookieManager = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+
+    private final HttpClient client;
+
+    private final Duration defaultTimeOut;
+
+    private final Map<String, Duration> timeOuts = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder receivedBytes = new LongAdder();
+
+    private final LongAdder decodedBytes = new LongAdder();
+
+    /**
+     * Creates a new {@link ScraperClient} instance. Prefer {@link #shared()} so connections are reused.
+     * @param defaultTimeOut the time out of hosts without a specific one, not {@code null}
+     */
+    public ScraperClient(final Duration defaultTimeOut) {
+        this.defaultTimeOut = Objects.requireNonNull(defaultTimeOut);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(defaultTimeOut)
+                .cookieHandler(cookieManager)
+                .build();
+    }
+
+    /**
+     * Creates a new {@link ScraperClient} instance sending through the specified client, e.g. a stub in tests.
+     * The cookies of {@link #getCookieStore()} are only sent if that client uses them.
+     * @param client the client to send the requests with, not {@code null}
+     * @param defaultTimeOut the time out of hosts without a specific one, not {@code null}
+     */
+    ScraperClient(final HttpClient client, final Duration defaultTimeOut) {
+        this.defaultTimeOut = Objects.requireNonNull(defaultTimeOut);
+        this.client = Objects.requireNonNull(client);
+    }
+
+    /**
+     * Returns the client shared by all scrapers by default.
+     * @return the shared client, not {@code null}
+     */
+    public static ScraperClient shared() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the time out for requests to the specified host.
+     * @param host the host name, not {@code null}
+     * @param timeOut the time out, not {@code null}
+     */
+    public void setTimeOut(final String host, final Duration timeOut) {
+        timeOuts.put(host.toLowerCase(Locale.ROOT), Objects.requireNonNull(timeOut));
+    }
+
+    /**
+     * Returns the time out for requests to the specified host.
+     * @param host the host name, not {@code null}
+     * @return the time out, not {@code null}
+     */
+    public Duration getTimeOut(final String host) {
+        return timeOuts.getOrDefault(host.toLowerCase(Locale.ROOT), defaultTimeOut);
+    }
+
+    /**
+     * Returns the cookie store shared by all requests of this client.
+     * @return the cookie store, not {@code null}
+     */
+    public CookieStore getCookieStore() {
+        return cookieManager.getCookieStore();
+    }
+
+    /**
+     * Adds a cookie that will be sent with every request to the host of the specified URL.
+     * @param url the URL of the site, not {@code null}
+     * @param name the cookie name, not {@code null}
+     * @param value the cookie value, not {@code null}
+     */
+    public void addCookie(final String url, final String name, final String value) {
+        final URI uri = URI.create(url);
+        final HttpCookie cookie = new HttpCookie(name, value);
+        cookie.setDomain(uri.getHost());
+        cookie.setPath("/");
+        cookie.setVersion(0);
+        getCookieStore().add(uri, cookie);
+    }
+
+    private static InputStream decode(final InputStream in, final String encoding) throws IOException {
+        return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "", "identity" -> in;
+            case "gzip", "x-gzip" -> new GZIPInputStream(in);
+            case "deflate" -> new InflaterInputStream(in);
+            case "br" -> new BrotliInputStream(in);
+            default -> throw new IOException("Unsupported content encoding " + encoding + "!");
+        };
+    }
+
+    /**
+     * Returns the charset the specified response declares in its header.
+     * @param response the response, not {@code null}
+     * @return the name of a supported charset or {@code null} if none was declared
+     */
+    private static String charsetName(final HttpResponse<?> response) {
+        final String contentType = response.headers().firstValue("Content-Type").orElse("");
+        final int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index == -1) {
+            return null;
+        }
+        String name = contentType.substring(index + "charset=".length());
+        final int end = name.indexOf(';');
+        if (end != -1) {
+            name = name.substring(0, end);
+        }
+        name = name.replace("\"", "").trim();
+        return Charset.isSupported(name) ? name : null;
+    }
+
+    private static Charset charsetOf(final HttpResponse<?> response) {
+        final String name = charsetName(response);
+        return name == null ? StandardCharsets.UTF_8 : Charset.forName(name);
+    }
+
+    private HttpResponse<InputStream> send(final String url, final String accept) throws IOException {
+        final URI uri = URI.create(url);
+        final HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(getTimeOut(uri.getHost()))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", accept)
+                .header("Accept-Encoding", ACCEPT_ENCODING)
+                .GET()
+                .build();
+        final HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Request to " + url + " was interrupted!", ex);
+        }
+        requests.increment();
+        if (response.statusCode() >= 400) {
+            response.body().close();
+            throw new HttpStatusException("HTTP error fetching URL", response.statusCode(), url);
+        }
+        LOGGER.debug("Fetched {} via {}", url, response.version());
+        return response;
+    }
+
+    private InputStream body(final HttpResponse<InputStream> response) throws IOException {
+        final Duration timeOut = response.request().timeout().orElse(defaultTimeOut);
+        final InputStream wire = new CountingInputStream(new TimedInputStream(response.body(), timeOut), receivedBytes);
+        final String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        try {
+            // the decoders already read the stream header here
+            return new CountingInputStream(decode(wire, encoding), decodedBytes);
+        } catch (IOException | RuntimeException ex) {
+            wire.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens the decoded body of the specified URL.
+     * @param url the URL to fetch, not {@code null}
+     * @param accept the media types to accept, not {@code null}
+     * @return the decoded body, to be closed by the caller
+     * @throws HttpStatusException If the server answered with an error status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream openStream(final String url, final String accept) throws IOException {
+        return body(send(url, accept));
+    }
+
+    /**
+     * Fetches the specified URL as string.
+     * @param url the URL to fetch, not {@code null}
+     * @param accept the media types to accept, not {@code null}
+     * @return the decoded body, not {@code null}
+     * @throws HttpStatusException If the server answered with an error status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public String getString(final String url, final String accept) throws IOException {
+        final HttpResponse<InputStream> response = send(url, accept);
+        try (final InputStream in = body(response)) {
+            return new String(in.readAllBytes(), charsetOf(response));
+        }
+    }
+
+    /**
+     * Fetches and parses the specified HTML page.
+     * @param url the URL of the page, not {@code null}
+     * @return the parsed page, not {@code null}
+     * @throws HttpStatusException If the server answered with an error status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Document getDocument(final String url) throws IOException {
+        final HttpResponse<InputStream> response = send(url, "text/html");
+        try (final InputStream in = body(response)) {
+            // without declared charset jsoup detects it from the page
+            return Jsoup.parse(in, charsetName(response), url);
+        }
+    }
+
+    /**
+     * Opens the specified HTML page for streaming, so parsing overlaps with the download.
+     * @param url the URL of the page, not {@code null}
+     * @return a {@link StreamParser} over the page, to be closed by the caller
+     * @throws HttpStatusException If the server answered with an error status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public StreamParser getStreamParser(final String url) throws IOException {
+        final HttpResponse<InputStream> response = send(url, "text/html");
+        final InputStream in = body(response);
+        try {
+            // the parser marks and resets its reader, which a plain InputStreamReader doesn't support
+            return new StreamParser(Parser.htmlParser()).parse(new BufferedReader(new InputStreamReader(in, charsetOf(response))), url);
+        } catch (RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of requests sent so far. Requests beyond the number of hosts went over kept-alive connections
+     * unless the server closed them.
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of body bytes received so far, i.e. before decoding.
+     * @return the number of received bytes
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    /**
+     * Returns the number of body bytes read so far after decoding.
+     * @return the number of decoded bytes
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d bytes received for %d bytes decoded", getRequests(), getReceivedBytes(), getDecodedBytes());
+    }
+
+}
@@ -1,38 +1,104 @@
 package org.abos.linker.scraper;
 
 import org.abos.common.LogUtil;
+import org.abos.linker.codec.SpillingQueue;
 import org.abos.linker.core.Tag;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attribute;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
 
 public final class WikiScraper {
 
     private static final String BASE_URL = "https://twiki.shelter.moe";
 
-    private static final String CHARACTER_PAGE = "/Category:Characters";
+    private static final String CHARACTER_CATEGORY = "Category:Characters";
+
+    private static final String CHARACTER_PAGE = "/" + CHARACTER_CATEGORY;
+
+    private static final String API_PAGE = "/api.php";
+
+    private static final String IGNORED_PAGE = "Infobox character testing";
+
+    /**
+     * The number of titles queried at once. The MediaWiki API accepts 50, but TextExtracts returns the intros of at
+     * most 20 pages per query and would leave the others to continuation round trips.
+     */
+    public static final int API_BATCH_SIZE = 20;
+
+    /**
+     * Matches the pagination links and the page links of a category page.
+     */
+    private static final Evaluator CATEGORY_LINKS = QueryParser.parse("#mw-pages > a, #mw-pages .mw-category-group a");
 
     public static final int TIME_OUT = 100; // in milliseconds
 
     private static final Logger LOGGER = LogManager.getLogger(WikiScraper.class);
 
+    private final ScraperClient client;
+
+    private final String baseUrl;
+
+    private final boolean useApi;
+
     public WikiScraper() {
-        /* Nothing to initialize. */
+        this(ScraperClient.shared(), true);
+    }
+
+    /**
+     * Creates a new {@link WikiScraper} instance.
+     * @param client the client to fetch pages with, not {@code null}
+     * @param useApi if the MediaWiki API should be queried in batches instead of scraping the rendered pages one by one
+     */
+    public WikiScraper(final ScraperClient client, final boolean useApi) {
+        this(client, BASE_URL, useApi);
+    }
+
+    WikiScraper(final ScraperClient client, final String baseUrl, final boolean useApi) {
+        this.client = Objects.requireNonNull(client);
+        this.baseUrl = Objects.requireNonNull(baseUrl);
+        this.useApi = useApi;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(TIME_OUT);
+        } catch (InterruptedException ex) {
+            /* Ignore */
+        }
+    }
+
+    /**
+     * Cuts the specified paragraph after its first sentence.
+     * @param paragraph the paragraph, not {@code null}
+     * @return the first sentence including the period, empty if there is no period
+     */
+    static String firstSentence(final String paragraph) {
+        return paragraph.substring(0, paragraph.indexOf('.') + 1);
     }
 
     public String scrapeFirstSentence(final String url) throws IOException {
-        final Document doc = Jsoup.connect(url).get();
+        final Document doc = client.getDocument(url);
         Element contentHolder = doc.getElementById("citizen-section-collapsible-0");
         if (contentHolder == null) {
             contentHolder = doc.getElementById("section-collapsible-0");
@@ -46,65 +112,181 @@ public final class WikiScraper {
             LOGGER.warn("Missing content for {} detected!", url);
             return "";
         }
-        final String s = content.get(content.size()-1).text();
-        return s.substring(0, s.indexOf('.') + 1);
+        return firstSentence(content.get(content.size()-1).text());
     }
 
     /**
-     * Scrapes all character off the wiki.
-     * @return A synchronized queue of all the characters in the wiki.
-     * Note that the last value of the queue will be {@link Tag#DUMMY} to signify its end.
+     * Sends a query to the MediaWiki API, following its continuations.
+     * @param query the query parameters without {@code action} and {@code format}, not {@code null}
+     * @param consumer the consumer of each answer, not {@code null}
      * @throws IOException If an I/O error occurs.
      */
-    public BlockingQueue<Tag> scrapeCharacterTags() throws IOException {
-        LOGGER.info("Scraping character tags from Wiki...");
-        final Instant start = Instant.now();
-        // scrape all names + links
-        final Map<String, String> links = new HashMap<>();
-        Document doc = Jsoup.connect(BASE_URL + CHARACTER_PAGE).get();
-        boolean firstPage = true;
+    private void queryApi(final String query, final Consumer<Document> consumer) throws IOException {
+        String continuation = "";
         while (true) {
-            final Element content = doc.getElementById("mw-pages");
-            final Element linkNext;
-            if (firstPage) {
-                linkNext = content.getElementsByTag("a").get(0);
-                firstPage = false;
+            final String url = baseUrl + API_PAGE + "?action=query&format=xml&" + query + continuation;
+            final Document answer = Jsoup.parse(client.getString(url, "text/xml"), url, Parser.xmlParser());
+            final Element error = answer.selectFirst("error");
+            if (error != null) {
+                throw new IOException("MediaWiki API error " + error.attr("code") + ": " + error.attr("info"));
             }
-            else {
-                linkNext = content.getElementsByTag("a").get(1);
+            consumer.accept(answer);
+            final Element next = answer.selectFirst("continue");
+            if (next == null) {
+                return;
             }
-            for (Element group : content.getElementsByClass("mw-category-group")) {
-                for (Element entry : group.getElementsByTag("a")) {
-                    if (entry.text().equals("Infobox character testing")) {
-                        continue;
-                    }
-                    links.put(entry.text(), BASE_URL + entry.attr("href"));
+            final StringBuilder continuationBuilder = new StringBuilder();
+            for (Attribute attribute : next.attributes()) {
+                continuationBuilder.append('&')
+                        .append(attribute.getKey())
+                        .append('=')
+                        .append(URLEncoder.encode(attribute.getValue(), StandardCharsets.UTF_8));
+            }
+            continuation = continuationBuilder.toString();
+            sleep();
+        }
+    }
+
+    /**
+     * Lists the titles of all pages in a category via the MediaWiki API.
+     * @param category the category including its namespace, not {@code null}
+     * @return the titles of the pages in the category, not {@code null}
+     * @throws IOException If an I/O error occurs.
+     */
+    List<String> scrapeCategoryMembers(final String category) throws IOException {
+        final List<String> titles = new ArrayList<>();
+        queryApi("list=categorymembers&cmtype=page&cmlimit=max&cmtitle=" + URLEncoder.encode(category, StandardCharsets.UTF_8), answer -> {
+            for (Element member : answer.getElementsByTag("cm")) {
+                final String title = member.attr("title");
+                if (!title.equals(IGNORED_PAGE)) {
+                    titles.add(title);
                 }
             }
-            if (!linkNext.text().contains("next page")) {
-                break;
+        });
+        return titles;
+    }
+
+    /**
+     * Fetches the first sentence of the intro of up to {@link #API_BATCH_SIZE} pages via the MediaWiki API.
+     * @param titles the titles of the pages, not {@code null}
+     * @return the character tags of the pages with their descriptions and links, not {@code null}
+     * @throws IOException If an I/O error occurs.
+     */
+    List<Tag> scrapeCharacterBatch(final List<String> titles) throws IOException {
+        if (titles.size() > API_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + API_BATCH_SIZE + " titles can be queried at once!");
+        }
+        final Map<String, String> descriptions = new HashMap<>();
+        final Map<String, String> links = new HashMap<>();
+        final String joinedTitles = URLEncoder.encode(String.join("|", titles), StandardCharsets.UTF_8);
+        queryApi("prop=extracts%7Cinfo&inprop=url&exintro=1&explaintext=1&exlimit=max&titles=" + joinedTitles, answer -> {
+            for (Element page : answer.getElementsByTag("page")) {
+                final String title = page.attr("title");
+                if (page.hasAttr("fullurl")) {
+                    links.put(title, page.attr("fullurl"));
+                }
+                final Element extract = page.selectFirst("extract");
+                if (extract != null) {
+                    // like on the rendered page, the last intro paragraph holds the description
+                    final String[] paragraphs = extract.wholeText().strip().split("\n+");
+                    descriptions.put(title, firstSentence(paragraphs[paragraphs.length-1]));
+                }
             }
-            try {
-                Thread.sleep(TIME_OUT);
-            } catch (InterruptedException ex) {
-                /* Ignore */
+        });
+        final List<Tag> tags = new ArrayList<>(titles.size());
+        for (String title : titles) {
+            final String description = descriptions.get(title);
+            if (description == null) {
+                LOGGER.warn("Missing content for {} detected!", title);
             }
-            doc = Jsoup.connect(BASE_URL + linkNext.attr("href")).get();
+            tags.add(new Tag(title, description == null ? "" : description, true, false, null, links.get(title)));
         }
-        // scrape descriptions
-        final BlockingQueue<Tag> result = new LinkedBlockingQueue<>();
-        new Thread(() -> {
-            for (Map.Entry<String, String> entry : links.entrySet()) {
-                try {
-                    result.add(new Tag(entry.getKey(), scrapeFirstSentence(entry.getValue()), true, false, null, entry.getValue()));
-                    Thread.sleep(TIME_OUT);
-                } catch (IOException | InterruptedException ex) {
-                    /* Ignore */
+        return tags;
+    }
+
+    /**
+     * Scrapes the page links of a category page while it is being parsed. Each link is removed from the DOM once scraped.
+     * @param streamer the parser over the category page, not {@code null}
+     * @param links the map to put the page names and their URLs into, not {@code null}
+     * @return the URL of the next category page, {@code null} if this is the last one
+     * @throws IOException If an I/O error occurs.
+     */
+    String scrapeCategoryPage(final StreamParser streamer, final Map<String, String> links) throws IOException {
+        String next = null;
+        Element link;
+        while ((link = streamer.selectNext(CATEGORY_LINKS)) != null) {
+            // the pagination links are direct children of mw-pages
+            if ("mw-pages".equals(link.parent().id())) {
+                if (next == null && link.text().contains("next page")) {
+                    next = baseUrl + link.attr("href");
+                }
+                link.remove();
+                continue;
+            }
+            if (!link.text().equals(IGNORED_PAGE)) {
+                links.put(link.text(), baseUrl + link.attr("href"));
+            }
+            link.remove();
+        }
+        return next;
+    }
+
+    /**
+     * Scrapes all character off the wiki.
+     * @return A synchronized queue of all the characters in the wiki, spilling to disk if its consumer falls behind.
+     * Note that the last value of the queue will be {@link Tag#DUMMY} to signify its end.
+     * @throws IOException If an I/O error occurs.
+     */
+    public BlockingQueue<Tag> scrapeCharacterTags() throws IOException {
+        LOGGER.info("Scraping character tags from Wiki...");
+        final Instant start = Instant.now();
+        final BlockingQueue<Tag> result = new SpillingQueue<>(Tag.class);
+        final Runnable descriptionScraper;
+        if (useApi) {
+            // list all titles, then fetch the descriptions in batches
+            final List<String> titles = scrapeCategoryMembers(CHARACTER_CATEGORY);
+            descriptionScraper = () -> {
+                for (int from = 0; from < titles.size(); from += API_BATCH_SIZE) {
+                    try {
+                        result.addAll(scrapeCharacterBatch(titles.subList(from, Math.min(from + API_BATCH_SIZE, titles.size()))));
+                    } catch (IOException ex) {
+                        LOGGER.warn("Batch starting with {} failed: {}", titles.get(from), ex.getMessage());
+                    }
+                    sleep();
+                }
+            };
+        }
+        else {
+            // scrape all names + links
+            final Map<String, String> links = new HashMap<>();
+            String next = baseUrl + CHARACTER_PAGE;
+            while (true) {
+                try (final StreamParser streamer = client.getStreamParser(next)) {
+                    next = scrapeCategoryPage(streamer, links);
+                }
+                if (next == null) {
+                    break;
                 }
+                sleep();
             }
+            // scrape descriptions
+            descriptionScraper = () -> {
+                for (Map.Entry<String, String> entry : links.entrySet()) {
+                    try {
+                        result.add(new Tag(entry.getKey(), scrapeFirstSentence(entry.getValue()), true, false, null, entry.getValue()));
+                    } catch (IOException ex) {
+                        /* Ignore */
+                    }
+                    sleep();
+                }
+            };
+        }
+        new Thread(() -> {
+            descriptionScraper.run();
             result.add(Tag.DUMMY);
             final Duration time = Duration.between(start, Instant.now());
             LOGGER.info(LogUtil.LOG_TIME_MSG, "Scraping character tags from Wiki", time.toMinutes(), time.toSecondsPart());
+            LOGGER.info("Scraper client so far: {}", client);
         }).start();
         return result;
     }
@@ -0,0 +1,527 @@
+package org.abos.linker.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.abos.linker.core.Author;
+import org.abos.linker.db.DbHelper;
+import org.abos.linker.db.FanfictionExporter;
+import org.abos.linker.db.Rollups;
+import org.abos.linker.db.Search;
+import org.abos.linker.db.StatsHistory;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A read-only HTTP service answering queries on the DB with JSON, on the HTTP server of the JDK. All endpoints take
+ * {@code GET} requests:
+ * <ul>
+ *     <li>{@code /fanfictions?q=&tag=&rating=&limit=&after=} searches the fanfictions, or lists them by ID without
+ *     {@code q}. {@code tag} may be repeated.</li>
+ *     <li>{@code /fanfictions/{id}} returns a fanfiction with its authors, tags and crossovers.</li>
+ *     <li>{@code /tags?q=&characters=&limit=&after=} searches the tags.</li>
+ *     <li>{@code /authors/{id}} returns an author with their fanfictions.</li>
+ *     <li>{@code /stats/tags?kind=&limit=} returns the tags with the most fanfictions.</li>
+ *     <li>{@code /stats/ratings?from=&to=} returns the fanfictions per rating and month, e.g. {@code from=2024-01}.</li>
+ *     <li>{@code /stats/trending?counter=&days=&limit=} returns the fanfictions whose counter grew the most.</li>
+ *     <li>{@code /stats/fanfictions/{id}?days=} returns the history of the statistics of a fanfiction.</li>
+ * </ul>
+ * Pages of hits end with a {@code next} cursor to pass as {@code after} for the following page.
+ * <p>
+ * Responses are cached in a {@link ResponseCache} until any process writes to the DB, which it learns from
+ * {@link DbHelper#listenForWrites(Runnable)}. Statistics relative to the current time are computed anew each time. Requests are handled by a fixed number of threads, which should
+ * share the connections of {@link DbHelper#usePool(int)} rather than open one each.
+ */
+public final class QueryServer {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    /**
+     * The default number of threads handling requests. Most requests are answered from the cache, the others wait
+     * for a connection of the pool.
+     */
+    public static final int DEFAULT_THREADS = 64;
+
+    /**
+     * The default number of connections to the DB shared by the threads.
+     */
+    public static final int DEFAULT_CONNECTIONS = 16;
+
+    public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+    public static final int DEFAULT_LIMIT = 50;
+
+    public static final int MAX_LIMIT = 500;
+
+    /**
+     * How long to wait before listening for writes again after the connection broke.
+     */
+    private static final long RELISTEN_DELAY_MILLIS = 5000L;
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private static final Logger LOGGER = LogManager.getLogger(QueryServer.class);
+
+    private final DbHelper dbHelper;
+
+    private final ResponseCache cache;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final Thread listener;
+
+    /**
+     * Creates a new {@link QueryServer} instance, not yet started.
+     * @param dbHelper the DB to query, not {@code null}
+     * @param address the address to listen on, not {@code null}
+     * @param threads the number of threads handling requests, positive
+     * @param cache the cache for the responses, not {@code null}
+     * @throws IllegalArgumentException If {@code threads} isn't positive.
+     * @throws IOException If the address couldn't be bound.
+     */
+    public QueryServer(final DbHelper dbHelper, final InetSocketAddress address, final int threads, final ResponseCache cache) throws IOException {
+        this.dbHelper = Objects.requireNonNull(dbHelper);
+        this.cache = Objects.requireNonNull(cache);
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(Objects.requireNonNull(address), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        listener = new Thread(this::listen, "query-server-listener");
+        listener.setDaemon(true);
+    }
+
+    public void start() {
+        listener.start();
+        server.start();
+        LOGGER.info("Serving queries on {}", server.getAddress());
+    }
+
+    /**
+     * Stops the server.
+     * @param delaySeconds how long to wait for the requests in progress
+     */
+    public void stop(final int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        listener.interrupt();
+        LOGGER.info("Stopped serving queries, {}", cache);
+    }
+
+    /**
+     * Returns the address the server listens on, e.g. to find out the port if it was chosen by the system.
+     * @return the address, not {@code null}
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    private void listen() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                dbHelper.listenForWrites(cache::invalidate);
+            }
+            catch (SQLException ex) {
+                LOGGER.warn("Listening for writes failed: {}", ex.getMessage());
+                cache.invalidate();
+                try {
+                    Thread.sleep(RELISTEN_DELAY_MILLIS);
+                }
+                catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the query of a URI into its parameters, which may be repeated.
+     * @param rawQuery the query still URL encoded, {@code null} for none
+     * @return the values of the parameters in order of appearance, not {@code null}
+     */
+    static Map<String, List<String>> parseQuery(final String rawQuery) {
+        final Map<String, List<String>> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int equalsIndex = pair.indexOf('=');
+            final String name = URLDecoder.decode(equalsIndex == -1 ? pair : pair.substring(0, equalsIndex), StandardCharsets.UTF_8);
+            final String value = equalsIndex == -1 ? "" : URLDecoder.decode(pair.substring(equalsIndex + 1), StandardCharsets.UTF_8);
+            params.computeIfAbsent(name, n -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    /**
+     * Turns a cursor into the string of the {@code after} parameter.
+     */
+    static String formatCursor(final Search.Cursor cursor) {
+        return cursor.rank() + ":" + cursor.id();
+    }
+
+    /**
+     * Parses the {@code after} parameter.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    static Search.Cursor parseCursor(final String value) {
+        if (value == null) {
+            return null;
+        }
+        final int colonIndex = value.lastIndexOf(':');
+        if (colonIndex == -1) {
+            throw new IllegalArgumentException("Malformed cursor " + value + "!");
+        }
+        return new Search.Cursor(Float.parseFloat(value.substring(0, colonIndex)), Integer.parseInt(value.substring(colonIndex + 1)));
+    }
+
+    /**
+     * Returns whether the response to a request only changes when the DB is written to. Statistics over a window
+     * ending now, i.e. the trending fanfictions, the history of a fanfiction and the ratings without {@code to}, also
+     * change as time passes, so they are never cached.
+     */
+    static boolean isCacheable(final String path, final Map<String, List<String>> params) {
+        final String[] segments = path.replaceAll("^/+|/+$", "").split("/");
+        if (segments.length < 2 || !segments[0].equals("stats")) {
+            return true;
+        }
+        return switch (segments[1]) {
+            case "trending", "fanfictions" -> false;
+            case "ratings" -> param(params, "to") != null;
+            default -> true;
+        };
+    }
+
+    private static String param(final Map<String, List<String>> params, final String name) {
+        final List<String> values = params.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    private static int intParam(final Map<String, List<String>> params, final String name, final int defaultValue, final int max) {
+        final String value = param(params, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        final int result = Integer.parseInt(value);
+        if (result <= 0 || result > max) {
+            throw new IllegalArgumentException(name + " must be between 1 and " + max + "!");
+        }
+        return result;
+    }
+
+    private static int parseId(final String segment) {
+        try {
+            return Integer.parseInt(segment);
+        }
+        catch (NumberFormatException ex) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            final String path = exchange.getRequestURI().getRawPath();
+            final String rawQuery = exchange.getRequestURI().getRawQuery();
+            final String key = rawQuery == null ? path : path + '?' + rawQuery;
+            byte[] body = cache.get(key);
+            if (body == null) {
+                final long generation = cache.generation();
+                final Map<String, List<String>> params;
+                try {
+                    params = parseQuery(rawQuery);
+                    body = render(path, params);
+                }
+                catch (IllegalArgumentException | DateTimeParseException ex) {
+                    sendError(exchange, 400, ex.getMessage());
+                    return;
+                }
+                catch (NoSuchElementException ex) {
+                    sendError(exchange, 404, "Not found");
+                    return;
+                }
+                catch (SQLException ex) {
+                    LOGGER.warn("Query {} failed: {}", key, ex.getMessage());
+                    sendError(exchange, 503, "The DB couldn't answer");
+                    return;
+                }
+                if (isCacheable(path, params)) {
+                    cache.put(key, body, generation);
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        catch (RuntimeException ex) {
+            LOGGER.warn("Request {} failed", exchange.getRequestURI(), ex);
+            sendError(exchange, 500, "Internal error");
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendError(final HttpExchange exchange, final int status, final String message) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            writer.write("{\"error\":");
+            FanfictionExporter.writeJsonString(writer, message);
+            writer.write('}');
+        }
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.size());
+        try (final OutputStream out = exchange.getResponseBody()) {
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Computes the body of a request.
+     * @throws IllegalArgumentException If a parameter is malformed.
+     * @throws NoSuchElementException If there is nothing at the path.
+     * @throws SQLException If an SQL exception occurs.
+     */
+    private byte[] render(final String path, final Map<String, List<String>> params) throws IOException, SQLException {
+        final String[] segments = path.replaceAll("^/+|/+$", "").split("/");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            switch (segments[0]) {
+                case "fanfictions" -> {
+                    if (segments.length == 1) {
+                        writeFanfictions(writer, params);
+                    }
+                    else if (segments.length == 2) {
+                        writeFanfiction(writer, parseId(segments[1]));
+                    }
+                    else {
+                        throw new NoSuchElementException();
+                    }
+                }
+                case "tags" -> {
+                    if (segments.length != 1) {
+                        throw new NoSuchElementException();
+                    }
+                    writeTags(writer, params);
+                }
+                case "authors" -> {
+                    if (segments.length != 2) {
+                        throw new NoSuchElementException();
+                    }
+                    writeAuthor(writer, parseId(segments[1]));
+                }
+                case "stats" -> writeStats(writer, segments, params);
+                default -> throw new NoSuchElementException();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writePage(final Writer writer, final Search.Page page) throws IOException {
+        writer.write("{\"hits\":[");
+        for (int index = 0; index < page.hits().size(); index++) {
+            final Search.Hit hit = page.hits().get(index);
+            writer.write(index == 0 ? "{\"id\":" : ",{\"id\":");
+            writer.write(Integer.toString(hit.id()));
+            writer.write(",\"name\":");
+            FanfictionExporter.writeJsonString(writer, hit.name());
+            writer.write(",\"rank\":");
+            writer.write(Float.toString(hit.rank()));
+            writer.write('}');
+        }
+        writer.write("],\"next\":");
+        FanfictionExporter.writeJsonString(writer, page.next() == null ? null : formatCursor(page.next()));
+        writer.write('}');
+    }
+
+    private void writeFanfictions(final Writer writer, final Map<String, List<String>> params) throws IOException, SQLException {
+        final String query = param(params, "q");
+        final List<String> tags = params.getOrDefault("tag", List.of());
+        final String rating = param(params, "rating");
+        final int limit = intParam(params, "limit", DEFAULT_LIMIT, MAX_LIMIT);
+        final Search.Cursor after = parseCursor(param(params, "after"));
+        final Search search = dbHelper.getSearch();
+        writePage(writer, query == null || query.isBlank()
+                ? search.filterFanfictions(tags, rating, limit, after)
+                : search.searchFanfictions(query, tags, rating, limit, after));
+    }
+
+    private void writeFanfiction(final Writer writer, final int id) throws IOException, SQLException {
+        final boolean[] found = new boolean[1];
+        dbHelper.readFanfictions(List.of(id), (fanfiction, fanfictionId) -> {
+            try {
+                FanfictionExporter.writeJson(writer, fanfictionId, fanfiction);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            found[0] = true;
+        });
+        if (!found[0]) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private void writeTags(final Writer writer, final Map<String, List<String>> params) throws IOException, SQLException {
+        final String query = param(params, "q");
+        if (query == null) {
+            throw new IllegalArgumentException("Missing parameter q!");
+        }
+        writePage(writer, dbHelper.getSearch().searchTags(query, Boolean.parseBoolean(param(params, "characters")),
+                intParam(params, "limit", DEFAULT_LIMIT, MAX_LIMIT), parseCursor(param(params, "after"))));
+    }
+
+    private void writeAuthor(final Writer writer, final int id) throws IOException, SQLException {
+        final Author author = dbHelper.getAuthor(id);
+        if (author == null) {
+            throw new NoSuchElementException();
+        }
+        writer.write("{\"id\":");
+        writer.write(Integer.toString(id));
+        writer.write(",\"name\":");
+        FanfictionExporter.writeJsonString(writer, author.name());
+        writer.write(",\"links\":[");
+        for (int index = 0; index < author.links().size(); index++) {
+            if (index > 0) {
+                writer.write(',');
+            }
+            FanfictionExporter.writeJsonString(writer, author.links().get(index));
+        }
+        writer.write("],\"fanfictions\":[");
+        final boolean[] first = {true};
+        dbHelper.readFanfictions(dbHelper.getAuthoredFanfictions(id), (fanfiction, fanfictionId) -> {
+            try {
+                if (!first[0]) {
+                    writer.write(',');
+                }
+                FanfictionExporter.writeJson(writer, fanfictionId, fanfiction);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            first[0] = false;
+        });
+        writer.write("]}");
+    }
+
+    private void writeStats(final Writer writer, final String[] segments, final Map<String, List<String>> params) throws IOException, SQLException {
+        final String kind = segments.length > 1 ? segments[1] : "";
+        final Instant now = Instant.now();
+        if (segments.length == 2 && kind.equals("tags")) {
+            final String tagKind = param(params, "kind");
+            final List<Rollups.TagRollup> rollups = dbHelper.getRollups().getTagRollups(
+                    tagKind == null ? Rollups.TagKind.ANY : Rollups.TagKind.valueOf(tagKind.toUpperCase(Locale.ROOT)),
+                    intParam(params, "limit", DEFAULT_LIMIT, MAX_LIMIT));
+            writer.write('[');
+            for (int index = 0; index < rollups.size(); index++) {
+                final Rollups.TagRollup rollup = rollups.get(index);
+                writer.write(index == 0 ? "{\"id\":" : ",{\"id\":");
+                writer.write(Integer.toString(rollup.tagId()));
+                writer.write(",\"name\":");
+                FanfictionExporter.writeJsonString(writer, rollup.name());
+                writer.write(String.format(",\"works\":%d,\"words\":%d,\"completed\":%d}", rollup.works(), rollup.words(), rollup.completed()));
+            }
+            writer.write(']');
+        }
+        else if (segments.length == 2 && kind.equals("ratings")) {
+            final String to = param(params, "to");
+            final YearMonth toMonth = to == null ? YearMonth.from(now.atZone(ZoneOffset.UTC)) : YearMonth.parse(to);
+            final String from = param(params, "from");
+            final YearMonth fromMonth = from == null ? toMonth.minusMonths(11) : YearMonth.parse(from);
+            final List<Rollups.RatingMonthRollup> rollups = dbHelper.getRollups().getRatingMonthRollups(fromMonth, toMonth);
+            writer.write('[');
+            for (int index = 0; index < rollups.size(); index++) {
+                final Rollups.RatingMonthRollup rollup = rollups.get(index);
+                writer.write(index == 0 ? "{\"rating\":" : ",{\"rating\":");
+                FanfictionExporter.writeJsonString(writer, rollup.rating());
+                writer.write(String.format(",\"month\":\"%s\",\"works\":%d,\"words\":%d,\"completed\":%d}",
+                        rollup.month(), rollup.works(), rollup.words(), rollup.completed()));
+            }
+            writer.write(']');
+        }
+        else if (segments.length == 2 && kind.equals("trending")) {
+            final String counter = param(params, "counter");
+            final Instant from = now.minus(Duration.ofDays(intParam(params, "days", 7, 366)));
+            final List<StatsHistory.Trend> trends = dbHelper.getStatsHistory().trending(
+                    counter == null ? StatsHistory.Counter.KUDOS : StatsHistory.Counter.valueOf(counter.toUpperCase(Locale.ROOT)),
+                    from, now, intParam(params, "limit", DEFAULT_LIMIT, MAX_LIMIT));
+            writer.write('[');
+            for (int index = 0; index < trends.size(); index++) {
+                final StatsHistory.Trend trend = trends.get(index);
+                writer.write(String.format("%s{\"id\":%d,\"first\":%d,\"last\":%d}", index == 0 ? "" : ",", trend.fanfictionId(), trend.first(), trend.last()));
+            }
+            writer.write(']');
+        }
+        else if (segments.length == 3 && kind.equals("fanfictions")) {
+            final Instant from = now.minus(Duration.ofDays(intParam(params, "days", 30, 3660)));
+            final List<StatsHistory.Sample> samples = dbHelper.getStatsHistory().growth(parseId(segments[2]), from, now);
+            writer.write('[');
+            for (int index = 0; index < samples.size(); index++) {
+                final StatsHistory.Sample sample = samples.get(index);
+                writer.write(String.format("%s{\"checkedAt\":%d,\"chapters\":%d,\"words\":%d,\"kudos\":%d,\"hits\":%d,\"comments\":%d,\"bookmarks\":%d}",
+                        index == 0 ? "" : ",", sample.checkedAt().toEpochMilli(), sample.chapters(), sample.words(),
+                        sample.engagement().kudos(), sample.engagement().hits(), sample.engagement().comments(), sample.engagement().bookmarks()));
+            }
+            writer.write(']');
+        }
+        else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ("true".equals(System.getProperty("developer_mode"))) {
+            Configurator.setRootLevel(Level.DEBUG);
+        }
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final DbHelper dbHelper = new DbHelper();
+        dbHelper.usePool(DEFAULT_CONNECTIONS);
+        final QueryServer server = new QueryServer(dbHelper, new InetSocketAddress(port), DEFAULT_THREADS, new ResponseCache(DEFAULT_CACHE_BYTES));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            dbHelper.closePool();
+        }));
+        server.start();
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.abos.linker.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of response bodies by request. Once the bodies take more than the budget, the least recently used
+ * ones are evicted. {@link #invalidate()} drops all bodies when the DB was written to, and a body computed from data
+ * read before that is not stored afterwards, see {@link #put(String, byte[], long)}.
+ * <p>
+ * Safe to use from multiple threads.
+ */
+public final class ResponseCache {
+
+    /**
+     * A single body may take at most this share of the budget, so one large response can't evict all others.
+     */
+    private static final int MAX_ENTRY_SHARE = 8;
+
+    private final long maxBytes;
+
+    /**
+     * The bodies in access order, the least recently used first, guarded by this.
+     */
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private long generation;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Creates a new {@link ResponseCache} instance.
+     * @param maxBytes the maximum total size of the bodies, positive
+     * @throws IllegalArgumentException If {@code maxBytes} isn't positive.
+     */
+    public ResponseCache(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum bytes must be positive!");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached body of a request.
+     * @param key the request, not {@code null}
+     * @return the body, {@code null} if not cached
+     */
+    public synchronized byte[] get(final String key) {
+        final byte[] body = entries.get(Objects.requireNonNull(key));
+        if (body == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return body;
+    }
+
+    /**
+     * Returns the current generation, to be taken before reading the data of a body from the DB.
+     * @return the generation, increased by every {@link #invalidate()}
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches the body of a request, unless the cache was invalidated since the data of the body was read.
+     * @param key the request, not {@code null}
+     * @param body the body, not {@code null}
+     * @param generation the {@link #generation()} taken before the data of the body was read
+     * @return {@code true} if the body was cached, else {@code false}
+     */
+    public synchronized boolean put(final String key, final byte[] body, final long generation) {
+        Objects.requireNonNull(key);
+        if (generation != this.generation || body.length > maxBytes / MAX_ENTRY_SHARE) {
+            return false;
+        }
+        final byte[] previous = entries.put(key, body);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += body.length;
+        final Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Drops all bodies, as the data they were computed from may have changed.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the cached bodies.
+     * @return the size in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache[" + entries.size() + " bodies, " + bytes + " bytes, " + hits + " hits, " + misses + " misses]";
+    }
+
+}
@@ -25,8 +25,10 @@ CREATE TABLE tag (
   is_relationship BOOLEAN       NOT NULL          DEFAULT FALSE,
   fandom_id       INT           REFERENCES fandom(id), -- allowed to be null
   link            TEXT          UNIQUE,
+  search          TSVECTOR      GENERATED ALWAYS AS (setweight(to_tsvector('english', name), 'A') || setweight(to_tsvector('english', COALESCE(description, '')), 'B')) STORED,
   PRIMARY KEY(id)
 );
+CREATE INDEX tag_search ON tag USING GIN (search);
 INSERT INTO tag (name, description, is_character)
 VALUES ('OC', 'An Own Character by the author, not from any existing fandom.', TRUE)
 ;
@@ -40,6 +42,11 @@ CREATE TABLE related (
   relationship_id INT NOT NULL  REFERENCES tag(id),
   PRIMARY KEY(character_id, relationship_id)
 );
+CREATE TABLE job_progress (
+  name    VARCHAR(63),
+  last_id INT           NOT NULL  DEFAULT 0,
+  PRIMARY KEY(name)
+);
 CREATE TABLE author (
   id            SERIAL,
   name          VARCHAR(255)  NOT NULL,
@@ -53,6 +60,7 @@ CREATE TABLE profile (
   link          TEXT  NOT NULL,
   PRIMARY KEY(author_id, link)
 );
+CREATE INDEX profile_link ON profile (link); -- pseud URLs tell apart authors of the same name
 CREATE TABLE lang ( -- recognized languages
   id    SERIAL,
   name  VARCHAR(63) UNIQUE NOT NULL,
@@ -84,8 +92,23 @@ CREATE TABLE fanfiction (
   last_updated        BIGINT        NOT NULL, -- millis since epoch
   last_checked        BIGINT        NOT NULL  DEFAULT FLOOR(EXTRACT(EPOCH from NOW())*1000), -- millis since epoch
   link                TEXT          NOT NULL,
+  ao3_id              BIGINT        UNIQUE, -- numeric Ao3 work ID, null outside of Ao3
+  search              TSVECTOR, -- title and tag names, kept up to date by Search
   PRIMARY KEY(id)
 );
+CREATE INDEX fanfiction_search ON fanfiction USING GIN (search);
+CREATE INDEX fanfiction_link ON fanfiction (link);
+CREATE TABLE work_stats ( -- append-only history of each check, partitioned by month, see StatsHistory
+  checked_at    BIGINT  NOT NULL, -- millis since epoch, first to avoid padding
+  fanfiction_id INT     NOT NULL  REFERENCES fanfiction(id),
+  chapters      INT     NOT NULL,
+  words         INT     NOT NULL,
+  kudos         INT     NOT NULL,
+  hits          INT     NOT NULL,
+  comments      INT     NOT NULL,
+  bookmarks     INT     NOT NULL
+) PARTITION BY RANGE (checked_at);
+CREATE INDEX work_stats_fanfiction ON work_stats (fanfiction_id, checked_at);
 CREATE TABLE authored (
   fanfiction_id INT NOT NULL  REFERENCES fanfiction(id),
   author_id     INT NOT NULL  REFERENCES author(id)       DEFAULT 1,
@@ -108,6 +131,18 @@ FROM tagged
 INNER JOIN fanfiction ON tagged.fanfiction_id=fanfiction.id
 INNER JOIN tag ON tagged.tag_id=tag.id
 ;
+CREATE TABLE cooccurred (
+  tag_id        INT NOT NULL  REFERENCES tag(id),
+  other_tag_id  INT NOT NULL  REFERENCES tag(id),
+  works         INT NOT NULL,
+  PRIMARY KEY(tag_id, other_tag_id)
+);
+CREATE TABLE similar (
+  fanfiction_id INT   NOT NULL  REFERENCES fanfiction(id),
+  similar_id    INT   NOT NULL  REFERENCES fanfiction(id),
+  score         REAL  NOT NULL,
+  PRIMARY KEY(fanfiction_id, similar_id)
+);
 CREATE TABLE crossed_over (
   fanfiction_id INT NOT NULL  REFERENCES fanfiction(id),
   fandom_id     INT NOT NULL  REFERENCES fandom(id),
@@ -119,4 +154,39 @@ FROM crossed_over
 INNER JOIN fanfiction ON crossed_over.fanfiction_id=fanfiction.id
 INNER JOIN fandom ON crossed_over.fandom_id=fandom.id
 ;
+CREATE TABLE rollup_tag ( -- aggregates of the fanfictions per tag, see Rollups
+  tag_id        INT     NOT NULL  REFERENCES tag(id),
+  works         INT     NOT NULL,
+  words         BIGINT  NOT NULL,
+  completed     INT     NOT NULL,
+  PRIMARY KEY(tag_id)
+);
+CREATE TABLE rollup_rating_month ( -- aggregates of the fanfictions per rating and month of the last update, see Rollups
+  rating_id     INT     NOT NULL  REFERENCES rating(id),
+  updated_month INT     NOT NULL, -- e.g. 202401
+  works         INT     NOT NULL,
+  words         BIGINT  NOT NULL,
+  completed     INT     NOT NULL,
+  PRIMARY KEY(rating_id, updated_month)
+);
+CREATE TABLE crawl_frontier ( -- URLs to crawl, shared by all crawler instances
+  url           TEXT,
+  host          VARCHAR(255)  NOT NULL,
+  kind          VARCHAR(63)   NOT NULL, -- what the URL points to, e.g. a listing page
+  priority      INT           NOT NULL  DEFAULT 0, -- higher is claimed first
+  payload       BYTEA, -- what is already known about the URL
+  not_before    BIGINT        NOT NULL  DEFAULT 0, -- millis since epoch
+  leased_by     VARCHAR(63),
+  lease_until   BIGINT, -- millis since epoch
+  attempts      INT           NOT NULL  DEFAULT 0,
+  done_at       BIGINT, -- millis since epoch
+  PRIMARY KEY(url)
+);
+CREATE INDEX crawl_frontier_open ON crawl_frontier (priority DESC, not_before) WHERE done_at IS NULL;
+CREATE TABLE crawl_host ( -- request budget per host, shared by all crawler instances
+  host          VARCHAR(255),
+  interval_ms   INT           NOT NULL,
+  next_slot     BIGINT        NOT NULL, -- millis since epoch
+  PRIMARY KEY(host)
+);
 COMMIT;
\ No newline at end of file
@@ -1,14 +1,22 @@
 BEGIN;
+DROP TABLE crawl_host;
+DROP TABLE crawl_frontier;
+DROP TABLE rollup_rating_month;
+DROP TABLE rollup_tag;
 DROP VIEW crossed_over_resolved;
 DROP TABLE crossed_over;
+DROP TABLE similar;
+DROP TABLE cooccurred;
 DROP VIEW tagged_resolved;
 DROP TABLE tagged;
 DROP VIEW authored_resolved;
 DROP TABLE authored;
+DROP TABLE work_stats;
 DROP TABLE fanfiction;
 DROP TABLE lang;
 DROP TABLE profile;
 DROP TABLE author;
+DROP TABLE job_progress;
 DROP TABLE related;
 DROP TABLE tag_alias;
 DROP TABLE tag;
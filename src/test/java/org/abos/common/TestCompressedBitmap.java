@@ -0,0 +1,97 @@
+package org.abos.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link CompressedBitmap}.
+ */
+public final class TestCompressedBitmap {
+
+    /**
+     * Fills a bitmap and a bitset with the same random values, sparse in some chunks and dense in others.
+     */
+    private static CompressedBitmap fill(final Random random, final BitSet expected) {
+        final CompressedBitmap bitmap = new CompressedBitmap();
+        for (int chunk = 0; chunk < 6; chunk++) {
+            final int count = random.nextBoolean() ? random.nextInt(100) : 4000 + random.nextInt(20000);
+            for (int i = 0; i < count; i++) {
+                final int value = (chunk << 16) | random.nextInt(1 << 16);
+                bitmap.add(value);
+                expected.set(value);
+            }
+        }
+        return bitmap;
+    }
+
+    private static int[] toArray(final BitSet bitSet) {
+        return bitSet.stream().toArray();
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        final CompressedBitmap bitmap = CompressedBitmap.of(3, 1, 70000, 1);
+        assertArrayEquals(new int[]{1, 3, 70000}, bitmap.toArray());
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(2));
+        assertFalse(bitmap.add(3));
+        assertTrue(bitmap.remove(70000));
+        assertFalse(bitmap.remove(70000));
+        assertEquals(2, bitmap.cardinality());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    @Test
+    public void testDenseChunk() {
+        final CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 10000; value += 2) {
+            bitmap.add(value);
+        }
+        assertEquals(5000, bitmap.cardinality());
+        for (int value = 0; value < 10000; value += 4) {
+            bitmap.remove(value);
+        }
+        assertEquals(2500, bitmap.cardinality());
+        assertTrue(bitmap.contains(2));
+        assertFalse(bitmap.contains(4));
+    }
+
+    @Test
+    public void testSetOperations() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            final BitSet expectedA = new BitSet();
+            final BitSet expectedB = new BitSet();
+            final CompressedBitmap a = fill(random, expectedA);
+            final CompressedBitmap b = fill(random, expectedB);
+            final BitSet and = (BitSet) expectedA.clone();
+            and.and(expectedB);
+            final BitSet or = (BitSet) expectedA.clone();
+            or.or(expectedB);
+            final BitSet andNot = (BitSet) expectedA.clone();
+            andNot.andNot(expectedB);
+            assertArrayEquals(toArray(and), a.and(b).toArray());
+            assertArrayEquals(toArray(or), a.or(b).toArray());
+            assertArrayEquals(toArray(andNot), a.andNot(b).toArray());
+            assertEquals(expectedA.cardinality(), a.cardinality());
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        final CompressedBitmap bitmap = CompressedBitmap.of(1, 2);
+        final CompressedBitmap copy = bitmap.copy();
+        copy.add(3);
+        assertEquals(CompressedBitmap.of(1, 2), bitmap);
+        assertEquals(CompressedBitmap.of(1, 2, 3), copy);
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.abos.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link LongHashSet}.
+ */
+public final class TestLongHashSet {
+
+    @Test
+    public void testAddRemoveContains() {
+        final Random random = new Random(43);
+        final LongHashSet set = new LongHashSet();
+        final Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            // a small range, so values are added and removed again a lot
+            final long value = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long value = -200; value < 5000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        final long[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), values);
+    }
+
+    @Test
+    public void testZeroAndClear() {
+        final LongHashSet set = new LongHashSet(4);
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.contains(0L));
+        assertEquals(2, set.size());
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0L));
+        assertFalse(set.contains(Long.MIN_VALUE));
+    }
+
+}
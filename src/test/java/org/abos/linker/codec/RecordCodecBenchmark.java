@@ -0,0 +1,164 @@
+package org.abos.linker.codec;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.abos.linker.db.FanfictionExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the {@link RecordEncoder} and {@link RecordDecoder} against Java serialization and JSON Lines,
+ * each on the same batch of generated fanfictions. {@link #main(String[])} prints the encoded sizes first.
+ * <p>
+ * The core records are not {@link java.io.Serializable}, so Java serialization is measured on arrays of their
+ * components instead. There is no JSON parser on the classpath, so JSON is only measured for encoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordCodecBenchmark {
+
+    public static final int FANFICTIONS = 1000;
+
+    private List<Fanfiction> fanfictions;
+
+    private byte[] encoded;
+
+    private byte[] serialized;
+
+    static List<Fanfiction> createFanfictions() {
+        final Random random = new Random(42);
+        final List<Fanfiction> result = new ArrayList<>(FANFICTIONS);
+        for (int index = 0; index < FANFICTIONS; index++) {
+            final List<Tag> tags = new ArrayList<>();
+            for (int tag = random.nextInt(12) + 3; tag > 0; tag--) {
+                tags.add(new Tag("Character " + random.nextInt(200), null, true, false, null, null));
+            }
+            result.add(new FanfictionBuilder("Work number " + index, random.nextInt(50) + 1, random.nextInt(200000) + 100,
+                    Instant.ofEpochMilli(1600000000000L + random.nextInt(1 << 30) * 100L), "https://archiveofourown.org/works/" + (40000000 + index))
+                    .rating("Teen And Up Audiences")
+                    .warningNoneApply(true)
+                    .catGen(random.nextBoolean())
+                    .lastChecked(Instant.ofEpochMilli(1700000000000L))
+                    .author(new Author("Author " + random.nextInt(300), List.of()))
+                    .tags(tags)
+                    .crossovers(random.nextInt(10) == 0 ? List.of(new Fandom("Other Fandom", null)) : List.of())
+                    .build());
+        }
+        return result;
+    }
+
+    private static Object[] toSerializable(final Fanfiction fanfiction) {
+        return new Object[]{fanfiction.title(), fanfiction.chapters(), fanfiction.words(), fanfiction.language(), fanfiction.rating(),
+                fanfiction.warningNoneGiven(), fanfiction.warningNoneApply(), fanfiction.warningViolence(), fanfiction.warningRape(),
+                fanfiction.warningDeath(), fanfiction.warningUnderage(), fanfiction.catFf(), fanfiction.catFm(), fanfiction.catMm(),
+                fanfiction.catGen(), fanfiction.catMulti(), fanfiction.catOther(), fanfiction.completed(),
+                fanfiction.lastUpdated(), fanfiction.lastChecked(), fanfiction.link(),
+                fanfiction.authors().stream().map(author -> new Object[]{author.name(), new ArrayList<>(author.links())}).toArray(),
+                fanfiction.tags().stream().map(tag -> new Object[]{tag.name(), tag.description(), tag.isCharacter(), tag.isRelationship(), tag.fandom(), tag.link()}).toArray(),
+                fanfiction.crossovers().stream().map(fandom -> new Object[]{fandom.name(), fandom.link()}).toArray()};
+    }
+
+    @Setup
+    public void createData() throws IOException {
+        fanfictions = createFanfictions();
+        encoded = encodeCodec();
+        serialized = encodeJavaSerialization();
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        final RecordEncoder encoder = new RecordEncoder();
+        for (Fanfiction fanfiction : fanfictions) {
+            encoder.writeFanfiction(fanfiction);
+        }
+        final ByteBuffer buffer = encoder.buffer();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public void decodeCodec(final Blackhole blackhole) {
+        final RecordDecoder decoder = new RecordDecoder();
+        final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        while (buffer.hasRemaining()) {
+            blackhole.consume(decoder.readFanfiction(buffer));
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeJavaSerialization() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Fanfiction fanfiction : fanfictions) {
+                out.writeObject(toSerializable(fanfiction));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public void decodeJavaSerialization(final Blackhole blackhole) throws IOException, ClassNotFoundException {
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            for (int index = 0; index < FANFICTIONS; index++) {
+                blackhole.consume(in.readObject());
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            for (int index = 0; index < FANFICTIONS; index++) {
+                FanfictionExporter.writeJson(writer, index, fanfictions.get(index));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        final RecordCodecBenchmark sizes = new RecordCodecBenchmark();
+        sizes.createData();
+        System.out.printf("Bytes for %d fanfictions: codec %d, Java serialization %d, JSON Lines %d%n",
+                FANFICTIONS, sizes.encoded.length, sizes.serialized.length, sizes.encodeJson().length);
+        new Runner(new OptionsBuilder()
+                .include(RecordCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.abos.linker.codec;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link RecordEncoder} and {@link RecordDecoder}.
+ */
+public final class TestRecordCodec {
+
+    static final Tag ERIN = new Tag("Erin Solstice", "The innkeeper.", true, false, "The Wandering Inn - pirateaba", "https://twiki.shelter.moe/Erin_Solstice");
+
+    static Fanfiction createFanfiction(final String title) {
+        return new FanfictionBuilder(title, 3, 12345, Instant.ofEpochMilli(1700000000000L), "https://archiveofourown.org/works/1")
+                .lastChecked(Instant.ofEpochMilli(1700000001000L))
+                .rating("General Audiences")
+                .warningNoneApply(true)
+                .catGen(true)
+                .completed(true)
+                .authors(List.of(new Author("pirate", List.of("https://archiveofourown.org/users/pirate"))))
+                .tags(List.of(ERIN, new Tag("Erin Solstice/Ryoka Griffin", null, false, true, null, null), new Tag("Fluff", null, false, false, null, null)))
+                .crossovers(List.of(new Fandom("Other", null)))
+                .engagement(new Engagement(154, 1873, 12, 9))
+                .build();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final RecordEncoder encoder = new RecordEncoder();
+        final Fanfiction fanfiction = createFanfiction("Tea & Cake");
+        final Author author = new Author("\u00dcn\u00efc\u00f6d\u00e9", List.of());
+        final Fandom fandom = new Fandom("Other", "https://example.org");
+        encoder.write(fanfiction);
+        encoder.write(ERIN);
+        encoder.write(author);
+        encoder.write(fandom);
+        final ByteBuffer buffer = encoder.buffer();
+        final RecordDecoder decoder = new RecordDecoder();
+        assertEquals(fanfiction, decoder.readFanfiction(buffer));
+        assertEquals(ERIN, decoder.read(buffer));
+        assertEquals(author, decoder.readAuthor(buffer));
+        assertEquals(fandom, decoder.readFandom(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testDictionary() {
+        final RecordEncoder encoder = new RecordEncoder();
+        encoder.write(createFanfiction("First"));
+        final int firstSize = encoder.size();
+        encoder.write(createFanfiction("Second"));
+        // the second record only refers to the names of the first
+        assertTrue(encoder.size() - firstSize < firstSize - ERIN.name().length());
+        final ByteBuffer buffer = encoder.buffer();
+        final RecordDecoder decoder = new RecordDecoder();
+        final Fanfiction first = decoder.readFanfiction(buffer);
+        final Fanfiction second = decoder.readFanfiction(buffer);
+        assertEquals(createFanfiction("Second"), second);
+        assertSame(first.tags().get(0).name(), second.tags().get(0).name());
+    }
+
+    @Test
+    public void testVarLong() {
+        final RecordEncoder encoder = new RecordEncoder();
+        for (long value : new long[]{0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE, -1700000000000L}) {
+            encoder.writeVarLong(value);
+        }
+        encoder.writeVarInt(Integer.MAX_VALUE);
+        final ByteBuffer buffer = encoder.buffer();
+        for (long value : new long[]{0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE, -1700000000000L}) {
+            assertEquals(value, RecordDecoder.readVarLong(buffer));
+        }
+        assertEquals(Integer.MAX_VALUE, RecordDecoder.readVarInt(buffer));
+    }
+
+    @Test
+    public void testWrongVersion() {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{RecordCodec.VERSION + 1, RecordCodec.TYPE_TAG});
+        assertThrows(IllegalStateException.class, () -> new RecordDecoder().read(buffer));
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.abos.linker.codec;
+
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link SpillingQueue}.
+ */
+public final class TestSpillingQueue {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("spilling");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private long segmentFiles() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static Tag tag(final int index) {
+        return new Tag("Tag " + index, index % 2 == 0 ? null : "Description " + index, true, false, null, null);
+    }
+
+    @Test
+    public void testSpillInOrder() throws IOException {
+        try (final SpillingQueue<Tag> queue = new SpillingQueue<>(Tag.class, 3, 100, directory)) {
+            for (int index = 0; index < 20; index++) {
+                queue.add(tag(index));
+            }
+            assertEquals(20, queue.size());
+            assertEquals(17, queue.spilled());
+            assertTrue(segmentFiles() > 1);
+            for (int index = 0; index < 10; index++) {
+                assertEquals(tag(index), queue.poll());
+            }
+            queue.add(tag(20));
+            assertEquals(11, queue.size());
+            for (int index = 10; index <= 20; index++) {
+                assertEquals(tag(index), queue.poll());
+            }
+            assertNull(queue.poll());
+            assertEquals(0, segmentFiles());
+            // back on the heap
+            queue.add(tag(21));
+            assertEquals(0, queue.spilled());
+            assertEquals(tag(21), queue.peek());
+        }
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    public void testDummy() throws IOException {
+        try (final SpillingQueue<Fanfiction> queue = new SpillingQueue<>(Fanfiction.class, 1, SpillingQueue.DEFAULT_SEGMENT_SIZE, directory)) {
+            queue.add(TestRecordCodec.createFanfiction("First"));
+            queue.add(TestRecordCodec.createFanfiction("Second"));
+            queue.add(Fanfiction.DUMMY);
+            assertEquals(2, queue.spilled());
+            final List<Fanfiction> drained = new ArrayList<>();
+            assertEquals(3, queue.drainTo(drained));
+            assertEquals(List.of(TestRecordCodec.createFanfiction("First"), TestRecordCodec.createFanfiction("Second"), Fanfiction.DUMMY), drained);
+        }
+    }
+
+    @Test
+    public void testEndMarkerDeletesTemporaryDirectory() throws IOException {
+        final SpillingQueue<Tag> queue = new SpillingQueue<>(Tag.class, 1, 100);
+        queue.add(tag(0));
+        queue.add(tag(1));
+        queue.add(Tag.DUMMY);
+        assertEquals(2, queue.spilled());
+        assertEquals(tag(0), queue.poll());
+        assertEquals(tag(1), queue.poll());
+        assertTrue(Files.exists(queue.getDirectory()));
+        // the spilled marker is read back as a copy
+        assertEquals(Tag.DUMMY, queue.poll());
+        assertFalse(Files.exists(queue.getDirectory()));
+        // still usable, the directory is created again if needed
+        queue.add(tag(2));
+        queue.add(tag(3));
+        assertEquals(1, queue.spilled());
+        queue.close();
+        assertFalse(Files.exists(queue.getDirectory()));
+    }
+
+    @Test
+    public void testConcurrent() throws IOException, InterruptedException {
+        final int count = 5000;
+        try (final SpillingQueue<Tag> queue = new SpillingQueue<>(Tag.class, 16, 4096, directory)) {
+            final Thread producer = new Thread(() -> {
+                for (int index = 0; index < count; index++) {
+                    queue.add(tag(index));
+                }
+            });
+            producer.start();
+            for (int index = 0; index < count; index++) {
+                assertEquals(tag(index), queue.poll(10, TimeUnit.SECONDS));
+            }
+            producer.join();
+            assertEquals(0, queue.size());
+        }
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    public void testIterator() throws IOException {
+        try (final SpillingQueue<Tag> queue = new SpillingQueue<>(Tag.class, 3, 100, directory)) {
+            final List<Tag> expected = new ArrayList<>();
+            for (int index = 0; index < 20; index++) {
+                queue.add(tag(index));
+                expected.add(tag(index));
+            }
+            assertEquals(expected, new ArrayList<>(queue));
+            for (int index = 0; index < 5; index++) {
+                queue.poll();
+            }
+            assertEquals(expected.subList(5, 20), List.of(queue.toArray()));
+            assertTrue(queue.contains(tag(19)));
+            assertFalse(queue.contains(tag(0)));
+            assertThrows(UnsupportedOperationException.class, () -> queue.remove(tag(19)));
+            // iterating doesn't change what is taken
+            for (int index = 5; index < 20; index++) {
+                assertEquals(tag(index), queue.poll());
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> new SpillingQueue<>(String.class, 1, 1, directory));
+        final SpillingQueue<Tag> queue = new SpillingQueue<>(Tag.class, 1, 1, directory);
+        queue.close();
+        assertThrows(IllegalStateException.class, () -> queue.add(Tag.DUMMY));
+    }
+
+}
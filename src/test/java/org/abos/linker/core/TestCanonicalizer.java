@@ -0,0 +1,39 @@
+package org.abos.linker.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test class for {@link Canonicalizer}.
+ */
+public final class TestCanonicalizer {
+
+    @Test
+    public void testTag() {
+        final Canonicalizer canonicalizer = new Canonicalizer();
+        final Tag first = canonicalizer.tag(new Tag(new String("Erin Solstice"), null, true, false, null, null));
+        final Tag second = canonicalizer.tag(new Tag(new String("Erin Solstice"), null, true, false, null, null));
+        assertSame(first, second);
+        assertSame(first.name(), canonicalizer.name(new String("Erin Solstice")));
+    }
+
+    @Test
+    public void testFandomAndAuthor() {
+        final Canonicalizer canonicalizer = new Canonicalizer();
+        assertSame(canonicalizer.fandom(new Fandom("Worm", null)), canonicalizer.fandom(new Fandom(new String("Worm"), null)));
+        final Author author = canonicalizer.author(new Author("Wanderer", List.of("link")));
+        assertSame(author, canonicalizer.author(new Author(new String("Wanderer"), List.of("link"))));
+        assertEquals(new Author("Wanderer", List.of("other")), canonicalizer.author(new Author("Wanderer", List.of("other"))));
+    }
+
+    @Test
+    public void testNullName() {
+        assertNull(new Canonicalizer().name(null));
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.abos.linker.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link FanfictionBuilder}.
+ */
+public final class TestFanfictionBuilder {
+
+    @Test
+    public void testBuildWiresWarnings() {
+        final Fanfiction underage = new FanfictionBuilder("test", 1, 10, Instant.EPOCH, "")
+                .warningUnderage(true)
+                .build();
+        assertTrue(underage.warningUnderage());
+        assertFalse(underage.warningRape());
+        final Fanfiction rape = new FanfictionBuilder("test", 1, 10, Instant.EPOCH, "")
+                .warningRape(true)
+                .build();
+        assertTrue(rape.warningRape());
+        assertFalse(rape.warningUnderage());
+    }
+
+    @Test
+    public void testBuildKeepsLists() {
+        final List<Tag> tags = new LinkedList<>();
+        tags.add(new Tag("tag", null, false, false, null, null));
+        final FanfictionBuilder builder = new FanfictionBuilder("test", 1, 10, Instant.EPOCH, "").tags(tags);
+        final Fanfiction fanfiction = builder.build();
+        assertSame(builder.tags(), fanfiction.tags());
+        assertEquals(tags, fanfiction.tags());
+        assertTrue(fanfiction.authors().isEmpty());
+        assertTrue(fanfiction.crossovers().isEmpty());
+        // building must not alter the builder
+        assertNull(builder.authors());
+    }
+
+    @Test
+    public void testCopy() {
+        final Fanfiction fanfiction = new FanfictionBuilder("test", 2, 10, Instant.EPOCH, "link")
+                .language("Deutsch")
+                .catMm(true)
+                .completed(true)
+                .lastChecked(Instant.ofEpochSecond(1))
+                .tag(new Tag("tag", null, false, false, null, null))
+                .engagement(new Engagement(1, 2, 3, 4))
+                .build();
+        assertEquals(fanfiction, new FanfictionBuilder(fanfiction).build());
+        assertEquals(Instant.ofEpochSecond(2), new FanfictionBuilder(fanfiction).lastUpdated(Instant.ofEpochSecond(2)).build().lastUpdated());
+    }
+
+}
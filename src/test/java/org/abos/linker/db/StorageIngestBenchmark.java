@@ -0,0 +1,131 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * JMH benchmark of ingesting a batch of generated fanfictions with {@link Storage#updateFanfictions(BlockingQueue)}
+ * into freshly set up tables. The {@code embedded} backend is an {@link EmbeddedStorage} in a temporary directory,
+ * the {@code postgres} backend a {@link DbHelper} on the DB of its system properties, which is dropped and recreated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StorageIngestBenchmark {
+
+    public static final int FANFICTIONS = 5000;
+
+    @Param({"embedded", "postgres"})
+    public String backend;
+
+    private List<Fanfiction> fanfictions;
+
+    private Path directory;
+
+    private Storage storage;
+
+    static List<Fanfiction> createFanfictions() {
+        final Random random = new Random(42);
+        final List<Fanfiction> result = new ArrayList<>(FANFICTIONS);
+        for (int index = 0; index < FANFICTIONS; index++) {
+            final List<Tag> tags = new ArrayList<>();
+            for (int tag = random.nextInt(12) + 3; tag > 0; tag--) {
+                tags.add(new Tag("Character " + random.nextInt(200), null, true, false, null, null));
+            }
+            result.add(new FanfictionBuilder("Work number " + index, random.nextInt(50) + 1, random.nextInt(200000) + 100,
+                    Instant.ofEpochMilli(1600000000000L + random.nextInt(1 << 30) * 100L), "https://archiveofourown.org/works/" + (40000000 + index))
+                    .rating("Teen And Up Audiences")
+                    .lastChecked(Instant.ofEpochMilli(1700000000000L))
+                    .author(new Author("Author " + random.nextInt(300), List.of()))
+                    .tags(tags)
+                    .build());
+        }
+        return result;
+    }
+
+    @Setup(Level.Trial)
+    public void openStorage() throws IOException, SQLException {
+        fanfictions = createFanfictions();
+        if (backend.equals("embedded")) {
+            directory = Files.createTempDirectory("embedded");
+            storage = new EmbeddedStorage(directory);
+        }
+        else {
+            storage = new DbHelper();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetTables() throws IOException, SQLException {
+        try {
+            storage.tearDownTables();
+        }
+        catch (SQLException ex) {
+            // no tables yet
+        }
+        storage.setupTables();
+        storage.loadAliasResolver();
+        storage.loadTagLinker();
+    }
+
+    @Benchmark
+    public void ingest() throws SQLException {
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>(fanfictions);
+        queue.add(Fanfiction.DUMMY);
+        storage.updateFanfictions(queue);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeStorage() throws IOException {
+        if (storage instanceof EmbeddedStorage embeddedStorage) {
+            embeddedStorage.close();
+            try (final Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StorageIngestBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.abos.linker.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link ConnectionPool}.
+ */
+public final class TestConnectionPool {
+
+    /**
+     * Counts the connections opened, closed and rolled back. {@link Connection#abort} breaks a connection.
+     */
+    private static final class FakeDb {
+
+        private final AtomicInteger opened = new AtomicInteger();
+
+        private final AtomicInteger closed = new AtomicInteger();
+
+        private final AtomicInteger rolledBack = new AtomicInteger();
+
+        Connection open() {
+            opened.incrementAndGet();
+            final boolean[] state = {true, false}; // auto commit, closed
+            return (Connection) Proxy.newProxyInstance(TestConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getAutoCommit" -> {
+                        return state[0];
+                    }
+                    case "setAutoCommit" -> state[0] = (Boolean) args[0];
+                    case "rollback" -> rolledBack.incrementAndGet();
+                    case "isClosed" -> {
+                        return state[1];
+                    }
+                    case "abort" -> state[1] = true;
+                    case "isValid" -> {
+                        return !state[1];
+                    }
+                    case "close" -> {
+                        if (!state[1]) {
+                            closed.incrementAndGet();
+                        }
+                        state[1] = true;
+                    }
+                    default -> {
+                        // nothing else is used
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void testReuse() throws SQLException {
+        final FakeDb db = new FakeDb();
+        try (final ConnectionPool pool = new ConnectionPool(db::open, 4, Duration.ofSeconds(1))) {
+            for (int index = 0; index < 100; index++) {
+                try (final Connection connection = pool.acquire()) {
+                    assertTrue(connection.getAutoCommit());
+                }
+            }
+            assertEquals(1, db.opened.get());
+            assertEquals(1, pool.getIdle());
+        }
+        assertEquals(1, db.closed.get());
+    }
+
+    @Test
+    public void testBounded() throws SQLException {
+        final FakeDb db = new FakeDb();
+        try (final ConnectionPool pool = new ConnectionPool(db::open, 2, Duration.ofMillis(50))) {
+            final List<Connection> borrowed = new ArrayList<>();
+            borrowed.add(pool.acquire());
+            borrowed.add(pool.acquire());
+            assertThrows(SQLTimeoutException.class, pool::acquire);
+            borrowed.get(0).close();
+            borrowed.add(pool.acquire());
+            assertEquals(2, db.opened.get());
+            for (Connection connection : borrowed) {
+                connection.close();
+            }
+            assertEquals(2, pool.getIdle());
+        }
+    }
+
+    @Test
+    public void testReset() throws SQLException {
+        final FakeDb db = new FakeDb();
+        try (final ConnectionPool pool = new ConnectionPool(db::open, 1, Duration.ofSeconds(1))) {
+            final Connection connection = pool.acquire();
+            connection.setAutoCommit(false);
+            connection.close();
+            // closing twice must not give it back twice
+            connection.close();
+            assertTrue(connection.isClosed());
+            assertThrows(SQLException.class, connection::commit);
+            assertEquals(1, db.rolledBack.get());
+            try (final Connection next = pool.acquire()) {
+                assertTrue(next.getAutoCommit());
+            }
+            assertEquals(1, db.opened.get());
+        }
+    }
+
+    @Test
+    public void testDropBroken() throws SQLException {
+        final FakeDb db = new FakeDb();
+        try (final ConnectionPool pool = new ConnectionPool(db::open, 1, Duration.ofSeconds(1))) {
+            final Connection connection = pool.acquire();
+            // as if the DB went away
+            connection.abort(null);
+            connection.close();
+            assertEquals(0, pool.getIdle());
+            try (final Connection next = pool.acquire()) {
+                assertTrue(!next.isClosed());
+            }
+            assertEquals(2, db.opened.get());
+        }
+    }
+
+}
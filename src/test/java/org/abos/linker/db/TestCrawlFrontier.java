@@ -0,0 +1,118 @@
+package org.abos.linker.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link CrawlFrontier}.
+ */
+public final class TestCrawlFrontier {
+
+    private DbHelper dbHelper;
+
+    private CrawlFrontier first;
+
+    private CrawlFrontier second;
+
+    @BeforeAll
+    public static void setupDbConfig() {
+        System.setProperty(DbHelper.PROPERTY_URL, "localhost:5432/linker_test");
+        System.setProperty(DbHelper.PROPERTY_SU_NAME, "postgres");
+        System.setProperty(DbHelper.PROPERTY_SU_PW, "postgres");
+    }
+
+    @BeforeEach
+    public void setupDb() throws SQLException, IOException {
+        dbHelper = new DbHelper();
+        // for cleanup after aborted tests
+        try {
+            dbHelper.tearDownTables();
+        }
+        catch (SQLException ex) {
+            /* Ignore. */
+        }
+        dbHelper.setupTables();
+        first = new CrawlFrontier(dbHelper, "first");
+        second = new CrawlFrontier(dbHelper, "second");
+    }
+
+    @AfterEach
+    public void tearDownDb() throws SQLException, IOException {
+        first.close();
+        second.close();
+        dbHelper.tearDownTables();
+        dbHelper = null;
+    }
+
+    private static List<CrawlFrontier.Entry> entries(final int count) {
+        return IntStream.range(0, count)
+                .mapToObj(index -> new CrawlFrontier.Entry("https://example.org/" + index, "test", index, new byte[]{(byte) index}))
+                .toList();
+    }
+
+    @Test
+    public void testClaimOnce() throws SQLException {
+        assertEquals(4, first.add(entries(4)));
+        assertEquals(0, second.add(entries(4)));
+        final List<CrawlFrontier.Lease> claimed = first.claim(3);
+        assertEquals(3, claimed.size());
+        final List<CrawlFrontier.Lease> rest = second.claim(3);
+        assertEquals(1, rest.size());
+        // the lowest priority is claimed last
+        assertEquals("https://example.org/0", rest.get(0).url());
+        assertArrayEquals(new byte[]{0}, rest.get(0).payload());
+        assertEquals("example.org", rest.get(0).host());
+        assertTrue(second.claim(3).isEmpty());
+        assertFalse(first.complete(rest.get(0)));
+        assertTrue(second.complete(rest.get(0)));
+        assertEquals(3, first.open());
+    }
+
+    @Test
+    public void testExpiredLease() throws SQLException, IOException, InterruptedException {
+        try (final CrawlFrontier crashing = new CrawlFrontier(dbHelper, "crashing", Duration.ZERO, CrawlFrontier.DEFAULT_HOST_INTERVAL)) {
+            crashing.add(entries(1));
+            assertEquals(1, crashing.claim(1).size());
+        }
+        // let the lease run out
+        Thread.sleep(10);
+        final List<CrawlFrontier.Lease> claimed = first.claim(1);
+        assertEquals(1, claimed.size());
+        assertEquals(2, claimed.get(0).attempts());
+        assertTrue(first.complete(claimed.get(0)));
+        assertEquals(0, first.open());
+    }
+
+    @Test
+    public void testFail() throws SQLException {
+        first.add(entries(1));
+        final CrawlFrontier.Lease claimed = first.claim(1).get(0);
+        assertTrue(first.fail(claimed));
+        // waits for the retry
+        assertTrue(second.claim(1).isEmpty());
+        assertEquals(1, second.open());
+    }
+
+    @Test
+    public void testHostBudget() throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        first.acquire("example.org");
+        second.acquire("example.org");
+        first.acquire("example.org");
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(CrawlFrontier.DEFAULT_HOST_INTERVAL.multipliedBy(2).minusMillis(100)) >= 0);
+    }
+
+}
@@ -13,10 +13,13 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * Test class for {@link DbHelper}.
  */
@@ -66,4 +69,78 @@ public final class TestDbHelper {
         dbHelper.updateFanfictions(queue);
     }
 
+    @Test
+    public void testUpdateFanfictionsByAo3Id() throws SQLException {
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>();
+        // same title and pseud name, but different works and users
+        queue.add(new FanfictionBuilder("Same", 1, 10, Instant.EPOCH, "https://archiveofourown.org/works/1")
+                .author(new Author("Pseud", List.of("https://archiveofourown.org/users/a/pseuds/Pseud"))).build());
+        queue.add(new FanfictionBuilder("Same", 1, 20, Instant.EPOCH, "https://archiveofourown.org/works/2")
+                .author(new Author("Pseud", List.of("https://archiveofourown.org/users/b/pseuds/Pseud"))).build());
+        // the first work renamed, found under another tag
+        queue.add(new FanfictionBuilder("Renamed", 2, 30, Instant.EPOCH, "https://archiveofourown.org/works/1")
+                .author(new Author("Pseud", List.of("https://archiveofourown.org/users/a/pseuds/Pseud"))).build());
+        queue.add(Fanfiction.DUMMY);
+        dbHelper.updateFanfictions(queue);
+        final List<Fanfiction> read = new ArrayList<>();
+        dbHelper.readFanfictions((fanfiction, id) -> read.add(fanfiction));
+        assertEquals(2, read.size());
+        assertEquals("Renamed", read.get(0).title());
+        assertEquals(30, read.get(0).words());
+        assertEquals(List.of("https://archiveofourown.org/users/b/pseuds/Pseud"), read.get(1).authors().get(0).links());
+    }
+
+    private static Fanfiction work(final int index) {
+        return new FanfictionBuilder("Work " + index, 1, 10, Instant.EPOCH, "https://archiveofourown.org/works/" + index)
+                .tag(new Tag("Tag " + index % 3, null, false, false, null, null)).build();
+    }
+
+    @Test
+    public void testReadFanfictionsByIds() throws SQLException {
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>();
+        for (int index = 1; index <= 3; index++) {
+            queue.add(work(index));
+        }
+        queue.add(Fanfiction.DUMMY);
+        dbHelper.updateFanfictions(queue);
+        final List<Integer> readIds = new ArrayList<>();
+        final List<Fanfiction> read = new ArrayList<>();
+        // in ascending order of the IDs, whatever the order asked for, and without the unknown one
+        dbHelper.readFanfictions(List.of(3, 7, 1), (fanfiction, id) -> {
+            readIds.add(id);
+            read.add(fanfiction);
+        });
+        assertEquals(List.of(1, 3), readIds);
+        assertEquals(List.of("Work 1", "Work 3"), read.stream().map(Fanfiction::title).toList());
+        assertEquals(work(3).tags(), read.get(1).tags());
+        readIds.clear();
+        dbHelper.readFanfictions(List.of(), (fanfiction, id) -> readIds.add(id));
+        assertEquals(List.of(), readIds);
+    }
+
+    @Test
+    public void testReadFanfictionsByIdsInChunks() throws SQLException {
+        final int count = DbHelper.READ_CHUNK_SIZE + 2;
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>();
+        final List<Integer> ids = new ArrayList<>();
+        for (int index = 1; index <= count; index++) {
+            queue.add(work(index));
+            ids.add(0, index);
+        }
+        ids.add(count + 100);
+        queue.add(Fanfiction.DUMMY);
+        dbHelper.updateFanfictions(queue);
+        final List<Integer> readIds = new ArrayList<>();
+        dbHelper.readFanfictions(ids, (fanfiction, id) -> {
+            // the tags are read per chunk, so check they belong to the right fanfiction
+            assertEquals("Work " + id, fanfiction.title());
+            assertEquals(work(id).tags(), fanfiction.tags());
+            readIds.add(id);
+        });
+        assertEquals(count, readIds.size());
+        for (int index = 0; index < count; index++) {
+            assertEquals(index + 1, readIds.get(index));
+        }
+    }
+
 }
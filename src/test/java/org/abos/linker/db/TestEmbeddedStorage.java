@@ -0,0 +1,245 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.abos.linker.core.WorkStats;
+import org.abos.linker.index.TagIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link EmbeddedStorage}.
+ */
+public final class TestEmbeddedStorage {
+
+    private static final Tag ERIN = new Tag("Erin Solstice", "The innkeeper.", true, false, null, null);
+
+    private static final Tag RYOKA = new Tag("Ryoka Griffin", null, true, false, null, null);
+
+    private static final Tag FLUFF = new Tag("Fluff", null, false, false, null, null);
+
+    private Path directory;
+
+    private EmbeddedStorage storage;
+
+    @BeforeEach
+    public void openStorage() throws IOException, SQLException {
+        directory = Files.createTempDirectory("embedded");
+        storage = new EmbeddedStorage(directory, 1 << 12);
+        storage.setupTables();
+    }
+
+    @AfterEach
+    public void deleteStorage() throws IOException {
+        storage.close();
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private void reopen() throws IOException, SQLException {
+        storage.close();
+        storage = new EmbeddedStorage(directory, 1 << 12);
+    }
+
+    private static FanfictionBuilder fanfiction(final int workId, final String title) {
+        return new FanfictionBuilder(title, 3, 12000, Instant.ofEpochMilli(1700000000000L), "https://archiveofourown.org/works/" + workId)
+                .rating("Teen And Up Audiences")
+                .lastChecked(Instant.ofEpochMilli(1710000000000L));
+    }
+
+    private void updateFanfictions(final Fanfiction... fanfictions) throws SQLException {
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>(List.of(fanfictions));
+        queue.add(Fanfiction.DUMMY);
+        storage.updateFanfictions(queue);
+    }
+
+    private Map<Integer, Fanfiction> readFanfictions() throws SQLException {
+        final Map<Integer, Fanfiction> fanfictions = new LinkedHashMap<>();
+        storage.readFanfictions((fanfiction, id) -> fanfictions.put(id, fanfiction));
+        return fanfictions;
+    }
+
+    @Test
+    public void testSetupRequired() throws IOException, SQLException {
+        assertThrows(SQLException.class, () -> storage.setupTables());
+        storage.tearDownTables();
+        assertThrows(SQLException.class, () -> storage.updateTag(ERIN));
+        storage.setupTables();
+        storage.updateTag(ERIN);
+    }
+
+    @Test
+    public void testUpdateAndReadFanfictions() throws SQLException {
+        final Author author = new Author("Pirateaba", List.of("https://archiveofourown.org/users/pirateaba/pseuds/pirateaba"));
+        updateFanfictions(
+                fanfiction(100, "The Wandering Inn").author(author).tags(List.of(ERIN, FLUFF)).crossover(new Fandom("Other Fandom", "https://other.org")).build(),
+                fanfiction(101, "Anonymous Work").tag(RYOKA).build());
+        final Map<Integer, Fanfiction> fanfictions = readFanfictions();
+        assertEquals(List.of(1, 2), List.copyOf(fanfictions.keySet()));
+        final Fanfiction first = fanfictions.get(1);
+        assertEquals("The Wandering Inn", first.title());
+        assertEquals("Teen And Up Audiences", first.rating());
+        assertEquals("English", first.language());
+        assertEquals(Instant.ofEpochMilli(1710000000000L), first.lastChecked());
+        assertEquals(List.of(author), first.authors());
+        assertEquals(List.of(ERIN, FLUFF), first.tags());
+        assertEquals(List.of(new Fandom("Other Fandom", "https://other.org")), first.crossovers());
+        assertEquals(List.of(), fanfictions.get(2).authors());
+        // the author with links, then Anonymous
+        assertEquals(author, storage.getAuthor(2));
+        assertEquals(List.of(1), storage.getAuthoredFanfictions(2));
+        assertEquals(List.of(2), storage.getAuthoredFanfictions(1));
+        assertNull(storage.getAuthor(3));
+        final List<Integer> read = new ArrayList<>();
+        storage.readFanfictions(List.of(2, 7), (fanfiction, id) -> read.add(id));
+        assertEquals(List.of(2), read);
+    }
+
+    @Test
+    public void testUpdateKeepsReferences() throws SQLException {
+        updateFanfictions(fanfiction(100, "Old Title").tag(ERIN).build());
+        // the same work under another link, as found by its work ID
+        updateFanfictions(new FanfictionBuilder(fanfiction(100, "New Title").tag(RYOKA).build())
+                .link("https://archiveofourown.org/works/100/chapters/5").build());
+        final Map<Integer, Fanfiction> fanfictions = readFanfictions();
+        assertEquals(1, fanfictions.size());
+        assertEquals("New Title", fanfictions.get(1).title());
+        assertEquals(List.of(ERIN, RYOKA), fanfictions.get(1).tags());
+    }
+
+    @Test
+    public void testUpdateTagKeepsDescription() throws SQLException {
+        updateFanfictions(fanfiction(100, "Work").tag(ERIN).build());
+        storage.updateTag(new Tag(ERIN.name(), null, true, false, "The Wandering Inn", "https://wiki.org/Erin"));
+        final Tag expected = new Tag(ERIN.name(), ERIN.description(), true, false, "The Wandering Inn", "https://wiki.org/Erin");
+        assertEquals(List.of(expected), readFanfictions().get(1).tags());
+    }
+
+    @Test
+    public void testReopen() throws IOException, SQLException {
+        updateFanfictions(fanfiction(100, "Work").author(new Author("Writer", List.of())).tag(ERIN).build());
+        final Map<Integer, Fanfiction> before = readFanfictions();
+        reopen();
+        assertEquals(before, readFanfictions());
+        // the indexes are restored, so the same work and author are found again
+        updateFanfictions(fanfiction(100, "Work").author(new Author("Writer", List.of())).tag(RYOKA).build());
+        assertEquals(1, storage.getFanfictionCount());
+        assertEquals(List.of(1), storage.getAuthoredFanfictions(2));
+        assertEquals(List.of(ERIN, RYOKA), readFanfictions().get(1).tags());
+    }
+
+    @Test
+    public void testChangeTagToAlias() throws IOException, SQLException {
+        final Tag erin = new Tag("Erin", null, true, false, null, null);
+        updateFanfictions(fanfiction(100, "Work").tag(ERIN).build(), fanfiction(101, "Other Work").tag(erin).build());
+        final TagIndex index = storage.loadTagIndex();
+        assertThrows(IllegalStateException.class, () -> storage.changeTagToAlias(ERIN.name(), ERIN.name()));
+        assertEquals(List.of(ERIN), readFanfictions().get(1).tags());
+        storage.changeTagToAlias(ERIN.name(), erin.name());
+        assertEquals(List.of(ERIN), readFanfictions().get(2).tags());
+        assertEquals(2, index.count(2));
+        assertThrows(IllegalStateException.class, () -> storage.changeTagToAlias(ERIN.name(), erin.name()));
+        reopen();
+        assertEquals(List.of(ERIN), readFanfictions().get(2).tags());
+        assertEquals(ERIN.name(), storage.loadAliasResolver().resolve(erin.name()));
+        assertEquals(2, storage.loadTagIndex().count(2));
+        // the alias is rewritten to its tag from now on
+        updateFanfictions(fanfiction(102, "Third Work").tag(erin).build());
+        assertEquals(List.of(ERIN), readFanfictions().get(3).tags());
+    }
+
+    @Test
+    public void testAddTags() throws SQLException {
+        final BlockingQueue<Tag> queue = new LinkedBlockingQueue<>(List.of(ERIN, RYOKA, Tag.DUMMY));
+        storage.addTags(queue);
+        assertThrows(SQLException.class, () -> storage.addTags(new LinkedBlockingQueue<>(List.of(ERIN, Tag.DUMMY))));
+        assertThrows(IllegalStateException.class, () -> storage.addTags(new LinkedBlockingQueue<>(List.of(
+                new Tag("Someone", null, true, false, "Unknown Fandom", null), Tag.DUMMY))));
+        storage.addTagAlias(RYOKA.name(), "Ryoka");
+        assertThrows(SQLException.class, () -> storage.addTagAlias(RYOKA.name(), "Ryoka"));
+        assertEquals(RYOKA.name(), storage.loadAliasResolver().resolve("Ryoka"));
+    }
+
+    @Test
+    public void testUpdateRelated() throws SQLException {
+        storage.addTags(new LinkedBlockingQueue<>(List.of(ERIN, RYOKA, Tag.DUMMY)));
+        storage.addTagAlias(RYOKA.name(), "Ryoka");
+        storage.loadAliasResolver();
+        storage.updateTag(new Tag("Erin Solstice/Ryoka", null, false, true, null, null));
+        assertEquals(2, storage.updateRelated(false));
+        assertEquals(List.of(2, 3), storage.getRelatedCharacters(4));
+        assertEquals(0, storage.updateRelated(false));
+        assertEquals(0, storage.updateRelated(true));
+    }
+
+    @Test
+    public void testUpdateSimilarities() throws IOException, SQLException {
+        updateFanfictions(
+                fanfiction(100, "Erin and Ryoka").tags(List.of(ERIN, RYOKA, FLUFF)).build(),
+                fanfiction(101, "Ryoka and Erin").tags(List.of(RYOKA, ERIN)).build(),
+                fanfiction(102, "Just Fluff").tag(FLUFF).build());
+        storage.updateSimilarities();
+        assertEquals(List.of(2, 3), storage.getSimilarFanfictions(1));
+        assertEquals(List.of(1), storage.getSimilarFanfictions(2));
+        reopen();
+        assertEquals(List.of(2, 3), storage.getSimilarFanfictions(1));
+    }
+
+    @Test
+    public void testUpdateFanfictionStats() throws IOException, SQLException {
+        updateFanfictions(fanfiction(100, "Work").tag(ERIN).build());
+        final Instant checked = Instant.ofEpochMilli(1720000000000L);
+        assertFalse(storage.updateFanfictionStats(2, new WorkStats(4, 15000, true, checked, Engagement.NONE), checked));
+        assertTrue(storage.updateFanfictionStats(1, new WorkStats(4, 15000, true, checked, Engagement.NONE), checked));
+        reopen();
+        final Fanfiction fanfiction = readFanfictions().get(1);
+        assertEquals(4, fanfiction.chapters());
+        assertEquals(15000, fanfiction.words());
+        assertTrue(fanfiction.completed());
+        assertEquals(checked, fanfiction.lastChecked());
+        assertEquals(List.of(ERIN), fanfiction.tags());
+    }
+
+    @Test
+    public void testManySegments() throws IOException, SQLException {
+        final List<Fanfiction> fanfictions = new ArrayList<>();
+        for (int index = 0; index < 200; index++) {
+            fanfictions.add(fanfiction(1000 + index, "Work " + index).tag(index % 2 == 0 ? ERIN : RYOKA).build());
+        }
+        updateFanfictions(fanfictions.toArray(new Fanfiction[0]));
+        reopen();
+        final Map<Integer, Fanfiction> read = readFanfictions();
+        assertEquals(200, read.size());
+        assertEquals("Work 199", read.get(200).title());
+        assertEquals(100, storage.loadTagIndex().count(2));
+    }
+
+}
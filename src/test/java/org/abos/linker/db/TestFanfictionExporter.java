@@ -0,0 +1,73 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for {@link FanfictionExporter}.
+ */
+public final class TestFanfictionExporter {
+
+    private static Fanfiction createFanfiction() {
+        return new FanfictionBuilder("Tea, \"Cake\"", 2, 3000, Instant.ofEpochMilli(1000), "https://archiveofourown.org/works/1")
+                .language("English")
+                .rating("General Audiences")
+                .catGen(true)
+                .lastChecked(Instant.ofEpochMilli(2000))
+                .authors(List.of(new Author("pirate", List.of("https://archiveofourown.org/users/pirate"))))
+                .tags(List.of(new Tag("Erin Solstice", null, true, false, null, null), new Tag("Fluff", null, false, false, null, null)))
+                .crossovers(List.of(new Fandom("Other", null)))
+                .build();
+    }
+
+    @Test
+    public void testEscapeCsv() {
+        assertEquals("plain", FanfictionExporter.escapeCsv("plain"));
+        assertEquals("\"a,b\"", FanfictionExporter.escapeCsv("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", FanfictionExporter.escapeCsv("say \"hi\""));
+        assertEquals("", FanfictionExporter.escapeCsv(null));
+    }
+
+    @Test
+    public void testWriteCsv() throws IOException {
+        final StringWriter writer = new StringWriter();
+        FanfictionExporter.writeCsv(writer, 7, createFanfiction());
+        assertEquals("7,\"Tea, \"\"Cake\"\"\",2,3000,English,General Audiences,false,false,false,false,false,false," +
+                "false,false,false,true,false,false,false,1000,2000,https://archiveofourown.org/works/1," +
+                "pirate,Erin Solstice|Fluff,Other\n", writer.toString());
+        assertEquals(FanfictionExporter.CSV_HEADER.split(",").length, writer.toString().split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)").length);
+    }
+
+    @Test
+    public void testWriteJson() throws IOException {
+        final StringWriter writer = new StringWriter();
+        FanfictionExporter.writeJson(writer, 7, createFanfiction());
+        assertEquals("{\"id\":7,\"title\":\"Tea, \\\"Cake\\\"\",\"chapters\":2,\"words\":3000,\"language\":\"English\",\"rating\":\"General Audiences\"," +
+                "\"warningNoneGiven\":false,\"warningNoneApply\":false,\"warningViolence\":false,\"warningRape\":false,\"warningDeath\":false,\"warningUnderage\":false," +
+                "\"catFf\":false,\"catFm\":false,\"catMm\":false,\"catGen\":true,\"catMulti\":false,\"catOther\":false,\"completed\":false," +
+                "\"lastUpdated\":1000,\"lastChecked\":2000,\"link\":\"https://archiveofourown.org/works/1\"," +
+                "\"authors\":[{\"name\":\"pirate\",\"links\":[\"https://archiveofourown.org/users/pirate\"]}]," +
+                "\"tags\":[{\"name\":\"Erin Solstice\",\"isCharacter\":true,\"isRelationship\":false,\"fandom\":null}," +
+                "{\"name\":\"Fluff\",\"isCharacter\":false,\"isRelationship\":false,\"fandom\":null}]," +
+                "\"crossovers\":[\"Other\"]}\n", writer.toString());
+    }
+
+    @Test
+    public void testWriteJsonString() throws IOException {
+        final StringWriter writer = new StringWriter();
+        FanfictionExporter.writeJsonString(writer, "a\\b\n\u0001");
+        assertEquals("\"a\\\\b\\n\\u0001\"", writer.toString());
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.abos.linker.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test class for {@link RefreshQueue}.
+ */
+public final class TestRefreshQueue {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1700000000L);
+
+    private static RefreshQueue.Work work(final int id, final boolean completed, final Duration unchanged, final Duration sinceChecked) {
+        final Instant lastChecked = NOW.minus(sinceChecked);
+        return new RefreshQueue.Work(id, "https://archiveofourown.org/works/" + id, completed, lastChecked.minus(unchanged), lastChecked);
+    }
+
+    @Test
+    public void testInterval() {
+        assertEquals(Duration.ofDays(10), RefreshQueue.interval(work(1, false, Duration.ofDays(40), Duration.ZERO)));
+        assertEquals(RefreshQueue.MIN_INTERVAL, RefreshQueue.interval(work(1, false, Duration.ZERO, Duration.ZERO)));
+        assertEquals(RefreshQueue.MAX_INTERVAL, RefreshQueue.interval(work(1, false, Duration.ofDays(4000), Duration.ZERO)));
+        assertEquals(Duration.ofDays(40), RefreshQueue.interval(work(1, true, Duration.ofDays(40), Duration.ZERO)));
+        assertEquals(RefreshQueue.MIN_COMPLETED_INTERVAL, RefreshQueue.interval(work(1, true, Duration.ZERO, Duration.ZERO)));
+        assertEquals(RefreshQueue.MAX_COMPLETED_INTERVAL, RefreshQueue.interval(work(1, true, Duration.ofDays(4000), Duration.ZERO)));
+    }
+
+    @Test
+    public void testOrder() {
+        final RefreshQueue queue = new RefreshQueue();
+        // due in 10 days
+        final RefreshQueue.Work old = work(1, false, Duration.ofDays(40), Duration.ZERO);
+        // due 4 days ago
+        final RefreshQueue.Work active = work(2, false, Duration.ofDays(8), Duration.ofDays(6));
+        // due 2 days ago
+        final RefreshQueue.Work completed = work(3, true, Duration.ofDays(20), Duration.ofDays(22));
+        // due in 300 days
+        final RefreshQueue.Work finished = work(4, true, Duration.ofDays(300), Duration.ZERO);
+        queue.add(old);
+        queue.add(active);
+        queue.add(completed);
+        queue.add(finished);
+        assertEquals(4, queue.size());
+        assertEquals(2, queue.countDue(NOW));
+        assertEquals(NOW.minus(Duration.ofDays(4)), queue.nextDue());
+        assertSame(active, queue.poll(NOW));
+        assertSame(completed, queue.poll(NOW));
+        assertNull(queue.poll(NOW));
+        queue.add(active, NOW);
+        assertSame(active, queue.poll(NOW));
+        assertSame(old, queue.poll(NOW.plus(Duration.ofDays(10))));
+        assertSame(finished, queue.poll(NOW.plus(Duration.ofDays(300))));
+        assertNull(queue.nextDue());
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for {@link Rollups}.
+ */
+public final class TestRollups {
+
+    private static final Tag ERIN = new Tag("Erin Solstice", null, true, false, null, null);
+
+    private static final Tag RYOKA = new Tag("Ryoka Griffin", null, true, false, null, null);
+
+    private static final Tag PAIRING = new Tag("Erin Solstice/Ryoka Griffin", null, false, true, null, null);
+
+    private DbHelper dbHelper;
+
+    @BeforeAll
+    public static void setupDbConfig() {
+        System.setProperty(DbHelper.PROPERTY_URL, "localhost:5432/linker_test");
+        System.setProperty(DbHelper.PROPERTY_SU_NAME, "postgres");
+        System.setProperty(DbHelper.PROPERTY_SU_PW, "postgres");
+    }
+
+    @BeforeEach
+    public void setupDb() throws SQLException, IOException {
+        dbHelper = new DbHelper();
+        // for cleanup after aborted tests
+        try {
+            dbHelper.tearDownTables();
+        }
+        catch (SQLException ex) {
+            /* Ignore. */
+        }
+        dbHelper.setupTables();
+    }
+
+    @AfterEach
+    public void tearDownDb() throws SQLException, IOException {
+        dbHelper.tearDownTables();
+        dbHelper = null;
+    }
+
+    private static Fanfiction fanfiction(final int workId, final int words, final boolean completed, final String updated, final Tag... tags) {
+        return new FanfictionBuilder("Work " + workId, 1, words, Instant.parse(updated), "https://archiveofourown.org/works/" + workId)
+                .rating("General Audiences")
+                .completed(completed)
+                .tags(List.of(tags))
+                .build();
+    }
+
+    @Test
+    public void testIncrementalSameAsRebuild() throws SQLException, InterruptedException {
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>(List.of(
+                fanfiction(1, 100, true, "2024-01-10T00:00:00Z", ERIN),
+                fanfiction(2, 200, false, "2024-01-20T00:00:00Z", ERIN, RYOKA, PAIRING),
+                fanfiction(3, 400, false, "2024-02-05T00:00:00Z", RYOKA),
+                // the second work is updated and moves to the next month
+                fanfiction(2, 250, true, "2024-02-10T00:00:00Z", ERIN, RYOKA, PAIRING),
+                Fanfiction.DUMMY));
+        dbHelper.updateFanfictions(queue);
+        final Rollups rollups = dbHelper.getRollups();
+        final List<Rollups.TagRollup> characters = rollups.getTagRollups(Rollups.TagKind.CHARACTER, 10);
+        assertEquals(2, characters.size());
+        assertEquals(new Rollups.TagRollup(characters.get(0).tagId(), "Erin Solstice", 2, 350, 2), characters.get(0));
+        assertEquals(650, characters.get(1).words());
+        final List<Rollups.TagRollup> relationships = rollups.getTagRollups(Rollups.TagKind.RELATIONSHIP, 10);
+        assertEquals(1, relationships.size());
+        assertEquals(1.0, relationships.get(0).completedShare());
+        final List<Rollups.RatingMonthRollup> months = rollups.getRatingMonthRollups(YearMonth.of(2024, 1), YearMonth.of(2024, 12));
+        assertEquals(List.of(
+                new Rollups.RatingMonthRollup("General Audiences", YearMonth.of(2024, 1), 1, 100, 1),
+                new Rollups.RatingMonthRollup("General Audiences", YearMonth.of(2024, 2), 2, 650, 1)), months);
+        rollups.rebuild(2);
+        assertEquals(characters, rollups.getTagRollups(Rollups.TagKind.CHARACTER, 10));
+        assertEquals(relationships, rollups.getTagRollups(Rollups.TagKind.RELATIONSHIP, 10));
+        assertEquals(months, rollups.getRatingMonthRollups(YearMonth.of(2024, 1), YearMonth.of(2024, 12)));
+    }
+
+    @Test
+    public void testMonth() {
+        assertEquals(202401, Rollups.month(Instant.parse("2024-01-31T23:59:59Z")));
+        assertEquals(202402, Rollups.month(Instant.parse("2024-02-01T00:00:00Z")));
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link Search}.
+ */
+public final class TestSearch {
+
+    private static final Tag ERIN = new Tag("Erin Solstice", "Erin Solstice is the innkeeper of The Wandering Inn.", true, false, null, null);
+
+    private static final Tag FLUFF = new Tag("Fluff", null, false, false, null, null);
+
+    private DbHelper dbHelper;
+
+    @BeforeAll
+    public static void setupDbConfig() {
+        System.setProperty(DbHelper.PROPERTY_URL, "localhost:5432/linker_test");
+        System.setProperty(DbHelper.PROPERTY_SU_NAME, "postgres");
+        System.setProperty(DbHelper.PROPERTY_SU_PW, "postgres");
+    }
+
+    @BeforeEach
+    public void setupDb() throws SQLException, IOException {
+        dbHelper = new DbHelper();
+        // for cleanup after aborted tests
+        try {
+            dbHelper.tearDownTables();
+        }
+        catch (SQLException ex) {
+            /* Ignore. */
+        }
+        dbHelper.setupTables();
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>();
+        for (int workId = 1; workId <= 7; workId++) {
+            queue.add(new FanfictionBuilder(workId == 1 ? "The Innkeeper's Morning" : "Work " + workId, 1, 100, Instant.EPOCH,
+                    "https://archiveofourown.org/works/" + workId)
+                    .rating(workId % 2 == 0 ? "Mature" : "General Audiences")
+                    .tags(workId % 3 == 0 ? List.of(ERIN, FLUFF) : List.of(ERIN))
+                    .build());
+        }
+        queue.add(Fanfiction.DUMMY);
+        dbHelper.updateFanfictions(queue);
+    }
+
+    @AfterEach
+    public void tearDownDb() throws SQLException, IOException {
+        dbHelper.tearDownTables();
+        dbHelper = null;
+    }
+
+    @Test
+    public void testTitleRanksAboveTags() throws SQLException {
+        final Search.Page page = dbHelper.getSearch().searchFanfictions("innkeeper erin", List.of(), null, 10, null);
+        // only the first work has the word in its title, all have the tag
+        assertEquals(1, page.hits().size());
+        assertEquals("The Innkeeper's Morning", page.hits().get(0).name());
+        assertEquals(7, dbHelper.getSearch().searchFanfictions("erin", List.of(), null, 10, null).hits().size());
+    }
+
+    @Test
+    public void testFilters() throws SQLException {
+        final Search.Page page = dbHelper.getSearch().searchFanfictions("solstice", List.of("Fluff"), "Mature", 10, null);
+        // works 3 and 6 have Fluff, only 6 is mature
+        assertEquals(1, page.hits().size());
+        assertEquals("Work 6", page.hits().get(0).name());
+    }
+
+    @Test
+    public void testKeysetPagination() throws SQLException {
+        final Set<Integer> ids = new HashSet<>();
+        final List<Search.Hit> hits = new ArrayList<>();
+        Search.Cursor cursor = null;
+        do {
+            final Search.Page page = dbHelper.getSearch().searchFanfictions("erin", List.of(), null, 3, cursor);
+            assertTrue(page.hits().size() <= 3);
+            hits.addAll(page.hits());
+            cursor = page.next();
+        } while (cursor != null);
+        hits.forEach(hit -> ids.add(hit.id()));
+        assertEquals(7, hits.size());
+        assertEquals(7, ids.size());
+    }
+
+    @Test
+    public void testFilterFanfictions() throws SQLException {
+        final Search.Page first = dbHelper.getSearch().filterFanfictions(List.of("Fluff"), null, 1, null);
+        assertEquals(List.of("Work 3"), first.hits().stream().map(Search.Hit::name).toList());
+        final Search.Page second = dbHelper.getSearch().filterFanfictions(List.of("Fluff"), null, 1, first.next());
+        assertEquals(List.of("Work 6"), second.hits().stream().map(Search.Hit::name).toList());
+        assertNull(second.next());
+        assertEquals(7, dbHelper.getSearch().filterFanfictions(List.of(), null, 10, null).hits().size());
+    }
+
+    @Test
+    public void testFilterAuthors() throws SQLException {
+        dbHelper.updateAuthor(new Author("pirateaba", List.of("https://archiveofourown.org/users/pirateaba/pseuds/pirateaba")), false);
+        final Search.Page page = dbHelper.getSearch().filterAuthors("RATE", 10, null);
+        assertEquals(List.of("pirateaba"), page.hits().stream().map(Search.Hit::name).toList());
+        // Anonymous is always there
+        assertEquals(2, dbHelper.getSearch().filterAuthors("", 10, null).hits().size());
+    }
+
+    @Test
+    public void testSearchTags() throws SQLException {
+        final Search.Page page = dbHelper.getSearch().searchTags("innkeeper", true, 10, null);
+        assertEquals(1, page.hits().size());
+        assertEquals("Erin Solstice", page.hits().get(0).name());
+        assertNull(page.next());
+    }
+
+}
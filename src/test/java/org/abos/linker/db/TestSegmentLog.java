@@ -0,0 +1,138 @@
+package org.abos.linker.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link SegmentLog}.
+ */
+public final class TestSegmentLog {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("segments");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static ByteBuffer record(final String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String content(final ByteBuffer record) {
+        final byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> replay(final SegmentLog log) {
+        final List<String> contents = new ArrayList<>();
+        log.replay((record, position) -> contents.add(content(record)));
+        return contents;
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            assertTrue(log.isEmpty());
+            final List<Long> positions = new ArrayList<>();
+            for (int index = 0; index < 10; index++) {
+                positions.add(log.append(record("Record " + index)));
+            }
+            assertFalse(log.isEmpty());
+            // 64 bytes hold four records of 8 bytes framing and 8 bytes content
+            assertEquals(3, log.getSegmentCount());
+            for (int index = 0; index < 10; index++) {
+                assertEquals("Record " + index, content(log.read(positions.get(index))));
+            }
+            assertThrows(IllegalArgumentException.class, () -> log.append(record("x".repeat(57))));
+            assertThrows(IllegalArgumentException.class, () -> log.append(record("")));
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        final long position;
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            log.append(record("First"));
+            position = log.append(record("Second"));
+        }
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            assertEquals(List.of("First", "Second"), replay(log));
+            assertEquals("Second", content(log.read(position)));
+            log.append(record("Third"));
+            assertEquals(List.of("First", "Second", "Third"), replay(log));
+        }
+    }
+
+    @Test
+    public void testBrokenRecordDropped() throws IOException {
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            log.append(record("Kept"));
+            log.append(record("Broken"));
+            log.append(record("Dropped in the same segment"));
+            log.append(record("Dropped in the next"));
+        }
+        assertEquals(2, segmentFiles());
+        // overwrite a byte of the second record as if it was only partly written
+        try (final FileChannel channel = FileChannel.open(directory.resolve("00000000.seg"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), 8 + 4 + 8 + 1);
+        }
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            assertEquals(List.of("Kept"), replay(log));
+            assertEquals(1, segmentFiles());
+            log.append(record("New"));
+        }
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            assertEquals(List.of("Kept", "New"), replay(log));
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        try (final SegmentLog log = new SegmentLog(directory, 64)) {
+            for (int index = 0; index < 10; index++) {
+                log.append(record("Record " + index));
+            }
+            log.clear();
+            assertTrue(log.isEmpty());
+            assertEquals(1, segmentFiles());
+            log.append(record("Fresh"));
+            assertEquals(List.of("Fresh"), replay(log));
+        }
+    }
+
+    private long segmentFiles() throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+}
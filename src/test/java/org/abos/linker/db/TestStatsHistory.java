@@ -0,0 +1,91 @@
+package org.abos.linker.db;
+
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for {@link StatsHistory}.
+ */
+public final class TestStatsHistory {
+
+    private static final Instant JANUARY = Instant.parse("2024-01-31T23:00:00Z");
+
+    private static final Instant FEBRUARY = Instant.parse("2024-02-01T01:00:00Z");
+
+    private DbHelper dbHelper;
+
+    @BeforeAll
+    public static void setupDbConfig() {
+        System.setProperty(DbHelper.PROPERTY_URL, "localhost:5432/linker_test");
+        System.setProperty(DbHelper.PROPERTY_SU_NAME, "postgres");
+        System.setProperty(DbHelper.PROPERTY_SU_PW, "postgres");
+    }
+
+    @BeforeEach
+    public void setupDb() throws SQLException, IOException {
+        dbHelper = new DbHelper();
+        // for cleanup after aborted tests
+        try {
+            dbHelper.tearDownTables();
+        }
+        catch (SQLException ex) {
+            /* Ignore. */
+        }
+        dbHelper.setupTables();
+    }
+
+    @AfterEach
+    public void tearDownDb() throws SQLException, IOException {
+        dbHelper.tearDownTables();
+        dbHelper = null;
+    }
+
+    private static Fanfiction fanfiction(final int workId, final Instant checked, final int kudos) {
+        return new FanfictionBuilder("Work " + workId, 1, 100, Instant.EPOCH, "https://archiveofourown.org/works/" + workId)
+                .lastChecked(checked)
+                .engagement(new Engagement(kudos, 10 * kudos, 0, 0))
+                .build();
+    }
+
+    @Test
+    public void testPartitionName() {
+        assertEquals("work_stats_202402", StatsHistory.partitionName(YearMonth.of(2024, 2)));
+    }
+
+    @Test
+    public void testGrowthAndTrending() throws SQLException {
+        // two checks of two works each, spanning two partitions
+        final BlockingQueue<Fanfiction> queue = new LinkedBlockingQueue<>(List.of(
+                fanfiction(1, JANUARY, 10), fanfiction(2, JANUARY, 50),
+                fanfiction(1, FEBRUARY, 40), fanfiction(2, FEBRUARY, 55),
+                Fanfiction.DUMMY));
+        dbHelper.updateFanfictions(queue);
+        final StatsHistory history = dbHelper.getStatsHistory();
+        final List<StatsHistory.Sample> growth = history.growth(1, Instant.EPOCH, FEBRUARY.plusSeconds(1));
+        assertEquals(2, growth.size());
+        assertEquals(JANUARY, growth.get(0).checkedAt());
+        assertEquals(40, growth.get(1).engagement().kudos());
+        final List<StatsHistory.Trend> trending = history.trending(StatsHistory.Counter.KUDOS, Instant.EPOCH, FEBRUARY.plusSeconds(1), 10);
+        assertEquals(2, trending.size());
+        assertEquals(30, trending.get(0).growth());
+        assertEquals(5, trending.get(1).growth());
+        // a window with a single check per work has no trends
+        assertEquals(List.of(), history.trending(StatsHistory.Counter.KUDOS, FEBRUARY, FEBRUARY.plusSeconds(1), 10));
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.abos.linker.gui;
+
+import org.abos.linker.db.Search;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link KeysetPager}.
+ */
+public final class TestKeysetPager {
+
+    /**
+     * Rows with the IDs from 1 to the size, paged by ID.
+     */
+    private static KeysetPager.Source rows(final int size, final AtomicInteger loads) {
+        return (after, limit) -> {
+            loads.incrementAndGet();
+            final int first = after == null ? 1 : after.id() + 1;
+            final List<Search.Hit> hits = new ArrayList<>();
+            for (int id = first; id < first + limit && id <= size; id++) {
+                hits.add(new Search.Hit(id, "Work " + id, 0f));
+            }
+            final Search.Cursor next = first + limit <= size ? new Search.Cursor(0f, first + limit - 1) : null;
+            return new Search.Page(hits, next);
+        };
+    }
+
+    @Test
+    public void testLoadsWhileScrolling() {
+        final List<Search.Hit> table = new ArrayList<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final KeysetPager pager = new KeysetPager(Runnable::run, Runnable::run, 100, table::addAll, ex -> {
+            throw new AssertionError(ex);
+        });
+        pager.reset(rows(1000, loads));
+        assertEquals(100, table.size());
+        // rows far from the end don't load anything
+        for (int index = 0; index < 50; index++) {
+            pager.rowShown(index);
+        }
+        assertEquals(1, loads.get());
+        pager.rowShown(60);
+        assertEquals(200, table.size());
+        for (int index = 0; index < 1000; index++) {
+            pager.rowShown(index);
+        }
+        assertEquals(1000, table.size());
+        assertTrue(pager.isExhausted());
+        assertEquals(1000, table.get(999).id());
+        assertEquals(10, loads.get());
+    }
+
+    @Test
+    public void testDropsPagesOfPreviousSource() {
+        final List<Search.Hit> table = new ArrayList<>();
+        final Queue<Runnable> background = new ArrayDeque<>();
+        final KeysetPager pager = new KeysetPager(background::add, Runnable::run, 100, table::addAll, ex -> {
+            throw new AssertionError(ex);
+        });
+        pager.reset(rows(1000, new AtomicInteger()));
+        assertTrue(pager.isLoading());
+        pager.reset(rows(5, new AtomicInteger()));
+        while (!background.isEmpty()) {
+            background.poll().run();
+        }
+        assertEquals(5, table.size());
+        assertEquals(5, pager.getLoaded());
+        assertTrue(pager.isExhausted());
+    }
+
+    @Test
+    public void testError() {
+        final List<SQLException> errors = new ArrayList<>();
+        final KeysetPager pager = new KeysetPager(Runnable::run, Runnable::run, 100, hits -> {
+            throw new AssertionError();
+        }, errors::add);
+        pager.reset((after, limit) -> {
+            throw new SQLException("DB gone");
+        });
+        assertEquals(1, errors.size());
+        assertFalse(pager.isLoading());
+        // no retry on every row shown
+        pager.rowShown(0);
+        assertEquals(1, errors.size());
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.abos.linker.gui;
+
+import org.abos.linker.index.TagIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test class for {@link TagFilter}.
+ */
+public final class TestTagFilter {
+
+    private static TagIndex index() {
+        final TagIndex index = new TagIndex();
+        // tag 1 on 1-6, tag 2 on the even ones, tag 3 on 5-8
+        for (int fanfictionId = 1; fanfictionId <= 8; fanfictionId++) {
+            if (fanfictionId <= 6) {
+                index.add(1, fanfictionId);
+            }
+            if (fanfictionId % 2 == 0) {
+                index.add(2, fanfictionId);
+            }
+            if (fanfictionId >= 5) {
+                index.add(3, fanfictionId);
+            }
+        }
+        return index;
+    }
+
+    @Test
+    public void testCounts() {
+        final TagFilter all = TagFilter.all(index());
+        assertEquals(8, all.count());
+        assertEquals(6, all.count(1));
+        final TagFilter one = all.with(1);
+        assertEquals(6, one.count());
+        assertEquals(3, one.count(2));
+        assertEquals(2, one.count(3));
+        assertEquals(6, one.count(1));
+        final TagFilter oneTwo = one.with(2);
+        assertEquals(List.of(1, 2), oneTwo.getTagIds());
+        assertEquals(3, oneTwo.count());
+        assertEquals(1, oneTwo.count(3));
+        // the filters are immutable
+        assertEquals(6, one.count());
+    }
+
+    @Test
+    public void testWithout() {
+        final TagFilter filter = TagFilter.all(index()).with(1).with(2).with(3);
+        assertEquals(1, filter.count());
+        final TagFilter withoutOne = filter.without(1);
+        assertEquals(List.of(2, 3), withoutOne.getTagIds());
+        assertEquals(2, withoutOne.count());
+        assertEquals(8, withoutOne.without(2).without(3).count());
+        assertSame(withoutOne, withoutOne.without(1));
+        assertSame(filter, filter.with(2));
+    }
+
+}
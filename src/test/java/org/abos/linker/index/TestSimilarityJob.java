@@ -0,0 +1,93 @@
+package org.abos.linker.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link SimilarityJob}.
+ */
+public final class TestSimilarityJob {
+
+    private static final int ERIN = 1;
+
+    private static final int RYOKA = 2;
+
+    private static final int LYONETTE = 3;
+
+    private static final int MRSHA = 4;
+
+    private static final int FLUFF = 5;
+
+    private static SimilarityJob createJob() {
+        return new SimilarityJob(new int[]{10, 11, 12, 13}, new int[][]{
+                {ERIN, RYOKA, FLUFF},
+                {RYOKA, ERIN},
+                {LYONETTE, MRSHA, ERIN},
+                {MRSHA, LYONETTE}
+        });
+    }
+
+    private static List<SimilarityJob.Cooccurrence> toList(final Iterable<SimilarityJob.Cooccurrence> cooccurrences) {
+        final List<SimilarityJob.Cooccurrence> result = new ArrayList<>();
+        cooccurrences.forEach(result::add);
+        return result;
+    }
+
+    @Test
+    public void testCooccurrences() {
+        final List<SimilarityJob.Cooccurrence> cooccurrences = toList(createJob().cooccurrences(2));
+        assertEquals(List.of(
+                new SimilarityJob.Cooccurrence(ERIN, RYOKA, 2),
+                new SimilarityJob.Cooccurrence(LYONETTE, MRSHA, 2)), cooccurrences);
+        assertEquals(6, toList(createJob().cooccurrences(1)).size());
+    }
+
+    @Test
+    public void testCooccurrencesInChunks() {
+        // a chain of tags, each occurring together with the next in two works, across several chunks of rows
+        final int tags = 3000;
+        final int[] fanfictionIds = new int[2 * (tags - 1)];
+        final int[][] tagsByWork = new int[fanfictionIds.length][];
+        for (int index = 0; index < fanfictionIds.length; index++) {
+            fanfictionIds[index] = index;
+            tagsByWork[index] = new int[]{index / 2, index / 2 + 1};
+        }
+        final List<SimilarityJob.Cooccurrence> expected = new ArrayList<>();
+        for (int tag = 0; tag < tags - 1; tag++) {
+            expected.add(new SimilarityJob.Cooccurrence(tag, tag + 1, 2));
+        }
+        final Iterable<SimilarityJob.Cooccurrence> cooccurrences = new SimilarityJob(fanfictionIds, tagsByWork).cooccurrences(2);
+        assertEquals(expected, toList(cooccurrences));
+        // iterable again
+        assertEquals(expected, toList(cooccurrences));
+    }
+
+    @Test
+    public void testSimilarWorks() {
+        final List<SimilarityJob.SimilarWork> similarWorks = createJob().similarWorks(1, SimilarityJob.DEFAULT_POSTING_BUDGET);
+        assertEquals(4, similarWorks.size());
+        assertEquals(11, similarWorks.get(0).similarId());
+        assertEquals(10, similarWorks.get(1).similarId());
+        assertEquals(13, similarWorks.get(2).similarId());
+        assertEquals(12, similarWorks.get(3).similarId());
+        for (SimilarityJob.SimilarWork similarWork : similarWorks) {
+            assertTrue(similarWork.score() > 0 && similarWork.score() <= 1);
+        }
+    }
+
+    @Test
+    public void testSimilarWorksOrderedByScore() {
+        final List<SimilarityJob.SimilarWork> similarWorks = createJob().similarWorks(3, SimilarityJob.DEFAULT_POSTING_BUDGET);
+        // work 10 shares Erin and Ryoka with 11, only Erin with 12 and nothing with 13
+        assertEquals(List.of(11, 12), similarWorks.stream()
+                .filter(similarWork -> similarWork.fanfictionId() == 10)
+                .map(SimilarityJob.SimilarWork::similarId)
+                .toList());
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.abos.linker.index;
+
+import org.abos.common.CompressedBitmap;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test class for {@link TagIndex}.
+ */
+public final class TestTagIndex {
+
+    private static final int ERIN = 1;
+
+    private static final int RYOKA = 2;
+
+    private static final int DEATH = 3;
+
+    private static final int LYONETTE = 4;
+
+    private static TagIndex createIndex() {
+        final TagIndex index = new TagIndex();
+        index.add(ERIN, 10);
+        index.add(ERIN, 11);
+        index.add(ERIN, 12);
+        index.add(RYOKA, 11);
+        index.add(RYOKA, 12);
+        index.add(RYOKA, 13);
+        index.add(DEATH, 12);
+        index.add(LYONETTE, 14);
+        return index;
+    }
+
+    @Test
+    public void testFilter() {
+        final TagIndex index = createIndex();
+        assertEquals(CompressedBitmap.of(11), index.filter(List.of(ERIN, RYOKA), List.of(), List.of(DEATH)));
+        assertEquals(CompressedBitmap.of(10, 11, 12, 13), index.filter(List.of(), List.of(ERIN, RYOKA), List.of()));
+        assertEquals(CompressedBitmap.of(10, 11, 13, 14), index.filter(List.of(), List.of(), List.of(DEATH)));
+        assertEquals(CompressedBitmap.of(), index.filter(List.of(ERIN, 99), List.of(), List.of()));
+        assertEquals(2, index.count(List.of(ERIN), List.of(RYOKA, LYONETTE), List.of()));
+    }
+
+    @Test
+    public void testFilterDoesNotExposeIndex() {
+        final TagIndex index = createIndex();
+        index.filter(List.of(ERIN), List.of(), List.of(99)).add(20);
+        index.filter(List.of(), List.of(), List.of()).add(20);
+        assertEquals(3, index.count(ERIN));
+        assertEquals(5, index.count(List.of(), List.of(), List.of()));
+    }
+
+    @Test
+    public void testRemoveAndMerge() {
+        final TagIndex index = createIndex();
+        index.remove(DEATH, 12);
+        assertEquals(0, index.count(DEATH));
+        index.merge(ERIN, LYONETTE);
+        assertEquals(CompressedBitmap.of(10, 11, 12, 14), index.get(ERIN));
+        assertEquals(0, index.count(LYONETTE));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testRemoveDropsEmptyTags() {
+        final TagIndex index = createIndex();
+        assertEquals(4, index.size());
+        index.remove(ERIN, 10);
+        index.remove(ERIN, 11);
+        assertEquals(4, index.size());
+        index.remove(ERIN, 12);
+        index.remove(LYONETTE, 14);
+        assertEquals(2, index.size());
+        // a dense tag, whose bitmap shrinks through its compact representations
+        for (int fanfictionId = 0; fanfictionId < 10000; fanfictionId++) {
+            index.add(ERIN, fanfictionId);
+        }
+        assertEquals(3, index.size());
+        for (int fanfictionId = 0; fanfictionId < 10000; fanfictionId++) {
+            index.remove(ERIN, fanfictionId);
+        }
+        assertEquals(2, index.size());
+        // a rejected fanfiction ID leaves no empty tag behind
+        assertThrows(IllegalArgumentException.class, () -> index.add(99, -1));
+        assertEquals(2, index.size());
+    }
+
+}
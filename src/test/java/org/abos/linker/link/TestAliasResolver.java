@@ -0,0 +1,44 @@
+package org.abos.linker.link;
+
+import org.abos.linker.core.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test class for {@link AliasResolver}.
+ */
+public final class TestAliasResolver {
+
+    @Test
+    public void testResolve() {
+        final AliasResolver resolver = new AliasResolver();
+        resolver.put("Lyonette", "Lyonette du Marquin");
+        assertEquals("Lyonette du Marquin", resolver.resolve("Lyonette"));
+        assertEquals("Erin Solstice", resolver.resolve("Erin Solstice"));
+        final Tag erin = new Tag("Erin Solstice", null, true, false, null, null);
+        assertSame(erin, resolver.resolve(erin));
+        final Tag lyonette = resolver.resolve(new Tag("Lyonette", "A princess.", true, false, null, "link"));
+        assertEquals(new Tag("Lyonette du Marquin", "A princess.", true, false, null, "link"), lyonette);
+    }
+
+    @Test
+    public void testPutAliasOfAlias() {
+        final AliasResolver resolver = new AliasResolver();
+        resolver.put("Lyonette", "Lyonette du Marquin");
+        resolver.put("Lyon", "Lyonette");
+        assertEquals("Lyonette du Marquin", resolver.resolve("Lyon"));
+    }
+
+    @Test
+    public void testChangeToAlias() {
+        final AliasResolver resolver = new AliasResolver();
+        resolver.put("Ryo", "Ryoka");
+        resolver.changeToAlias("Ryoka Griffin", "Ryoka");
+        assertEquals("Ryoka Griffin", resolver.resolve("Ryoka"));
+        assertEquals("Ryoka Griffin", resolver.resolve("Ryo"));
+        assertEquals(2, resolver.size());
+    }
+
+}
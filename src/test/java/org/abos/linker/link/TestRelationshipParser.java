@@ -0,0 +1,34 @@
+package org.abos.linker.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for {@link RelationshipParser}.
+ */
+public final class TestRelationshipParser {
+
+    @Test
+    public void testParseRomantic() {
+        assertEquals(List.of("Erin Solstice", "Ryoka Griffin"), RelationshipParser.parse("Erin Solstice/Ryoka Griffin"));
+        assertEquals(List.of("Erin Solstice", "Ryoka Griffin", "Lyonette du Marquin"),
+                RelationshipParser.parse("Erin Solstice / Ryoka Griffin/Lyonette du Marquin"));
+    }
+
+    @Test
+    public void testParsePlatonic() {
+        assertEquals(List.of("Erin Solstice", "Lyonette du Marquin"), RelationshipParser.parse("Erin Solstice & Lyonette du Marquin"));
+        assertEquals(List.of("Mrsha", "Erin Solstice"), RelationshipParser.parse("Mrsha & Erin Solstice & Mrsha"));
+    }
+
+    @Test
+    public void testParseNoRelationship() {
+        assertEquals(List.of(), RelationshipParser.parse("Erin Solstice"));
+        assertEquals(List.of(), RelationshipParser.parse("Salt&Pepper"));
+        assertEquals(List.of(), RelationshipParser.parse("Erin/"));
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.abos.linker.link;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test class for {@link TagLinker}.
+ */
+public final class TestTagLinker {
+
+    private static TagLinker createLinker() {
+        final TagLinker linker = new TagLinker();
+        linker.add("Erin Solstice", 1, "Erin Solstice");
+        linker.add("Ryoka Griffin", 2, "Ryoka Griffin");
+        linker.add("Ryoka", 2, "Ryoka Griffin");
+        linker.add("Lyonette du Marquin", 3, "Lyonette du Marquin");
+        linker.add("Erribathe Kallinad", 4, "Erribathe Kallinad");
+        return linker;
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("erin solstice", TagLinker.normalize("Erin Solstice (The Wandering Inn)"));
+        assertEquals("lyonette du marquin", TagLinker.normalize("  Lyonette  du-Marquin "));
+        assertEquals("oc", TagLinker.normalize("(OC)"));
+    }
+
+    @Test
+    public void testTrigrams() {
+        assertArrayEquals(new long[] {
+                ((long)' ' << 32) | ((long)' ' << 16) | 'a',
+                ((long)' ' << 32) | ((long)'a' << 16) | 'a',
+                ((long)'a' << 32) | ((long)'a' << 16) | ' ',
+                ((long)'a' << 32) | ((long)'a' << 16) | 'a'
+        }, TagLinker.trigrams("aaa"));
+    }
+
+    @Test
+    public void testResolveDisambiguated() {
+        final TagMatch match = createLinker().resolve("Erin Solstice (The Wandering Inn)");
+        assertEquals(new TagMatch("Erin Solstice", 1, 1, 0), match);
+    }
+
+    @Test
+    public void testResolveAlias() {
+        assertEquals(2, createLinker().resolve("Ryoka (The Wandering Inn)").tagId());
+    }
+
+    @Test
+    public void testResolveMisspelled() {
+        final TagMatch match = createLinker().resolve("Lyonette du Marquinn");
+        assertEquals("Lyonette du Marquin", match.name());
+    }
+
+    @Test
+    public void testNoConfidentMatch() {
+        final TagLinker linker = createLinker();
+        assertNull(linker.resolve("Erin"));
+        assertNull(linker.resolve("Pisces Jealnet"));
+        assertNull(linker.match("---"));
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.abos.linker.scraper;
+
+import org.abos.linker.core.Fanfiction;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the parse hot path of {@link Ao3Scraper}, run against a captured listing page.
+ * Start {@link #main(String[])} with the test classpath; the GC profiler reports the allocations per built record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Ao3ScraperBenchmark {
+
+    public static final String LISTING_PAGE = "ao3/listing.html";
+
+    public static final String LISTING_URI = "https://archiveofourown.org/tags/The%20Wandering%20Inn%20-%20pirateaba/works";
+
+    private final Ao3Scraper scraper = new Ao3Scraper();
+
+    private Elements blurbs;
+
+    @Setup
+    public void loadListing() {
+        blurbs = ScraperTestUtil.loadPage(LISTING_PAGE, LISTING_URI).getElementsByAttributeValue("role", "article");
+    }
+
+    @Benchmark
+    public void buildFanfictions(final Blackhole blackhole) {
+        for (Element blurb : blurbs) {
+            final Fanfiction fanfiction = scraper.scrapeFanfiction(blurb).lastUpdated(Instant.EPOCH).build();
+            blackhole.consume(fanfiction);
+        }
+    }
+
+    @Benchmark
+    public void extractSinglePass(final Blackhole blackhole) {
+        for (Element blurb : blurbs) {
+            blackhole.consume(scraper.scrapeFanfiction(blurb));
+        }
+    }
+
+    @Benchmark
+    public void extractTreeScans(final Blackhole blackhole) {
+        for (Element blurb : blurbs) {
+            blackhole.consume(TreeScanAo3Extraction.scrapeFanfiction(blurb));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(Ao3ScraperBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+
+}
@@ -1,5 +1,12 @@
 package org.abos.linker.scraper;
 
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.BlockingQueue;
 
 public final class ScraperTestUtil {
@@ -24,4 +31,22 @@ public final class ScraperTestUtil {
 
     }
 
+    /**
+     * Parses a captured HTML page from the test resources.
+     * @param resourceLocation the location of the page relative to the test resources, not {@code null}
+     * @param baseUri the URI the page was captured from, not {@code null}
+     * @return the parsed page, not {@code null}
+     * @throws UncheckedIOException If the page is missing or cannot be read.
+     */
+    public static Document loadPage(final String resourceLocation, final String baseUri) {
+        try (final InputStream in = ScraperTestUtil.class.getClassLoader().getResourceAsStream(resourceLocation)) {
+            if (in == null) {
+                throw new IOException("Missing test resource " + resourceLocation + "!");
+            }
+            return Jsoup.parse(in, StandardCharsets.UTF_8.name(), baseUri);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
 }
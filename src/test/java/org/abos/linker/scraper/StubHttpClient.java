@@ -0,0 +1,157 @@
+package org.abos.linker.scraper;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * An {@link HttpClient} that answers requests with canned pages instead of going over the network, so scrapers can be
+ * tested offline against their real URLs. Counts the requests per URI. Safe to use from multiple threads.
+ */
+public final class StubHttpClient extends HttpClient {
+
+    private static final HttpHeaders HTML_HEADERS = HttpHeaders.of(
+            Map.of("Content-Type", List.of("text/html; charset=UTF-8")), (name, value) -> true);
+
+    private final Function<URI, byte[]> pages;
+
+    private final Map<URI, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new {@link StubHttpClient} instance.
+     * @param pages returns the HTML page of a URI, or {@code null} to answer with 404, not {@code null}
+     */
+    public StubHttpClient(final Function<URI, byte[]> pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * Returns how often the specified URI was requested.
+     * @param uri the URI, not {@code null}
+     * @return the number of requests
+     */
+    public int getRequests(final URI uri) {
+        final AtomicInteger count = requests.get(uri);
+        return count == null ? 0 : count.get();
+    }
+
+    private record StubResponse(HttpRequest request, int statusCode, InputStream body) implements HttpResponse<InputStream> {
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HTML_HEADERS;
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public Version version() {
+            return Version.HTTP_1_1;
+        }
+    }
+
+    /**
+     * Answers the request with its canned page. The body handler is ignored, so only
+     * {@link HttpResponse.BodyHandlers#ofInputStream()} is supported.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> HttpResponse<T> send(final HttpRequest request, final HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException {
+        requests.computeIfAbsent(request.uri(), uri -> new AtomicInteger()).incrementAndGet();
+        final byte[] page = pages.apply(request.uri());
+        if (page == null) {
+            return (HttpResponse<T>) new StubResponse(request, 404, InputStream.nullInputStream());
+        }
+        return (HttpResponse<T>) new StubResponse(request, 200, new ByteArrayInputStream(page));
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final HttpResponse.BodyHandler<T> responseBodyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final HttpResponse.BodyHandler<T> responseBodyHandler,
+                                                            final HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return Redirect.NEVER;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return Optional.empty();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Version version() {
+        return Version.HTTP_1_1;
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.abos.linker.scraper;
+
+import org.abos.linker.core.Canonicalizer;
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.Fanfiction;
+import org.abos.linker.core.FanfictionBuilder;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.abos.linker.scraper.Ao3ScraperBenchmark.LISTING_PAGE;
+import static org.abos.linker.scraper.Ao3ScraperBenchmark.LISTING_URI;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link Ao3BlurbExtractor}.
+ */
+public final class TestAo3BlurbExtractor {
+
+    private static Fanfiction build(final FanfictionBuilder builder) {
+        return builder.lastUpdated(Instant.EPOCH).lastChecked(Instant.EPOCH).build();
+    }
+
+    /**
+     * Builds without the engagement, which the tree scan predates.
+     */
+    private static Fanfiction buildWithoutEngagement(final FanfictionBuilder builder) {
+        return build(builder.engagement(null));
+    }
+
+    @Test
+    public void testSameAsTreeScan() {
+        final Elements blurbs = ScraperTestUtil.loadPage(LISTING_PAGE, LISTING_URI).getElementsByAttributeValue("role", "article");
+        assertFalse(blurbs.isEmpty());
+        final Canonicalizer canonicalizer = new Canonicalizer();
+        for (Element blurb : blurbs) {
+            assertEquals(build(TreeScanAo3Extraction.scrapeFanfiction(blurb)),
+                    buildWithoutEngagement(new Ao3BlurbExtractor("https://archiveofourown.org", "The Wandering Inn - pirateaba", canonicalizer).extract(blurb)));
+        }
+    }
+
+    @Test
+    public void testCrossoverAndWarnings() {
+        final Element blurb = ScraperTestUtil.loadPage(LISTING_PAGE, LISTING_URI).getElementById("work_40000002");
+        final Fanfiction fanfiction = build(new Ao3Scraper().scrapeFanfiction(blurb));
+        assertEquals("Wind and Wings", fanfiction.title());
+        assertEquals(17, fanfiction.chapters());
+        assertEquals(123456, fanfiction.words());
+        assertEquals(2, fanfiction.authors().size());
+        assertEquals(1, fanfiction.crossovers().size());
+        assertTrue(fanfiction.warningViolence());
+        assertTrue(fanfiction.warningDeath());
+        assertFalse(fanfiction.completed());
+        assertEquals(new Engagement(3210, 98765, 1024, 456), fanfiction.engagement());
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.abos.linker.scraper;
+
+import org.abos.linker.core.Canonicalizer;
+import org.abos.linker.core.Fanfiction;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Test class for {@link Ao3Crawler}, runs against a {@link StubHttpClient}.
+ */
+public final class TestAo3Crawler {
+
+    private static byte[] resource(final String location) {
+        try (final InputStream in = TestAo3Crawler.class.getClassLoader().getResourceAsStream(location)) {
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Test
+    public void testDedupAcrossListings() throws IOException, InterruptedException {
+        final byte[] listing = resource(Ao3ScraperBenchmark.LISTING_PAGE);
+        final byte[] work = resource("ao3/work.html");
+        // three listings with the same four works, as for a fandom and two of its characters
+        final List<String> listingUrls = List.of(Ao3Scraper.FANFICTION_URL, Ao3Scraper.listingUrl("Erin Solstice"), Ao3Scraper.listingUrl("Ryoka Griffin"));
+        final StubHttpClient http = new StubHttpClient(uri -> {
+            if (listingUrls.contains(uri.toString())) {
+                return listing;
+            }
+            return uri.getPath().startsWith("/works/") ? work : null;
+        });
+        final Ao3Scraper scraper = new Ao3Scraper(new Canonicalizer(), new ScraperClient(http, Duration.ofSeconds(5)));
+        final Ao3Crawler crawler = new Ao3Crawler(scraper, host -> {});
+        final BlockingQueue<Fanfiction> queue = crawler.crawl(listingUrls);
+        final Set<String> links = new HashSet<>();
+        Fanfiction fanfiction;
+        while (!Fanfiction.DUMMY.equals(fanfiction = queue.poll(10, TimeUnit.SECONDS))) {
+            assertNotNull(fanfiction);
+            links.add(fanfiction.link());
+        }
+        assertEquals(4, links.size());
+        assertEquals(4, crawler.size());
+        assertEquals(8, crawler.getDuplicates());
+        for (String link : links) {
+            assertEquals(1, http.getRequests(URI.create(link)), link + " fetched more than once");
+        }
+        for (String listingUrl : listingUrls) {
+            assertEquals(1, http.getRequests(URI.create(listingUrl)));
+        }
+    }
+
+}
@@ -1,8 +1,28 @@
 package org.abos.linker.scraper;
 
+import org.abos.linker.core.Engagement;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.WorkStats;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * Test class for {@link Ao3Scraper}
@@ -13,4 +33,43 @@ public final class TestAo3Scraper {
     public void testScrapeFanfictions() throws IOException {
         ScraperTestUtil.doTestBlockingQueue(Ao3Scraper.TIME_OUT, new Ao3Scraper().scrapeFanfictions());
     }
+
+    @Test
+    public void testScrapeListingPage() throws IOException {
+        final List<FanfictionBuilder> list = new ArrayList<>();
+        try (final Reader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(Ao3ScraperBenchmark.LISTING_PAGE), StandardCharsets.UTF_8));
+             final StreamParser streamer = new StreamParser(Parser.htmlParser()).parse(reader, Ao3ScraperBenchmark.LISTING_URI)) {
+            assertNull(new Ao3Scraper().scrapeListingPage(streamer, list));
+        }
+        assertEquals(4, list.size());
+        assertEquals("The Innkeeper's Morning", list.get(0).title());
+    }
+
+    @Test
+    public void testScrapeWorkStats() throws IOException {
+        final Document doc;
+        try (final InputStream in = getClass().getClassLoader().getResourceAsStream("ao3/work.html")) {
+            doc = Jsoup.parse(in, "UTF-8", "https://archiveofourown.org/works/40000005");
+        }
+        final WorkStats stats = Ao3Scraper.scrapeWorkStats(doc);
+        assertEquals(4, stats.chapters());
+        assertEquals(12345, stats.words());
+        assertFalse(stats.completed());
+        // no bookmarks yet, so Ao3 leaves them out
+        assertEquals(new Engagement(402, 5120, 31, 0), stats.engagement());
+        assertEquals(LocalDate.of(2024, 1, 15), LocalDate.ofInstant(stats.lastUpdated(), ZoneId.systemDefault()));
+    }
+
+    @Test
+    public void testListingUrl() {
+        assertEquals("https://archiveofourown.org/tags/The%20Wandering%20Inn%20-%20pirateaba/works", Ao3Scraper.FANFICTION_URL);
+        assertEquals("https://archiveofourown.org/tags/Erin%20Solstice*s*Ryoka%20Griffin/works", Ao3Scraper.listingUrl("Erin Solstice/Ryoka Griffin"));
+    }
+
+    @Test
+    public void testWorkId() {
+        assertEquals(40000005L, Ao3Scraper.workId("https://archiveofourown.org/works/40000005"));
+        assertEquals(40000005L, Ao3Scraper.workId("https://archiveofourown.org/works/40000005/chapters/123"));
+        assertEquals(-1L, Ao3Scraper.workId("https://archiveofourown.org/tags/Erin%20Solstice/works"));
+    }
 }
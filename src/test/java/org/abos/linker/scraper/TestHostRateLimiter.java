@@ -0,0 +1,63 @@
+package org.abos.linker.scraper;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link HostRateLimiter}.
+ */
+public final class TestHostRateLimiter {
+
+    private static final Duration INTERVAL = Duration.ofMillis(50);
+
+    @Test
+    public void testSpacingAcrossThreads() throws InterruptedException {
+        final HostRateLimiter limiter = new HostRateLimiter(INTERVAL);
+        final List<Long> acquired = Collections.synchronizedList(new ArrayList<>());
+        final long start = System.nanoTime();
+        final List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int request = 0; request < 3; request++) {
+                        // hosts are compared ignoring case
+                        limiter.acquire(request % 2 == 0 ? "archiveofourown.org" : "ArchiveOfOurOwn.org");
+                        acquired.add(System.nanoTime());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final List<Long> sorted = new ArrayList<>(acquired);
+        Collections.sort(sorted);
+        assertEquals(12, sorted.size());
+        // each request has its own slot, so the n-th one can't come before n intervals passed
+        for (int index = 0; index < sorted.size(); index++) {
+            assertTrue(sorted.get(index) - start >= index * INTERVAL.toNanos(), "Request " + index + " came too early");
+        }
+    }
+
+    @Test
+    public void testHostsIndependent() throws InterruptedException {
+        final HostRateLimiter limiter = new HostRateLimiter(Duration.ofSeconds(10));
+        final long start = System.nanoTime();
+        limiter.acquire("archiveofourown.org");
+        limiter.acquire("twiki.shelter.moe");
+        limiter.acquire("example.org");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+}
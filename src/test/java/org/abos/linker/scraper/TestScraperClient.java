@@ -0,0 +1,125 @@
+package org.abos.linker.scraper;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.StreamParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link ScraperClient}, runs against a local stand-in server.
+ */
+public final class TestScraperClient {
+
+    private static final String TEXT = "Erin Solstice ".repeat(200);
+
+    private static final String PAGE = "<html><body><p>" + TEXT + "</p></body></html>";
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/page", exchange -> {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final OutputStream out = new GZIPOutputStream(bytes)) {
+                out.write(PAGE.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, bytes.size());
+            try (final OutputStream out = exchange.getResponseBody()) {
+                bytes.writeTo(out);
+            }
+        });
+        server.createContext("/cookie", exchange -> {
+            final byte[] body = String.valueOf(exchange.getRequestHeaders().getFirst("Cookie")).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/stalled", exchange -> {
+            exchange.sendResponseHeaders(200, PAGE.length());
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(PAGE.substring(0, 10).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                stopped.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        stopped.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testDecodesAndCounts() throws IOException {
+        final ScraperClient client = new ScraperClient(Duration.ofSeconds(5));
+        final Document doc = client.getDocument(baseUrl + "/page");
+        assertEquals(TEXT, doc.getElementsByTag("p").get(0).wholeText());
+        client.getDocument(baseUrl + "/page");
+        assertEquals(2, client.getRequests());
+        assertTrue(client.getReceivedBytes() < client.getDecodedBytes());
+    }
+
+    @Test
+    public void testStreamParser() throws IOException {
+        final ScraperClient client = new ScraperClient(Duration.ofSeconds(5));
+        try (final StreamParser streamer = client.getStreamParser(baseUrl + "/page")) {
+            assertEquals(TEXT, streamer.selectFirst("p").wholeText());
+        }
+        assertTrue(client.getReceivedBytes() < client.getDecodedBytes());
+    }
+
+    @Test
+    public void testSharedCookies() throws IOException {
+        final ScraperClient client = new ScraperClient(Duration.ofSeconds(5));
+        client.addCookie(baseUrl, "shm_session", "abc");
+        assertTrue(client.getString(baseUrl + "/cookie", "text/plain").contains("shm_session=abc"));
+    }
+
+    @Test
+    public void testStalledBody() {
+        final ScraperClient client = new ScraperClient(Duration.ofMillis(500));
+        assertThrows(HttpTimeoutException.class, () -> client.getString(baseUrl + "/stalled", "text/html"));
+    }
+
+    @Test
+    public void testErrorStatus() {
+        final ScraperClient client = new ScraperClient(Duration.ofSeconds(5));
+        assertEquals(404, assertThrows(HttpStatusException.class, () -> client.getDocument(baseUrl + "/missing")).getStatusCode());
+    }
+
+}
@@ -1,8 +1,27 @@
 package org.abos.linker.scraper;
 
+import com.sun.net.httpserver.HttpServer;
+import org.abos.linker.core.Tag;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test class for {@link WikiScraper}.
@@ -13,4 +32,92 @@ public final class TestWikiScraper {
     public void testScrapeCharacterTags() throws IOException {
         ScraperTestUtil.doTestBlockingQueue(WikiScraper.TIME_OUT, new WikiScraper().scrapeCharacterTags());
     }
+
+    @Test
+    public void testScrapeCategoryPage() throws IOException {
+        final Map<String, String> links = new HashMap<>();
+        final String next;
+        try (final Reader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("wiki/characters.html"), StandardCharsets.UTF_8));
+             final StreamParser streamer = new StreamParser(Parser.htmlParser()).parse(reader, "https://twiki.shelter.moe/Category:Characters")) {
+            next = new WikiScraper().scrapeCategoryPage(streamer, links);
+            // the pagination links are removed once scraped, like the page links
+            assertTrue(streamer.document().select("#mw-pages a").isEmpty());
+        }
+        assertEquals("https://twiki.shelter.moe/index.php?title=Category:Characters&pagefrom=Fierre#mw-pages", next);
+        assertEquals(4, links.size());
+        assertEquals("https://twiki.shelter.moe/Erin_Solstice", links.get("Erin Solstice"));
+    }
+
+    /**
+     * Starts a stand-in for the MediaWiki API that pages the category members and the extracts with continuations.
+     * @param requests counts the requests answered
+     * @return the started server
+     * @throws IOException If the server cannot be started.
+     */
+    private static HttpServer startApiServer(final AtomicInteger requests) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api.php", exchange -> {
+            requests.incrementAndGet();
+            final String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+            final String answer;
+            if (query.contains("list=categorymembers")) {
+                if (!query.contains("cmcontinue=")) {
+                    answer = "<api><continue cmcontinue=\"page|5259|1\" continue=\"-||\"/><query><categorymembers>"
+                            + "<cm pageid=\"1\" ns=\"0\" title=\"Erin Solstice\"/>"
+                            + "<cm pageid=\"2\" ns=\"0\" title=\"Infobox character testing\"/>"
+                            + "</categorymembers></query></api>";
+                }
+                else {
+                    answer = "<api batchcomplete=\"\"><query><categorymembers>"
+                            + "<cm pageid=\"3\" ns=\"0\" title=\"Ryoka Griffin\"/>"
+                            + "</categorymembers></query></api>";
+                }
+            }
+            else if (!query.contains("excontinue=")) {
+                answer = "<api><continue excontinue=\"1\" continue=\"||info\"/><query><pages>"
+                        + "<page _idx=\"1\" pageid=\"1\" ns=\"0\" title=\"Erin Solstice\" fullurl=\"https://twiki.shelter.moe/Erin_Solstice\">"
+                        + "<extract xml:space=\"preserve\">Trapped in a world of levels.\nErin Solstice is the innkeeper of The Wandering Inn. She cooks.</extract></page>"
+                        + "<page _idx=\"3\" pageid=\"3\" ns=\"0\" title=\"Ryoka Griffin\" fullurl=\"https://twiki.shelter.moe/Ryoka_Griffin\"/>"
+                        + "</pages></query></api>";
+            }
+            else {
+                answer = "<api batchcomplete=\"\"><query><pages>"
+                        + "<page _idx=\"3\" pageid=\"3\" ns=\"0\" title=\"Ryoka Griffin\" fullurl=\"https://twiki.shelter.moe/Ryoka_Griffin\">"
+                        + "<extract xml:space=\"preserve\">Ryoka Griffin is a City Runner. She runs.</extract></page>"
+                        + "</pages></query></api>";
+            }
+            final byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void testScrapeViaApi() throws IOException {
+        final AtomicInteger requests = new AtomicInteger();
+        final HttpServer server = startApiServer(requests);
+        try {
+            final WikiScraper scraper = new WikiScraper(new ScraperClient(Duration.ofSeconds(5)),
+                    "http://127.0.0.1:" + server.getAddress().getPort(), true);
+            final List<String> titles = scraper.scrapeCategoryMembers("Category:Characters");
+            assertEquals(List.of("Erin Solstice", "Ryoka Griffin"), titles);
+            final List<Tag> tags = scraper.scrapeCharacterBatch(titles);
+            assertEquals(new Tag("Erin Solstice", "Erin Solstice is the innkeeper of The Wandering Inn.", true, false, null, "https://twiki.shelter.moe/Erin_Solstice"), tags.get(0));
+            assertEquals("Ryoka Griffin is a City Runner.", tags.get(1).description());
+            assertEquals(4, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testFirstSentence() {
+        assertEquals("One.", WikiScraper.firstSentence("One. Two."));
+        assertEquals("", WikiScraper.firstSentence("None"));
+    }
 }
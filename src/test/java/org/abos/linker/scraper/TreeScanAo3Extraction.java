@@ -0,0 +1,155 @@
+package org.abos.linker.scraper;
+
+import org.abos.linker.core.Author;
+import org.abos.linker.core.Fandom;
+import org.abos.linker.core.FanfictionBuilder;
+import org.abos.linker.core.Tag;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The blurb extraction {@link Ao3Scraper} used before {@link Ao3BlurbExtractor}, scanning the blurb subtree once per section.
+ * Kept as reference for equivalence tests and as baseline for {@link Ao3ScraperBenchmark}.
+ */
+final class TreeScanAo3Extraction {
+
+    private static final String BASE_URL = "https://archiveofourown.org";
+
+    private static final String TWI_FANDOM = "The Wandering Inn - pirateaba";
+
+    private TreeScanAo3Extraction() {
+        /* No instantiation. */
+    }
+
+    static FanfictionBuilder scrapeFanfiction(final Element entry) {
+        // scrape heading and authors
+        final Elements h4Links = entry.getElementsByTag("h4").get(0).getElementsByTag("a");
+        final String title = h4Links.get(0).text();
+        final String link = BASE_URL + h4Links.get(0).attr("href");
+        final List<Author> authors = new ArrayList<>(h4Links.size() - 1);
+        for (int i = 1; i < h4Links.size(); i++) {
+            authors.add(new Author(h4Links.get(i).text(), List.of(BASE_URL + h4Links.get(i).attr("href"))));
+        }
+        // scrape fandoms
+        final Elements h5Links = entry.getElementsByTag("h5").get(0).getElementsByTag("a");
+        final List<Fandom> fandoms = new ArrayList<>(h5Links.size());
+        for (Element fandom : h5Links) {
+            // we ignore the TWI fandom
+            if (fandom.text().equals(TWI_FANDOM)) {
+                continue;
+            }
+            // we do not take the fandom link from Ao3
+            fandoms.add(new Fandom(fandom.text(), null));
+        }
+        // scrape required tags (the square ones)
+        final Elements requiredTags = entry.getElementsByTag("h5").get(0).nextElementSibling().getElementsByTag("li");
+        boolean catFf = false, catFm = false, catMm = false, catGen = false, catMulti = false, catOther = false, completed = false;
+        String rating = null;
+        for (Element tag : requiredTags) {
+            final var type = tag.getElementsByTag("span").get(0).classNames();
+            // ignore warning, will be taken from regular tags
+            if (type.contains("warnings")) {
+                continue;
+            }
+            if (type.contains("rating")) {
+                rating = tag.text();
+            }
+            else if (type.contains("category")) {
+                final String categories = tag.text();
+                if (categories.contains("F/F")) {
+                    catFf = true;
+                }
+                if (categories.contains("F/M")) {
+                    catFm = true;
+                }
+                if (categories.contains("M/M")) {
+                    catMm = true;
+                }
+                if (categories.contains("Gen")) {
+                    catGen = true;
+                }
+                if (categories.contains("Multi")) {
+                    catMulti = true;
+                }
+                if (categories.contains("Other")) {
+                    catOther = true;
+                }
+            }
+            else if (type.contains("complete-yes")) {
+                completed = true;
+            }
+        }
+        if (rating == null) {
+            throw new IllegalStateException("Rating was not specified for story " + title + "!");
+        }
+        // scrape the regular tags
+        final Elements tags = entry.getElementsByTag("h6").get(0).nextElementSibling().getElementsByTag("li");
+        final List<Tag> tagList = new ArrayList<>(tags.size());
+        boolean warningNoneGiven = false, warningNoneApply = false, warningViolence = false, warningRape = false, warningDeath = false, warningUnderage = false;
+        for (Element tag : tags) {
+            if (tag.classNames().contains("warnings")) {
+                switch (tag.text()) {
+                    case "Creator Chose Not To Use Archive Warnings" -> warningNoneGiven = true;
+                    case "No Archive Warnings Apply" -> warningNoneApply = true;
+                    case "Graphic Depictions Of Violence" -> warningViolence = true;
+                    case "Rape/Non-Con" -> warningRape = true;
+                    case "Major Character Death" -> warningDeath = true;
+                    case "Underage" -> warningUnderage = true;
+                    default -> throw new IllegalStateException("Unknown warning " + tag.text() + " encountered!");
+                }
+            }
+            else {
+                tagList.add(new Tag(tag.text(), null, tag.classNames().contains("characters"), tag.classNames().contains("relationships"), null, null));
+            }
+        }
+        // scrape stats
+        String language = null;
+        int chapters = 0, words = 0;
+        final Elements stats = entry.getElementsByClass("stats").get(0).getElementsByTag("dd");
+        for (Element stat : stats) {
+            if (stat.classNames().contains("language")) {
+                language = stat.text();
+            }
+            else if (stat.classNames().contains("chapters")) {
+                final String completeChapters = stat.text();
+                chapters = Integer.parseInt(completeChapters.substring(0, completeChapters.indexOf('/')).replace(",", ""));
+            }
+            else if (stat.classNames().contains("words")) {
+                words = Integer.parseInt(stat.text().replace(",", ""));
+            }
+        }
+        if (chapters == 0) {
+            throw new IllegalStateException("Couldn't find chapters for " + title + "!");
+        }
+        if (words == 0) {
+            throw new IllegalStateException("Couldn't find words for " + title + "!");
+        }
+        return new FanfictionBuilder()
+                .title(title)
+                .chapters(chapters)
+                .words(words)
+                .language(language)
+                .rating(rating)
+                .warningNoneGiven(warningNoneGiven)
+                .warningNoneApply(warningNoneApply)
+                .warningViolence(warningViolence)
+                .warningRape(warningRape)
+                .warningDeath(warningDeath)
+                .warningUnderage(warningUnderage)
+                .catFf(catFf)
+                .catFm(catFm)
+                .catMm(catMm)
+                .catGen(catGen)
+                .catMulti(catMulti)
+                .catOther(catOther)
+                .completed(completed)
+                .link(link)
+                .authors(authors)
+                .tags(tagList)
+                .crossovers(fandoms);
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.abos.linker.server;
+
+import org.abos.linker.db.Search;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link QueryServer}.
+ */
+public final class TestQueryServer {
+
+    @Test
+    public void testParseQuery() {
+        assertTrue(QueryServer.parseQuery(null).isEmpty());
+        final Map<String, List<String>> params = QueryServer.parseQuery("q=erin+solstice&tag=Erin%20Solstice&tag=Ryoka&&characters");
+        assertEquals(List.of("erin solstice"), params.get("q"));
+        assertEquals(List.of("Erin Solstice", "Ryoka"), params.get("tag"));
+        assertEquals(List.of(""), params.get("characters"));
+        assertEquals(3, params.size());
+    }
+
+    @Test
+    public void testCacheable() {
+        assertTrue(QueryServer.isCacheable("/fanfictions/12", Map.of()));
+        assertTrue(QueryServer.isCacheable("/stats/tags", Map.of()));
+        assertTrue(QueryServer.isCacheable("/stats/ratings", QueryServer.parseQuery("to=2024-12")));
+        assertFalse(QueryServer.isCacheable("/stats/ratings", QueryServer.parseQuery("from=2024-01")));
+        assertFalse(QueryServer.isCacheable("/stats/trending", Map.of()));
+        assertFalse(QueryServer.isCacheable("/stats/fanfictions/12/", Map.of()));
+    }
+
+    @Test
+    public void testCursor() {
+        final Search.Cursor cursor = new Search.Cursor(0.0607927f, 1234);
+        assertEquals(cursor, QueryServer.parseCursor(QueryServer.formatCursor(cursor)));
+        assertNull(QueryServer.parseCursor(null));
+        assertThrows(IllegalArgumentException.class, () -> QueryServer.parseCursor("1234"));
+        assertThrows(IllegalArgumentException.class, () -> QueryServer.parseCursor("high:1234"));
+    }
+
+}
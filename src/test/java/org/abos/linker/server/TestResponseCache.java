@@ -0,0 +1,66 @@
+package org.abos.linker.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for {@link ResponseCache}.
+ */
+public final class TestResponseCache {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final ResponseCache cache = new ResponseCache(800);
+        assertTrue(cache.put("/a", new byte[100], cache.generation()));
+        assertTrue(cache.put("/b", new byte[100], cache.generation()));
+        // touch a, so b is the least recently used
+        assertNotNull(cache.get("/a"));
+        for (int index = 0; index < 6; index++) {
+            assertTrue(cache.put("/c" + index, new byte[100], cache.generation()));
+        }
+        assertEquals(800, cache.bytes());
+        assertTrue(cache.put("/d", new byte[100], cache.generation()));
+        assertNull(cache.get("/b"));
+        assertNotNull(cache.get("/a"));
+        assertEquals(8, cache.size());
+        assertEquals(800, cache.bytes());
+    }
+
+    @Test
+    public void testReplace() {
+        final ResponseCache cache = new ResponseCache(1000);
+        cache.put("/a", new byte[100], cache.generation());
+        cache.put("/a", new byte[]{1, 2, 3}, cache.generation());
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.bytes());
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("/a"));
+    }
+
+    @Test
+    public void testTooLarge() {
+        final ResponseCache cache = new ResponseCache(800);
+        assertFalse(cache.put("/a", new byte[101], cache.generation()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final ResponseCache cache = new ResponseCache(1000);
+        cache.put("/a", new byte[10], cache.generation());
+        // a body read before the write must not be stored after it
+        final long generation = cache.generation();
+        cache.invalidate();
+        assertNull(cache.get("/a"));
+        assertFalse(cache.put("/b", new byte[10], generation));
+        assertEquals(0, cache.bytes());
+        assertTrue(cache.put("/b", new byte[10], cache.generation()));
+        assertEquals(1, cache.getMisses());
+    }
+
+}